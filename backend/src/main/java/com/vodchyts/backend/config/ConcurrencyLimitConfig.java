@@ -0,0 +1,29 @@
+package com.vodchyts.backend.config;
+
+import com.vodchyts.backend.security.TrafficClass;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@Setter
+@Getter
+@Configuration
+@ConfigurationProperties(prefix = "concurrency-limit")
+public class ConcurrencyLimitConfig {
+
+    private boolean enabled = true;
+    // concurrency-limit.classes.upload.max=16; незаданные берутся из TrafficClass
+    private Map<TrafficClass, Limit> classes = new EnumMap<>(TrafficClass.class);
+
+    @Setter
+    @Getter
+    public static class Limit {
+        private Integer initial;
+        private Integer min;
+        private Integer max;
+    }
+}
@@ -0,0 +1,66 @@
+package com.vodchyts.backend.config;
+
+import org.quartz.CronExpression;
+import org.quartz.CronTrigger;
+import org.quartz.JobExecutionContext;
+import org.quartz.Trigger;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+
+// После misfire с политикой FireAndProceed Quartz переносит запуск на "сейчас", и getScheduledFireTime()
+// возвращает уже это время, а не пропущенное по cron. Опоздание считается от последнего времени по расписанию.
+// В CronExpression getTimeBefore не реализован, поэтому окно поиска назад расширяется удвоением
+public final class CronFireTimes {
+
+    private static final Duration INITIAL_WINDOW = Duration.ofMinutes(1);
+
+    private CronFireTimes() {
+    }
+
+    // Последнее время по расписанию триггера в интервале (notAfter - lookback, notAfter]
+    public static Optional<Date> latestScheduled(CronTrigger trigger, Date notAfter, Duration lookback) {
+        CronExpression cron;
+        try {
+            cron = new CronExpression(trigger.getCronExpression());
+        } catch (ParseException e) {
+            return Optional.empty();
+        }
+        if (trigger.getTimeZone() != null) {
+            cron.setTimeZone(trigger.getTimeZone());
+        }
+
+        long windowMs = Math.min(INITIAL_WINDOW.toMillis(), lookback.toMillis());
+        while (true) {
+            Date candidate = cron.getTimeAfter(new Date(notAfter.getTime() - windowMs));
+            if (candidate != null && !candidate.after(notAfter)) {
+                Date next = cron.getTimeAfter(candidate);
+                while (next != null && !next.after(notAfter)) {
+                    candidate = next;
+                    next = cron.getTimeAfter(candidate);
+                }
+                return Optional.of(candidate);
+            }
+            if (windowMs >= lookback.toMillis()) {
+                return Optional.empty();
+            }
+            windowMs = Math.min(windowMs * 2, lookback.toMillis());
+        }
+    }
+
+    // Опоздание текущего запуска относительно расписания; пусто, если в пределах lookback времени по расписанию нет
+    public static Optional<Duration> lag(JobExecutionContext context, Duration lookback) {
+        Date scheduled = context.getScheduledFireTime();
+        if (scheduled == null) {
+            return Optional.of(Duration.ZERO);
+        }
+        Date fired = context.getFireTime() != null ? context.getFireTime() : new Date();
+        Trigger trigger = context.getTrigger();
+        Optional<Date> nominal = trigger instanceof CronTrigger cronTrigger
+                ? latestScheduled(cronTrigger, scheduled, lookback)
+                : Optional.of(scheduled);
+        return nominal.map(time -> Duration.ofMillis(Math.max(0, fired.getTime() - time.getTime())));
+    }
+}
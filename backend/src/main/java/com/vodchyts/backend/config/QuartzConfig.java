@@ -1,17 +1,44 @@
 package com.vodchyts.backend.config;
 
 import org.quartz.Scheduler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.quartz.SchedulerFactoryBean;
 
+import java.util.Properties;
+
 @Configuration
 public class QuartzConfig {
 
+    @Value("${quartz.clustered:false}")
+    private boolean clustered;
+
+    @Value("${quartz.jdbc.url:}")
+    private String jdbcUrl;
+
+    @Value("${quartz.jdbc.username:${spring.r2dbc.username:}}")
+    private String jdbcUsername;
+
+    @Value("${quartz.jdbc.password:${spring.r2dbc.password:}}")
+    private String jdbcPassword;
+
+    @Value("${quartz.jdbc.max-connections:5}")
+    private int maxConnections;
+
+    // Запуск, опоздавший больше чем на порог, считается пропущенным и обрабатывается по misfire-политике триггера
+    @Value("${quartz.misfire-threshold-ms:60000}")
+    private long misfireThresholdMs;
+
     @Bean
-    public SchedulerFactoryBean schedulerFactoryBean() {
+    public SchedulerFactoryBean schedulerFactoryBean(QuartzMetricsListener metricsListener) {
         SchedulerFactoryBean schedulerFactoryBean = new SchedulerFactoryBean();
         schedulerFactoryBean.setJobFactory(new AutowiringSpringBeanJobFactory());
+        Properties properties = clustered ? clusteredProperties() : new Properties();
+        properties.setProperty("org.quartz.jobStore.misfireThreshold", String.valueOf(misfireThresholdMs));
+        schedulerFactoryBean.setQuartzProperties(properties);
+        schedulerFactoryBean.setGlobalTriggerListeners(metricsListener);
+        schedulerFactoryBean.setGlobalJobListeners(metricsListener);
         return schedulerFactoryBean;
     }
 
@@ -19,4 +46,31 @@ public class QuartzConfig {
     public Scheduler scheduler(SchedulerFactoryBean schedulerFactoryBean) {
         return schedulerFactoryBean.getScheduler();
     }
+
+    // Задания и триггеры хранятся в таблицах QRTZ_*: каждый запуск выполняет ровно одна реплика,
+    // а при ее падении незавершенные триггеры подхватывают остальные. Отдельный JDBC-пул нужен только Quartz,
+    // приложение по-прежнему работает через R2DBC
+    private Properties clusteredProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.scheduler.instanceName", "RequestHandlerScheduler");
+        properties.setProperty("org.quartz.scheduler.instanceId", "AUTO");
+        properties.setProperty("org.quartz.threadPool.threadCount", "5");
+        properties.setProperty("org.quartz.jobStore.class", "org.quartz.impl.jdbcjobstore.JobStoreTX");
+        properties.setProperty("org.quartz.jobStore.driverDelegateClass", "org.quartz.impl.jdbcjobstore.MSSQLDelegate");
+        properties.setProperty("org.quartz.jobStore.tablePrefix", "QRTZ_");
+        properties.setProperty("org.quartz.jobStore.isClustered", "true");
+        properties.setProperty("org.quartz.jobStore.clusterCheckinInterval", "15000");
+        properties.setProperty("org.quartz.jobStore.useProperties", "false");
+        // В T-SQL нет SELECT ... FOR UPDATE, блокировка строки берется хинтами
+        properties.setProperty("org.quartz.jobStore.selectWithLockSQL",
+                "SELECT * FROM {0}LOCKS WITH (UPDLOCK, ROWLOCK) WHERE SCHED_NAME = {1} AND LOCK_NAME = ?");
+        properties.setProperty("org.quartz.jobStore.dataSource", "quartzDS");
+        properties.setProperty("org.quartz.dataSource.quartzDS.provider", "hikaricp");
+        properties.setProperty("org.quartz.dataSource.quartzDS.driver", "com.microsoft.sqlserver.jdbc.SQLServerDriver");
+        properties.setProperty("org.quartz.dataSource.quartzDS.URL", jdbcUrl);
+        properties.setProperty("org.quartz.dataSource.quartzDS.user", jdbcUsername);
+        properties.setProperty("org.quartz.dataSource.quartzDS.password", jdbcPassword);
+        properties.setProperty("org.quartz.dataSource.quartzDS.maxConnections", String.valueOf(maxConnections));
+        return properties;
+    }
 }
@@ -0,0 +1,77 @@
+package com.vodchyts.backend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobListener;
+import org.quartz.Trigger;
+import org.quartz.TriggerListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// Метрики планировщика: quartz.trigger.lag — насколько позже расписания (по cron, с учетом misfire) сработал триггер
+// (нехватка потоков, пауза кластера, простой во время деплоя), quartz.trigger.misfires — пропуски,
+// quartz.job.duration — время выполнения задания
+@Component
+public class QuartzMetricsListener implements TriggerListener, JobListener {
+
+    private static final Duration LAG_LOOKBACK = Duration.ofDays(7);
+
+    private final MeterRegistry meterRegistry;
+
+    public QuartzMetricsListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public String getName() {
+        return "metrics";
+    }
+
+    @Override
+    public void triggerFired(Trigger trigger, JobExecutionContext context) {
+        // Опоздание больше окна поиска записывается как само окно
+        Duration lag = CronFireTimes.lag(context, LAG_LOOKBACK).orElse(LAG_LOOKBACK);
+        Timer.builder("quartz.trigger.lag")
+                .tag("group", trigger.getKey().getGroup())
+                .register(meterRegistry)
+                .record(lag);
+    }
+
+    @Override
+    public boolean vetoJobExecution(Trigger trigger, JobExecutionContext context) {
+        return false;
+    }
+
+    @Override
+    public void triggerMisfired(Trigger trigger) {
+        Counter.builder("quartz.trigger.misfires")
+                .tag("group", trigger.getKey().getGroup())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    @Override
+    public void triggerComplete(Trigger trigger, JobExecutionContext context, Trigger.CompletedExecutionInstruction triggerInstructionCode) {
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext context) {
+    }
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext context) {
+    }
+
+    @Override
+    public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+        Timer.builder("quartz.job.duration")
+                .tag("group", context.getJobDetail().getKey().getGroup())
+                .tag("outcome", jobException == null ? "success" : "failure")
+                .register(meterRegistry)
+                .record(Duration.ofMillis(Math.max(0, context.getJobRunTime())));
+    }
+}
@@ -0,0 +1,51 @@
+package com.vodchyts.backend.config;
+
+import com.vodchyts.backend.security.RateLimitPolicy;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Setter
+@Getter
+@Configuration
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitConfig {
+
+    // memory — корзины в памяти процесса (одна реплика, тесты); r2dbc — общая таблица RateLimitBuckets для нескольких реплик
+    private String store = "memory";
+    // Сколько токенов и как долго реплика может расходовать локально, прежде чем синхронизироваться с общим хранилищем
+    private long syncTokens = 20;
+    private Duration syncInterval = Duration.ofSeconds(1);
+    private long maxBuckets = 100_000;
+    private Duration idleExpiry = Duration.ofMinutes(10);
+    // Сколько своих прокси стоит перед приложением (по умолчанию один nginx). Адрес клиента берется из X-Forwarded-For
+    // на столько записей от конца: все, что левее, клиент мог прислать сам. 0 — заголовок не учитывается
+    private int trustedProxies = 1;
+    // rate-limit.policies.read.capacity=300, rate-limit.policies.read.period=1m; незаданные берутся из RateLimitPolicy
+    private Map<RateLimitPolicy, Limit> policies = new EnumMap<>(RateLimitPolicy.class);
+
+    // Не короче самого длинного периода пополнения: корзина, вытесненная после такого простоя, и так была бы полной
+    public Duration effectiveIdleExpiry() {
+        Duration longest = idleExpiry;
+        for (RateLimitPolicy policy : RateLimitPolicy.values()) {
+            Limit limit = policies.get(policy);
+            Duration period = limit != null && limit.getPeriod() != null ? limit.getPeriod() : policy.getDefaultPeriod();
+            if (period.compareTo(longest) > 0) {
+                longest = period;
+            }
+        }
+        return longest;
+    }
+
+    @Setter
+    @Getter
+    public static class Limit {
+        private Integer capacity;
+        private Duration period;
+    }
+}
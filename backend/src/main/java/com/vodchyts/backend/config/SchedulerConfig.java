@@ -0,0 +1,58 @@
+package com.vodchyts.backend.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class SchedulerConfig {
+
+    // Декодирование и масштабирование изображений: ограниченный пул, чтобы обработка фото не съедала все ядра
+    @Bean(destroyMethod = "dispose")
+    public Scheduler imageScheduler(@Value("${image.worker.threads:0}") int threads,
+                                    @Value("${image.worker.queue-size:1000}") int queueSize,
+                                    MeterRegistry meterRegistry) {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return boundedScheduler("image-worker", poolSize, queueSize, meterRegistry);
+    }
+
+    // Короткая CPU-работа, которой не место на event loop Netty: BCrypt, сериализация аудита.
+    // При переполнении очереди задача отклоняется с ошибкой, а не копится без предела
+    @Bean(destroyMethod = "dispose")
+    public Scheduler cpuScheduler(@Value("${cpu.worker.threads:0}") int threads,
+                                  @Value("${cpu.worker.queue-size:1000}") int queueSize,
+                                  MeterRegistry meterRegistry) {
+        int poolSize = threads > 0 ? threads : Math.max(2, Runtime.getRuntime().availableProcessors());
+        return boundedScheduler("cpu-worker", poolSize, queueSize, meterRegistry);
+    }
+
+    // Метрики executor.* с тегом name: executor.queued — длина очереди, executor.idle — ожидание в очереди,
+    // executor — время выполнения задачи
+    private static Scheduler boundedScheduler(String name, int poolSize, int queueSize, MeterRegistry meterRegistry) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), namedThreads(name), new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        ExecutorService monitored = ExecutorServiceMetrics.monitor(meterRegistry, executor, name);
+        return Schedulers.fromExecutorService(monitored, name);
+    }
+
+    private static ThreadFactory namedThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,10 +1,15 @@
 package com.vodchyts.backend.feature.controller;
 
 import com.vodchyts.backend.feature.dto.CreateUserRequest;
+import com.vodchyts.backend.feature.dto.ImageDeduplicationReport;
 import com.vodchyts.backend.feature.dto.PagedResponse;
+import com.vodchyts.backend.feature.dto.RateLimitPolicyRequest;
+import com.vodchyts.backend.feature.dto.RateLimitPolicyResponse;
 import com.vodchyts.backend.feature.dto.UpdateUserRequest;
 import com.vodchyts.backend.feature.dto.UserResponse;
 import com.vodchyts.backend.feature.service.AdminService;
+import com.vodchyts.backend.feature.service.ImageDeduplicationService;
+import com.vodchyts.backend.security.RateLimitingService;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -20,9 +25,14 @@ import java.util.List;
 public class AdminController {
 
     private final AdminService adminService;
+    private final ImageDeduplicationService imageDeduplicationService;
+    private final RateLimitingService rateLimitingService;
 
-    public AdminController(AdminService adminService) {
+    public AdminController(AdminService adminService, ImageDeduplicationService imageDeduplicationService,
+                           RateLimitingService rateLimitingService) {
         this.adminService = adminService;
+        this.imageDeduplicationService = imageDeduplicationService;
+        this.rateLimitingService = rateLimitingService;
     }
 
     @PostMapping("/users")
@@ -52,4 +62,21 @@ public class AdminController {
         return request.flatMap(req -> adminService.updateUser(userId, req));
     }
 
-}
\ No newline at end of file
+    @PostMapping("/images/deduplicate")
+    @PreAuthorize("hasRole('RetailAdmin')")
+    public Mono<ImageDeduplicationReport> deduplicateImages() {
+        return imageDeduplicationService.deduplicate();
+    }
+
+    @GetMapping("/rate-limits")
+    public Mono<List<RateLimitPolicyResponse>> getRateLimits() {
+        return Mono.fromCallable(rateLimitingService::getPolicies);
+    }
+
+    // Меняет лимит до перезапуска; постоянные значения задаются через rate-limit.policies.*
+    @PutMapping("/rate-limits/{policy}")
+    public Mono<RateLimitPolicyResponse> updateRateLimit(@PathVariable String policy,
+                                                         @Valid @RequestBody Mono<RateLimitPolicyRequest> request) {
+        return request.flatMap(req -> rateLimitingService.updatePolicy(policy, req));
+    }
+}
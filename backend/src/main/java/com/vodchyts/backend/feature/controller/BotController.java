@@ -7,6 +7,7 @@ import com.vodchyts.backend.feature.service.RequestService;
 import com.vodchyts.backend.feature.service.ShopContractorChatService;
 import com.vodchyts.backend.feature.service.UserService;
 import jakarta.validation.Valid;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -15,6 +16,7 @@ import reactor.core.publisher.Mono;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.multipart.FilePart;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -58,13 +60,14 @@ public class BotController {
     }
 
     @GetMapping("/requests")
-    public Mono<PagedResponse<RequestResponse>> getRequestsForBot(
+    public Mono<? extends PagedResponse<?>> getRequestsForBot(
             @RequestParam Long telegram_id,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "5") int size,
             @RequestParam(required = false) boolean archived,
             @RequestParam(required = false) String searchTerm,
-            @RequestParam(required = false) List<String> sort
+            @RequestParam(required = false) List<String> sort,
+            @RequestParam(required = false) List<String> fields
     ) {
         return userService.findByTelegramId(telegram_id)
                 .switchIfEmpty(Mono.error(new UserNotFoundException("Пользователь с таким Telegram ID не найден.")))
@@ -73,6 +76,14 @@ public class BotController {
                             ? sort
                             : List.of("requestID,asc");
 
+                    if (fields != null && !fields.isEmpty()) {
+                        return requestService.getRequestsWithFields(
+                                archived, searchTerm, null, null, null, null,
+                                null, null,
+                                null, null,
+                                sortParams, page, size, user.getLogin(), fields
+                        );
+                    }
                     return requestService.getAllRequests(
                             archived, searchTerm, null, null, null, null,
                             null, null,
@@ -87,6 +98,11 @@ public class BotController {
         return requestService.getRequestById(requestId);
     }
 
+    @GetMapping("/requests/{requestId}/full")
+    public Mono<RequestDetailsResponse> getRequestFullForBot(@RequestParam Long telegram_id, @PathVariable Integer requestId) {
+        return requestService.getRequestDetails(requestId);
+    }
+
     @PutMapping("/requests/{requestId}/complete")
     public Mono<RequestResponse> completeRequestForBot(@PathVariable Integer requestId, @RequestBody BotActionRequest botRequest) {
         return userService.findByTelegramId(botRequest.telegram_id())
@@ -95,8 +111,11 @@ public class BotController {
     }
 
     @GetMapping("/requests/{requestId}/comments")
-    public Flux<CommentResponse> getCommentsForBot(@PathVariable Integer requestId) {
-        return requestService.getCommentsForRequest(requestId);
+    public Flux<CommentResponse> getCommentsForBot(@PathVariable Integer requestId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            @RequestParam(required = false) Integer afterId,
+            @RequestParam(required = false) Integer limit) {
+        return requestService.getCommentsForRequest(requestId, since, afterId, limit);
     }
 
     @PostMapping("/requests/{requestId}/comments")
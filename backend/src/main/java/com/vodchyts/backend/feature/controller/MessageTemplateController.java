@@ -3,12 +3,15 @@ package com.vodchyts.backend.feature.controller;
 import com.vodchyts.backend.feature.dto.CreateMessageTemplateRequest;
 import com.vodchyts.backend.feature.dto.MessageTemplateResponse;
 import com.vodchyts.backend.feature.service.MessagingService;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import java.util.Arrays;
@@ -70,9 +73,26 @@ public class MessageTemplateController {
     }
 
     @GetMapping("/{templateId}/image")
-    public Mono<ResponseEntity<byte[]>> getTemplateImage(@PathVariable Integer templateId) {
-        return messagingService.getTemplateImage(templateId)
-                .map(imageData -> ResponseEntity.ok().contentType(MediaType.IMAGE_JPEG).body(imageData))
+    public Mono<ResponseEntity<Flux<DataBuffer>>> getTemplateImage(@PathVariable Integer templateId, ServerWebExchange exchange) {
+        // Изображение шаблона можно заменить по тому же адресу, поэтому кэш клиента обязан перепроверять ETag
+        CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+        return messagingService.getTemplateImageInfo(templateId)
+                .map(image -> {
+                    if (exchange.checkNotModified(image.hash())) {
+                        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                                .eTag(image.hash())
+                                .cacheControl(cacheControl)
+                                .<Flux<DataBuffer>>build();
+                    }
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .eTag(image.hash())
+                            .cacheControl(cacheControl)
+                            .contentType(image.contentType() != null ? MediaType.parseMediaType(image.contentType()) : MediaType.IMAGE_JPEG);
+                    if (image.size() != null) {
+                        response.contentLength(image.size());
+                    }
+                    return response.body(messagingService.getTemplateImage(templateId, image));
+                })
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
@@ -1,9 +1,19 @@
 package com.vodchyts.backend.feature.controller;
 
 import com.vodchyts.backend.feature.dto.*;
+import com.vodchyts.backend.feature.service.PhotoArchiveService;
+import com.vodchyts.backend.feature.service.PhotoRenditionService;
+import com.vodchyts.backend.feature.service.RequestBulkService;
+import com.vodchyts.backend.feature.service.RequestExportService;
+import com.vodchyts.backend.feature.service.RequestImportService;
 import com.vodchyts.backend.feature.service.RequestService;
 import com.vodchyts.backend.feature.service.UserService;
 import jakarta.validation.Valid;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -11,27 +21,41 @@ import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/requests")
 public class RequestController {
 
+    private static final CacheControl IMMUTABLE_IMAGE = CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable();
+
     private final RequestService requestService;
+    private final RequestBulkService requestBulkService;
+    private final RequestExportService requestExportService;
+    private final RequestImportService requestImportService;
+    private final PhotoArchiveService photoArchiveService;
     private final UserService userService;
 
-    public RequestController(RequestService requestService, UserService userService) {
+    public RequestController(RequestService requestService, RequestBulkService requestBulkService, RequestExportService requestExportService, RequestImportService requestImportService, PhotoArchiveService photoArchiveService, UserService userService) {
         this.requestService = requestService;
+        this.requestBulkService = requestBulkService;
+        this.requestExportService = requestExportService;
+        this.requestImportService = requestImportService;
+        this.photoArchiveService = photoArchiveService;
         this.userService = userService;
     }
 
     @GetMapping
-    public Mono<PagedResponse<RequestResponse>> getRequests(
+    public Mono<? extends PagedResponse<?>> getRequests(
             ServerWebExchange exchange,
             @AuthenticationPrincipal String username,
             @RequestParam(defaultValue = "0") int page,
@@ -45,13 +69,47 @@ public class RequestController {
             @RequestParam(required = false) String status,
             @RequestParam(required = false) Boolean overdue,
             @RequestParam(required = false) LocalDate startDate,
-            @RequestParam(required = false) LocalDate endDate
+            @RequestParam(required = false) LocalDate endDate,
+            @RequestParam(required = false) List<String> fields
     ) {
         List<String> sortParams = exchange.getRequest().getQueryParams().get("sort");
+        if (fields != null && !fields.isEmpty()) {
+            return requestService.getRequestsWithFields(archived, searchTerm, shopId, workCategoryId, urgencyId, contractorId, status, overdue, startDate, endDate, sortParams, page, size, username, fields);
+        }
         return requestService.getAllRequests(archived, searchTerm, shopId, workCategoryId, urgencyId, contractorId, status, overdue, startDate, endDate, sortParams, page, size, username);
     }
 
 
+    @GetMapping("/export")
+    public Mono<Void> exportRequests(
+            ServerWebExchange exchange,
+            @AuthenticationPrincipal String username,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) boolean archived,
+            @RequestParam(required = false) String searchTerm,
+            @RequestParam(required = false) Integer shopId,
+            @RequestParam(required = false) Integer workCategoryId,
+            @RequestParam(required = false) Integer urgencyId,
+            @RequestParam(required = false) Integer contractorId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) Boolean overdue,
+            @RequestParam(required = false) LocalDate startDate,
+            @RequestParam(required = false) LocalDate endDate
+    ) {
+        RequestExportService.Format exportFormat = RequestExportService.Format.from(format);
+        List<String> sortParams = exchange.getRequest().getQueryParams().get("sort");
+
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().setContentType(exportFormat.mediaType());
+        response.getHeaders().set(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("requests-" + LocalDate.now() + "." + exportFormat.fileExtension())
+                .build()
+                .toString());
+
+        Flux<RequestResponse> rows = requestService.streamRequests(archived, searchTerm, shopId, workCategoryId, urgencyId, contractorId, status, overdue, startDate, endDate, sortParams, username);
+        return response.writeWith(requestExportService.export(exportFormat, rows, response.bufferFactory()));
+    }
+
     @PostMapping
     @PreAuthorize("hasRole('RetailAdmin')")
     @ResponseStatus(HttpStatus.CREATED)
@@ -67,6 +125,20 @@ public class RequestController {
         return requestDto.flatMap(dto -> requestService.updateAndEnrichRequest(requestId, dto));
     }
 
+    @PostMapping("/bulk")
+    @PreAuthorize("hasRole('RetailAdmin')")
+    public Mono<BulkUpdateRequestsResponse> bulkUpdateRequests(@Valid @RequestBody Mono<BulkUpdateRequestsRequest> requestDto) {
+        return requestDto.flatMap(requestBulkService::bulkUpdate);
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasRole('RetailAdmin')")
+    public Mono<ImportRequestsResponse> importRequests(@RequestPart("file") Mono<FilePart> filePart,
+                                                       @AuthenticationPrincipal String username) {
+        return userService.findByLogin(username)
+                .flatMap(user -> filePart.flatMap(file -> requestImportService.importRequests(file, user.getUserID())));
+    }
+
     @DeleteMapping("/{requestId}")
     @PreAuthorize("hasRole('RetailAdmin')")
     @ResponseStatus(HttpStatus.NO_CONTENT)
@@ -74,9 +146,17 @@ public class RequestController {
         return requestService.deleteRequest(requestId);
     }
 
+    @GetMapping("/{requestId}/full")
+    public Mono<RequestDetailsResponse> getRequestDetails(@PathVariable Integer requestId) {
+        return requestService.getRequestDetails(requestId);
+    }
+
     @GetMapping("/{requestId}/comments")
-    public Flux<CommentResponse> getComments(@PathVariable Integer requestId) {
-        return requestService.getCommentsForRequest(requestId);
+    public Flux<CommentResponse> getComments(@PathVariable Integer requestId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            @RequestParam(required = false) Integer afterId,
+            @RequestParam(required = false) Integer limit) {
+        return requestService.getCommentsForRequest(requestId, since, afterId, limit);
     }
 
     @PostMapping("/{requestId}/comments")
@@ -88,9 +168,25 @@ public class RequestController {
     }
 
     @GetMapping("/{requestId}/photos")
-    public Flux<ResponseEntity<byte[]>> getPhotos(@PathVariable Integer requestId) {
-        return requestService.getPhotosForRequest(requestId)
-                .map(imageData -> ResponseEntity.ok().contentType(MediaType.IMAGE_JPEG).body(imageData));
+    public Mono<Void> downloadPhotos(@PathVariable Integer requestId,
+                                     @RequestParam(defaultValue = "zip") String format,
+                                     ServerWebExchange exchange) {
+        PhotoArchiveService.Format archiveFormat = PhotoArchiveService.Format.from(format);
+        ServerHttpResponse response = exchange.getResponse();
+        Flux<PhotoContent> photos = requestService.getPhotoContentsForRequest(requestId);
+
+        if (archiveFormat == PhotoArchiveService.Format.MULTIPART) {
+            String boundary = PhotoArchiveService.newBoundary();
+            response.getHeaders().setContentType(new MediaType("multipart", "mixed", Map.of("boundary", boundary)));
+            return response.writeWith(photoArchiveService.multipart(photos, boundary, response.bufferFactory()));
+        }
+
+        response.getHeaders().setContentType(PhotoArchiveService.zipMediaType());
+        response.getHeaders().set(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("request-" + requestId + "-photos.zip")
+                .build()
+                .toString());
+        return response.writeWith(photoArchiveService.zip(photos, response.bufferFactory()));
     }
 
     @PostMapping(value = "/{requestId}/photos", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -118,9 +214,27 @@ public class RequestController {
     }
 
     @GetMapping("/photos/{photoId}")
-    public Mono<ResponseEntity<byte[]>> getPhoto(@PathVariable Integer photoId) {
-        return requestService.getPhotoById(photoId)
-                .map(imageData -> ResponseEntity.ok().contentType(MediaType.IMAGE_JPEG).body(imageData))
+    public Mono<ResponseEntity<Resource>> getPhoto(@PathVariable Integer photoId,
+                                                   @RequestParam(required = false) String size,
+                                                   ServerWebExchange exchange) {
+        PhotoRenditionService.Size photoSize = PhotoRenditionService.Size.from(size);
+        return requestService.findPhoto(photoId)
+                .flatMap(photo -> {
+                    String eTag = RequestService.photoETag(photo, photoSize);
+                    if (exchange.checkNotModified(eTag)) {
+                        return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                                .eTag(eTag)
+                                .cacheControl(IMMUTABLE_IMAGE)
+                                .<Resource>build());
+                    }
+                    // Resource отдается через ResourceHttpMessageWriter: он сам обрабатывает Range и zero-copy для файлов
+                    return requestService.resolvePhotoContent(photo, photoSize)
+                            .map(content -> ResponseEntity.ok()
+                                    .eTag(eTag)
+                                    .cacheControl(IMMUTABLE_IMAGE)
+                                    .contentType(MediaType.parseMediaType(content.contentType()))
+                                    .body(content.resource()));
+                })
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
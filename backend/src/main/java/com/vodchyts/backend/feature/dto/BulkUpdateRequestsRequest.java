@@ -0,0 +1,22 @@
+package com.vodchyts.backend.feature.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record BulkUpdateRequestsRequest(
+        @NotEmpty(message = "Нужно выбрать хотя бы одну заявку")
+        @Size(max = 500, message = "За один раз можно изменить не более 500 заявок")
+        List<Integer> requestIds,
+
+        String status,
+
+        Integer assignedContractorID,
+
+        Integer urgencyID,
+
+        @Min(value = 1, message = "Количество дней должно быть больше 0")
+        Integer customDays
+) {}
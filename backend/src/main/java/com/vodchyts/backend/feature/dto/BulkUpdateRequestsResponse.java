@@ -0,0 +1,8 @@
+package com.vodchyts.backend.feature.dto;
+
+import java.util.List;
+
+public record BulkUpdateRequestsResponse(
+        long updatedCount,
+        List<Integer> requestIds
+) {}
@@ -0,0 +1,13 @@
+package com.vodchyts.backend.feature.dto;
+
+public record ImageDeduplicationReport(
+        long movedFromDatabase,
+        long movedBytes,
+        long correctedReferenceCounts,
+        long removedOrphans,
+        long uniqueImages,
+        long references,
+        long logicalBytes,
+        long storedBytes,
+        long bytesReclaimed
+) {}
@@ -0,0 +1,9 @@
+package com.vodchyts.backend.feature.dto;
+
+// stored = true: изображение лежит в хранилище файлов (таблица Images), иначе еще в ImageData
+public record ImageInfo(
+        String hash,
+        Long size,
+        String contentType,
+        boolean stored
+) {}
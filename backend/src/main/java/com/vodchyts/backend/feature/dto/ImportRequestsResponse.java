@@ -0,0 +1,12 @@
+package com.vodchyts.backend.feature.dto;
+
+import java.util.List;
+
+public record ImportRequestsResponse(
+        long totalRows,
+        long importedCount,
+        List<Integer> createdRequestIds,
+        List<RowError> errors
+) {
+    public record RowError(long line, String message) {}
+}
@@ -6,6 +6,11 @@ public record PagedResponse<T>(
         List<T> content,
         int currentPage,
         long totalItems,
-        int totalPages
+        int totalPages,
+        // Поиск нашел больше заявок, чем попало в выборку
+        boolean truncated
 ) {
+    public PagedResponse(List<T> content, int currentPage, long totalItems, int totalPages) {
+        this(content, currentPage, totalItems, totalPages, false);
+    }
 }
\ No newline at end of file
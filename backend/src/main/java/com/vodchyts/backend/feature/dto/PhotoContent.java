@@ -0,0 +1,9 @@
+package com.vodchyts.backend.feature.dto;
+
+import org.springframework.core.io.Resource;
+
+public record PhotoContent(
+        Resource resource,
+        String contentType,
+        String contentHash
+) {}
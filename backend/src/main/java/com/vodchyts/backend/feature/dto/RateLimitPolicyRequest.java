@@ -0,0 +1,14 @@
+package com.vodchyts.backend.feature.dto;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+public record RateLimitPolicyRequest(
+        @NotNull(message = "Необходимо указать количество запросов")
+        @Positive(message = "Количество запросов должно быть больше нуля")
+        Integer capacity,
+
+        @NotNull(message = "Необходимо указать период")
+        @Positive(message = "Период должен быть больше нуля")
+        Long periodSeconds
+) {}
@@ -0,0 +1,3 @@
+package com.vodchyts.backend.feature.dto;
+
+public record RateLimitPolicyResponse(String policy, int capacity, long periodSeconds, double rejected) {}
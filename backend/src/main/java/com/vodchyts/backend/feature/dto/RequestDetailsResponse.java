@@ -0,0 +1,10 @@
+package com.vodchyts.backend.feature.dto;
+
+import java.util.List;
+
+public record RequestDetailsResponse(
+        RequestResponse request,
+        List<CommentResponse> comments,
+        boolean hasMoreComments,
+        List<RequestPhotoResponse> photos
+) {}
@@ -0,0 +1,8 @@
+package com.vodchyts.backend.feature.dto;
+
+public record RequestPhotoResponse(
+        Integer photoID,
+        String contentType,
+        Long fileSize,
+        String contentHash
+) {}
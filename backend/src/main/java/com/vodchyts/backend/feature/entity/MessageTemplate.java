@@ -28,4 +28,7 @@ public class MessageTemplate {
 
     @Column("ImageData")
     private byte[] imageData;
+
+    @Column("ImageHash")
+    private String imageHash;
 }
\ No newline at end of file
@@ -24,6 +24,9 @@ public class Notification {
     @Column("ImageData")
     private byte[] imageData;
 
+    @Column("ImageHash")
+    private String imageHash;
+
     @Column("CronExpression")
     private String cronExpression;
 
@@ -17,5 +17,11 @@ public class RequestPhoto {
     private Integer requestID;
     @Column("ImageData")
     private byte[] imageData;
+    @Column("ContentHash")
+    private String contentHash;
+    @Column("ContentType")
+    private String contentType;
+    @Column("FileSize")
+    private Long fileSize;
 
 }
@@ -7,12 +7,16 @@ import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Repository
 public interface ReactiveNotificationRecipientRepository extends ReactiveCrudRepository<NotificationRecipient, Integer> {
 
     @Query("SELECT * FROM NotificationRecipients WHERE NotificationID = :notificationId")
     Flux<NotificationRecipient> findByNotificationID(Integer notificationId);
 
+    Flux<NotificationRecipient> findByNotificationIDIn(List<Integer> notificationIds);
+
     @Query("DELETE FROM NotificationRecipients WHERE NotificationID = :notificationId")
     Mono<Void> deleteByNotificationID(Integer notificationId);
 }
@@ -12,5 +12,4 @@ import java.util.List;
 
 @Repository
 public interface ReactiveRequestCommentRepository extends ReactiveCrudRepository<RequestComment, Integer> {
-    Flux<RequestComment> findByRequestIDOrderByCreatedAtAsc(Integer requestID);
 }
\ No newline at end of file
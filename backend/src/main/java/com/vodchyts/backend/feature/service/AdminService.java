@@ -16,11 +16,13 @@ import com.vodchyts.backend.feature.repository.ReactiveShopRepository;
 import com.vodchyts.backend.feature.repository.ReactiveUserRepository;
 import io.r2dbc.spi.Row;
 import io.r2dbc.spi.RowMetadata;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -40,13 +42,15 @@ public class AdminService {
     private final PasswordEncoder passwordEncoder;
     private final PasswordValidator passwordValidator;
     private final DatabaseClient databaseClient;
+    private final Scheduler cpuScheduler;
 
     public AdminService(ReactiveUserRepository userRepository,
                         ReactiveRoleRepository roleRepository,
                         ReactiveRequestRepository requestRepository, ReactiveShopRepository shopRepository,
                         PasswordEncoder passwordEncoder,
                         PasswordValidator passwordValidator,
-                        DatabaseClient databaseClient) {
+                        DatabaseClient databaseClient,
+                        @Qualifier("cpuScheduler") Scheduler cpuScheduler) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.requestRepository = requestRepository;
@@ -54,6 +58,13 @@ public class AdminService {
         this.passwordEncoder = passwordEncoder;
         this.passwordValidator = passwordValidator;
         this.databaseClient = databaseClient;
+        this.cpuScheduler = cpuScheduler;
+    }
+
+    // BCrypt считается на cpuScheduler, чтобы не держать event loop
+    private Mono<String> encodePassword(String rawPassword) {
+        return Mono.fromCallable(() -> passwordEncoder.encode(rawPassword))
+                .subscribeOn(cpuScheduler);
     }
 
     public Mono<User> createUser(CreateUserRequest request) {
@@ -66,10 +77,10 @@ public class AdminService {
                     }
                     return roleRepository.findByRoleName(request.roleName())
                             .switchIfEmpty(Mono.error(new RuntimeException("Роль '" + request.roleName() + "' не найдена")))
-                            .flatMap(role -> {
+                            .flatMap(role -> encodePassword(request.password()).flatMap(passwordHash -> {
                                 User user = new User();
                                 user.setLogin(request.login());
-                                user.setPassword(passwordEncoder.encode(request.password()));
+                                user.setPassword(passwordHash);
                                 user.setRoleID(role.getRoleID());
                                 user.setFullName(request.fullName());
                                 user.setContactInfo(request.contactInfo());
@@ -77,7 +88,7 @@ public class AdminService {
                                     user.setTelegramID(Long.parseLong(request.telegramID()));
                                 }
                                 return userRepository.save(user);
-                            });
+                            }));
                 });
     }
 
@@ -180,9 +191,13 @@ public class AdminService {
         return userRepository.findById(userId)
                 .switchIfEmpty(Mono.error(new UserNotFoundException("Пользователь с ID " + userId + " не найден")))
                 .flatMap(user -> {
+                    Mono<User> userMono = Mono.just(user);
                     if (request.password() != null && !request.password().isBlank()) {
                         passwordValidator.validate(request.password());
-                        user.setPassword(passwordEncoder.encode(request.password()));
+                        userMono = encodePassword(request.password()).map(passwordHash -> {
+                            user.setPassword(passwordHash);
+                            return user;
+                        });
                     }
                     if (request.contactInfo() != null) user.setContactInfo(request.contactInfo());
                     if (request.fullName() != null) user.setFullName(request.fullName());
@@ -190,10 +205,8 @@ public class AdminService {
                         user.setTelegramID(request.telegramID().isEmpty() ? null : Long.parseLong(request.telegramID()));
                     }
 
-                    Mono<User> userMono = Mono.just(user);
-
                     if (request.roleName() != null && !request.roleName().isBlank()) {
-                        userMono = roleRepository.findById(user.getRoleID())
+                        userMono = userMono.then(roleRepository.findById(user.getRoleID()))
                                 .flatMap(currentRole -> {
                                     if (currentRole.getRoleName().equals(request.roleName())) {
                                         return Mono.just(currentRole);
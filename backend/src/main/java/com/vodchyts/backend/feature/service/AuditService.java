@@ -5,8 +5,10 @@ import com.vodchyts.backend.feature.entity.AuditLog;
 import com.vodchyts.backend.feature.repository.ReactiveAuditLogRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.time.LocalDateTime;
 import java.util.Map;
@@ -17,10 +19,12 @@ public class AuditService {
     private static final Logger log = LoggerFactory.getLogger(AuditService.class);
     private final ReactiveAuditLogRepository auditRepository;
     private final ObjectMapper objectMapper;
+    private final Scheduler cpuScheduler;
 
-    public AuditService(ReactiveAuditLogRepository auditRepository) {
+    public AuditService(ReactiveAuditLogRepository auditRepository, @Qualifier("cpuScheduler") Scheduler cpuScheduler) {
         this.auditRepository = auditRepository;
         this.objectMapper = new ObjectMapper();
+        this.cpuScheduler = cpuScheduler;
     }
 
     public Mono<Void> audit(String action, String tableName, Integer recordID, 
@@ -39,20 +43,28 @@ public class AuditService {
         auditEntry.setRequestMethod(requestMethod);
         auditEntry.setLogDate(LocalDateTime.now());
 
+        // Снимки сущностей бывают крупными: сериализуем их на cpuScheduler, а не на event loop
+        return Mono.fromCallable(() -> serializeChanges(oldValue, newValue))
+                .subscribeOn(cpuScheduler)
+                .flatMap(changes -> {
+                    auditEntry.setChanges(changes);
+                    return auditRepository.save(auditEntry);
+                })
+                .doOnError(error -> log.error("Failed to save audit entry", error))
+                .then();
+    }
+
+    private String serializeChanges(Object oldValue, Object newValue) {
         try {
             Map<String, Object> changes = Map.of(
                     "oldValue", oldValue != null ? oldValue : "null",
                     "newValue", newValue != null ? newValue : "null"
             );
-            auditEntry.setChanges(objectMapper.writeValueAsString(changes));
+            return objectMapper.writeValueAsString(changes);
         } catch (Exception e) {
             log.warn("Failed to serialize audit changes", e);
-            auditEntry.setChanges("{\"error\":\"Failed to serialize changes\"}");
+            return "{\"error\":\"Failed to serialize changes\"}";
         }
-
-        return auditRepository.save(auditEntry)
-                .doOnError(error -> log.error("Failed to save audit entry", error))
-                .then();
     }
 
     public Mono<Void> auditCreate(String tableName, Integer recordID, Object newValue, 
@@ -9,11 +9,13 @@ import com.vodchyts.backend.feature.repository.ReactiveRefreshTokenRepository;
 import com.vodchyts.backend.feature.repository.ReactiveRoleRepository;
 import com.vodchyts.backend.feature.repository.ReactiveUserRepository;
 import com.vodchyts.backend.security.JwtUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -30,6 +32,7 @@ public class AuthService {
     private final ReactiveRefreshTokenRepository refreshTokenRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtUtils jwtUtils;
+    private final Scheduler cpuScheduler;
 
     @Value("${jwt.refresh-expiration-ms}")
     private long refreshExpirationMs;
@@ -38,21 +41,26 @@ public class AuthService {
                        ReactiveRoleRepository roleRepository,
                        ReactiveRefreshTokenRepository refreshTokenRepository,
                        PasswordEncoder passwordEncoder,
-                       JwtUtils jwtUtils) {
+                       JwtUtils jwtUtils,
+                       @Qualifier("cpuScheduler") Scheduler cpuScheduler) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.refreshTokenRepository = refreshTokenRepository;
         this.passwordEncoder = passwordEncoder;
         this.jwtUtils = jwtUtils;
+        this.cpuScheduler = cpuScheduler;
     }
 
     public Mono<LoginResponseWithRefresh> login(String login, String password) {
         return userRepository.findByLogin(login)
                 .switchIfEmpty(Mono.error(new UserNotFoundException("Пользователь не найден")))
+                // BCrypt занимает ~100 мс процессора: проверяем пароль на cpuScheduler, а не на event loop
+                .flatMap(user -> Mono.fromCallable(() -> passwordEncoder.matches(password, user.getPassword()))
+                        .subscribeOn(cpuScheduler)
+                        .flatMap(matches -> matches
+                                ? Mono.just(user)
+                                : Mono.error(new RuntimeException("Неверный пароль"))))
                 .flatMap(user -> {
-                    if (!passwordEncoder.matches(password, user.getPassword())) {
-                        return Mono.error(new RuntimeException("Неверный пароль"));
-                    }
                     return roleRepository.findById(user.getRoleID())
                             .flatMap(role -> {
                                 String accessToken = jwtUtils.generateAccessToken(user.getLogin(), role.getRoleName());
@@ -0,0 +1,79 @@
+package com.vodchyts.backend.feature.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Маршрутизация уведомлений по заявкам без запроса к базе на каждое сообщение.
+// Таблица чатов маленькая, поэтому при любом изменении она перечитывается целиком.
+// Изменения, сделанные на другой реплике, подтягиваются периодическим обновлением
+@Service
+public class ChatRoutingCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatRoutingCache.class);
+
+    private final DatabaseClient databaseClient;
+    private final AtomicLong requestedVersion = new AtomicLong();
+
+    private volatile ChatRoutingTable table;
+    private long appliedVersion = 0;
+
+    public ChatRoutingCache(DatabaseClient databaseClient, MeterRegistry meterRegistry) {
+        this.databaseClient = databaseClient;
+        Gauge.builder("chat.routing.entries", this, cache -> cache.table != null ? cache.table.size() : 0)
+                .register(meterRegistry);
+    }
+
+    public Mono<Long> findTelegramId(Integer shopId, Integer contractorId) {
+        ChatRoutingTable loaded = table;
+        Mono<ChatRoutingTable> source = loaded != null ? Mono.just(loaded) : refresh();
+        return source.flatMap(routes -> Mono.justOrEmpty(routes.resolve(shopId, contractorId)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        refresh().subscribe(
+                routes -> log.info("Загружена маршрутизация чатов: {} записей.", routes.size()),
+                error -> log.error("Не удалось загрузить маршрутизацию чатов: {}", error.getMessage())
+        );
+    }
+
+    @Scheduled(initialDelayString = "${chat.routing.refresh-ms:60000}", fixedDelayString = "${chat.routing.refresh-ms:60000}")
+    public void refreshPeriodically() {
+        refresh().subscribe(
+                routes -> {},
+                error -> log.warn("Не удалось обновить маршрутизацию чатов: {}", error.getMessage())
+        );
+    }
+
+    // Ответ более раннего запроса, пришедший позже, не перетирает свежую таблицу
+    public Mono<ChatRoutingTable> refresh() {
+        long version = requestedVersion.incrementAndGet();
+        return databaseClient.sql("SELECT ShopID, ContractorID, TelegramID FROM ShopContractorChats")
+                .map(row -> new ChatRoutingTable.Route(
+                        row.get("ShopID", Integer.class),
+                        row.get("ContractorID", Integer.class),
+                        row.get("TelegramID", Long.class)))
+                .all()
+                .collectList()
+                .map(ChatRoutingTable::of)
+                .map(routes -> apply(version, routes));
+    }
+
+    private synchronized ChatRoutingTable apply(long version, ChatRoutingTable routes) {
+        if (version > appliedVersion) {
+            appliedVersion = version;
+            table = routes;
+        }
+        return table;
+    }
+}
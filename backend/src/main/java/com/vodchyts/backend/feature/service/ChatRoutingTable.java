@@ -0,0 +1,49 @@
+package com.vodchyts.backend.feature.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// Неизменяемая таблица маршрутизации уведомлений по заявке: (магазин, подрядчик) -> Telegram-чат.
+// Повторяет прежний SQL (TOP 1 ... ORDER BY ContractorID DESC): сначала чат подрядчика в этом магазине,
+// иначе общий чат магазина (ContractorID IS NULL), иначе уведомление некуда отправить
+public final class ChatRoutingTable {
+
+    public record Route(Integer shopId, Integer contractorId, Long telegramId) {}
+
+    private record Key(Integer shopId, Integer contractorId) {}
+
+    private final Map<Key, Long> chats;
+
+    private ChatRoutingTable(Map<Key, Long> chats) {
+        this.chats = chats;
+    }
+
+    public static ChatRoutingTable of(Collection<Route> routes) {
+        Map<Key, Long> chats = new HashMap<>();
+        for (Route route : routes) {
+            if (route.shopId() != null && route.telegramId() != null) {
+                chats.put(new Key(route.shopId(), route.contractorId()), route.telegramId());
+            }
+        }
+        return new ChatRoutingTable(Map.copyOf(chats));
+    }
+
+    public Optional<Long> resolve(Integer shopId, Integer contractorId) {
+        if (shopId == null) {
+            return Optional.empty();
+        }
+        if (contractorId != null) {
+            Long contractorChat = chats.get(new Key(shopId, contractorId));
+            if (contractorChat != null) {
+                return Optional.of(contractorChat);
+            }
+        }
+        return Optional.ofNullable(chats.get(new Key(shopId, null)));
+    }
+
+    public int size() {
+        return chats.size();
+    }
+}
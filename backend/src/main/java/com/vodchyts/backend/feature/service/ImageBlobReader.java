@@ -0,0 +1,53 @@
+package com.vodchyts.backend.feature.service;
+
+import io.r2dbc.spi.Blob;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Чтение VARBINARY(MAX) как io.r2dbc.spi.Blob: содержимое уходит дальше кусками по мере прихода от SQL Server,
+// без сборки всего изображения в один byte[]
+@Component
+public class ImageBlobReader {
+
+    public enum Source {
+        REQUEST_PHOTO("RequestPhotos", "RequestPhotoID", "ContentHash"),
+        MESSAGE_TEMPLATE("MessageTemplates", "MessageID", "ImageHash"),
+        NOTIFICATION("Notifications", "NotificationID", "ImageHash");
+
+        final String table;
+        final String idColumn;
+        // Колонка со ссылкой на файл в таблице Images, который заменяет ImageData
+        final String hashColumn;
+
+        Source(String table, String idColumn, String hashColumn) {
+            this.table = table;
+            this.idColumn = idColumn;
+            this.hashColumn = hashColumn;
+        }
+    }
+
+    private final DatabaseClient databaseClient;
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    public ImageBlobReader(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    // Соединение держится до конца чтения блоба, поэтому весь поток выполняется внутри inConnectionMany
+    public Flux<DataBuffer> read(Source source, Integer id) {
+        String sql = "SELECT ImageData FROM " + source.table +
+                " WHERE " + source.idColumn + " = @id AND DATALENGTH(ImageData) > 0";
+        return databaseClient.inConnectionMany(connection -> Flux.from(connection.createStatement(sql)
+                        .bind("id", id)
+                        .execute())
+                .concatMap(result -> result.map((row, metadata) -> row.get("ImageData", Blob.class)))
+                .concatMap(blob -> Flux.from(blob.stream())
+                        .map(bufferFactory::wrap)
+                        .doOnCancel(() -> Mono.from(blob.discard()).subscribe())));
+    }
+}
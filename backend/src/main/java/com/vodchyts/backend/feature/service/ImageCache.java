@@ -0,0 +1,68 @@
+package com.vodchyts.backend.feature.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// LRU для самых востребованных изображений. Ограничен суммарным объемом в байтах, а не числом записей:
+// одна картинка шаблона может весить как сотня миниатюр
+@Component
+public class ImageCache {
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes = 0;
+
+    public ImageCache(@Value("${image.cache.max-bytes:67108864}") long maxBytes,
+                      @Value("${image.cache.max-entry-bytes:2097152}") long maxEntryBytes,
+                      MeterRegistry meterRegistry) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        Gauge.builder("image.cache.bytes", this, ImageCache::currentBytes).register(meterRegistry);
+        Gauge.builder("image.cache.entries", this, ImageCache::size).register(meterRegistry);
+    }
+
+    public boolean accepts(long size) {
+        return size > 0 && size <= maxEntryBytes;
+    }
+
+    public synchronized byte[] get(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(String key, byte[] value) {
+        if (value == null || !accepts(value.length)) {
+            return;
+        }
+        byte[] previous = entries.put(key, value);
+        currentBytes += value.length - (previous != null ? previous.length : 0);
+
+        Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, byte[]> eldest = iterator.next();
+            currentBytes -= eldest.getValue().length;
+            iterator.remove();
+        }
+    }
+
+    public synchronized void evict(String key) {
+        byte[] removed = entries.remove(key);
+        if (removed != null) {
+            currentBytes -= removed.length;
+        }
+    }
+
+    private synchronized long currentBytes() {
+        return currentBytes;
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,154 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.feature.dto.ImageDeduplicationReport;
+import com.vodchyts.backend.feature.entity.RequestPhoto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+// Разовое схлопывание дубликатов: все изображения из ImageData переносятся в хранилище по хэшу,
+// после чего счетчики ссылок в Images пересчитываются по фактическим ссылкам из таблиц
+@Service
+public class ImageDeduplicationService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageDeduplicationService.class);
+
+    private static final String RECOUNT_SQL = """
+            MERGE Images WITH (HOLDLOCK) AS target
+            USING (
+                SELECT refs.ContentHash, MAX(refs.ContentType) AS ContentType, MAX(refs.ByteSize) AS ByteSize, COUNT(*) AS Refs
+                FROM (
+                    SELECT ContentHash, ContentType, FileSize AS ByteSize FROM RequestPhotos WHERE ContentHash IS NOT NULL
+                    UNION ALL
+                    SELECT ImageHash, CAST(NULL AS NVARCHAR(50)), CAST(NULL AS BIGINT) FROM MessageTemplates WHERE ImageHash IS NOT NULL
+                    UNION ALL
+                    SELECT ImageHash, CAST(NULL AS NVARCHAR(50)), CAST(NULL AS BIGINT) FROM Notifications WHERE ImageHash IS NOT NULL
+                ) refs
+                GROUP BY refs.ContentHash
+            ) AS src
+            ON target.ContentHash = src.ContentHash
+            WHEN MATCHED AND target.RefCount <> src.Refs THEN UPDATE SET RefCount = src.Refs
+            WHEN NOT MATCHED AND src.ByteSize IS NOT NULL THEN
+                INSERT (ContentHash, ContentType, ByteSize, RefCount) VALUES (src.ContentHash, src.ContentType, src.ByteSize, src.Refs)
+            WHEN NOT MATCHED BY SOURCE AND target.RefCount <> 0 THEN UPDATE SET RefCount = 0;
+            """;
+
+    private record Moved(long count, long bytes) {}
+
+    private record Totals(long uniqueImages, long references, long logicalBytes, long storedBytes) {}
+
+    private final DatabaseClient databaseClient;
+    private final PhotoStorageMigrator photoStorageMigrator;
+    private final SharedImageService sharedImageService;
+    private final ImageBlobReader blobReader;
+    private final TransactionalOperator transactionalOperator;
+
+    public ImageDeduplicationService(DatabaseClient databaseClient, PhotoStorageMigrator photoStorageMigrator,
+                                     SharedImageService sharedImageService, ImageBlobReader blobReader,
+                                     TransactionalOperator transactionalOperator) {
+        this.databaseClient = databaseClient;
+        this.photoStorageMigrator = photoStorageMigrator;
+        this.sharedImageService = sharedImageService;
+        this.blobReader = blobReader;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    public Mono<ImageDeduplicationReport> deduplicate() {
+        Mono<Moved> moved = Flux.concat(
+                        movePhotos(),
+                        moveOwnedImages(ImageBlobReader.Source.MESSAGE_TEMPLATE),
+                        moveOwnedImages(ImageBlobReader.Source.NOTIFICATION))
+                .reduce(new Moved(0, 0), (a, b) -> new Moved(a.count() + b.count(), a.bytes() + b.bytes()));
+
+        return moved.flatMap(totalMoved -> recount()
+                .flatMap(corrected -> removeOrphans()
+                        .flatMap(removed -> summary()
+                                .map(totals -> new ImageDeduplicationReport(
+                                        totalMoved.count(),
+                                        totalMoved.bytes(),
+                                        corrected,
+                                        removed,
+                                        totals.uniqueImages(),
+                                        totals.references(),
+                                        totals.logicalBytes(),
+                                        totals.storedBytes(),
+                                        totals.logicalBytes() - totals.storedBytes())))))
+                .doOnNext(report -> log.info("Дедупликация изображений: перенесено {} ({} байт), уникальных {}, ссылок {}, освобождено {} байт.",
+                        report.movedFromDatabase(), report.movedBytes(), report.uniqueImages(), report.references(), report.bytesReclaimed()));
+    }
+
+    private Mono<Moved> movePhotos() {
+        return databaseClient.sql("SELECT RequestPhotoID FROM RequestPhotos WHERE ContentHash IS NULL AND DATALENGTH(ImageData) > 0 ORDER BY RequestPhotoID")
+                .map(row -> row.get("RequestPhotoID", Integer.class))
+                .all()
+                .collectList()
+                .flatMapMany(Flux::fromIterable)
+                // Блобы читаются по одному, как и в фоновом переносе
+                .concatMap(photoId -> photoStorageMigrator.migrate(photoId)
+                        .onErrorResume(e -> {
+                            log.error("Не удалось перенести фото {}: {}", photoId, e.getMessage());
+                            return Mono.empty();
+                        }))
+                .reduce(new Moved(0, 0), (total, photo) -> new Moved(total.count() + 1, total.bytes() + Optional.ofNullable(photo.getFileSize()).orElse(0L)));
+    }
+
+    private Mono<Moved> moveOwnedImages(ImageBlobReader.Source source) {
+        return databaseClient.sql("SELECT " + source.idColumn + " AS OwnerID FROM " + source.table +
+                        " WHERE " + source.hashColumn + " IS NULL AND DATALENGTH(ImageData) > 0")
+                .map(row -> row.get("OwnerID", Integer.class))
+                .all()
+                .collectList()
+                .flatMapMany(Flux::fromIterable)
+                .concatMap(id -> moveOwnedImage(source, id))
+                .reduce(new Moved(0, 0), (total, bytes) -> new Moved(total.count() + 1, total.bytes() + bytes));
+    }
+
+    private Mono<Long> moveOwnedImage(ImageBlobReader.Source source, Integer id) {
+        return sharedImageService.store(blobReader.read(source, id))
+                .filter(image -> image.size() > 0)
+                .flatMap(image -> databaseClient.sql("UPDATE " + source.table + " SET " + source.hashColumn + " = :hash, ImageData = NULL" +
+                                " WHERE " + source.idColumn + " = :id AND " + source.hashColumn + " IS NULL")
+                        .bind("hash", image.hash())
+                        .bind("id", id)
+                        .fetch()
+                        .rowsUpdated()
+                        .filter(updated -> updated > 0)
+                        .flatMap(updated -> sharedImageService.acquire(image))
+                        .as(transactionalOperator::transactional)
+                        .thenReturn(image.size()))
+                .onErrorResume(e -> {
+                    log.error("Не удалось перенести изображение {} {}: {}", source.table, id, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Long> recount() {
+        return databaseClient.sql(RECOUNT_SQL)
+                .fetch()
+                .rowsUpdated()
+                .as(transactionalOperator::transactional);
+    }
+
+    private Mono<Long> removeOrphans() {
+        return sharedImageService.deleteAllUnreferenced();
+    }
+
+    // Освобожденный объем — разница между суммой размеров по всем ссылкам и тем, что реально лежит на диске
+    private Mono<Totals> summary() {
+        return databaseClient.sql("SELECT COUNT_BIG(*) AS UniqueImages, COALESCE(SUM(CAST(RefCount AS BIGINT)), 0) AS RefTotal, " +
+                        "COALESCE(SUM(ByteSize * RefCount), 0) AS LogicalBytes, COALESCE(SUM(ByteSize), 0) AS StoredBytes FROM Images WHERE RefCount > 0")
+                .map(row -> new Totals(
+                        row.get("UniqueImages", Long.class),
+                        row.get("RefTotal", Long.class),
+                        row.get("LogicalBytes", Long.class),
+                        row.get("StoredBytes", Long.class)
+                ))
+                .one();
+    }
+}
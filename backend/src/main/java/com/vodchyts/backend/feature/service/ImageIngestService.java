@@ -0,0 +1,109 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+// Нормализация загружаемых фото: декодирование, уменьшение до предельной стороны, учет EXIF-ориентации
+// и перекодирование в JPEG без метаданных. Дальше в хранилище и в Telegram уходит уже облегченный файл
+@Service
+public class ImageIngestService {
+
+    private final Scheduler imageScheduler;
+    private final int maxDimension;
+    private final float jpegQuality;
+    private final long maxPixels;
+    private final DistributionSummary bytesIn;
+    private final DistributionSummary bytesOut;
+    private final Timer duration;
+
+    public ImageIngestService(@Qualifier("imageScheduler") Scheduler imageScheduler,
+                              @Value("${image.ingest.max-dimension:2560}") int maxDimension,
+                              @Value("${image.ingest.jpeg-quality:0.85}") float jpegQuality,
+                              @Value("${image.ingest.max-pixels:50000000}") long maxPixels,
+                              MeterRegistry meterRegistry) {
+        this.imageScheduler = imageScheduler;
+        this.maxDimension = maxDimension;
+        this.jpegQuality = jpegQuality;
+        this.maxPixels = maxPixels;
+        this.bytesIn = DistributionSummary.builder("image.ingest.bytes")
+                .tag("direction", "in")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.bytesOut = DistributionSummary.builder("image.ingest.bytes")
+                .tag("direction", "out")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.duration = Timer.builder("image.ingest.duration").register(meterRegistry);
+    }
+
+    public Mono<byte[]> normalize(byte[] original, String filename) {
+        return Mono.fromCallable(() -> duration.recordCallable(() -> process(original, filename)))
+                .subscribeOn(imageScheduler);
+    }
+
+    private byte[] process(byte[] original, String filename) {
+        bytesIn.record(original.length);
+        BufferedImage decoded = decode(original, filename, maxDimension);
+        BufferedImage scaled = ImageProcessing.scaleDown(decoded, maxDimension);
+        BufferedImage oriented = ImageProcessing.applyOrientation(scaled, ImageProcessing.readExifOrientation(original));
+        try {
+            byte[] result = ImageProcessing.encodeJpeg(oriented, jpegQuality);
+            bytesOut.record(result.length);
+            return result;
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось перекодировать фото " + filename, e);
+        }
+    }
+
+    // Уменьшенные копии читают сохраненные фото тем же путем: проверка разрешения до декодирования защищает и их
+    BufferedImage decode(byte[] original, String filename, int targetDimension) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(original))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new OperationNotAllowedException("Файл " + filename + " не удалось прочитать как изображение");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                // Размеры известны из заголовка: сжатый PNG на 5 МБ может развернуться в несколько гигабайт растра
+                if ((long) width * height > maxPixels) {
+                    throw new OperationNotAllowedException("Файл " + filename + " имеет слишком большое разрешение: " + width + "x" + height);
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Большие снимки декодируются с прореживанием, но не меньше двойного целевого размера,
+                // чтобы финальное сглаженное уменьшение сохранило качество
+                int subsampling = Math.max(1, Math.max(width, height) / (targetDimension * 2));
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                BufferedImage image = reader.read(0, param);
+                if (image == null) {
+                    throw new OperationNotAllowedException("Файл " + filename + " не удалось прочитать как изображение");
+                }
+                return image;
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new OperationNotAllowedException("Файл " + filename + " поврежден или не является изображением");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.vodchyts.backend.feature.service;
+
+final class ImageTypes {
+
+    static final String JPEG = "image/jpeg";
+    static final String PNG = "image/png";
+
+    private ImageTypes() {
+    }
+
+    static String detectContentType(byte[] header) {
+        if (header == null || header.length < 4) return null;
+
+        if (header[0] == (byte) 0xFF && header[1] == (byte) 0xD8 && header[2] == (byte) 0xFF) {
+            return JPEG;
+        }
+        if (header[0] == (byte) 0x89 && header[1] == (byte) 0x50 &&
+                header[2] == (byte) 0x4E && header[3] == (byte) 0x47) {
+            return PNG;
+        }
+        return null;
+    }
+}
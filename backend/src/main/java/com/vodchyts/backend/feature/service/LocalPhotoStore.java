@@ -0,0 +1,167 @@
+package com.vodchyts.backend.feature.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+@Service
+public class LocalPhotoStore implements PhotoStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalPhotoStore.class);
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern RENDITION_PATTERN = Pattern.compile("[a-z0-9]{1,16}");
+
+    private final Path root;
+    private final Path tempDir;
+
+    public LocalPhotoStore(@Value("${photo.storage.path:./data/photos}") String storagePath) {
+        this.root = Paths.get(storagePath).toAbsolutePath().normalize();
+        this.tempDir = root.resolve("tmp");
+        try {
+            Files.createDirectories(tempDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать каталог хранилища фото: " + root, e);
+        }
+        log.info("Хранилище фото: {}", root);
+    }
+
+    @Override
+    public Mono<String> save(byte[] content) {
+        return Mono.fromCallable(() -> {
+            String hash = HexFormat.of().formatHex(newDigest().digest(content));
+            if (Files.exists(pathFor(hash))) {
+                return hash;
+            }
+            Path temp = Files.createTempFile(tempDir, hash, ".part");
+            try {
+                Files.write(temp, content);
+                moveIntoPlace(temp, hash);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return hash;
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<String> save(Flux<DataBuffer> content) {
+        return Mono.usingWhen(
+                Mono.fromCallable(() -> Files.createTempFile(tempDir, "upload", ".part"))
+                        .subscribeOn(Schedulers.boundedElastic()),
+                temp -> {
+                    MessageDigest digest = newDigest();
+                    Flux<DataBuffer> hashed = content.doOnNext(buffer -> {
+                        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                            iterator.forEachRemaining(digest::update);
+                        }
+                    });
+                    return DataBufferUtils.write(hashed, temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                            .then(Mono.fromCallable(() -> {
+                                String hash = HexFormat.of().formatHex(digest.digest());
+                                moveIntoPlace(temp, hash);
+                                return hash;
+                            }).subscribeOn(Schedulers.boundedElastic()));
+                },
+                temp -> Mono.fromCallable(() -> Files.deleteIfExists(temp))
+                        .subscribeOn(Schedulers.boundedElastic())
+        );
+    }
+
+    @Override
+    public Mono<Resource> load(String contentHash) {
+        return Mono.fromCallable(() -> {
+            Path path = pathFor(contentHash);
+            return Files.exists(path) ? (Resource) new FileSystemResource(path) : null;
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Resource> loadRendition(String contentHash, String rendition) {
+        return Mono.fromCallable(() -> {
+            Path path = renditionPathFor(contentHash, rendition);
+            return Files.exists(path) ? (Resource) new FileSystemResource(path) : null;
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Void> saveRendition(String contentHash, String rendition, byte[] content) {
+        return Mono.fromCallable(() -> {
+            Path target = renditionPathFor(contentHash, rendition);
+            Files.createDirectories(target.getParent());
+            Path temp = Files.createTempFile(tempDir, contentHash, ".part");
+            try {
+                Files.write(temp, content);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return target;
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+
+    @Override
+    public Mono<Void> delete(String contentHash) {
+        return Mono.fromCallable(() -> {
+            Path original = pathFor(contentHash);
+            try (DirectoryStream<Path> renditions = Files.newDirectoryStream(original.getParent(), contentHash + "_*")) {
+                for (Path rendition : renditions) {
+                    Files.deleteIfExists(rendition);
+                }
+            } catch (NoSuchFileException ignored) {
+                // каталога еще нет — удалять нечего
+            }
+            return Files.deleteIfExists(original);
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+
+    // Двухуровневое разбиение по префиксу хэша, чтобы не держать десятки тысяч файлов в одном каталоге
+    private Path pathFor(String contentHash) {
+        if (contentHash == null || !HASH_PATTERN.matcher(contentHash).matches()) {
+            throw new IllegalArgumentException("Некорректный хэш содержимого: " + contentHash);
+        }
+        return root.resolve(contentHash.substring(0, 2))
+                .resolve(contentHash.substring(2, 4))
+                .resolve(contentHash);
+    }
+
+    // Уменьшенные копии лежат рядом с оригиналом: <hash>_<rendition>.jpg
+    private Path renditionPathFor(String contentHash, String rendition) {
+        if (rendition == null || !RENDITION_PATTERN.matcher(rendition).matches()) {
+            throw new IllegalArgumentException("Некорректное имя копии: " + rendition);
+        }
+        return pathFor(contentHash).resolveSibling(contentHash + "_" + rendition + ".jpg");
+    }
+
+    private void moveIntoPlace(Path temp, String hash) throws IOException {
+        Path target = pathFor(hash);
+        if (Files.exists(target)) {
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not available", e);
+        }
+    }
+}
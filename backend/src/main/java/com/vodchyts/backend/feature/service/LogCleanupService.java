@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 
 @Service
@@ -15,6 +16,9 @@ public class LogCleanupService {
 
     private final LoggingService loggingService;
     private final AuditService auditService;
+    private final SchedulerLeaseService leaseService;
+    private final NotificationDispatchService notificationDispatchService;
+    private final RequestSearchIndex searchIndex;
 
     @Value("${logging.retention.days:90}")
     private int logRetentionDays = 90;
@@ -22,9 +26,20 @@ public class LogCleanupService {
     @Value("${audit.retention.days:365}")
     private int auditRetentionDays = 365;
 
-    public LogCleanupService(LoggingService loggingService, AuditService auditService) {
+    @Value("${notification.runs.retention.days:90}")
+    private int notificationRunsRetentionDays = 90;
+
+    // Реплики дочитывают журнал за секунды; старые записи нужны только той, что долго не могла достучаться до базы
+    @Value("${search.index.changes-retention-hours:24}")
+    private int searchChangesRetentionHours = 24;
+
+    public LogCleanupService(LoggingService loggingService, AuditService auditService, SchedulerLeaseService leaseService,
+                             NotificationDispatchService notificationDispatchService, RequestSearchIndex searchIndex) {
         this.loggingService = loggingService;
         this.auditService = auditService;
+        this.leaseService = leaseService;
+        this.notificationDispatchService = notificationDispatchService;
+        this.searchIndex = searchIndex;
     }
 
     @Scheduled(cron = "0 0 2 * * *") // Каждый день в 2:00 ночи
@@ -34,19 +49,34 @@ public class LogCleanupService {
         LocalDateTime logCutoffDate = LocalDateTime.now().minusDays(logRetentionDays);
         LocalDateTime auditCutoffDate = LocalDateTime.now().minusDays(auditRetentionDays);
 
-        loggingService.deleteOldLogs(logCutoffDate)
+        leaseService.runAsLeader("log-cleanup", () -> loggingService.deleteOldLogs(logCutoffDate))
                 .subscribe(
                         count -> log.info("Очистка логов приложения завершена. Удалено {} записей старше {} дней.", 
                                 count, logRetentionDays),
                         error -> log.error("Ошибка во время очистки логов приложения.", error)
                 );
 
-        auditService.deleteOldAuditLogs(auditCutoffDate)
+        leaseService.runAsLeader("audit-cleanup", () -> auditService.deleteOldAuditLogs(auditCutoffDate))
                 .subscribe(
                         count -> log.info("Очистка записей аудита завершена. Удалено {} записей старше {} дней.", 
                                 count, auditRetentionDays),
                         error -> log.error("Ошибка во время очистки записей аудита.", error)
                 );
+
+        LocalDateTime runsCutoffDate = LocalDateTime.now().minusDays(notificationRunsRetentionDays);
+        leaseService.runAsLeader("notification-runs-cleanup", () -> notificationDispatchService.deleteRunsOlderThan(runsCutoffDate))
+                .subscribe(
+                        count -> log.info("Очистка журнала рассылок завершена. Удалено {} записей старше {} дней.",
+                                count, notificationRunsRetentionDays),
+                        error -> log.error("Ошибка во время очистки журнала рассылок.", error)
+                );
+
+        leaseService.runAsLeader("search-changes-cleanup", () -> searchIndex.deleteChangesOlderThan(Duration.ofHours(searchChangesRetentionHours)))
+                .subscribe(
+                        count -> log.info("Очистка журнала поискового индекса завершена. Удалено {} записей старше {} ч.",
+                                count, searchChangesRetentionHours),
+                        error -> log.error("Ошибка во время очистки журнала поискового индекса.", error)
+                );
     }
 }
 
@@ -2,6 +2,7 @@ package com.vodchyts.backend.feature.service;
 
 import com.vodchyts.backend.exception.OperationNotAllowedException;
 import com.vodchyts.backend.feature.dto.CreateMessageTemplateRequest;
+import com.vodchyts.backend.feature.dto.ImageInfo;
 import com.vodchyts.backend.feature.dto.MessageTemplateResponse;
 import com.vodchyts.backend.feature.dto.SendMessageRequest;
 import com.vodchyts.backend.feature.entity.MessageRecipient;
@@ -9,8 +10,11 @@ import com.vodchyts.backend.feature.entity.MessageTemplate;
 import com.vodchyts.backend.feature.repository.ReactiveMessageRecipientRepository;
 import com.vodchyts.backend.feature.repository.ReactiveMessageTemplateRepository;
 import com.vodchyts.backend.feature.repository.ReactiveShopContractorChatRepository;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
@@ -19,6 +23,7 @@ import reactor.core.publisher.Mono;
 import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,15 +34,22 @@ public class MessagingService {
     private final TransactionalOperator transactionalOperator;
     private final TelegramNotificationService notificationService;
     private final ReactiveShopContractorChatRepository chatRepository;
+    private final DatabaseClient databaseClient;
+    private final ImageCache imageCache;
+    private final SharedImageService sharedImageService;
 
     public MessagingService(ReactiveMessageTemplateRepository templateRepository,
                             ReactiveMessageRecipientRepository recipientRepository,
-                            TransactionalOperator transactionalOperator, TelegramNotificationService notificationService, ReactiveShopContractorChatRepository chatRepository) {
+                            TransactionalOperator transactionalOperator, TelegramNotificationService notificationService, ReactiveShopContractorChatRepository chatRepository,
+                            DatabaseClient databaseClient, ImageCache imageCache, SharedImageService sharedImageService) {
         this.templateRepository = templateRepository;
         this.recipientRepository = recipientRepository;
         this.transactionalOperator = transactionalOperator;
         this.notificationService = notificationService;
         this.chatRepository = chatRepository;
+        this.databaseClient = databaseClient;
+        this.imageCache = imageCache;
+        this.sharedImageService = sharedImageService;
     }
 
     private Mono<byte[]> extractBytes(Mono<FilePart> filePartMono) {
@@ -52,23 +64,35 @@ public class MessagingService {
                 .defaultIfEmpty(new byte[0]);
     }
 
+    // Список шаблонов не читает ImageData: наличие картинки вычисляется на стороне SQL Server
     public Flux<MessageTemplateResponse> getAllTemplates() {
-        return templateRepository.findAll()
+        return databaseClient.sql("SELECT MessageID, Title, Message, CreatedAt, " +
+                        "CAST(CASE WHEN ImageHash IS NOT NULL OR DATALENGTH(ImageData) > 0 THEN 1 ELSE 0 END AS BIT) AS HasImage FROM MessageTemplates")
+                .map(row -> new MessageTemplateResponse(
+                        row.get("MessageID", Integer.class),
+                        row.get("Title", String.class),
+                        row.get("Message", String.class),
+                        row.get("CreatedAt", LocalDateTime.class),
+                        Boolean.TRUE.equals(row.get("HasImage", Boolean.class)),
+                        List.of()
+                ))
+                .all()
                 .collectList()
                 .flatMapMany(templates -> {
                     if (templates.isEmpty()) {
                         return Flux.empty();
                     }
-                    List<Integer> templateIds = templates.stream().map(MessageTemplate::getMessageID).toList();
+                    List<Integer> templateIds = templates.stream().map(MessageTemplateResponse::messageID).toList();
                     return recipientRepository.findByMessageIDIn(templateIds)
                             .collectMultimap(MessageRecipient::getMessageID)
                             .map(recipientsMap -> templates.stream()
                                     .map(template -> {
-                                        Collection<MessageRecipient> recipients = recipientsMap.get(template.getMessageID());
+                                        Collection<MessageRecipient> recipients = recipientsMap.get(template.messageID());
                                         List<Integer> chatIds = (recipients == null)
                                                 ? List.of()
                                                 : recipients.stream().map(MessageRecipient::getShopContractorChatID).toList();
-                                        return mapToResponse(template, chatIds);
+                                        return new MessageTemplateResponse(template.messageID(), template.title(), template.message(),
+                                                template.createdAt(), template.hasImage(), chatIds);
                                     })
                                     .collect(Collectors.toList()))
                             .flatMapMany(Flux::fromIterable);
@@ -76,8 +100,8 @@ public class MessagingService {
     }
 
     public Mono<MessageTemplateResponse> createTemplate(CreateMessageTemplateRequest request, Mono<FilePart> imageFile) {
-        Mono<MessageTemplate> transaction = templateRepository.findByTitle(request.title())
-                .flatMap(existing -> Mono.<MessageTemplate>error(new OperationNotAllowedException("Шаблон с таким названием уже существует.")))
+        Mono<MessageTemplate> transaction = templateRepository.findIdByTitle(request.title())
+                .flatMap(existingId -> Mono.<MessageTemplate>error(new OperationNotAllowedException("Шаблон с таким названием уже существует.")))
                 .then(extractBytes(imageFile))
                 .flatMap(imageData -> {
                     MessageTemplate template = new MessageTemplate();
@@ -85,7 +109,11 @@ public class MessagingService {
                     template.setMessage(request.message());
                     template.setCreatedAt(LocalDateTime.now());
                     if (imageData.length > 0) {
-                        template.setImageData(imageData);
+                        return sharedImageService.acquire(imageData)
+                                .flatMap(imageHash -> {
+                                    template.setImageHash(imageHash);
+                                    return templateRepository.save(template);
+                                });
                     }
                     return templateRepository.save(template);
                 })
@@ -113,9 +141,9 @@ public class MessagingService {
 
         Mono<MessageTemplate> transaction = foundTemplate
                 .flatMap(template ->
-                        templateRepository.findByTitle(request.title())
-                                .flatMap(existing -> {
-                                    if (!existing.getMessageID().equals(templateId)) {
+                        templateRepository.findIdByTitle(request.title())
+                                .flatMap(existingId -> {
+                                    if (!existingId.equals(templateId)) {
                                         return Mono.<MessageTemplate>error(new OperationNotAllowedException("Шаблон с таким названием уже существует."));
                                     }
                                     return Mono.just(template);
@@ -130,7 +158,14 @@ public class MessagingService {
                     templateToUpdate.setTitle(request.title());
                     templateToUpdate.setMessage(request.message());
                     if (newImageData.length > 0) {
-                        templateToUpdate.setImageData(newImageData);
+                        String previousHash = templateToUpdate.getImageHash();
+                        return sharedImageService.acquire(newImageData)
+                                .flatMap(imageHash -> {
+                                    templateToUpdate.setImageHash(imageHash);
+                                    templateToUpdate.setImageData(null);
+                                    return templateRepository.save(templateToUpdate);
+                                })
+                                .flatMap(saved -> sharedImageService.release(previousHash).thenReturn(saved));
                     }
                     return templateRepository.save(templateToUpdate);
                 })
@@ -157,22 +192,48 @@ public class MessagingService {
     }
 
     public Mono<Void> deleteTemplate(Integer templateId) {
-        return templateRepository.deleteById(templateId);
+        return databaseClient.sql("DELETE FROM MessageTemplates OUTPUT DELETED.ImageHash WHERE MessageID = :templateId")
+                .bind("templateId", templateId)
+                .map(row -> Optional.ofNullable(row.get("ImageHash", String.class)))
+                .one()
+                .flatMap(imageHash -> sharedImageService.release(imageHash.orElse(null)))
+                .as(transactionalOperator::transactional);
     }
 
-    public Mono<byte[]> getTemplateImage(Integer templateId) {
-        return templateRepository.findById(templateId)
-                .mapNotNull(MessageTemplate::getImageData);
+    public Mono<ImageInfo> getTemplateImageInfo(Integer templateId) {
+        return sharedImageService.describe(ImageBlobReader.Source.MESSAGE_TEMPLATE, templateId);
+    }
+
+    // Небольшие изображения собираются целиком и кэшируются, крупные передаются клиенту потоком
+    public Flux<DataBuffer> getTemplateImage(Integer templateId, ImageInfo image) {
+        String cacheKey = "template_" + image.hash();
+        byte[] cached = imageCache.get(cacheKey);
+        if (cached != null) {
+            return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(cached));
+        }
+        Flux<DataBuffer> content = sharedImageService.read(ImageBlobReader.Source.MESSAGE_TEMPLATE, templateId, image);
+        if (image.size() == null || !imageCache.accepts(image.size())) {
+            return content;
+        }
+        return DataBufferUtils.join(content)
+                .<DataBuffer>map(dataBuffer -> {
+                    byte[] bytes = new byte[dataBuffer.readableByteCount()];
+                    dataBuffer.read(bytes);
+                    DataBufferUtils.release(dataBuffer);
+                    imageCache.put(cacheKey, bytes);
+                    return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+                })
+                .flux();
     }
 
     public Mono<Void> deleteTemplateImage(Integer templateId) {
-        return templateRepository.findById(templateId)
+        return databaseClient.sql("UPDATE MessageTemplates SET ImageData = NULL, ImageHash = NULL OUTPUT DELETED.ImageHash WHERE MessageID = :templateId")
+                .bind("templateId", templateId)
+                .map(row -> Optional.ofNullable(row.get("ImageHash", String.class)))
+                .one()
                 .switchIfEmpty(Mono.error(new RuntimeException("Шаблон не найден")))
-                .flatMap(template -> {
-                    template.setImageData(null);
-                    return templateRepository.save(template);
-                })
-                .then();
+                .flatMap(imageHash -> sharedImageService.release(imageHash.orElse(null)))
+                .as(transactionalOperator::transactional);
     }
 
     public Mono<Void> sendMessage(SendMessageRequest request) {
@@ -190,7 +251,7 @@ public class MessagingService {
                 template.getTitle(),
                 template.getMessage(),
                 template.getCreatedAt(),
-                template.getImageData() != null && template.getImageData().length > 0,
+                template.getImageHash() != null || (template.getImageData() != null && template.getImageData().length > 0),
                 recipientChatIds
         );
     }
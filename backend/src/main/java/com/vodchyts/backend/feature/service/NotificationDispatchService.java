@@ -0,0 +1,212 @@
+package com.vodchyts.backend.feature.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Рассылка одного запуска уведомления. Получатели берутся одним запросом с JOIN, отправка идет
+// с ограниченным параллелизмом и темпом (лимит Telegram на бота — около 30 сообщений в секунду,
+// темп общий для всех рассылок узла и учитывает повторы), а итог запуска пишется в NotificationRuns
+@Service
+public class NotificationDispatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationDispatchService.class);
+    private static final int CAPTION_LIMIT = 1024;
+
+    public record DispatchResult(long runId, int recipients, int sent, int failed, int skipped, long durationMs) {}
+
+    private enum Outcome { SENT, FAILED, SKIPPED }
+
+    private final DatabaseClient databaseClient;
+    private final TelegramNotificationService telegramService;
+    private final SharedImageService sharedImageService;
+    private final SchedulerLeaseService leaseService;
+    private final int concurrency;
+    private final long sendIntervalNanos;
+    private final int retries;
+    private final Duration retryBackoff;
+    private final AtomicLong nextSendSlot = new AtomicLong(System.nanoTime());
+
+    public NotificationDispatchService(DatabaseClient databaseClient,
+                                       TelegramNotificationService telegramService,
+                                       SharedImageService sharedImageService,
+                                       SchedulerLeaseService leaseService,
+                                       @Value("${notification.dispatch.concurrency:8}") int concurrency,
+                                       @Value("${notification.dispatch.messages-per-second:25}") int messagesPerSecond,
+                                       @Value("${notification.dispatch.retries:2}") int retries,
+                                       @Value("${notification.dispatch.retry-backoff-ms:1000}") long retryBackoffMs) {
+        this.databaseClient = databaseClient;
+        this.telegramService = telegramService;
+        this.sharedImageService = sharedImageService;
+        this.leaseService = leaseService;
+        this.concurrency = Math.max(1, concurrency);
+        this.sendIntervalNanos = Duration.ofSeconds(1).toNanos() / Math.max(1, messagesPerSecond);
+        this.retries = Math.max(0, retries);
+        this.retryBackoff = Duration.ofMillis(Math.max(1, retryBackoffMs));
+    }
+
+    // Завершается только после ответа бота по каждому получателю
+    public Mono<DispatchResult> dispatch(Integer notificationId, LocalDateTime scheduledAt, String fullMessage) {
+        long startedAt = System.nanoTime();
+        return startRun(notificationId, scheduledAt)
+                .flatMap(runId -> deliver(notificationId, fullMessage, startedAt, runId)
+                        .flatMap(result -> finishRun(result, "COMPLETED", null).thenReturn(result))
+                        .onErrorResume(e -> finishRun(new DispatchResult(runId, 0, 0, 0, 0, elapsedMs(startedAt)), "FAILED", e.getMessage())
+                                .then(Mono.error(e))));
+    }
+
+    private Mono<DispatchResult> deliver(Integer notificationId, String fullMessage, long startedAt, long runId) {
+        return recipients(notificationId)
+                .flatMap(chatIds -> (chatIds.isEmpty() ? Mono.just(Optional.<byte[]>empty()) : imageContent(notificationId))
+                        .flatMap(image -> Flux.fromIterable(chatIds)
+                                .flatMap(chatId -> send(chatId, notificationId, image, fullMessage), concurrency)
+                                .collectList()
+                                .map(outcomes -> new DispatchResult(runId, chatIds.size(),
+                                        count(outcomes, Outcome.SENT), count(outcomes, Outcome.FAILED),
+                                        count(outcomes, Outcome.SKIPPED), elapsedMs(startedAt)))));
+    }
+
+    // Картинка читается из хранилища или блоба один раз за запуск, а не заново для каждого получателя
+    private Mono<Optional<byte[]>> imageContent(Integer notificationId) {
+        return sharedImageService.describe(ImageBlobReader.Source.NOTIFICATION, notificationId)
+                .flatMap(info -> DataBufferUtils.join(sharedImageService.read(ImageBlobReader.Source.NOTIFICATION, notificationId, info)))
+                .map(dataBuffer -> {
+                    byte[] bytes = new byte[dataBuffer.readableByteCount()];
+                    dataBuffer.read(bytes);
+                    DataBufferUtils.release(dataBuffer);
+                    return Optional.of(bytes);
+                })
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    private Mono<List<Long>> recipients(Integer notificationId) {
+        return databaseClient.sql("""
+                        SELECT scc.TelegramID
+                        FROM NotificationRecipients nr
+                        JOIN ShopContractorChats scc ON scc.ShopContractorChatID = nr.ShopContractorChatID
+                        WHERE nr.NotificationID = :notificationId
+                        """)
+                .bind("notificationId", notificationId)
+                .map(row -> row.get("TelegramID", Long.class))
+                .all()
+                .distinct()
+                .collectList();
+    }
+
+    // 4xx от бота (чат удален, бот исключен) повторять бесполезно — получатель пропускается.
+    // Сбои сети и 5xx (в том числе RetryAfter от Telegram) повторяются с паузой
+    private Mono<Outcome> send(Long chatId, Integer notificationId, Optional<byte[]> image, String fullMessage) {
+        return Mono.defer(() -> image.isPresent()
+                        ? sendWithImage(chatId, image.get(), fullMessage)
+                        : paced(telegramService.deliverNotification(chatId, fullMessage)))
+                .retryWhen(Retry.backoff(retries, retryBackoff).filter(NotificationDispatchService::isTransient))
+                .thenReturn(Outcome.SENT)
+                .onErrorResume(e -> {
+                    Throwable cause = Exceptions.isRetryExhausted(e) ? e.getCause() : e;
+                    if (!isTransient(cause)) {
+                        log.warn("Чат {} пропущен при рассылке уведомления ID={}: {}", chatId, notificationId, cause.getMessage());
+                        return Mono.just(Outcome.SKIPPED);
+                    }
+                    log.error("НЕ УДАЛОСЬ доставить уведомление ID={} в чат {}: {}", notificationId, chatId, cause.getMessage());
+                    return Mono.just(Outcome.FAILED);
+                });
+    }
+
+    private Mono<Void> sendWithImage(Long chatId, byte[] content, String fullMessage) {
+        // Каждому получателю — свой буфер поверх общего массива: его позиция чтения не должна влиять на других
+        Flux<DataBuffer> image = Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(content)));
+        if (fullMessage.length() <= CAPTION_LIMIT) {
+            return paced(telegramService.deliverPhoto(chatId, fullMessage, image));
+        }
+        // Длинный текст не помещается в подпись к фото и уходит отдельным сообщением
+        return paced(telegramService.deliverPhoto(chatId, "", image))
+                .then(paced(telegramService.deliverNotification(chatId, fullMessage)));
+    }
+
+    // Каждый вызов бота, в том числе повтор после сбоя, занимает свой слот: повторы не превышают темп рассылки
+    private Mono<Void> paced(Mono<Void> call) {
+        return Mono.defer(() -> {
+            long now = System.nanoTime();
+            long slot = nextSendSlot.accumulateAndGet(now, (next, current) -> Math.max(next, current) + sendIntervalNanos)
+                    - sendIntervalNanos;
+            return slot > now ? Mono.delay(Duration.ofNanos(slot - now)).then(call) : call;
+        });
+    }
+
+    private static boolean isTransient(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError() || response.getStatusCode().value() == 429;
+        }
+        return e instanceof WebClientRequestException;
+    }
+
+    private Mono<Long> startRun(Integer notificationId, LocalDateTime scheduledAt) {
+        return databaseClient.sql("""
+                        INSERT INTO NotificationRuns (NotificationID, ScheduledAt, StartedAt, Status, Node)
+                        OUTPUT inserted.RunID
+                        VALUES (:notificationId, :scheduledAt, :startedAt, 'RUNNING', :node)
+                        """)
+                .bind("notificationId", notificationId)
+                .bind("scheduledAt", scheduledAt)
+                .bind("startedAt", LocalDateTime.now())
+                .bind("node", leaseService.getNodeId())
+                .map(row -> row.get("RunID", Long.class))
+                .one();
+    }
+
+    private Mono<Void> finishRun(DispatchResult result, String status, String error) {
+        var spec = databaseClient.sql("""
+                        UPDATE NotificationRuns
+                        SET FinishedAt = :finishedAt, Status = :status, Recipients = :recipients,
+                            Sent = :sent, Failed = :failed, Skipped = :skipped, DurationMs = :durationMs, Error = :error
+                        WHERE RunID = :runId
+                        """)
+                .bind("finishedAt", LocalDateTime.now())
+                .bind("status", status)
+                .bind("recipients", result.recipients())
+                .bind("sent", result.sent())
+                .bind("failed", result.failed())
+                .bind("skipped", result.skipped())
+                .bind("durationMs", result.durationMs())
+                .bind("runId", result.runId());
+        spec = error != null
+                ? spec.bind("error", error.length() > 1000 ? error.substring(0, 1000) : error)
+                : spec.bindNull("error", String.class);
+        return spec.then()
+                .onErrorResume(e -> {
+                    log.warn("Не удалось записать итог запуска рассылки {}: {}", result.runId(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    public Mono<Long> deleteRunsOlderThan(LocalDateTime cutoff) {
+        return databaseClient.sql("DELETE FROM NotificationRuns WHERE StartedAt < :cutoff")
+                .bind("cutoff", cutoff)
+                .fetch().rowsUpdated();
+    }
+
+    private static int count(List<Outcome> outcomes, Outcome outcome) {
+        return (int) outcomes.stream().filter(o -> o == outcome).count();
+    }
+
+    private static long elapsedMs(long startedAt) {
+        return Duration.ofNanos(System.nanoTime() - startedAt).toMillis();
+    }
+}
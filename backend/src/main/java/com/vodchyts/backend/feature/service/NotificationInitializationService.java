@@ -5,11 +5,16 @@ import org.slf4j.LoggerFactory;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
 
 @Service
 public class NotificationInitializationService implements ApplicationRunner {
 
     private static final Logger logger = LoggerFactory.getLogger(NotificationInitializationService.class);
+    private static final Duration RECONCILE_TIMEOUT = Duration.ofMinutes(2);
 
     private final NotificationService notificationService;
     private final NotificationSchedulerService schedulerService;
@@ -20,17 +25,24 @@ public class NotificationInitializationService implements ApplicationRunner {
         this.schedulerService = schedulerService;
     }
 
+    // Задания Quartz переживают перезапуск в JDBC-хранилище, поэтому при старте только досоздается и
+    // удаляется то, что разошлось с таблицей Notifications. Старт дожидается сверки, ошибка не теряется в subscribe()
     @Override
-    public void run(ApplicationArguments args) throws Exception {
-        logger.info("Инициализация планировщика уведомлений...");
-        
-        notificationService.getActiveNotifications()
-                .doOnNext(notification -> {
-                    logger.info("Планирование активного уведомления: ID={}, Title={}", 
-                               notification.getNotificationID(), notification.getTitle());
-                    schedulerService.scheduleNotification(notification);
-                })
-                .doOnComplete(() -> logger.info("Инициализация планировщика уведомлений завершена"))
-                .subscribe();
+    public void run(ApplicationArguments args) {
+        logger.info("Сверка заданий планировщика уведомлений...");
+
+        try {
+            NotificationSchedulerService.ReconcileSummary summary = notificationService.getActiveNotifications()
+                    .collectList()
+                    .publishOn(Schedulers.boundedElastic())
+                    .flatMap(active -> Mono.fromCallable(() -> schedulerService.reconcile(active)))
+                    .block(RECONCILE_TIMEOUT);
+            if (summary != null) {
+                logger.info("Сверка планировщика уведомлений завершена: создано {}, обновлено {}, удалено {}, без изменений {}, с ошибкой {}",
+                        summary.created(), summary.updated(), summary.deleted(), summary.unchanged(), summary.failed());
+            }
+        } catch (Exception e) {
+            logger.error("Не удалось сверить задания планировщика уведомлений", e);
+        }
     }
 }
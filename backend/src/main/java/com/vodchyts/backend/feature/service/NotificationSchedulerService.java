@@ -1,24 +1,42 @@
 package com.vodchyts.backend.feature.service;
 
+import com.vodchyts.backend.config.CronFireTimes;
 import com.vodchyts.backend.feature.entity.Notification;
 import com.vodchyts.backend.feature.entity.NotificationRecipient;
 import com.vodchyts.backend.feature.repository.ReactiveNotificationRecipientRepository;
-import com.vodchyts.backend.feature.repository.ReactiveShopContractorChatRepository;
 import org.quartz.*;
+import org.quartz.impl.matchers.GroupMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class NotificationSchedulerService {
 
     private static final Logger logger = LoggerFactory.getLogger(NotificationSchedulerService.class);
+    private static final String GROUP = "notifications";
+
+    public record ReconcileSummary(int created, int updated, int deleted, int unchanged, int failed) {}
+
+    @FunctionalInterface
+    public interface SchedulerOperation {
+        void run() throws SchedulerException;
+    }
 
     private final Scheduler scheduler;
     private final ReactiveNotificationRecipientRepository recipientRepository;
@@ -29,45 +47,106 @@ public class NotificationSchedulerService {
         this.recipientRepository = recipientRepository;
     }
 
-    public void scheduleNotification(Notification notification) {
-        try {
-            JobDetail jobDetail = JobBuilder.newJob(NotificationJob.class)
-                    .withIdentity("notification-" + notification.getNotificationID(), "notifications")
-                    .usingJobData("notificationId", notification.getNotificationID())
-                    .usingJobData("title", notification.getTitle())
-                    .usingJobData("message", notification.getMessage() != null ? notification.getMessage() : "")
-                    .build();
-
-            String quartzCron = convertToQuartzCron(notification.getCronExpression());
-
-            CronTrigger trigger = TriggerBuilder.newTrigger()
-                    .withIdentity("trigger-" + notification.getNotificationID(), "notifications")
-                    .withSchedule(CronScheduleBuilder.cronSchedule(quartzCron))
-                    .build();
-
-            scheduler.scheduleJob(jobDetail, trigger);
-            logger.info("Запланировано уведомление ID: {}", notification.getNotificationID());
-        } catch (SchedulerException e) {
-            logger.error("Ошибка планирования: {}", e.getMessage());
-        }
+    public void scheduleNotification(Notification notification) throws SchedulerException {
+        JobDetail jobDetail = JobBuilder.newJob(NotificationJob.class)
+                .withIdentity(jobKey(notification.getNotificationID()))
+                .usingJobData("notificationId", notification.getNotificationID())
+                .usingJobData("title", notification.getTitle())
+                .usingJobData("message", notification.getMessage() != null ? notification.getMessage() : "")
+                .build();
+
+        String quartzCron = convertToQuartzCron(notification.getCronExpression());
+
+        // Пропущенный во время деплоя запуск выполняется один раз сразу после старта, дальше — по расписанию.
+        // Слишком старые пропуски отсекает само задание (notification.misfire.max-delay-ms)
+        CronTrigger trigger = TriggerBuilder.newTrigger()
+                .withIdentity(triggerKey(notification.getNotificationID()))
+                .withSchedule(CronScheduleBuilder.cronSchedule(quartzCron).withMisfireHandlingInstructionFireAndProceed())
+                .build();
+
+        // Хранилище Quartz общее для всех реплик: задание могло остаться с прошлого запуска или его уже создала другая реплика
+        scheduler.scheduleJob(jobDetail, Set.of(trigger), true);
+        logger.info("Запланировано уведомление ID: {}", notification.getNotificationID());
     }
 
-    public void unscheduleNotification(Integer notificationId) {
-        try {
-            JobKey jobKey = JobKey.jobKey("notification-" + notificationId, "notifications");
-            scheduler.deleteJob(jobKey);
-        } catch (SchedulerException e) {
-            logger.error("Error unscheduling", e);
-        }
+    public void unscheduleNotification(Integer notificationId) throws SchedulerException {
+        scheduler.deleteJob(jobKey(notificationId));
     }
 
-    public void rescheduleNotification(Notification notification) {
+    public void rescheduleNotification(Notification notification) throws SchedulerException {
         unscheduleNotification(notification.getNotificationID());
         if (Boolean.TRUE.equals(notification.getIsActive())) {
             scheduleNotification(notification);
         }
     }
 
+    // С JDBC-хранилищем вызовы Quartz блокируют поток на запросах к базе, поэтому из реактивных цепочек — только так.
+    // Ошибка Quartz уходит в цепочку: сохраненное, но не запланированное уведомление не должно выглядеть успешным
+    public Mono<Void> scheduleAsync(SchedulerOperation operation) {
+        return Mono.fromCallable(() -> {
+            operation.run();
+            return true;
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+
+    // Сверяет задания Quartz с активными уведомлениями: создает недостающие, пересоздает измененные, удаляет лишние.
+    // Совпадающие триггеры не трогаются — сохраняются время следующего запуска и пропуски, накопленные во время простоя
+    public ReconcileSummary reconcile(List<Notification> activeNotifications) throws SchedulerException {
+        Map<JobKey, Notification> desired = new HashMap<>();
+        for (Notification notification : activeNotifications) {
+            desired.put(jobKey(notification.getNotificationID()), notification);
+        }
+        Set<JobKey> existing = scheduler.getJobKeys(GroupMatcher.jobGroupEquals(GROUP));
+
+        int created = 0, updated = 0, deleted = 0, unchanged = 0, failed = 0;
+        for (Map.Entry<JobKey, Notification> entry : desired.entrySet()) {
+            Notification notification = entry.getValue();
+            try {
+                if (!existing.contains(entry.getKey())) {
+                    scheduleNotification(notification);
+                    created++;
+                } else if (!isUpToDate(notification)) {
+                    scheduleNotification(notification);
+                    updated++;
+                } else {
+                    unchanged++;
+                }
+            } catch (SchedulerException | RuntimeException e) {
+                failed++;
+                logger.error("Уведомление ID={} не запланировано: {}", notification.getNotificationID(), e.getMessage());
+            }
+        }
+        for (JobKey jobKey : existing) {
+            if (!desired.containsKey(jobKey)) {
+                scheduler.deleteJob(jobKey);
+                deleted++;
+            }
+        }
+        return new ReconcileSummary(created, updated, deleted, unchanged, failed);
+    }
+
+    private boolean isUpToDate(Notification notification) throws SchedulerException {
+        JobDetail jobDetail = scheduler.getJobDetail(jobKey(notification.getNotificationID()));
+        Trigger trigger = scheduler.getTrigger(triggerKey(notification.getNotificationID()));
+        if (jobDetail == null || !(trigger instanceof CronTrigger cronTrigger)) {
+            return false;
+        }
+        JobDataMap data = jobDetail.getJobDataMap();
+        String message = notification.getMessage() != null ? notification.getMessage() : "";
+        return cronTrigger.getCronExpression().equals(convertToQuartzCron(notification.getCronExpression()))
+                && cronTrigger.getMisfireInstruction() == CronTrigger.MISFIRE_INSTRUCTION_FIRE_ONCE_NOW
+                && Objects.equals(data.getString("title"), notification.getTitle())
+                && Objects.equals(data.getString("message"), message);
+    }
+
+    private static JobKey jobKey(Integer notificationId) {
+        return JobKey.jobKey("notification-" + notificationId, GROUP);
+    }
+
+    private static TriggerKey triggerKey(Integer notificationId) {
+        return TriggerKey.triggerKey("trigger-" + notificationId, GROUP);
+    }
+
     private String convertToQuartzCron(String cronExpression) {
         String[] parts = cronExpression.trim().split("\\s+");
         if (parts.length != 5) {
@@ -113,21 +192,23 @@ public class NotificationSchedulerService {
         };
     }
 
+    // Пока идет рассылка, следующий запуск того же уведомления ждет ее завершения
     @Component
+    @DisallowConcurrentExecution
     public static class NotificationJob implements Job {
 
-        private ReactiveNotificationRecipientRepository recipientRepository;
-        private ReactiveShopContractorChatRepository chatRepository;
+        private NotificationDispatchService dispatchService;
         private TelegramNotificationService telegramService;
 
-        @org.springframework.beans.factory.annotation.Autowired
-        public void setRecipientRepository(ReactiveNotificationRecipientRepository recipientRepository) {
-            this.recipientRepository = recipientRepository;
-        }
+        @org.springframework.beans.factory.annotation.Value("${notification.misfire.max-delay-ms:3600000}")
+        private long maxDelayMs = 3600000;
+
+        @org.springframework.beans.factory.annotation.Value("${notification.dispatch.timeout-ms:1800000}")
+        private long dispatchTimeoutMs = 1800000;
 
         @org.springframework.beans.factory.annotation.Autowired
-        public void setChatRepository(ReactiveShopContractorChatRepository chatRepository) {
-            this.chatRepository = chatRepository;
+        public void setDispatchService(NotificationDispatchService dispatchService) {
+            this.dispatchService = dispatchService;
         }
 
         @org.springframework.beans.factory.annotation.Autowired
@@ -145,6 +226,14 @@ public class NotificationSchedulerService {
 
             JobDataMap dataMap = context.getJobDetail().getJobDataMap();
             Integer notificationId = dataMap.getInt("notificationId");
+
+            // Утренняя рассылка, пропущенная из-за простоя, не должна уйти вечером. После misfire ScheduledFireTime
+            // уже сдвинут на момент восстановления, поэтому опоздание считается от времени по cron
+            Optional<Duration> lag = CronFireTimes.lag(context, Duration.ofMillis(maxDelayMs));
+            if (lag.isEmpty() || lag.get().toMillis() > maxDelayMs) {
+                logger.warn("Рассылка уведомления ID={} пропущена: запуск опоздал больше чем на {} мин.", notificationId, maxDelayMs / 60000);
+                return;
+            }
             String rawTitle = dataMap.getString("title");   // <-- Получаем сырой заголовок
             String rawMessage = dataMap.getString("message"); // <-- Получаем сырое сообщение
 
@@ -155,12 +244,19 @@ public class NotificationSchedulerService {
 
             logger.info("Начало рассылки уведомления ID={}", notificationId);
 
-            recipientRepository.findByNotificationID(notificationId)
-                    .flatMap(recipient -> chatRepository.findById(recipient.getShopContractorChatID()))
-                    .flatMap(chat -> {
-                        return telegramService.sendNotification(chat.getTelegramID(), fullMessage);
-                    })
-                    .subscribe();
+            LocalDateTime scheduledAt = LocalDateTime.ofInstant(context.getScheduledFireTime().toInstant(), ZoneId.systemDefault());
+            // Поток Quartz ждет окончания отправки: длительность задания и ее итог соответствуют реальной рассылке
+            try {
+                NotificationDispatchService.DispatchResult result = dispatchService.dispatch(notificationId, scheduledAt, fullMessage)
+                        .block(Duration.ofMillis(dispatchTimeoutMs));
+                if (result != null) {
+                    logger.info("Рассылка уведомления ID={} завершена за {} мс: получателей {}, отправлено {}, ошибок {}, пропущено {}",
+                            notificationId, result.durationMs(), result.recipients(), result.sent(), result.failed(), result.skipped());
+                }
+            } catch (RuntimeException e) {
+                logger.error("Ошибка рассылки уведомления ID={}: {}", notificationId, e.getMessage());
+                throw new JobExecutionException(e, false);
+            }
         }
     }
 }
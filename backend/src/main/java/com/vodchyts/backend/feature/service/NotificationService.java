@@ -9,13 +9,16 @@ import com.vodchyts.backend.feature.entity.Notification;
 import com.vodchyts.backend.feature.entity.NotificationRecipient;
 import com.vodchyts.backend.feature.repository.ReactiveNotificationRecipientRepository;
 import com.vodchyts.backend.feature.repository.ReactiveNotificationRepository;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public class NotificationService {
@@ -23,13 +26,23 @@ public class NotificationService {
     private final ReactiveNotificationRepository notificationRepository;
     private final ReactiveNotificationRecipientRepository recipientRepository;
     private final NotificationSchedulerService schedulerService;
+    private final DatabaseClient databaseClient;
+    private final SharedImageService sharedImageService;
+
+    // Списки и карточки уведомлений не читают ImageData: наличие картинки вычисляется на стороне SQL Server
+    private static final String SUMMARY_COLUMNS = "NotificationID, Title, Message, CronExpression, IsActive, " +
+            "CAST(CASE WHEN ImageHash IS NOT NULL OR DATALENGTH(ImageData) > 0 THEN 1 ELSE 0 END AS BIT) AS HasImage";
 
     public NotificationService(ReactiveNotificationRepository notificationRepository,
                              ReactiveNotificationRecipientRepository recipientRepository,
-                             NotificationSchedulerService schedulerService) {
+                             NotificationSchedulerService schedulerService,
+                             DatabaseClient databaseClient,
+                             SharedImageService sharedImageService) {
         this.notificationRepository = notificationRepository;
         this.recipientRepository = recipientRepository;
         this.schedulerService = schedulerService;
+        this.databaseClient = databaseClient;
+        this.sharedImageService = sharedImageService;
     }
 
     public Mono<Notification> createNotification(CreateNotificationRequest request) {
@@ -43,11 +56,11 @@ public class NotificationService {
                     Notification notification = new Notification();
                     notification.setTitle(request.getTitle());
                     notification.setMessage(request.getMessage());
-                    notification.setImageData(request.getImageData());
                     notification.setCronExpression(request.getCronExpression());
                     notification.setIsActive(request.getIsActive());
 
-                    return notificationRepository.save(notification)
+                    return attachImage(notification, request.getImageData())
+                            .flatMap(notificationRepository::save)
                             .flatMap(savedNotification -> {
                                 if (request.getRecipientChatIds() != null && !request.getRecipientChatIds().isEmpty()) {
                                     return saveRecipients(savedNotification.getNotificationID(), request.getRecipientChatIds())
@@ -55,11 +68,10 @@ public class NotificationService {
                                 }
                                 return Mono.just(savedNotification);
                             })
-                            .doOnNext(savedNotification -> {
-                                if (Boolean.TRUE.equals(savedNotification.getIsActive())) {
-                                    schedulerService.scheduleNotification(savedNotification);
-                                }
-                            });
+                            .flatMap(savedNotification -> Boolean.TRUE.equals(savedNotification.getIsActive())
+                                    ? schedulerService.scheduleAsync(() -> schedulerService.scheduleNotification(savedNotification))
+                                            .thenReturn(savedNotification)
+                                    : Mono.just(savedNotification));
                 });
     }
 
@@ -86,8 +98,12 @@ public class NotificationService {
                         if (request.getMessage() != null) {
                             notification.setMessage(request.getMessage());
                         }
-                        if (request.getImageData() != null) {
-                            notification.setImageData(request.getImageData());
+                        // Пустой массив снимает картинку, непустой заменяет ее; старое изображение освобождается после сохранения
+                        boolean replaceImage = request.getImageData() != null;
+                        String previousHash = notification.getImageHash();
+                        if (replaceImage) {
+                            notification.setImageData(null);
+                            notification.setImageHash(null);
                         }
                         if (request.getCronExpression() != null) {
                             notification.setCronExpression(request.getCronExpression());
@@ -96,7 +112,11 @@ public class NotificationService {
                             notification.setIsActive(request.getIsActive());
                         }
 
-                        return notificationRepository.save(notification)
+                        return attachImage(notification, request.getImageData())
+                                .flatMap(notificationRepository::save)
+                                .flatMap(savedNotification -> replaceImage
+                                        ? sharedImageService.release(previousHash).thenReturn(savedNotification)
+                                        : Mono.just(savedNotification))
                                 .flatMap(savedNotification -> {
                                     if (request.getRecipientChatIds() != null) {
                                         return recipientRepository.deleteByNotificationID(notificationId)
@@ -105,45 +125,79 @@ public class NotificationService {
                                     }
                                     return Mono.just(savedNotification);
                                 })
-                                .doOnNext(schedulerService::rescheduleNotification);
+                                .flatMap(savedNotification -> schedulerService
+                                        .scheduleAsync(() -> schedulerService.rescheduleNotification(savedNotification))
+                                        .thenReturn(savedNotification));
                     }));
                 });
     }
 
     public Mono<Void> deleteNotification(Integer notificationId) {
-        return notificationRepository.deleteById(notificationId)
-                .doOnSuccess(unused -> schedulerService.unscheduleNotification(notificationId));
+        return databaseClient.sql("DELETE FROM Notifications OUTPUT DELETED.ImageHash WHERE NotificationID = :notificationId")
+                .bind("notificationId", notificationId)
+                .map(row -> Optional.ofNullable(row.get("ImageHash", String.class)))
+                .one()
+                .flatMap(imageHash -> sharedImageService.release(imageHash.orElse(null)))
+                .then(schedulerService.scheduleAsync(() -> schedulerService.unscheduleNotification(notificationId)));
     }
 
     public Mono<PagedResponse<NotificationResponse>> getAllNotifications(Boolean isActive, int page, int size) {
-        Pageable pageable = PageRequest.of(page, size);
-        
-        Mono<Long> totalCount = isActive != null 
+        Mono<Long> totalCount = isActive != null
             ? notificationRepository.countByIsActive(isActive)
             : notificationRepository.count();
 
-        Flux<Notification> notifications = isActive != null
-            ? notificationRepository.findByIsActive(isActive, pageable)
-            : notificationRepository.findAll();
+        String where = isActive != null ? " WHERE IsActive = :isActive" : "";
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("SELECT " + SUMMARY_COLUMNS + " FROM Notifications" + where +
+                        " ORDER BY NotificationID OFFSET :offset ROWS FETCH NEXT :size ROWS ONLY")
+                .bind("offset", (long) page * size)
+                .bind("size", size);
+        if (isActive != null) {
+            spec = spec.bind("isActive", isActive);
+        }
+        Flux<NotificationResponse> notifications = spec.map(NotificationService::mapSummary).all();
 
         return totalCount.flatMap(count -> {
             int totalPages = (int) Math.ceil((double) count / size);
-            
-            return notifications
-                    .flatMap(this::mapNotificationToResponse)
-                    .collectList()
+
+            return withRecipients(notifications)
                     .map(content -> new PagedResponse<>(content, page, count, totalPages));
         });
     }
 
     public Mono<NotificationResponse> getNotificationById(Integer notificationId) {
-        return notificationRepository.findById(notificationId)
+        return databaseClient.sql("SELECT " + SUMMARY_COLUMNS + " FROM Notifications WHERE NotificationID = :notificationId")
+                .bind("notificationId", notificationId)
+                .map(NotificationService::mapSummary)
+                .one()
                 .switchIfEmpty(Mono.error(new RuntimeException("Уведомление не найдено")))
-                .flatMap(this::mapNotificationToResponse);
+                .flatMap(notification -> withRecipients(Flux.just(notification)))
+                .map(responses -> responses.get(0));
     }
 
+    // Для планировщика картинка не нужна: она читается из базы только в момент рассылки
     public Flux<Notification> getActiveNotifications() {
-        return notificationRepository.findActiveNotifications();
+        return databaseClient.sql("SELECT NotificationID, Title, Message, CronExpression, IsActive FROM Notifications WHERE IsActive = 1")
+                .map(row -> {
+                    Notification notification = new Notification();
+                    notification.setNotificationID(row.get("NotificationID", Integer.class));
+                    notification.setTitle(row.get("Title", String.class));
+                    notification.setMessage(row.get("Message", String.class));
+                    notification.setCronExpression(row.get("CronExpression", String.class));
+                    notification.setIsActive(row.get("IsActive", Boolean.class));
+                    return notification;
+                })
+                .all();
+    }
+
+    private Mono<Notification> attachImage(Notification notification, byte[] imageData) {
+        if (imageData == null || imageData.length == 0) {
+            return Mono.just(notification);
+        }
+        return sharedImageService.acquire(imageData)
+                .map(imageHash -> {
+                    notification.setImageHash(imageHash);
+                    return notification;
+                });
     }
 
     private Mono<Void> saveRecipients(Integer notificationId, List<Integer> chatIds) {
@@ -158,20 +212,34 @@ public class NotificationService {
                 .then();
     }
 
-    private Mono<NotificationResponse> mapNotificationToResponse(Notification notification) {
-        return recipientRepository.findByNotificationID(notification.getNotificationID())
-                .map(NotificationRecipient::getShopContractorChatID)
-                .collectList()
-                .map(chatIds -> {
-                    NotificationResponse response = new NotificationResponse();
-                    response.setNotificationID(notification.getNotificationID());
-                    response.setTitle(notification.getTitle());
-                    response.setMessage(notification.getMessage());
-                    response.setHasImage(notification.getImageData() != null && notification.getImageData().length > 0);
-                    response.setCronExpression(notification.getCronExpression());
-                    response.setIsActive(notification.getIsActive());
-                    response.setRecipientChatIds(chatIds);
-                    return response;
+    // Получатели всех уведомлений страницы загружаются одним запросом
+    private Mono<List<NotificationResponse>> withRecipients(Flux<NotificationResponse> notifications) {
+        return notifications.collectList()
+                .flatMap(responses -> {
+                    if (responses.isEmpty()) {
+                        return Mono.just(responses);
+                    }
+                    List<Integer> ids = responses.stream().map(NotificationResponse::getNotificationID).toList();
+                    return recipientRepository.findByNotificationIDIn(ids)
+                            .collectMultimap(NotificationRecipient::getNotificationID, NotificationRecipient::getShopContractorChatID)
+                            .map(recipientsMap -> {
+                                responses.forEach(response -> {
+                                    Collection<Integer> chatIds = recipientsMap.get(response.getNotificationID());
+                                    response.setRecipientChatIds(chatIds == null ? List.of() : List.copyOf(chatIds));
+                                });
+                                return responses;
+                            });
                 });
     }
+
+    private static NotificationResponse mapSummary(Row row, RowMetadata metadata) {
+        NotificationResponse response = new NotificationResponse();
+        response.setNotificationID(row.get("NotificationID", Integer.class));
+        response.setTitle(row.get("Title", String.class));
+        response.setMessage(row.get("Message", String.class));
+        response.setHasImage(Boolean.TRUE.equals(row.get("HasImage", Boolean.class)));
+        response.setCronExpression(row.get("CronExpression", String.class));
+        response.setIsActive(row.get("IsActive", Boolean.class));
+        return response;
+    }
 }
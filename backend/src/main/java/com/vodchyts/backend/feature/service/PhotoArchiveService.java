@@ -0,0 +1,101 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import com.vodchyts.backend.feature.dto.PhotoContent;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+@Service
+public class PhotoArchiveService {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    public enum Format {
+        ZIP, MULTIPART;
+
+        public static Format from(String value) {
+            if (value == null || value.isBlank() || "zip".equalsIgnoreCase(value)) {
+                return ZIP;
+            }
+            if ("multipart".equalsIgnoreCase(value) || "mixed".equalsIgnoreCase(value)) {
+                return MULTIPART;
+            }
+            throw new OperationNotAllowedException("Неподдерживаемый формат выгрузки фото: " + value);
+        }
+    }
+
+    public static MediaType zipMediaType() {
+        return MediaType.parseMediaType("application/zip");
+    }
+
+    public static String newBoundary() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    // ZipOutputStream пишет в поток, который отдает буферы только по запросу клиента:
+    // при медленном клиенте запись блокируется, и в памяти остается не больше одного чанка
+    public Flux<DataBuffer> zip(Flux<PhotoContent> photos, DataBufferFactory bufferFactory) {
+        return Flux.from(DataBufferUtils.outputStreamPublisher(outputStream -> {
+            Iterator<PhotoContent> iterator = photos.toIterable(1).iterator();
+            int index = 0;
+            try (ZipOutputStream zip = new ZipOutputStream(outputStream)) {
+                // JPEG и PNG уже сжаты, повторное сжатие только тратит процессор
+                zip.setLevel(Deflater.NO_COMPRESSION);
+                while (iterator.hasNext()) {
+                    PhotoContent photo = iterator.next();
+                    zip.putNextEntry(new ZipEntry(entryName(++index, photo.contentType())));
+                    try (InputStream in = photo.resource().getInputStream()) {
+                        in.transferTo(zip);
+                    }
+                    zip.closeEntry();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, bufferFactory, task -> Schedulers.boundedElastic().schedule(task), CHUNK_SIZE));
+    }
+
+    public Flux<DataBuffer> multipart(Flux<PhotoContent> photos, String boundary, DataBufferFactory bufferFactory) {
+        AtomicInteger index = new AtomicInteger();
+        return photos
+                .concatMap(photo -> {
+                    String name = entryName(index.incrementAndGet(), photo.contentType());
+                    String headers = "--" + boundary + "\r\n" +
+                            "Content-Type: " + photo.contentType() + "\r\n" +
+                            "Content-Disposition: attachment; filename=\"" + name + "\"\r\n" +
+                            (photo.contentHash() != null ? "ETag: \"" + photo.contentHash() + "\"\r\n" : "") +
+                            "\r\n";
+                    return Flux.concat(
+                            Flux.just(wrap(headers, bufferFactory)),
+                            DataBufferUtils.read(photo.resource(), bufferFactory, CHUNK_SIZE),
+                            Flux.just(wrap("\r\n", bufferFactory))
+                    );
+                }, 1)
+                .concatWith(Flux.defer(() -> Flux.just(wrap("--" + boundary + "--\r\n", bufferFactory))));
+    }
+
+    private static DataBuffer wrap(String text, DataBufferFactory bufferFactory) {
+        return bufferFactory.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String entryName(int index, String contentType) {
+        String extension = ImageTypes.PNG.equals(contentType) ? "png" : "jpg";
+        return String.format("photo_%03d.%s", index, extension);
+    }
+}
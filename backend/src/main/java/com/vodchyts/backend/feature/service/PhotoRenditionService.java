@@ -0,0 +1,142 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class PhotoRenditionService {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoRenditionService.class);
+
+    private static final float JPEG_QUALITY = 0.8f;
+
+    public enum Size {
+        ORIGINAL(null, 0),
+        THUMB("thumb", 160),
+        PREVIEW("preview", 1024);
+
+        private final String rendition;
+        private final int maxDimension;
+
+        Size(String rendition, int maxDimension) {
+            this.rendition = rendition;
+            this.maxDimension = maxDimension;
+        }
+
+        public String rendition() {
+            return rendition;
+        }
+
+        public int maxDimension() {
+            return maxDimension;
+        }
+
+        public static Size from(String value) {
+            if (value == null || value.isBlank()) {
+                return ORIGINAL;
+            }
+            return switch (value.toLowerCase()) {
+                case "original", "full" -> ORIGINAL;
+                case "thumb", "thumbnail", "160" -> THUMB;
+                case "preview", "1024" -> PREVIEW;
+                default -> throw new OperationNotAllowedException("Неизвестный размер фото: " + value);
+            };
+        }
+    }
+
+    private final PhotoStore photoStore;
+    private final Scheduler imageScheduler;
+    private final ImageCache imageCache;
+    private final ImageIngestService imageIngestService;
+    // Не даем нескольким одновременным запросам генерировать одну и ту же копию
+    private final Map<String, Mono<Resource>> inFlight = new ConcurrentHashMap<>();
+
+    public PhotoRenditionService(PhotoStore photoStore, @Qualifier("imageScheduler") Scheduler imageScheduler, ImageCache imageCache,
+                                 ImageIngestService imageIngestService) {
+        this.photoStore = photoStore;
+        this.imageScheduler = imageScheduler;
+        this.imageCache = imageCache;
+        this.imageIngestService = imageIngestService;
+    }
+
+    public void generateInBackground(String contentHash) {
+        Flux.just(Size.THUMB, Size.PREVIEW)
+                .concatMap(size -> getRendition(contentHash, size))
+                .subscribe(
+                        resource -> {},
+                        error -> log.error("Не удалось подготовить уменьшенные копии фото {}: {}", contentHash, error.getMessage())
+                );
+    }
+
+    public Mono<Resource> getRendition(String contentHash, Size size) {
+        if (size == Size.ORIGINAL) {
+            return photoStore.load(contentHash);
+        }
+        String key = contentHash + "_" + size.rendition();
+        byte[] cached = imageCache.get(key);
+        if (cached != null) {
+            return Mono.just(new ByteArrayResource(cached));
+        }
+        return photoStore.loadRendition(contentHash, size.rendition())
+                .switchIfEmpty(Mono.defer(() -> inFlight.computeIfAbsent(key, k -> generate(contentHash, size)
+                        .doFinally(signal -> inFlight.remove(k))
+                        .cache())))
+                .flatMap(resource -> cacheIfSmall(key, resource));
+    }
+
+    private Mono<Resource> cacheIfSmall(String key, Resource resource) {
+        return Mono.fromCallable(() -> {
+            if (!imageCache.accepts(resource.contentLength())) {
+                return resource;
+            }
+            byte[] bytes = resource.getContentAsByteArray();
+            imageCache.put(key, bytes);
+            return (Resource) new ByteArrayResource(bytes);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Resource> generate(String contentHash, Size size) {
+        return photoStore.load(contentHash)
+                .publishOn(imageScheduler)
+                .map(original -> render(contentHash, original, size.maxDimension()))
+                .flatMap(bytes -> photoStore.saveRendition(contentHash, size.rendition(), bytes))
+                .then(photoStore.loadRendition(contentHash, size.rendition()));
+    }
+
+    private byte[] render(String contentHash, Resource original, int maxDimension) {
+        byte[] content;
+        BufferedImage source;
+        try {
+            content = original.getContentAsByteArray();
+            source = imageIngestService.decode(content, contentHash, maxDimension);
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось прочитать изображение", e);
+        } catch (OperationNotAllowedException e) {
+            // Файл уже в хранилище: это не ошибка клиента, запросившего копию
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+
+        // Старые фото хранились как есть, с EXIF: учитываем ориентацию, чтобы миниатюра не оказалась повернутой
+        BufferedImage scaled = ImageProcessing.applyOrientation(
+                ImageProcessing.scaleDown(source, maxDimension), ImageProcessing.readExifOrientation(content));
+        try {
+            return ImageProcessing.encodeJpeg(scaled, JPEG_QUALITY);
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось сохранить уменьшенную копию", e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.feature.entity.RequestPhoto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+public class PhotoStorageMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoStorageMigrator.class);
+
+    private final DatabaseClient databaseClient;
+    private final ImageBlobReader blobReader;
+    private final SharedImageService sharedImageService;
+    private final TransactionalOperator transactionalOperator;
+    private final SchedulerLeaseService leaseService;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Value("${photo.migration.batch-size:50}")
+    private int batchSize = 50;
+
+    public PhotoStorageMigrator(DatabaseClient databaseClient, ImageBlobReader blobReader,
+                                SharedImageService sharedImageService, TransactionalOperator transactionalOperator,
+                                SchedulerLeaseService leaseService) {
+        this.databaseClient = databaseClient;
+        this.blobReader = blobReader;
+        this.sharedImageService = sharedImageService;
+        this.transactionalOperator = transactionalOperator;
+        this.leaseService = leaseService;
+    }
+
+    @Scheduled(initialDelayString = "${photo.migration.initial-delay-ms:60000}", fixedDelayString = "${photo.migration.interval-ms:600000}")
+    public void migrateLegacyPhotos() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        leaseService.runAsLeader("photo-migration", () -> Mono.defer(this::migrateBatch)
+                        .repeat()
+                        .takeWhile(migrated -> migrated > 0)
+                        .reduce(0L, Long::sum))
+                .doFinally(signal -> running.set(false))
+                .subscribe(
+                        total -> {
+                            if (total > 0) {
+                                log.info("Перенос фото в хранилище: перенесено {} файлов из таблицы RequestPhotos.", total);
+                            }
+                        },
+                        error -> log.error("Ошибка переноса фото в хранилище.", error)
+                );
+    }
+
+    private Mono<Long> migrateBatch() {
+        return databaseClient.sql("SELECT TOP (:limit) RequestPhotoID FROM RequestPhotos WHERE ContentHash IS NULL AND DATALENGTH(ImageData) > 0 ORDER BY RequestPhotoID")
+                .bind("limit", batchSize)
+                .map(row -> row.get("RequestPhotoID", Integer.class))
+                .all()
+                // Фото переносятся по одному, чтобы не занимать несколько соединений длинными чтениями блобов
+                .concatMap(this::migratePhoto)
+                .count();
+    }
+
+    private Mono<Integer> migratePhoto(Integer photoId) {
+        return migrate(photoId)
+                .thenReturn(photoId)
+                .onErrorResume(e -> {
+                    log.error("Не удалось перенести фото {}: {}", photoId, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    // Блоб читается из базы кусками и сразу пишется во временный файл хранилища
+    public Mono<RequestPhoto> migrate(Integer photoId) {
+        Mono<RequestPhoto> metadata = databaseClient.sql("SELECT " + RequestService.PHOTO_METADATA_COLUMNS + " FROM RequestPhotos WHERE RequestPhotoID = :id")
+                .bind("id", photoId)
+                .map(RequestService::mapPhotoMetadata)
+                .one()
+                .filter(photo -> photo.getContentHash() != null);
+
+        // Ссылка на записанный файл берется до обновления фото. Если фото не изменилось (блоба уже нет или его
+        // перенес параллельный запрос), ссылка отпускается и файл без ссылок удалит периодическая очистка
+        return sharedImageService.store(blobReader.read(ImageBlobReader.Source.REQUEST_PHOTO, photoId))
+                .flatMap(image -> {
+                    Mono<Long> update = image.size() == 0
+                            ? Mono.just(0L)
+                            : databaseClient.sql("UPDATE RequestPhotos SET ContentHash = :hash, ContentType = :type, FileSize = :size, ImageData = NULL " +
+                                            "WHERE RequestPhotoID = :id AND ContentHash IS NULL")
+                                    .bind("hash", image.hash())
+                                    .bind("type", image.contentType())
+                                    .bind("size", image.size())
+                                    .bind("id", photoId)
+                                    .fetch()
+                                    .rowsUpdated();
+                    return sharedImageService.acquire(image)
+                            .then(update)
+                            .flatMap(updated -> updated > 0 ? Mono.<Void>empty() : sharedImageService.release(image.hash()))
+                            .as(transactionalOperator::transactional)
+                            .then(metadata);
+                });
+    }
+}
@@ -0,0 +1,21 @@
+package com.vodchyts.backend.feature.service;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface PhotoStore {
+
+    Mono<String> save(byte[] content);
+
+    Mono<String> save(Flux<DataBuffer> content);
+
+    Mono<Resource> load(String contentHash);
+
+    Mono<Resource> loadRendition(String contentHash, String rendition);
+
+    Mono<Void> saveRendition(String contentHash, String rendition, byte[] content);
+
+    Mono<Void> delete(String contentHash);
+}
@@ -0,0 +1,243 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import com.vodchyts.backend.feature.dto.BulkUpdateRequestsRequest;
+import com.vodchyts.backend.feature.dto.BulkUpdateRequestsResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+@Service
+public class RequestBulkService {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestBulkService.class);
+
+    private static final Set<String> ALLOWED_STATUSES = Set.of("In work", "Done", "Closed");
+    private static final int MAX_LISTED_REQUESTS = 100;
+    private static final int NOTIFICATION_CONCURRENCY = 4;
+
+    private static final String OVERDUE_RECALCULATION_SQL =
+            "UPDATE r SET r.IsOverdue = CASE " +
+                    "WHEN (CASE WHEN uc.UrgencyName = 'Customizable' THEN rcd.Days ELSE uc.DefaultDays END) IS NOT NULL " +
+                    "AND DATEADD(day, CASE WHEN uc.UrgencyName = 'Customizable' THEN rcd.Days ELSE uc.DefaultDays END, r.CreatedAt) < GETDATE() " +
+                    "THEN 1 ELSE 0 END " +
+                    "FROM Requests r " +
+                    "JOIN UrgencyCategories uc ON r.UrgencyID = uc.UrgencyID " +
+                    "LEFT JOIN RequestCustomDays rcd ON r.RequestID = rcd.RequestID " +
+                    "WHERE r.RequestID IN (:ids)";
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final TelegramNotificationService notificationService;
+    private final ShopContractorChatService chatService;
+
+    public RequestBulkService(DatabaseClient databaseClient,
+                              TransactionalOperator transactionalOperator,
+                              TelegramNotificationService notificationService,
+                              ShopContractorChatService chatService) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+        this.notificationService = notificationService;
+        this.chatService = chatService;
+    }
+
+    private record UrgencyInfo(String urgencyName) {
+        boolean isCustomizable() {
+            return "Customizable".equalsIgnoreCase(urgencyName);
+        }
+    }
+
+    public Mono<BulkUpdateRequestsResponse> bulkUpdate(BulkUpdateRequestsRequest dto) {
+        List<Integer> ids = dto.requestIds().stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+
+        if (ids.isEmpty()) {
+            return Mono.error(new OperationNotAllowedException("Нужно выбрать хотя бы одну заявку."));
+        }
+        if (dto.status() == null && dto.assignedContractorID() == null && dto.urgencyID() == null) {
+            return Mono.error(new OperationNotAllowedException("Не указано ни одного изменения."));
+        }
+        if (dto.status() != null && !ALLOWED_STATUSES.contains(dto.status())) {
+            return Mono.error(new OperationNotAllowedException("Недопустимый статус: " + dto.status()));
+        }
+        if (dto.customDays() != null && dto.urgencyID() == null) {
+            return Mono.error(new OperationNotAllowedException("Количество дней можно задать только вместе со срочностью."));
+        }
+
+        Mono<Void> requestsCheck = validateRequestsExist(ids);
+        Mono<String> contractorMono = dto.assignedContractorID() != null
+                ? findContractorLogin(dto.assignedContractorID())
+                : Mono.just("");
+        Mono<UrgencyInfo> urgencyMono = dto.urgencyID() != null
+                ? findUrgency(dto.urgencyID())
+                : Mono.just(new UrgencyInfo(null));
+
+        return requestsCheck
+                .then(Mono.zip(contractorMono, urgencyMono))
+                .flatMap(tuple -> {
+                    String contractorLogin = tuple.getT1();
+                    UrgencyInfo urgency = tuple.getT2();
+
+                    return applyChanges(ids, dto, urgency)
+                            .as(transactionalOperator::transactional)
+                            .flatMap(updated -> sendAggregatedNotifications(ids, buildChangeLines(dto, contractorLogin, urgency))
+                                    .onErrorResume(e -> {
+                                        log.error("Не удалось отправить уведомления о массовом обновлении: {}", e.getMessage());
+                                        return Mono.empty();
+                                    })
+                                    .thenReturn(new BulkUpdateRequestsResponse(updated, ids)));
+                });
+    }
+
+    private Mono<Void> validateRequestsExist(List<Integer> ids) {
+        return databaseClient.sql("SELECT RequestID FROM Requests WHERE RequestID IN (:ids)")
+                .bind("ids", ids)
+                .map(row -> row.get("RequestID", Integer.class))
+                .all()
+                .collect(Collectors.toSet())
+                .flatMap(found -> {
+                    List<Integer> missing = ids.stream().filter(id -> !found.contains(id)).toList();
+                    if (!missing.isEmpty()) {
+                        return Mono.error(new RuntimeException("Заявки не найдены: " + missing));
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<String> findContractorLogin(Integer contractorId) {
+        return databaseClient.sql("SELECT u.Login, ro.RoleName FROM Users u JOIN Roles ro ON u.RoleID = ro.RoleID WHERE u.UserID = :userId")
+                .bind("userId", contractorId)
+                .map(row -> new String[]{row.get("Login", String.class), row.get("RoleName", String.class)})
+                .one()
+                .switchIfEmpty(Mono.error(new RuntimeException("Пользователь с ID " + contractorId + " не найден")))
+                .flatMap(values -> {
+                    if (!"Contractor".equals(values[1])) {
+                        return Mono.error(new OperationNotAllowedException("Можно выбрать только пользователя с ролью 'Подрядчик'"));
+                    }
+                    return Mono.just(values[0]);
+                });
+    }
+
+    private Mono<UrgencyInfo> findUrgency(Integer urgencyId) {
+        return databaseClient.sql("SELECT UrgencyName FROM UrgencyCategories WHERE UrgencyID = :urgencyId")
+                .bind("urgencyId", urgencyId)
+                .map(row -> new UrgencyInfo(row.get("UrgencyName", String.class)))
+                .one()
+                .switchIfEmpty(Mono.error(new RuntimeException("Срочность не найдена")));
+    }
+
+    private Mono<Long> applyChanges(List<Integer> ids, BulkUpdateRequestsRequest dto, UrgencyInfo urgency) {
+        List<String> assignments = new ArrayList<>();
+        Map<String, Object> bindings = new HashMap<>();
+
+        if (dto.status() != null) {
+            assignments.add("Status = :status");
+            bindings.put("status", dto.status());
+            // Как при обновлении одной заявки: дата закрытия ставится при переходе в Closed и не сбрасывается
+            if ("Closed".equals(dto.status())) {
+                assignments.add("ClosedAt = CASE WHEN Status = 'Closed' THEN ClosedAt ELSE GETDATE() END");
+            }
+        }
+        if (dto.assignedContractorID() != null) {
+            assignments.add("AssignedContractorID = :contractorId");
+            bindings.put("contractorId", dto.assignedContractorID());
+        }
+        if (dto.urgencyID() != null) {
+            assignments.add("UrgencyID = :urgencyId");
+            bindings.put("urgencyId", dto.urgencyID());
+        }
+
+        DatabaseClient.GenericExecuteSpec updateSpec = databaseClient
+                .sql("UPDATE Requests SET " + String.join(", ", assignments) + " WHERE RequestID IN (:ids)")
+                .bind("ids", ids);
+        for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+            updateSpec = updateSpec.bind(entry.getKey(), entry.getValue());
+        }
+        Mono<Long> updateMono = updateSpec.fetch().rowsUpdated();
+
+        Mono<Void> customDaysMono = dto.urgencyID() == null ? Mono.empty() : databaseClient.sql("DELETE FROM RequestCustomDays WHERE RequestID IN (:ids)")
+                .bind("ids", ids)
+                .fetch()
+                .rowsUpdated()
+                .then(Mono.defer(() -> {
+                    if (urgency.isCustomizable() && dto.customDays() != null) {
+                        return databaseClient.sql("INSERT INTO RequestCustomDays (RequestID, Days) SELECT RequestID, :days FROM Requests WHERE RequestID IN (:ids)")
+                                .bind("days", dto.customDays())
+                                .bind("ids", ids)
+                                .fetch()
+                                .rowsUpdated()
+                                .then();
+                    }
+                    return Mono.empty();
+                }));
+
+        Mono<Long> overdueMono = databaseClient.sql(OVERDUE_RECALCULATION_SQL)
+                .bind("ids", ids)
+                .fetch()
+                .rowsUpdated();
+
+        return updateMono.flatMap(updated -> customDaysMono
+                .then(overdueMono)
+                .thenReturn(updated));
+    }
+
+    private List<String> buildChangeLines(BulkUpdateRequestsRequest dto, String contractorLogin, UrgencyInfo urgency) {
+        List<String> changes = new ArrayList<>();
+        if (dto.status() != null) {
+            changes.add("📊 *Статус:* " + RequestService.getStatusDisplayName(dto.status()));
+        }
+        if (dto.assignedContractorID() != null) {
+            changes.add("👷 *Исполнитель:* " + notificationService.escapeMarkdown(contractorLogin));
+        }
+        if (dto.urgencyID() != null) {
+            String localizedUrgency = RequestService.getUrgencyDisplayName(urgency.urgencyName());
+            if (urgency.isCustomizable() && dto.customDays() != null) {
+                localizedUrgency += " \\(" + dto.customDays() + " дн\\.\\)";
+            }
+            changes.add("🔥 *Срочность:* " + localizedUrgency);
+        }
+        return changes;
+    }
+
+    private Mono<Void> sendAggregatedNotifications(List<Integer> ids, List<String> changes) {
+        return chatService.groupRequestIdsByChat(ids)
+                .flatMapMany(byChat -> Flux.fromIterable(byChat.entrySet()))
+                .flatMap(entry -> notificationService.sendNotification(
+                        entry.getKey(),
+                        buildAggregatedMessage(entry.getValue(), changes)
+                ), NOTIFICATION_CONCURRENCY)
+                .then();
+    }
+
+    private String buildAggregatedMessage(Collection<Integer> requestIds, List<String> changes) {
+        StringBuilder msgBuilder = new StringBuilder();
+        msgBuilder.append("✏️ *МАССОВОЕ ОБНОВЛЕНИЕ ЗАЯВОК \\(").append(requestIds.size()).append("\\)*\n\n");
+        for (String change : changes) {
+            msgBuilder.append(change).append("\n");
+        }
+
+        msgBuilder.append("\n📋 *Заявки:* ").append(formatRequestIdList(requestIds));
+        return msgBuilder.toString();
+    }
+
+    static String formatRequestIdList(Collection<Integer> requestIds) {
+        List<Integer> sortedIds = requestIds.stream().sorted().toList();
+        String listed = sortedIds.stream()
+                .limit(MAX_LISTED_REQUESTS)
+                .map(id -> "\\#" + id)
+                .collect(Collectors.joining(", "));
+        if (sortedIds.size() > MAX_LISTED_REQUESTS) {
+            listed += " и еще " + (sortedIds.size() - MAX_LISTED_REQUESTS);
+        }
+        return listed;
+    }
+}
@@ -0,0 +1,130 @@
+package com.vodchyts.backend.feature.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import com.vodchyts.backend.feature.dto.RequestResponse;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+@Service
+public class RequestExportService {
+
+    public static final MediaType TEXT_CSV = new MediaType("text", "csv", StandardCharsets.UTF_8);
+
+    // Строки пишутся пачками: память не растет с размером выгрузки, а сеть не дергается на каждую строку
+    private static final int ROWS_PER_CHUNK = 200;
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    // Excel в русской локали ожидает ';' в качестве разделителя
+    private static final String CSV_SEPARATOR = ";";
+    private static final String FORMULA_PREFIXES = "=+-@\t\r";
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final List<String> CSV_HEADER = List.of(
+            "ID", "Описание", "Магазин", "Вид работ", "Срочность", "Исполнитель", "Статус",
+            "Создана", "Закрыта", "Дней на выполнение", "Осталось дней", "Просрочена",
+            "Комментариев", "Фото"
+    );
+
+    public enum Format {
+        CSV, NDJSON;
+
+        public static Format from(String value) {
+            if (value == null || value.isBlank() || "csv".equalsIgnoreCase(value)) {
+                return CSV;
+            }
+            if ("ndjson".equalsIgnoreCase(value)) {
+                return NDJSON;
+            }
+            throw new OperationNotAllowedException("Неподдерживаемый формат выгрузки: " + value);
+        }
+
+        public MediaType mediaType() {
+            return this == CSV ? TEXT_CSV : MediaType.APPLICATION_NDJSON;
+        }
+
+        public String fileExtension() {
+            return this == CSV ? "csv" : "ndjson";
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+
+    public RequestExportService(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public Flux<DataBuffer> export(Format format, Flux<RequestResponse> requests, DataBufferFactory bufferFactory) {
+        Flux<String> lines = format == Format.CSV
+                ? Flux.just(String.join(CSV_SEPARATOR, CSV_HEADER)).concatWith(requests.map(this::toCsvLine))
+                : requests.map(this::toJsonLine);
+
+        Flux<DataBuffer> body = lines
+                .buffer(ROWS_PER_CHUNK)
+                .map(chunk -> {
+                    StringBuilder sb = new StringBuilder();
+                    for (String line : chunk) {
+                        sb.append(line).append('\n');
+                    }
+                    return bufferFactory.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+                });
+
+        if (format == Format.CSV) {
+            body = Flux.just(bufferFactory.wrap(UTF8_BOM)).concatWith(body);
+        }
+        return body;
+    }
+
+    private String toCsvLine(RequestResponse r) {
+        return String.join(CSV_SEPARATOR,
+                String.valueOf(r.requestID()),
+                csv(r.description()),
+                csv(r.shopName()),
+                csv(r.workCategoryName()),
+                csv(RequestService.getUrgencyDisplayName(r.urgencyName())),
+                csv(r.assignedContractorName()),
+                csv(RequestService.getStatusDisplayName(r.status())),
+                formatDate(r.createdAt()),
+                formatDate(r.closedAt()),
+                r.daysForTask() != null ? String.valueOf(r.daysForTask()) : "",
+                r.daysRemaining() != null ? String.valueOf(r.daysRemaining()) : "",
+                Boolean.TRUE.equals(r.isOverdue()) ? "Да" : "Нет",
+                String.valueOf(r.commentCount()),
+                String.valueOf(r.photoCount())
+        );
+    }
+
+    private String toJsonLine(RequestResponse r) {
+        try {
+            return objectMapper.writeValueAsString(r);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать заявку #" + r.requestID(), e);
+        }
+    }
+
+    private static String formatDate(LocalDateTime value) {
+        return value != null ? value.format(DATE_FORMAT) : "";
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        // Excel и LibreOffice считают такую ячейку формулой: апостроф заставляет показать ее как текст
+        if (!value.isEmpty() && FORMULA_PREFIXES.indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.contains(CSV_SEPARATOR) || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
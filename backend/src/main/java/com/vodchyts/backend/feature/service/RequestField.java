@@ -0,0 +1,108 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import com.vodchyts.backend.feature.dto.RequestResponse;
+
+import java.util.*;
+import java.util.function.Function;
+
+// Поля списка заявок для параметра fields=: что выбирать в SQL, какие JOIN для этого нужны и как достать значение из ответа
+enum RequestField {
+    REQUEST_ID("requestID", "r.RequestID", RequestResponse::requestID),
+    DESCRIPTION("description", "r.Description", RequestResponse::description),
+    SHOP_NAME("shopName", "s.ShopName", RequestResponse::shopName, Join.SHOP),
+    SHOP_ID("shopID", "r.ShopID", RequestResponse::shopID),
+    WORK_CATEGORY_NAME("workCategoryName", "wc.WorkCategoryName", RequestResponse::workCategoryName, Join.WORK_CATEGORY),
+    WORK_CATEGORY_ID("workCategoryID", "r.WorkCategoryID", RequestResponse::workCategoryID),
+    URGENCY_NAME("urgencyName", "uc.UrgencyName", RequestResponse::urgencyName, Join.URGENCY),
+    URGENCY_ID("urgencyID", "r.UrgencyID", RequestResponse::urgencyID),
+    ASSIGNED_CONTRACTOR_NAME("assignedContractorName", "u.Login as AssignedContractorName", RequestResponse::assignedContractorName, Join.CONTRACTOR),
+    ASSIGNED_CONTRACTOR_ID("assignedContractorID", "r.AssignedContractorID", RequestResponse::assignedContractorID),
+    STATUS("status", "r.Status", RequestResponse::status),
+    CREATED_AT("createdAt", "r.CreatedAt", RequestResponse::createdAt),
+    CLOSED_AT("closedAt", "r.ClosedAt", RequestResponse::closedAt),
+    // Считается в Java из DaysForTask, CreatedAt и Status, своей колонки нет
+    DAYS_REMAINING("daysRemaining", null, RequestResponse::daysRemaining, Join.URGENCY, Join.CUSTOM_DAYS),
+    DAYS_FOR_TASK("daysForTask", "CASE WHEN uc.UrgencyName = 'Customizable' THEN rcd.Days ELSE uc.DefaultDays END as DaysForTask",
+            RequestResponse::daysForTask, Join.URGENCY, Join.CUSTOM_DAYS),
+    IS_OVERDUE("isOverdue", "r.IsOverdue", RequestResponse::isOverdue),
+    COMMENT_COUNT("commentCount", "(SELECT COUNT(*) FROM RequestComments rc WHERE rc.RequestID = r.RequestID) as CommentCount",
+            RequestResponse::commentCount),
+    PHOTO_COUNT("photoCount", "(SELECT COUNT(*) FROM RequestPhotos rp WHERE rp.RequestID = r.RequestID) as PhotoCount",
+            RequestResponse::photoCount);
+
+    // Порядок констант совпадает с порядком JOIN в исходном запросе
+    enum Join {
+        SHOP("LEFT JOIN Shops s ON r.ShopID = s.ShopID "),
+        WORK_CATEGORY("LEFT JOIN WorkCategories wc ON r.WorkCategoryID = wc.WorkCategoryID "),
+        URGENCY("LEFT JOIN UrgencyCategories uc ON r.UrgencyID = uc.UrgencyID "),
+        CONTRACTOR("LEFT JOIN Users u ON r.AssignedContractorID = u.UserID "),
+        CUSTOM_DAYS("LEFT JOIN RequestCustomDays rcd ON r.RequestID = rcd.RequestID ");
+
+        final String sql;
+
+        Join(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    static final Set<RequestField> ALL = Collections.unmodifiableSet(EnumSet.allOf(RequestField.class));
+
+    private static final Map<String, RequestField> BY_NAME = new HashMap<>();
+
+    static {
+        for (RequestField field : values()) {
+            BY_NAME.put(field.jsonName.toLowerCase(), field);
+        }
+    }
+
+    final String jsonName;
+    final String selectSql;
+    final Function<RequestResponse, Object> accessor;
+    final Set<Join> joins;
+
+    RequestField(String jsonName, String selectSql, Function<RequestResponse, Object> accessor, Join... joins) {
+        this.jsonName = jsonName;
+        this.selectSql = selectSql;
+        this.accessor = accessor;
+        this.joins = joins.length == 0 ? EnumSet.noneOf(Join.class) : EnumSet.copyOf(Arrays.asList(joins));
+    }
+
+    static Optional<RequestField> byName(String name) {
+        return Optional.ofNullable(name == null ? null : BY_NAME.get(name.trim().toLowerCase()));
+    }
+
+    // Пустой или отсутствующий fields= означает полный ответ, как раньше
+    static Set<RequestField> parse(List<String> names) {
+        if (names == null) {
+            return ALL;
+        }
+        Set<RequestField> fields = EnumSet.noneOf(RequestField.class);
+        for (String name : names) {
+            if (name == null || name.isBlank()) {
+                continue;
+            }
+            fields.add(byName(name)
+                    .orElseThrow(() -> new OperationNotAllowedException("Неизвестное поле заявки: " + name.trim())));
+        }
+        return fields.isEmpty() ? ALL : Collections.unmodifiableSet(fields);
+    }
+
+    // Колонки, которые нужно выбрать: сами поля плюс то, из чего считается daysRemaining
+    static Set<RequestField> columnsFor(Set<RequestField> fields) {
+        Set<RequestField> columns = EnumSet.of(REQUEST_ID);
+        columns.addAll(fields);
+        if (fields.contains(DAYS_REMAINING)) {
+            columns.addAll(List.of(DAYS_FOR_TASK, CREATED_AT, STATUS));
+        }
+        return columns;
+    }
+
+    static Map<String, Object> project(RequestResponse response, Set<RequestField> fields) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (RequestField field : fields) {
+            values.put(field.jsonName, field.accessor.apply(response));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,443 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import com.vodchyts.backend.feature.dto.ImportRequestsResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class RequestImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestImportService.class);
+
+    private static final int MAX_IMPORT_ROWS = 20_000;
+    // 6 параметров на строку: держимся далеко от лимита SQL Server в 2100 параметров
+    private static final int ROWS_PER_BATCH = 200;
+    private static final int MAX_DESCRIPTION_LENGTH = 2000;
+    private static final int NOTIFICATION_CONCURRENCY = 4;
+
+    private static final Map<String, String> COLUMN_ALIASES = Map.ofEntries(
+            Map.entry("description", "description"),
+            Map.entry("описание", "description"),
+            Map.entry("shop", "shop"),
+            Map.entry("магазин", "shop"),
+            Map.entry("workcategory", "workCategory"),
+            Map.entry("вид работ", "workCategory"),
+            Map.entry("urgency", "urgency"),
+            Map.entry("срочность", "urgency"),
+            Map.entry("contractor", "contractor"),
+            Map.entry("исполнитель", "contractor"),
+            Map.entry("customdays", "customDays"),
+            Map.entry("дней", "customDays")
+    );
+    private static final List<String> REQUIRED_COLUMNS = List.of("description", "shop", "workCategory", "urgency", "contractor");
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final TelegramNotificationService notificationService;
+    private final ShopContractorChatService chatService;
+    private final RequestSearchIndex searchIndex;
+
+    public RequestImportService(DatabaseClient databaseClient,
+                                TransactionalOperator transactionalOperator,
+                                TelegramNotificationService notificationService,
+                                ShopContractorChatService chatService,
+                                RequestSearchIndex searchIndex) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+        this.notificationService = notificationService;
+        this.chatService = chatService;
+        this.searchIndex = searchIndex;
+    }
+
+    private record UrgencyRef(Integer id, String name) {
+        boolean isCustomizable() {
+            return "Customizable".equalsIgnoreCase(name);
+        }
+    }
+
+    private record ReferenceData(Map<String, Integer> shops,
+                                 Map<String, Integer> workCategories,
+                                 Map<String, UrgencyRef> urgencies,
+                                 Map<String, Integer> contractors) {}
+
+    record CsvRecord(long line, List<String> values) {}
+
+    private record ImportRow(long line, String description, Integer shopId, Integer workCategoryId,
+                             Integer urgencyId, Integer contractorId, Integer customDays) {}
+
+    private record ParsedRow(ImportRow row, ImportRequestsResponse.RowError error) {}
+
+    private static final class ImportState {
+        private final AtomicLong totalRows = new AtomicLong();
+        private final List<Integer> createdIds = Collections.synchronizedList(new ArrayList<>());
+        private final List<ImportRequestsResponse.RowError> errors = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    public Mono<ImportRequestsResponse> importRequests(FilePart filePart, Integer createdByUserId) {
+        ImportState state = new ImportState();
+        LocalDateTime createdAt = LocalDateTime.now();
+
+        return loadReferenceData()
+                .flatMap(refs -> {
+                    Flux<CsvRecord> records = readRecords(filePart);
+                    return records.switchOnFirst((signal, flux) -> {
+                        if (signal.isOnComplete()) {
+                            return Flux.error(new OperationNotAllowedException("Файл импорта пуст."));
+                        }
+                        if (!signal.hasValue()) {
+                            return Flux.error(signal.getThrowable());
+                        }
+                        Map<String, Integer> columns = resolveColumns(signal.get());
+                        // Первая строка сверх лимита дает одну ошибку, после нее чтение файла прекращается
+                        return flux.skip(1)
+                                .take(MAX_IMPORT_ROWS + 1)
+                                .map(record -> {
+                                    if (state.totalRows.get() >= MAX_IMPORT_ROWS) {
+                                        return new ParsedRow(null, new ImportRequestsResponse.RowError(record.line(),
+                                                "Превышен лимит строк в одном файле: " + MAX_IMPORT_ROWS + ", остальные строки не импортированы"));
+                                    }
+                                    state.totalRows.incrementAndGet();
+                                    return parseRow(record, columns, refs);
+                                });
+                    })
+                    .filter(parsed -> {
+                        if (parsed.error() != null) {
+                            state.errors.add(parsed.error());
+                            return false;
+                        }
+                        return true;
+                    })
+                    .map(ParsedRow::row)
+                    .buffer(ROWS_PER_BATCH)
+                    .concatMap(batch -> insertBatch(batch, createdByUserId, createdAt)
+                            .as(transactionalOperator::transactional)
+                            .doOnNext(state.createdIds::addAll)
+                            .onErrorResume(e -> {
+                                log.error("Ошибка сохранения пакета импорта (строки {}-{}): {}",
+                                        batch.get(0).line(), batch.get(batch.size() - 1).line(), e.getMessage());
+                                batch.forEach(row -> state.errors.add(new ImportRequestsResponse.RowError(
+                                        row.line(), "Ошибка сохранения: " + e.getMessage())));
+                                return Mono.empty();
+                            }))
+                    .then();
+                })
+                .then(Mono.defer(() -> {
+                    List<Integer> createdIds = List.copyOf(state.createdIds);
+                    log.info("Импорт заявок: создано {}, ошибок {}", createdIds.size(), state.errors.size());
+                    return searchIndex.reindex(createdIds)
+                            .then(sendSummaryNotifications(createdIds))
+                            .onErrorResume(e -> {
+                                log.error("Не удалось отправить уведомления об импорте: {}", e.getMessage());
+                                return Mono.empty();
+                            })
+                            .thenReturn(new ImportRequestsResponse(
+                                    state.totalRows.get(),
+                                    createdIds.size(),
+                                    createdIds,
+                                    state.errors.stream().sorted(Comparator.comparingLong(ImportRequestsResponse.RowError::line)).toList()
+                            ));
+                }));
+    }
+
+    private Mono<ReferenceData> loadReferenceData() {
+        Mono<Map<String, Integer>> shops = databaseClient.sql("SELECT ShopID, ShopName FROM Shops")
+                .map(row -> Map.entry(normalize(row.get("ShopName", String.class)), row.get("ShopID", Integer.class)))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+        Mono<Map<String, Integer>> workCategories = databaseClient.sql("SELECT WorkCategoryID, WorkCategoryName FROM WorkCategories")
+                .map(row -> Map.entry(normalize(row.get("WorkCategoryName", String.class)), row.get("WorkCategoryID", Integer.class)))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+        Mono<Map<String, UrgencyRef>> urgencies = databaseClient.sql("SELECT UrgencyID, UrgencyName FROM UrgencyCategories")
+                .map(row -> new UrgencyRef(row.get("UrgencyID", Integer.class), row.get("UrgencyName", String.class)))
+                .all()
+                .collectList()
+                .map(list -> {
+                    Map<String, UrgencyRef> byName = new HashMap<>();
+                    for (UrgencyRef urgency : list) {
+                        byName.put(normalize(urgency.name()), urgency);
+                        byName.put(normalize(RequestService.getUrgencyDisplayName(urgency.name())), urgency);
+                    }
+                    return byName;
+                });
+
+        Mono<Map<String, Integer>> contractors = databaseClient.sql("SELECT u.UserID, u.Login FROM Users u JOIN Roles ro ON u.RoleID = ro.RoleID WHERE ro.RoleName = 'Contractor'")
+                .map(row -> Map.entry(normalize(row.get("Login", String.class)), row.get("UserID", Integer.class)))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+        return Mono.zip(shops, workCategories, urgencies, contractors)
+                .map(tuple -> new ReferenceData(tuple.getT1(), tuple.getT2(), tuple.getT3(), tuple.getT4()));
+    }
+
+    private Flux<CsvRecord> readRecords(FilePart filePart) {
+        Flux<String> lines = StringDecoder.allMimeTypes(List.of("\n"), true)
+                .decode(filePart.content(), ResolvableType.forClass(String.class), null, Collections.emptyMap());
+
+        return Flux.defer(() -> {
+            CsvRecordAssembler assembler = new CsvRecordAssembler();
+            return lines.concatMapIterable(assembler::accept)
+                    .concatWith(Mono.fromCallable(assembler::finish));
+        }).filter(record -> record.values().stream().anyMatch(value -> !value.isBlank()));
+    }
+
+    private Map<String, Integer> resolveColumns(CsvRecord header) {
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> values = header.values();
+        for (int i = 0; i < values.size(); i++) {
+            String key = COLUMN_ALIASES.get(normalize(values.get(i).replace("\uFEFF", "")));
+            if (key != null) {
+                columns.putIfAbsent(key, i);
+            }
+        }
+        List<String> missing = REQUIRED_COLUMNS.stream().filter(column -> !columns.containsKey(column)).toList();
+        if (!missing.isEmpty()) {
+            throw new OperationNotAllowedException("В заголовке файла отсутствуют столбцы: " + String.join(", ", missing));
+        }
+        return columns;
+    }
+
+    private ParsedRow parseRow(CsvRecord record, Map<String, Integer> columns, ReferenceData refs) {
+        List<String> errors = new ArrayList<>();
+
+        String description = value(record, columns, "description");
+        if (description.isEmpty()) {
+            errors.add("Описание не может быть пустым");
+        } else if (description.length() > MAX_DESCRIPTION_LENGTH) {
+            errors.add("Описание не может превышать " + MAX_DESCRIPTION_LENGTH + " символов");
+        }
+
+        String shopName = value(record, columns, "shop");
+        Integer shopId = refs.shops().get(normalize(shopName));
+        if (shopId == null) {
+            errors.add("Магазин '" + shopName + "' не найден");
+        }
+
+        String workCategoryName = value(record, columns, "workCategory");
+        Integer workCategoryId = refs.workCategories().get(normalize(workCategoryName));
+        if (workCategoryId == null) {
+            errors.add("Вид работ '" + workCategoryName + "' не найден");
+        }
+
+        String urgencyName = value(record, columns, "urgency");
+        UrgencyRef urgency = refs.urgencies().get(normalize(urgencyName));
+        if (urgency == null) {
+            errors.add("Срочность '" + urgencyName + "' не найдена");
+        }
+
+        String contractorLogin = value(record, columns, "contractor");
+        Integer contractorId = refs.contractors().get(normalize(contractorLogin));
+        if (contractorId == null) {
+            errors.add("Подрядчик '" + contractorLogin + "' не найден");
+        }
+
+        Integer customDays = null;
+        String customDaysValue = value(record, columns, "customDays");
+        if (!customDaysValue.isEmpty()) {
+            try {
+                customDays = Integer.parseInt(customDaysValue);
+                if (customDays < 1) {
+                    errors.add("Количество дней должно быть больше 0");
+                }
+            } catch (NumberFormatException e) {
+                errors.add("Некорректное количество дней: '" + customDaysValue + "'");
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            return new ParsedRow(null, new ImportRequestsResponse.RowError(record.line(), String.join("; ", errors)));
+        }
+        return new ParsedRow(new ImportRow(record.line(), description, shopId, workCategoryId,
+                urgency.id(), contractorId, urgency.isCustomizable() ? customDays : null), null);
+    }
+
+    private Mono<List<Integer>> insertBatch(List<ImportRow> batch, Integer createdByUserId, LocalDateTime createdAt) {
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) values.append(", ");
+            values.append("(:n").append(i).append(", :d").append(i).append(", :s").append(i)
+                    .append(", :w").append(i).append(", :u").append(i).append(", :c").append(i).append(")");
+        }
+
+        // MERGE вместо INSERT: только он позволяет вернуть в OUTPUT номер исходной строки вместе с новым RequestID
+        String sql = "MERGE INTO Requests AS target " +
+                "USING (VALUES " + values + ") AS src (RowIndex, Description, ShopID, WorkCategoryID, UrgencyID, AssignedContractorID) " +
+                "ON 1 = 0 " +
+                "WHEN NOT MATCHED THEN INSERT (Description, ShopID, WorkCategoryID, UrgencyID, CreatedByUserID, AssignedContractorID, Status, CreatedAt, IsOverdue) " +
+                "VALUES (src.Description, src.ShopID, src.WorkCategoryID, src.UrgencyID, :createdBy, src.AssignedContractorID, 'In work', :createdAt, 0) " +
+                "OUTPUT src.RowIndex, INSERTED.RequestID;";
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql)
+                .bind("createdBy", createdByUserId)
+                .bind("createdAt", createdAt);
+        for (int i = 0; i < batch.size(); i++) {
+            ImportRow row = batch.get(i);
+            spec = spec.bind("n" + i, i)
+                    .bind("d" + i, row.description())
+                    .bind("s" + i, row.shopId())
+                    .bind("w" + i, row.workCategoryId())
+                    .bind("u" + i, row.urgencyId())
+                    .bind("c" + i, row.contractorId());
+        }
+
+        return spec.map(row -> Map.entry(row.get("RowIndex", Integer.class), row.get("RequestID", Integer.class)))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .flatMap(idsByIndex -> insertCustomDays(batch, idsByIndex)
+                        .then(Mono.fromSupplier(() -> {
+                            List<Integer> ids = new ArrayList<>(batch.size());
+                            for (int i = 0; i < batch.size(); i++) {
+                                ids.add(idsByIndex.get(i));
+                            }
+                            return ids;
+                        })));
+    }
+
+    private Mono<Void> insertCustomDays(List<ImportRow> batch, Map<Integer, Integer> idsByIndex) {
+        StringBuilder values = new StringBuilder();
+        Map<String, Object> bindings = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Integer days = batch.get(i).customDays();
+            if (days == null) continue;
+            if (!bindings.isEmpty()) values.append(", ");
+            values.append("(:r").append(i).append(", :days").append(i).append(")");
+            bindings.put("r" + i, idsByIndex.get(i));
+            bindings.put("days" + i, days);
+        }
+        if (bindings.isEmpty()) {
+            return Mono.empty();
+        }
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("INSERT INTO RequestCustomDays (RequestID, Days) VALUES " + values);
+        for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+            spec = spec.bind(entry.getKey(), entry.getValue());
+        }
+        return spec.fetch().rowsUpdated().then();
+    }
+
+    private Mono<Void> sendSummaryNotifications(List<Integer> createdIds) {
+        if (createdIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return chatService.groupRequestIdsByChat(createdIds)
+                .flatMapMany(byChat -> Flux.fromIterable(byChat.entrySet()))
+                .flatMap(entry -> notificationService.sendNotification(
+                        entry.getKey(),
+                        "📥 *ИМПОРТ ЗАЯВОК \\(" + entry.getValue().size() + "\\)*\n\n" +
+                                "Созданы новые заявки\\.\n\n" +
+                                "📋 *Заявки:* " + RequestBulkService.formatRequestIdList(entry.getValue())
+                ), NOTIFICATION_CONCURRENCY)
+                .then();
+    }
+
+    private static String value(CsvRecord record, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= record.values().size()) {
+            return "";
+        }
+        return record.values().get(index).trim();
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Поле в кавычках может содержать переводы строк, поэтому запись заканчивается только когда все кавычки закрыты.
+    // Разделитель (';' или ',') определяется по первой записи.
+    static final class CsvRecordAssembler {
+        private final StringBuilder pending = new StringBuilder();
+        private long lineNumber = 0;
+        private long recordStartLine = 1;
+        private char separator = 0;
+        private int pendingQuotes = 0;
+
+        List<CsvRecord> accept(String line) {
+            lineNumber++;
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            if (pending.isEmpty()) {
+                recordStartLine = lineNumber;
+            } else {
+                pending.append('\n');
+            }
+            pending.append(line);
+            pendingQuotes += countQuotes(line);
+
+            if (pendingQuotes % 2 != 0) {
+                return List.of();
+            }
+            return List.of(flush());
+        }
+
+        CsvRecord finish() {
+            if (pending.isEmpty()) {
+                return new CsvRecord(lineNumber, List.of());
+            }
+            return flush();
+        }
+
+        private CsvRecord flush() {
+            String text = pending.toString();
+            pending.setLength(0);
+            pendingQuotes = 0;
+            if (separator == 0) {
+                separator = text.indexOf(';') >= 0 ? ';' : ',';
+            }
+            return new CsvRecord(recordStartLine, split(text));
+        }
+
+        private List<String> split(String text) {
+            List<String> values = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < text.length(); i++) {
+                char ch = text.charAt(i);
+                if (quoted) {
+                    if (ch == '"') {
+                        if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                            current.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        current.append(ch);
+                    }
+                } else if (ch == '"') {
+                    quoted = true;
+                } else if (ch == separator) {
+                    values.add(current.toString());
+                    current.setLength(0);
+                } else {
+                    current.append(ch);
+                }
+            }
+            values.add(current.toString());
+            return values;
+        }
+
+        private static int countQuotes(String text) {
+            int quotes = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '"') quotes++;
+            }
+            return quotes;
+        }
+    }
+}
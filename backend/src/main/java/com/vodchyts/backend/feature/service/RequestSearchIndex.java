@@ -0,0 +1,360 @@
+package com.vodchyts.backend.feature.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Инвертированный индекс по описаниям заявок и тексту комментариев. Живет в памяти процесса и не зависит от СУБД,
+// поэтому одинаково работает на SQL Server и на H2; после записей обновляется точечно, целиком перестраивается по расписанию.
+// Индекс свой у каждой реплики: ID измененных заявок записываются в SearchIndexChanges, и каждая реплика раз в
+// search.index.sync-interval-ms перечитывает заявки из новых записей журнала. Плановая перестройка остается страховкой
+@Component
+public class RequestSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestSearchIndex.class);
+
+    private static final float DESCRIPTION_WEIGHT = 2.0f;
+    private static final float COMMENT_WEIGHT = 1.0f;
+    // Совпадение по началу слова весит меньше точного
+    private static final double PREFIX_FACTOR = 0.5;
+    private static final int REINDEX_BATCH = 500;
+    // Записей журнала изменений за один опрос; остальные дочитываются следующим
+    private static final int SYNC_BATCH = 2000;
+
+    private static final class Snapshot {
+        // терм -> (RequestID -> вес терма в заявке)
+        final ConcurrentSkipListMap<String, Map<Integer, Float>> postings = new ConcurrentSkipListMap<>();
+        final Map<Integer, Map<String, Float>> documents = new ConcurrentHashMap<>();
+    }
+
+    private record IndexedText(Integer requestId, String text, boolean description) {}
+
+    private final DatabaseClient databaseClient;
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private final AtomicBoolean syncing = new AtomicBoolean(false);
+    // Заявки, измененные во время перестройки: после подмены снимка они перечитываются еще раз
+    private final Set<Integer> touchedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private volatile Snapshot snapshot = new Snapshot();
+    private volatile boolean ready = false;
+    // Последняя примененная запись SearchIndexChanges; -1, пока индекс ни разу не построен
+    private volatile long lastChangeId = -1;
+
+    @Value("${search.index.enabled:true}")
+    private boolean enabled = true;
+
+    public RequestSearchIndex(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    @Scheduled(initialDelayString = "${search.index.initial-delay-ms:5000}", fixedDelayString = "${search.index.refresh-interval-ms:900000}")
+    public void scheduledRebuild() {
+        if (!enabled) {
+            return;
+        }
+        rebuild().subscribe(
+                count -> log.info("Поисковый индекс заявок перестроен: {} заявок.", count),
+                error -> log.error("Не удалось перестроить поисковый индекс заявок.", error)
+        );
+    }
+
+    public Mono<Integer> rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        touchedDuringRebuild.clear();
+        Snapshot fresh = new Snapshot();
+        Map<Integer, Map<String, Float>> documents = new HashMap<>();
+
+        // Отметка журнала берется до чтения заявок: изменения, сделанные во время перестройки, применятся повторно
+        Mono<Long> changeMark = databaseClient.sql("SELECT ISNULL(MAX(ChangeID), 0) AS LastChangeID FROM SearchIndexChanges")
+                .map(row -> row.get("LastChangeID", Long.class))
+                .one()
+                .defaultIfEmpty(0L);
+        Mono<Void> descriptions = databaseClient.sql("SELECT RequestID, Description FROM Requests")
+                .map(row -> Map.entry(row.get("RequestID", Integer.class), Objects.toString(row.get("Description", String.class), "")))
+                .all()
+                .doOnNext(entry -> addTerms(documents.computeIfAbsent(entry.getKey(), id -> new HashMap<>()), entry.getValue(), DESCRIPTION_WEIGHT))
+                .then();
+        Mono<Void> comments = databaseClient.sql("SELECT RequestID, CommentText FROM RequestComments")
+                .map(row -> Map.entry(row.get("RequestID", Integer.class), Objects.toString(row.get("CommentText", String.class), "")))
+                .all()
+                .doOnNext(entry -> {
+                    Map<String, Float> terms = documents.get(entry.getKey());
+                    if (terms != null) {
+                        addTerms(terms, entry.getValue(), COMMENT_WEIGHT);
+                    }
+                })
+                .then();
+
+        return changeMark.flatMap(mark -> descriptions.then(comments)
+                        .then(Mono.fromCallable(() -> {
+                            documents.forEach((id, terms) -> put(fresh, id, dampen(terms)));
+                            snapshot = fresh;
+                            ready = true;
+                            if (lastChangeId < 0) {
+                                lastChangeId = mark;
+                            }
+                            return documents.size();
+                        })))
+                .flatMap(count -> {
+                    List<Integer> touched = new ArrayList<>(touchedDuringRebuild);
+                    touchedDuringRebuild.clear();
+                    return reindexLocally(touched).thenReturn(count);
+                })
+                .doFinally(signal -> rebuilding.set(false));
+    }
+
+    @Scheduled(initialDelayString = "${search.index.sync-interval-ms:5000}", fixedDelayString = "${search.index.sync-interval-ms:5000}")
+    public void scheduledSync() {
+        if (!isReady()) {
+            return;
+        }
+        applyChanges().subscribe(
+                count -> {},
+                error -> log.warn("Не удалось применить изменения поискового индекса: {}", error.getMessage())
+        );
+    }
+
+    // Перечитывает заявки, записанные в журнал после последней примененной записи, в том числе своей репликой
+    public Mono<Integer> applyChanges() {
+        long after = lastChangeId;
+        if (after < 0 || !syncing.compareAndSet(false, true)) {
+            return Mono.just(0);
+        }
+        return databaseClient.sql("SELECT TOP (:limit) ChangeID, RequestID FROM SearchIndexChanges WHERE ChangeID > :after ORDER BY ChangeID")
+                .bind("limit", SYNC_BATCH)
+                .bind("after", after)
+                .map(row -> Map.entry(row.get("ChangeID", Long.class), row.get("RequestID", Integer.class)))
+                .all()
+                .collectList()
+                .flatMap(changes -> {
+                    if (changes.isEmpty()) {
+                        return Mono.just(0);
+                    }
+                    Set<Integer> ids = new LinkedHashSet<>();
+                    changes.forEach(change -> ids.add(change.getValue()));
+                    long last = changes.get(changes.size() - 1).getKey();
+                    return reindexLocally(ids).then(Mono.fromCallable(() -> {
+                        lastChangeId = Math.max(lastChangeId, last);
+                        return ids.size();
+                    }));
+                })
+                .doFinally(signal -> syncing.set(false));
+    }
+
+    public Mono<Long> deleteChangesOlderThan(Duration age) {
+        return databaseClient.sql("DELETE FROM SearchIndexChanges WHERE ChangedAt < DATEADD(second, -:seconds, SYSUTCDATETIME())")
+                .bind("seconds", age.toSeconds())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Void> reindex(Integer requestId) {
+        return reindex(List.of(requestId));
+    }
+
+    // Перечитывает описание и комментарии заявок из базы и сообщает о них другим репликам;
+    // ошибки только логируются, чтобы не ронять саму запись
+    public Mono<Void> reindex(Collection<Integer> requestIds) {
+        if (!enabled || requestIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return reindexLocally(requestIds).then(publish(requestIds));
+    }
+
+    private Mono<Void> reindexLocally(Collection<Integer> requestIds) {
+        if (!enabled || requestIds.isEmpty()) {
+            return Mono.empty();
+        }
+        if (rebuilding.get()) {
+            touchedDuringRebuild.addAll(requestIds);
+        }
+        return Flux.fromIterable(new LinkedHashSet<>(requestIds))
+                .buffer(REINDEX_BATCH)
+                .concatMap(this::reindexBatch)
+                .onErrorResume(e -> {
+                    log.warn("Не удалось обновить поисковый индекс для заявок {}: {}", requestIds, e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<Void> publish(Collection<Integer> requestIds) {
+        return Flux.fromIterable(new LinkedHashSet<>(requestIds))
+                .buffer(REINDEX_BATCH)
+                .concatMap(ids -> {
+                    StringBuilder values = new StringBuilder();
+                    for (int i = 0; i < ids.size(); i++) {
+                        if (i > 0) values.append(", ");
+                        values.append("(:r").append(i).append(")");
+                    }
+                    DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("INSERT INTO SearchIndexChanges (RequestID) VALUES " + values);
+                    for (int i = 0; i < ids.size(); i++) {
+                        spec = spec.bind("r" + i, ids.get(i));
+                    }
+                    return spec.fetch().rowsUpdated();
+                })
+                .onErrorResume(e -> {
+                    log.warn("Не удалось записать изменения поискового индекса для заявок {}: {}", requestIds, e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<Void> reindexBatch(List<Integer> ids) {
+        String sql = "SELECT RequestID, Description AS Text, 1 AS IsDescription FROM Requests WHERE RequestID IN (:ids) " +
+                "UNION ALL SELECT RequestID, CommentText, 0 FROM RequestComments WHERE RequestID IN (:commentRequestIds)";
+        return databaseClient.sql(sql)
+                .bind("ids", ids)
+                .bind("commentRequestIds", ids)
+                .map(row -> new IndexedText(
+                        row.get("RequestID", Integer.class),
+                        Objects.toString(row.get("Text", String.class), ""),
+                        Objects.equals(row.get("IsDescription", Integer.class), 1)
+                ))
+                .all()
+                .collectList()
+                .doOnNext(rows -> {
+                    Map<Integer, Map<String, Float>> documents = new HashMap<>();
+                    Set<Integer> existing = new HashSet<>();
+                    for (IndexedText row : rows) {
+                        if (row.description()) {
+                            existing.add(row.requestId());
+                        }
+                        addTerms(documents.computeIfAbsent(row.requestId(), k -> new HashMap<>()), row.text(),
+                                row.description() ? DESCRIPTION_WEIGHT : COMMENT_WEIGHT);
+                    }
+                    Snapshot current = snapshot;
+                    for (Integer id : ids) {
+                        if (existing.contains(id)) {
+                            put(current, id, dampen(documents.get(id)));
+                        } else {
+                            remove(current, id);
+                        }
+                    }
+                })
+                .then();
+    }
+
+    public Mono<Void> remove(Integer requestId) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(() -> {
+                    if (rebuilding.get()) {
+                        touchedDuringRebuild.add(requestId);
+                    }
+                    remove(snapshot, requestId);
+                })
+                .then(publish(List.of(requestId)));
+    }
+
+    // Можно ли искать по индексу; если нет (индекс еще строится или в запросе нет ни одного слова), вызывающий
+    // откатывается на LIKE
+    public boolean canSearch(String query) {
+        return isReady() && !SearchTokenizer.terms(query).isEmpty();
+    }
+
+    // Подходящие заявки по убыванию релевантности, не больше limit; Optional.empty(), если искать по индексу нельзя.
+    // Права и фильтры списка вызывающий применяет в SQL к этой выдаче
+    public Optional<List<Integer>> search(String query, int limit) {
+        if (!isReady()) {
+            return Optional.empty();
+        }
+        List<String> terms = SearchTokenizer.terms(query);
+        if (terms.isEmpty()) {
+            return Optional.empty();
+        }
+        Snapshot current = snapshot;
+        int total = Math.max(1, current.documents.size());
+
+        Map<Integer, Double> scores = null;
+        for (String term : new LinkedHashSet<>(terms)) {
+            Map<Integer, Double> termScores = new HashMap<>();
+            accumulate(termScores, current.postings.get(term), total, 1.0);
+            // Все слова, начинающиеся с терма: ограничение на их число при AND-семантике теряло бы подходящие заявки
+            ConcurrentNavigableMap<String, Map<Integer, Float>> prefixed =
+                    current.postings.subMap(term, false, term + Character.MAX_VALUE, false);
+            for (Map<Integer, Float> postings : prefixed.values()) {
+                accumulate(termScores, postings, total, PREFIX_FACTOR);
+            }
+            // Все слова запроса должны найтись в заявке
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                scores.keySet().retainAll(termScores.keySet());
+                scores.replaceAll((id, score) -> score + termScores.get(id));
+            }
+            if (scores.isEmpty()) {
+                return Optional.of(List.of());
+            }
+        }
+
+        return Optional.of(scores.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList());
+    }
+
+    private static void accumulate(Map<Integer, Double> scores, Map<Integer, Float> postings, int total, double factor) {
+        if (postings == null || postings.isEmpty()) {
+            return;
+        }
+        double idf = Math.log(1.0 + (double) total / postings.size());
+        postings.forEach((id, weight) -> scores.merge(id, weight * idf * factor, Double::sum));
+    }
+
+    private static void addTerms(Map<String, Float> terms, String text, float weight) {
+        for (String term : SearchTokenizer.terms(text)) {
+            terms.merge(term, weight, Float::sum);
+        }
+    }
+
+    // Логарифм частоты: длинная переписка не должна перевешивать заявку, где слово стоит в описании
+    private static Map<String, Float> dampen(Map<String, Float> terms) {
+        if (terms == null) {
+            return Map.of();
+        }
+        Map<String, Float> weights = new HashMap<>(terms.size());
+        terms.forEach((term, frequency) -> weights.put(term, (float) (1.0 + Math.log(frequency))));
+        return weights;
+    }
+
+    private static synchronized void put(Snapshot target, Integer requestId, Map<String, Float> terms) {
+        remove(target, requestId);
+        target.documents.put(requestId, terms);
+        terms.forEach((term, weight) -> target.postings
+                .computeIfAbsent(term, t -> new ConcurrentHashMap<>())
+                .put(requestId, weight));
+    }
+
+    private static synchronized void remove(Snapshot target, Integer requestId) {
+        Map<String, Float> previous = target.documents.remove(requestId);
+        if (previous == null) {
+            return;
+        }
+        for (String term : previous.keySet()) {
+            target.postings.computeIfPresent(term, (t, postings) -> {
+                postings.remove(requestId);
+                return postings.isEmpty() ? null : postings;
+            });
+        }
+    }
+}
@@ -15,6 +15,7 @@ import org.springframework.data.relational.core.query.Query;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.function.Tuple2;
@@ -25,6 +26,7 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -32,6 +34,15 @@ public class RequestService {
 
     private static final long MAX_SINGLE_FILE_SIZE = 5 * 1024 * 1024;
     private static final List<String> ALLOWED_MIMES = List.of("image/jpeg", "image/png");
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int UPLOAD_CONCURRENCY = 3;
+    private static final int MAX_COMMENTS_PAGE = 500;
+    private static final int DETAILS_COMMENTS_PAGE = 50;
+    // Выдача индекса уходит в запрос одним JSON-параметром; лимит держит его в пределах ~150 КБ.
+    // Если совпадений больше, в ответе выставляется truncated
+    private static final int MAX_SEARCH_MATCHES = 20_000;
+    private static final String SEARCH_JOIN = " JOIN OPENJSON(:searchIds) sr ON r.RequestID = CAST(sr.[value] AS INT)";
+    static final String PHOTO_METADATA_COLUMNS = "RequestPhotoID, RequestID, ContentHash, ContentType, FileSize";
 
     private final R2dbcEntityTemplate template;
     private final DatabaseClient databaseClient;
@@ -43,11 +54,18 @@ public class RequestService {
     private final ReactiveUserRepository userRepository;
     private final ReactiveShopRepository shopRepository;
     private final TelegramNotificationService notificationService;
-    private final ReactiveShopContractorChatRepository chatRepository;
+    private final ChatRoutingCache chatRoutingCache;
     private final ReactiveWorkCategoryRepository workCategoryRepository;
     private final ReactiveUrgencyCategoryRepository urgencyCategoryRepository;
-
-    public RequestService(R2dbcEntityTemplate template, DatabaseClient databaseClient, ReactiveRequestRepository requestRepository, ReactiveRequestCustomDayRepository customDayRepository, ReactiveRequestCommentRepository commentRepository, ReactiveRequestPhotoRepository photoRepository, ReactiveRoleRepository roleRepository, ReactiveUserRepository userRepository, ReactiveShopRepository shopRepository, TelegramNotificationService notificationService, ReactiveShopContractorChatRepository chatRepository, ReactiveWorkCategoryRepository workCategoryRepository, ReactiveUrgencyCategoryRepository urgencyCategoryRepository) {
+    private final PhotoStore photoStore;
+    private final PhotoRenditionService photoRenditionService;
+    private final PhotoStorageMigrator photoStorageMigrator;
+    private final SharedImageService sharedImageService;
+    private final TransactionalOperator transactionalOperator;
+    private final ImageIngestService imageIngestService;
+    private final RequestSearchIndex searchIndex;
+
+    public RequestService(R2dbcEntityTemplate template, DatabaseClient databaseClient, ReactiveRequestRepository requestRepository, ReactiveRequestCustomDayRepository customDayRepository, ReactiveRequestCommentRepository commentRepository, ReactiveRequestPhotoRepository photoRepository, ReactiveRoleRepository roleRepository, ReactiveUserRepository userRepository, ReactiveShopRepository shopRepository, TelegramNotificationService notificationService, ChatRoutingCache chatRoutingCache, ReactiveWorkCategoryRepository workCategoryRepository, ReactiveUrgencyCategoryRepository urgencyCategoryRepository, PhotoStore photoStore, PhotoRenditionService photoRenditionService, PhotoStorageMigrator photoStorageMigrator, SharedImageService sharedImageService, TransactionalOperator transactionalOperator, ImageIngestService imageIngestService, RequestSearchIndex searchIndex) {
         this.template = template;
         this.databaseClient = databaseClient;
         this.requestRepository = requestRepository;
@@ -58,57 +76,137 @@ public class RequestService {
         this.userRepository = userRepository;
         this.shopRepository = shopRepository;
         this.notificationService = notificationService;
-        this.chatRepository = chatRepository;
+        this.chatRoutingCache = chatRoutingCache;
         this.workCategoryRepository = workCategoryRepository;
         this.urgencyCategoryRepository = urgencyCategoryRepository;
+        this.photoStore = photoStore;
+        this.photoRenditionService = photoRenditionService;
+        this.photoStorageMigrator = photoStorageMigrator;
+        this.sharedImageService = sharedImageService;
+        this.transactionalOperator = transactionalOperator;
+        this.imageIngestService = imageIngestService;
+        this.searchIndex = searchIndex;
     }
 
 
+    // При fields= выбираются не все колонки: отсутствующие читаются как null
     public static final BiFunction<Row, RowMetadata, RequestResponse> MAPPING_FUNCTION = (row, rowMetaData) -> new RequestResponse(
-            row.get("RequestID", Integer.class),
-            row.get("Description", String.class),
-            row.get("ShopName", String.class),
-            row.get("ShopID", Integer.class),
-            row.get("WorkCategoryName", String.class),
-            row.get("WorkCategoryID", Integer.class),
-            row.get("UrgencyName", String.class),
-            row.get("UrgencyID", Integer.class),
-            row.get("AssignedContractorName", String.class),
-            row.get("AssignedContractorID", Integer.class),
-            row.get("Status", String.class),
-            row.get("CreatedAt", LocalDateTime.class),
-            row.get("ClosedAt", LocalDateTime.class),
+            column(row, rowMetaData, "RequestID", Integer.class),
+            column(row, rowMetaData, "Description", String.class),
+            column(row, rowMetaData, "ShopName", String.class),
+            column(row, rowMetaData, "ShopID", Integer.class),
+            column(row, rowMetaData, "WorkCategoryName", String.class),
+            column(row, rowMetaData, "WorkCategoryID", Integer.class),
+            column(row, rowMetaData, "UrgencyName", String.class),
+            column(row, rowMetaData, "UrgencyID", Integer.class),
+            column(row, rowMetaData, "AssignedContractorName", String.class),
+            column(row, rowMetaData, "AssignedContractorID", Integer.class),
+            column(row, rowMetaData, "Status", String.class),
+            column(row, rowMetaData, "CreatedAt", LocalDateTime.class),
+            column(row, rowMetaData, "ClosedAt", LocalDateTime.class),
             null,
-            row.get("DaysForTask", Integer.class),
-            row.get("IsOverdue", Boolean.class),
-            Optional.ofNullable(row.get("CommentCount", Long.class)).orElse(0L),
-            Optional.ofNullable(row.get("PhotoCount", Long.class)).orElse(0L)
+            column(row, rowMetaData, "DaysForTask", Integer.class),
+            column(row, rowMetaData, "IsOverdue", Boolean.class),
+            Optional.ofNullable(column(row, rowMetaData, "CommentCount", Long.class)).orElse(0L),
+            Optional.ofNullable(column(row, rowMetaData, "PhotoCount", Long.class)).orElse(0L)
     );
 
+    private static <T> T column(Row row, RowMetadata metadata, String name, Class<T> type) {
+        return metadata.contains(name) ? row.get(name, type) : null;
+    }
+
+    // ranked — выборка соединена с выдачей индекса (sr.[key] — позиция по релевантности);
+    // truncated — индекс нашел больше MAX_SEARCH_MATCHES заявок и часть из них в выборку не попала
+    private record FilteredRequestQuery(String sql, Map<String, Object> bindings, boolean ranked, boolean truncated) {
+        DatabaseClient.GenericExecuteSpec bind(DatabaseClient.GenericExecuteSpec spec) {
+            for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+                spec = spec.bind(entry.getKey(), entry.getValue());
+            }
+            return spec;
+        }
+    }
+
     public Mono<PagedResponse<RequestResponse>> getAllRequests(
             boolean archived, String searchTerm, Integer shopId, Integer workCategoryId,
             Integer urgencyId, Integer contractorId, String status, Boolean overdue,
             LocalDate startDate, LocalDate endDate,
             List<String> sort, int page, int size,
             String username
+    ) {
+        return buildFilteredRequestQuery(archived, searchTerm, shopId, workCategoryId, urgencyId, contractorId,
+                status, overdue, startDate, endDate, username, RequestField.ALL, sort)
+                .flatMap(query -> pageRequests(query, sort, page, size, response -> response));
+    }
+
+    // Список только с полями из fields=: в SQL попадают лишь нужные колонки, JOIN и подзапросы, в JSON — лишь эти поля
+    public Mono<PagedResponse<Map<String, Object>>> getRequestsWithFields(
+            boolean archived, String searchTerm, Integer shopId, Integer workCategoryId,
+            Integer urgencyId, Integer contractorId, String status, Boolean overdue,
+            LocalDate startDate, LocalDate endDate,
+            List<String> sort, int page, int size,
+            String username, List<String> fields
+    ) {
+        Set<RequestField> requested = RequestField.parse(fields);
+        return buildFilteredRequestQuery(archived, searchTerm, shopId, workCategoryId, urgencyId, contractorId,
+                status, overdue, startDate, endDate, username, RequestField.columnsFor(requested), sort)
+                .flatMap(query -> pageRequests(query, sort, page, size, response -> RequestField.project(response, requested)));
+    }
+
+    private <T> Mono<PagedResponse<T>> pageRequests(FilteredRequestQuery query, List<String> sort, int page, int size,
+                                                    Function<RequestResponse, T> projection) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        int pageNumber = Math.max(page, 0);
+
+        String countSql = "SELECT COUNT(*) FROM (" + query.sql() + ") as count_subquery";
+        Mono<Long> countMono = query.bind(databaseClient.sql(countSql))
+                .map(row -> row.get(0, Long.class))
+                .one();
+
+        String pageSql = query.sql() + parseSortToSql(sort, query.ranked()) +
+                " OFFSET " + ((long) pageNumber * pageSize) + " ROWS FETCH NEXT " + pageSize + " ROWS ONLY";
+
+        Flux<T> resultFlux = query.bind(databaseClient.sql(pageSql))
+                .map(MAPPING_FUNCTION)
+                .all()
+                .map(this::withCalculatedDaysRemaining)
+                .map(projection);
+
+        return Mono.zip(resultFlux.collectList(), countMono)
+                .map(tuple -> {
+                    List<T> content = tuple.getT1();
+                    long total = tuple.getT2();
+                    int totalPages = (total == 0) ? 0 : (int) Math.ceil((double) total / pageSize);
+                    return new PagedResponse<>(content, pageNumber, total, totalPages, query.truncated());
+                });
+    }
+
+    public Flux<RequestResponse> streamRequests(
+            boolean archived, String searchTerm, Integer shopId, Integer workCategoryId,
+            Integer urgencyId, Integer contractorId, String status, Boolean overdue,
+            LocalDate startDate, LocalDate endDate,
+            List<String> sort, String username
+    ) {
+        return buildFilteredRequestQuery(archived, searchTerm, shopId, workCategoryId, urgencyId, contractorId,
+                status, overdue, startDate, endDate, username, RequestField.ALL, sort)
+                .flatMapMany(query -> query.bind(databaseClient.sql(query.sql() + parseSortToSql(sort, query.ranked())))
+                        .map(MAPPING_FUNCTION)
+                        .all()
+                        .map(this::withCalculatedDaysRemaining));
+    }
+
+    private Mono<FilteredRequestQuery> buildFilteredRequestQuery(
+            boolean archived, String searchTerm, Integer shopId, Integer workCategoryId,
+            Integer urgencyId, Integer contractorId, String status, Boolean overdue,
+            LocalDate startDate, LocalDate endDate,
+            String username, Set<RequestField> columns, List<String> sort
     ) {
         return userRepository.findByLogin(username)
                 .switchIfEmpty(Mono.error(new UserNotFoundException("Текущий пользователь не найден")))
                 .flatMap(user -> roleRepository.findById(user.getRoleID())
                         .flatMap(role -> {
-                            StringBuilder sqlBuilder = new StringBuilder(
-                                    "SELECT r.RequestID, r.Description, r.ShopID, r.WorkCategoryID, r.UrgencyID, r.AssignedContractorID, r.Status, r.CreatedAt, r.ClosedAt, r.IsOverdue, " +
-                                            "s.ShopName, wc.WorkCategoryName, uc.UrgencyName, u.Login as AssignedContractorName, " +
-                                            "CASE WHEN uc.UrgencyName = 'Customizable' THEN rcd.Days ELSE uc.DefaultDays END as DaysForTask, " +
-                                            "(SELECT COUNT(*) FROM RequestComments rc WHERE rc.RequestID = r.RequestID) as CommentCount, " +
-                                            "(SELECT COUNT(*) FROM RequestPhotos rp WHERE rp.RequestID = r.RequestID) as PhotoCount " +
-                                            "FROM Requests r " +
-                                            "LEFT JOIN Shops s ON r.ShopID = s.ShopID " +
-                                            "LEFT JOIN WorkCategories wc ON r.WorkCategoryID = wc.WorkCategoryID " +
-                                            "LEFT JOIN UrgencyCategories uc ON r.UrgencyID = uc.UrgencyID " +
-                                            "LEFT JOIN Users u ON r.AssignedContractorID = u.UserID " +
-                                            "LEFT JOIN RequestCustomDays rcd ON r.RequestID = rcd.RequestID "
-                            );
+                            StringBuilder fromBuilder = new StringBuilder(" FROM Requests r ");
+                            requiredJoins(columns, endDate != null, sort).forEach(join -> fromBuilder.append(join.sql));
+                            String fromSql = fromBuilder.toString();
 
                             List<String> conditions = new ArrayList<>();
                             Map<String, Object> bindings = new HashMap<>();
@@ -128,10 +226,6 @@ public class RequestService {
                                 conditions.add("r.IsOverdue = :isOverdue");
                                 bindings.put("isOverdue", true);
                             }
-                            if (searchTerm != null && !searchTerm.isBlank()) {
-                                conditions.add("UPPER(r.Description) LIKE UPPER(:searchTerm)");
-                                bindings.put("searchTerm", "%" + searchTerm + "%");
-                            }
                             if (workCategoryId != null) {
                                 conditions.add("r.WorkCategoryID = :workCatId");
                                 bindings.put("workCatId", workCategoryId);
@@ -182,42 +276,66 @@ public class RequestService {
                                 return Mono.empty();
                             });
 
-                            return roleConditionsMono.then(Mono.defer(() -> {
-                                if (!conditions.isEmpty()) {
-                                    sqlBuilder.append(" WHERE ").append(String.join(" AND ", conditions));
-                                }
-
-                                String countSql = "SELECT COUNT(*) FROM (" + sqlBuilder.toString() + ") as count_subquery";
-                                DatabaseClient.GenericExecuteSpec countSpec = databaseClient.sql(countSql);
-                                for (Map.Entry<String, Object> entry : bindings.entrySet()) {
-                                    countSpec = countSpec.bind(entry.getKey(), entry.getValue());
-                                }
-                                Mono<Long> countMono = countSpec.map(row -> row.get(0, Long.class)).one();
-
-                                sqlBuilder.append(parseSortToSql(sort));
-                                sqlBuilder.append(" OFFSET ").append((long) page * size).append(" ROWS FETCH NEXT ").append(size).append(" ROWS ONLY");
+                            return roleConditionsMono
+                                    .then(Mono.fromCallable(() -> {
+                                        SearchRanking ranking = applySearch(searchTerm, conditions, bindings);
+                                        String sql = "SELECT " + columns.stream()
+                                                .map(field -> field.selectSql)
+                                                .filter(Objects::nonNull)
+                                                .collect(Collectors.joining(", ")) + fromSql +
+                                                (ranking.ranked() ? SEARCH_JOIN : "") + whereClause(conditions);
+                                        return new FilteredRequestQuery(sql, bindings, ranking.ranked(), ranking.truncated());
+                                    }));
+                        }));
+    }
 
-                                DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sqlBuilder.toString());
-                                for (Map.Entry<String, Object> entry : bindings.entrySet()) {
-                                    spec = spec.bind(entry.getKey(), entry.getValue());
-                                }
+    private record SearchRanking(boolean ranked, boolean truncated) {
+        static final SearchRanking NONE = new SearchRanking(false, false);
+    }
 
-                                Flux<RequestResponse> resultFlux = spec.map(MAPPING_FUNCTION).all()
-                                        .map(this::withCalculatedDaysRemaining);
+    // Индекс отдает все совпадения по релевантности, а фильтры, права и пагинация применяются в SQL к этой выдаче:
+    // COUNT и OFFSET/FETCH считаются по настоящему числу доступных пользователю совпадений
+    private SearchRanking applySearch(String searchTerm, List<String> conditions, Map<String, Object> bindings) {
+        if (searchTerm == null || searchTerm.isBlank()) {
+            return SearchRanking.NONE;
+        }
+        if (!searchIndex.canSearch(searchTerm)) {
+            // Индекс еще строится: ищем по-старому
+            conditions.add("UPPER(r.Description) LIKE UPPER(:searchTerm)");
+            bindings.put("searchTerm", "%" + searchTerm + "%");
+            return SearchRanking.NONE;
+        }
+        List<Integer> matches = searchIndex.search(searchTerm, MAX_SEARCH_MATCHES + 1).orElse(List.of());
+        if (matches.isEmpty()) {
+            conditions.add("1 = 0");
+            return SearchRanking.NONE;
+        }
+        boolean truncated = matches.size() > MAX_SEARCH_MATCHES;
+        bindings.put("searchIds", matches.stream()
+                .limit(MAX_SEARCH_MATCHES)
+                .map(String::valueOf)
+                .collect(Collectors.joining(",", "[", "]")));
+        return new SearchRanking(true, truncated);
+    }
 
-                                return Mono.zip(resultFlux.collectList(), countMono)
-                                        .map(tuple -> {
-                                            List<RequestResponse> content = tuple.getT1();
-                                            long total = tuple.getT2();
-                                            int totalPages = (total == 0) ? 0 : (int) Math.ceil((double) total / size);
-                                            return new PagedResponse<>(content, page, total, totalPages);
-                                        });
+    private static String whereClause(List<String> conditions) {
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
 
-                            }));
-                        }));
+    // JOIN нужны выбранным колонкам, фильтру по сроку (endDate) и полям сортировки
+    private static Set<RequestField.Join> requiredJoins(Set<RequestField> columns, boolean deadlineFilter, List<String> sort) {
+        Set<RequestField.Join> joins = EnumSet.noneOf(RequestField.Join.class);
+        columns.forEach(field -> joins.addAll(field.joins));
+        if (deadlineFilter) {
+            joins.addAll(RequestField.DAYS_FOR_TASK.joins);
+        }
+        if (sort != null) {
+            sort.forEach(param -> RequestField.byName(param.split(",")[0]).ifPresent(field -> joins.addAll(field.joins)));
+        }
+        return joins;
     }
 
-    private String getStatusDisplayName(String status) {
+    static String getStatusDisplayName(String status) {
         if (status == null) return "—";
         return switch (status) {
             case "In work" -> "В работе";
@@ -227,7 +345,7 @@ public class RequestService {
         };
     }
 
-    private String getUrgencyDisplayName(String urgencyName) {
+    static String getUrgencyDisplayName(String urgencyName) {
         if (urgencyName == null) return "—";
         return switch (urgencyName) {
             case "Emergency" -> "Аварийная";
@@ -238,9 +356,11 @@ public class RequestService {
         };
     }
 
-    private String parseSortToSql(List<String> sortParams) {
+    // Без явной сортировки или с sort=relevance результаты поиска идут в порядке релевантности из индекса
+    private String parseSortToSql(List<String> sortParams, boolean ranked) {
+        String relevance = ranked ? "CAST(sr.[key] AS INT)" : null;
         if (sortParams == null || sortParams.isEmpty()) {
-            return " ORDER BY r.RequestID DESC";
+            return relevance != null ? " ORDER BY " + relevance + ", r.RequestID DESC" : " ORDER BY r.RequestID DESC";
         }
         final String deadlineExpression = "DATEADD(day, CASE WHEN uc.UrgencyName = 'Customizable' THEN rcd.Days ELSE uc.DefaultDays END, r.CreatedAt)";
 
@@ -250,7 +370,7 @@ public class RequestService {
                 "shopName", "s.ShopName",
                 "workCategoryName", "wc.WorkCategoryName",
                 "urgencyName", "uc.UrgencyName",
-                "assignedContractorName", "AssignedContractorName",
+                "assignedContractorName", "u.Login",
                 "status", "r.Status",
                 "daysRemaining", deadlineExpression
         );
@@ -259,6 +379,9 @@ public class RequestService {
                 .map(param -> {
                     String[] parts = param.split(",");
                     String field = parts[0];
+                    if ("relevance".equals(field)) {
+                        return relevance;
+                    }
                     String direction = (parts.length > 1 && "desc".equalsIgnoreCase(parts[1])) ? "DESC" : "ASC";
                     String dbColumn = columnMapping.get(field);
                     if (dbColumn == null) return null;
@@ -340,7 +463,8 @@ public class RequestService {
                                 });
                     }
                     return Mono.just(savedRequest);
-                });
+                })
+                .flatMap(savedRequest -> searchIndex.reindex(savedRequest.getRequestID()).thenReturn(savedRequest));
     }
 
     public Mono<RequestResponse> updateAndEnrichRequest(Integer requestId, UpdateRequestRequest dto) {
@@ -362,7 +486,7 @@ public class RequestService {
 
                     String msg = msgBuilder.toString();
 
-                    return chatRepository.findTelegramIdByRequestId(requestId)
+                    return chatRoutingCache.findTelegramId(savedReq.getShopID(), savedReq.getAssignedContractorID())
                             .flatMap(chatId -> notificationService.sendNotification(chatId, msg))
                             .onErrorResume(e -> Mono.empty())
                             .thenReturn(savedReq);
@@ -488,35 +612,156 @@ public class RequestService {
                             }));
 
                     return customDaysLogic.then(updatedRequestMono)
-                            .map(savedReq -> Tuples.of(savedReq, changes));
+                            .flatMap(savedReq -> searchIndex.reindex(requestId).thenReturn(Tuples.of(savedReq, changes)));
                 });
     }
 
     public Mono<Void> deleteRequest(Integer requestId) {
-        return requestRepository.deleteById(requestId);
+        // Каждое фото — отдельная ссылка на изображение, поэтому хэши не схлопываются через DISTINCT
+        return databaseClient.sql("SELECT ContentHash FROM RequestPhotos WHERE RequestID = :requestId AND ContentHash IS NOT NULL")
+                .bind("requestId", requestId)
+                .map(row -> row.get("ContentHash", String.class))
+                .all()
+                .collectList()
+                .flatMap(hashes -> requestRepository.deleteById(requestId)
+                        .then(Flux.fromIterable(hashes).concatMap(sharedImageService::release).then()))
+                .as(transactionalOperator::transactional)
+                .then(Mono.defer(() -> searchIndex.remove(requestId)));
     }
 
     public Flux<Integer> getPhotoIdsForRequest(Integer requestId) {
-        return photoRepository.findByRequestID(requestId)
-                .map(RequestPhoto::getRequestPhotoID);
+        return databaseClient.sql("SELECT RequestPhotoID FROM RequestPhotos WHERE RequestID = :requestId ORDER BY RequestPhotoID")
+                .bind("requestId", requestId)
+                .map(row -> row.get("RequestPhotoID", Integer.class))
+                .all();
     }
 
-    public Mono<byte[]> getPhotoById(Integer photoId) {
-        return photoRepository.findById(photoId)
-                .map(RequestPhoto::getImageData);
+    public Flux<RequestPhotoResponse> getPhotosForRequest(Integer requestId) {
+        return databaseClient.sql("SELECT " + PHOTO_METADATA_COLUMNS + " FROM RequestPhotos WHERE RequestID = :requestId ORDER BY RequestPhotoID")
+                .bind("requestId", requestId)
+                .map(RequestService::mapPhotoMetadata)
+                .all()
+                .map(photo -> new RequestPhotoResponse(
+                        photo.getRequestPhotoID(),
+                        photo.getContentType(),
+                        photo.getFileSize(),
+                        photo.getContentHash()
+                ));
     }
 
-    public Flux<CommentResponse> getCommentsForRequest(Integer requestId) {
-        return commentRepository.findByRequestIDOrderByCreatedAtAsc(requestId)
-                .flatMap(comment -> userRepository.findById(comment.getUserID())
-                        .map(user -> new CommentResponse(
-                                comment.getCommentID(),
-                                comment.getRequestID(),
-                                user.getLogin(),
-                                comment.getCommentText(),
-                                comment.getCreatedAt()
-                        ))
-                );
+    // Карточка заявки одним ответом: три запроса идут параллельно, каждый на своем соединении из пула.
+    // Комментарии — последние DETAILS_COMMENTS_PAGE; при hasMoreComments клиент дочитывает ветку через /comments
+    public Mono<RequestDetailsResponse> getRequestDetails(Integer requestId) {
+        return Mono.zip(
+                enrichRequest(requestId)
+                        .switchIfEmpty(Mono.error(new RuntimeException("Заявка с ID " + requestId + " не найдена"))),
+                getLatestComments(requestId, DETAILS_COMMENTS_PAGE),
+                getPhotosForRequest(requestId).collectList()
+        ).map(tuple -> new RequestDetailsResponse(tuple.getT1(), tuple.getT2().getT1(), tuple.getT2().getT2(), tuple.getT3()));
+    }
+
+    public Mono<RequestPhoto> findPhoto(Integer photoId) {
+        return databaseClient.sql("SELECT " + PHOTO_METADATA_COLUMNS + " FROM RequestPhotos WHERE RequestPhotoID = :photoId")
+                .bind("photoId", photoId)
+                .map(RequestService::mapPhotoMetadata)
+                .one();
+    }
+
+    // Строка RequestPhotos без ImageData: старые фото из таблицы переносятся в хранилище при первом обращении
+    static RequestPhoto mapPhotoMetadata(Row row, RowMetadata metadata) {
+        RequestPhoto photo = new RequestPhoto();
+        photo.setRequestPhotoID(row.get("RequestPhotoID", Integer.class));
+        photo.setRequestID(row.get("RequestID", Integer.class));
+        photo.setContentHash(row.get("ContentHash", String.class));
+        photo.setContentType(row.get("ContentType", String.class));
+        photo.setFileSize(row.get("FileSize", Long.class));
+        return photo;
+    }
+
+    // Содержимое фото по ID никогда не меняется, поэтому ETag можно вычислить без чтения файла
+    public static String photoETag(RequestPhoto photo, PhotoRenditionService.Size size) {
+        String base = photo.getContentHash() != null ? photo.getContentHash() : "photo-" + photo.getRequestPhotoID();
+        return base + "-" + size.name().toLowerCase();
+    }
+
+    private Mono<PhotoContent> resolvePhotoContent(RequestPhoto photo) {
+        return resolvePhotoContent(photo, PhotoRenditionService.Size.ORIGINAL);
+    }
+
+    public Mono<PhotoContent> resolvePhotoContent(RequestPhoto photo, PhotoRenditionService.Size size) {
+        if (photo.getContentHash() != null) {
+            String contentType = size != PhotoRenditionService.Size.ORIGINAL || photo.getContentType() == null
+                    ? ImageTypes.JPEG
+                    : photo.getContentType();
+            return photoRenditionService.getRendition(photo.getContentHash(), size)
+                    .map(resource -> new PhotoContent(resource, contentType, photo.getContentHash()));
+        }
+        // Фото, которые еще не перенесены из таблицы в хранилище, переносятся сразу, потоком из блоба
+        return photoStorageMigrator.migrate(photo.getRequestPhotoID())
+                .flatMap(migrated -> resolvePhotoContent(migrated, size));
+    }
+
+    // Автор подтягивается тем же запросом; курсор (since, afterId) — CreatedAt и CommentID последнего полученного комментария,
+    // так клиент дочитывает только новые комментарии, а не всю ветку заново. Без limit ветка отдается целиком, как раньше
+    public Flux<CommentResponse> getCommentsForRequest(Integer requestId, LocalDateTime since, Integer afterId, Integer limit) {
+        if (afterId != null && since == null) {
+            return Flux.error(new IllegalArgumentException("Параметр afterId передается только вместе с since"));
+        }
+        StringBuilder sql = new StringBuilder(limit == null ? "SELECT " : "SELECT TOP (:limit) ")
+                .append("""
+                        c.CommentID, c.RequestID, u.Login, c.CommentText, c.CreatedAt
+                        FROM RequestComments c
+                        JOIN Users u ON u.UserID = c.UserID
+                        WHERE c.RequestID = :requestId""");
+        if (since != null) {
+            sql.append(afterId != null
+                    ? " AND (c.CreatedAt > :since OR (c.CreatedAt = :since AND c.CommentID > :afterId))"
+                    : " AND c.CreatedAt > :since");
+        }
+        sql.append(" ORDER BY c.CreatedAt, c.CommentID");
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString())
+                .bind("requestId", requestId);
+        if (limit != null) {
+            spec = spec.bind("limit", Math.max(1, Math.min(limit, MAX_COMMENTS_PAGE)));
+        }
+        if (since != null) {
+            spec = spec.bind("since", since);
+            if (afterId != null) {
+                spec = spec.bind("afterId", afterId);
+            }
+        }
+        return spec.map(RequestService::mapComment).all();
+    }
+
+    // Последние count комментариев в хронологическом порядке; лишняя строка сверх count только показывает, что есть более ранние
+    private Mono<Tuple2<List<CommentResponse>, Boolean>> getLatestComments(Integer requestId, int count) {
+        return databaseClient.sql("""
+                        SELECT TOP (:limit) c.CommentID, c.RequestID, u.Login, c.CommentText, c.CreatedAt
+                        FROM RequestComments c
+                        JOIN Users u ON u.UserID = c.UserID
+                        WHERE c.RequestID = :requestId
+                        ORDER BY c.CreatedAt DESC, c.CommentID DESC""")
+                .bind("limit", count + 1)
+                .bind("requestId", requestId)
+                .map(RequestService::mapComment)
+                .all()
+                .collectList()
+                .map(newestFirst -> {
+                    List<CommentResponse> page = new ArrayList<>(newestFirst.subList(0, Math.min(count, newestFirst.size())));
+                    Collections.reverse(page);
+                    return Tuples.of(page, newestFirst.size() > count);
+                });
+    }
+
+    private static CommentResponse mapComment(Row row, RowMetadata metadata) {
+        return new CommentResponse(
+                row.get("CommentID", Integer.class),
+                row.get("RequestID", Integer.class),
+                row.get("Login", String.class),
+                row.get("CommentText", String.class),
+                row.get("CreatedAt", LocalDateTime.class)
+        );
     }
 
     public Mono<CommentResponse> addCommentToRequest(Integer requestId, CreateCommentRequest dto, Integer userId) {
@@ -542,6 +787,7 @@ public class RequestService {
                         newComment.setCreatedAt(LocalDateTime.now());
 
                         return commentRepository.save(newComment)
+                                .flatMap(savedComment -> searchIndex.reindex(requestId).thenReturn(savedComment))
                                 .flatMap(savedComment -> {
                                     String author = notificationService.escapeMarkdown(user.getLogin());
                                     String safeText = notificationService.escapeMarkdown(dto.commentText());
@@ -553,24 +799,28 @@ public class RequestService {
                                             requestId, author, safeText
                                     );
 
-                                    return chatRepository.findTelegramIdByRequestId(requestId)
+                                    return chatRoutingCache.findTelegramId(request.getShopID(), request.getAssignedContractorID())
                                             .flatMap(chatId -> notificationService.sendNotification(chatId, msg))
-                                            .thenReturn(savedComment);
+                                            .thenReturn(Tuples.of(savedComment, user.getLogin()));
                                 });
                     });
                 })
-                .flatMap(savedComment -> userRepository.findById(userId).map(user -> new CommentResponse(
-                        savedComment.getCommentID(),
-                        savedComment.getRequestID(),
-                        user.getLogin(),
-                        savedComment.getCommentText(),
-                        savedComment.getCreatedAt()
-                )));
+                .map(saved -> new CommentResponse(
+                        saved.getT1().getCommentID(),
+                        saved.getT1().getRequestID(),
+                        saved.getT2(),
+                        saved.getT1().getCommentText(),
+                        saved.getT1().getCreatedAt()
+                ));
     }
 
-    public Flux<byte[]> getPhotosForRequest(Integer requestId) {
-        return photoRepository.findByRequestID(requestId)
-                .map(RequestPhoto::getImageData);
+    // Сначала читаются только метаданные; содержимое каждого фото открывается по одному, по мере запроса потребителем
+    public Flux<PhotoContent> getPhotoContentsForRequest(Integer requestId) {
+        return databaseClient.sql("SELECT " + PHOTO_METADATA_COLUMNS + " FROM RequestPhotos WHERE RequestID = :requestId ORDER BY RequestPhotoID")
+                .bind("requestId", requestId)
+                .map(RequestService::mapPhotoMetadata)
+                .all()
+                .concatMap(this::resolvePhotoContent, 1);
     }
 
     public Mono<Void> addPhotosToRequest(Integer requestId, Flux<FilePart> filePartFlux, Integer userId) {
@@ -598,51 +848,104 @@ public class RequestService {
                                         "Файл " + filePart.filename() + " имеет недопустимый тип данных (разрешены только JPG/PNG)"));
                             }
 
-                            return DataBufferUtils.join(filePart.content())
-                                    .flatMap(dataBuffer -> {
-                                        int byteCount = dataBuffer.readableByteCount();
-
-                                        if (byteCount > MAX_SINGLE_FILE_SIZE) {
-                                            DataBufferUtils.release(dataBuffer);
-                                            return Mono.error(new OperationNotAllowedException(
-                                                    "Файл " + filePart.filename() + " слишком большой (максимум 5 МБ)"));
-                                        }
+                            PhotoUploadGuard guard = new PhotoUploadGuard(filePart.filename());
+                            Flux<DataBuffer> checkedContent = filePart.content()
+                                    .map(guard::inspect)
+                                    .concatWith(Mono.fromRunnable(guard::verifyComplete));
 
-                                        byte[] bytes = new byte[byteCount];
+                            // Файл не больше лимита целиком нужен для декодирования; в хранилище попадает уже нормализованная копия
+                            return DataBufferUtils.join(checkedContent)
+                                    .map(dataBuffer -> {
+                                        byte[] bytes = new byte[dataBuffer.readableByteCount()];
                                         dataBuffer.read(bytes);
                                         DataBufferUtils.release(dataBuffer);
-
-                                        if (!isValidImageSignature(bytes)) {
-                                            return Mono.error(new OperationNotAllowedException(
-                                                    "Файл " + filePart.filename() + " поврежден или не является настоящим изображением"));
-                                        }
-
-                                        RequestPhoto photo = new RequestPhoto();
-                                        photo.setRequestID(requestId);
-                                        photo.setImageData(bytes);
-
-                                        return photoRepository.save(photo)
-                                                .flatMap(savedPhoto -> {
-                                                    return chatRepository.findTelegramIdByRequestId(requestId)
-                                                            .flatMap(chatId -> {
-                                                                String author = notificationService.escapeMarkdown(user.getLogin());
-                                                                String caption = String.format(
-                                                                        "📷 *Новое фото к заявке \\#%d*\n👤 *Добавил:* %s",
-                                                                        requestId, author
-                                                                );
-                                                                return notificationService.sendPhoto(chatId, caption, bytes);
-                                                            })
-                                                            .onErrorResume(e -> {
-                                                                System.err.println("Ошибка отправки фото в Telegram: " + e.getMessage());
-                                                                return Mono.empty();
-                                                            });
+                                        return bytes;
+                                    })
+                                    .flatMap(original -> imageIngestService.normalize(original, filePart.filename()))
+                                    .flatMap(normalized -> {
+                                        // Одинаковые фото в разных заявках делят один файл; ссылка и строка фото фиксируются вместе
+                                        return sharedImageService.acquire(normalized)
+                                                .flatMap(contentHash -> {
+                                                    RequestPhoto photo = new RequestPhoto();
+                                                    photo.setRequestID(requestId);
+                                                    photo.setContentHash(contentHash);
+                                                    photo.setContentType(ImageTypes.JPEG);
+                                                    photo.setFileSize((long) normalized.length);
+                                                    return photoRepository.save(photo);
+                                                })
+                                                .as(transactionalOperator::transactional);
+                                    })
+                                    .doOnNext(savedPhoto -> photoRenditionService.generateInBackground(savedPhoto.getContentHash()))
+                                    .flatMap(savedPhoto -> {
+                                        return chatRoutingCache.findTelegramId(request.getShopID(), request.getAssignedContractorID())
+                                                .flatMap(chatId -> photoStore.load(savedPhoto.getContentHash())
+                                                        .flatMap(resource -> {
+                                                            String author = notificationService.escapeMarkdown(user.getLogin());
+                                                            String caption = String.format(
+                                                                    "📷 *Новое фото к заявке \\#%d*\n👤 *Добавил:* %s",
+                                                                    requestId, author
+                                                            );
+                                                            return notificationService.sendPhoto(chatId, caption, resource);
+                                                        }))
+                                                .onErrorResume(e -> {
+                                                    System.err.println("Ошибка отправки фото в Telegram: " + e.getMessage());
+                                                    return Mono.empty();
                                                 });
                                     });
-                        }).then();
+                        }, UPLOAD_CONCURRENCY).then();
                     });
                 });
     }
 
+    // Проверяет файл по мере чтения: сигнатуру по первым байтам и размер по накопленному счетчику,
+    // чтобы прерывать загрузку сразу при превышении лимита, не дочитывая файл
+    private static final class PhotoUploadGuard {
+        private static final int SIGNATURE_LENGTH = 4;
+
+        private final String filename;
+        private final byte[] signature = new byte[SIGNATURE_LENGTH];
+        private int signatureLength = 0;
+        private long totalBytes = 0;
+        private String contentType;
+
+        PhotoUploadGuard(String filename) {
+            this.filename = filename;
+        }
+
+        DataBuffer inspect(DataBuffer buffer) {
+            totalBytes += buffer.readableByteCount();
+            if (totalBytes > MAX_SINGLE_FILE_SIZE) {
+                DataBufferUtils.release(buffer);
+                throw new OperationNotAllowedException("Файл " + filename + " слишком большой (максимум 5 МБ)");
+            }
+            if (contentType == null) {
+                int readPosition = buffer.readPosition();
+                int toCopy = Math.min(SIGNATURE_LENGTH - signatureLength, buffer.readableByteCount());
+                for (int i = 0; i < toCopy; i++) {
+                    signature[signatureLength++] = buffer.getByte(readPosition + i);
+                }
+                if (signatureLength == SIGNATURE_LENGTH) {
+                    contentType = ImageTypes.detectContentType(signature);
+                    if (contentType == null) {
+                        DataBufferUtils.release(buffer);
+                        throw corrupted();
+                    }
+                }
+            }
+            return buffer;
+        }
+
+        void verifyComplete() {
+            if (contentType == null) {
+                throw corrupted();
+            }
+        }
+
+        private OperationNotAllowedException corrupted() {
+            return new OperationNotAllowedException("Файл " + filename + " поврежден или не является настоящим изображением");
+        }
+    }
+
     public Mono<RequestResponse> completeRequest(Integer requestId, Integer contractorId) {
         return requestRepository.findById(requestId)
                 .switchIfEmpty(Mono.error(new RuntimeException("Заявка с ID " + requestId + " не найдена")))
@@ -746,7 +1049,7 @@ public class RequestService {
                                 String finalMessage = msgBuilder.toString();
 
                                 return requestRepository.save(request)
-                                        .flatMap(savedReq -> chatRepository.findTelegramIdByRequestId(requestId)
+                                        .flatMap(savedReq -> chatRoutingCache.findTelegramId(savedReq.getShopID(), savedReq.getAssignedContractorID())
                                                 .flatMap(chatId -> notificationService.sendNotification(chatId, finalMessage))
                                                 .onErrorResume(e -> Mono.empty())
                                                 .thenReturn(savedReq));
@@ -756,14 +1059,16 @@ public class RequestService {
     }
 
     public Mono<Void> deletePhoto(Integer photoId) {
-        return photoRepository.findById(photoId)
+        return findPhoto(photoId)
                 .switchIfEmpty(Mono.error(new RuntimeException("Фото с ID " + photoId + " не найдено")))
                 .flatMap(photo -> requestRepository.findById(photo.getRequestID())
                         .flatMap(request -> {
                             if ("Closed".equalsIgnoreCase(request.getStatus())) {
                                 return Mono.error(new OperationNotAllowedException("Нельзя удалять фото из закрытой заявки."));
                             }
-                            return photoRepository.deleteById(photoId);
+                            return photoRepository.deleteById(photoId)
+                                    .then(sharedImageService.release(photo.getContentHash()))
+                                    .as(transactionalOperator::transactional);
                         })
                 );
     }
@@ -789,7 +1094,8 @@ public class RequestService {
     public Mono<Void> deleteComment(Integer commentId) {
         return commentRepository.findById(commentId)
                 .switchIfEmpty(Mono.error(new RuntimeException("Комментарий с ID " + commentId + " не найден")))
-                .flatMap(commentRepository::delete);
+                .flatMap(comment -> commentRepository.delete(comment)
+                        .then(searchIndex.reindex(comment.getRequestID())));
     }
 
     private Mono<RequestResponse> sendCreationNotification(RequestResponse response) {
@@ -815,7 +1121,7 @@ public class RequestService {
                 safeDescription
         );
 
-        return chatRepository.findTelegramIdByRequestId(response.requestID())
+        return chatRoutingCache.findTelegramId(response.shopID(), response.assignedContractorID())
                 .flatMap(chatId -> notificationService.sendNotification(chatId, msg))
                 .onErrorResume(e -> {
                     System.err.println("Failed to send creation notification: " + e.getMessage());
@@ -823,14 +1129,4 @@ public class RequestService {
                 })
                 .thenReturn(response);
     }
-
-    private boolean isValidImageSignature(byte[] data) {
-        if (data.length < 4) return false;
-
-        boolean isJpeg = data[0] == (byte) 0xFF && data[1] == (byte) 0xD8 && data[2] == (byte) 0xFF;
-        boolean isPng = data[0] == (byte) 0x89 && data[1] == (byte) 0x50 &&
-                data[2] == (byte) 0x4E && data[3] == (byte) 0x47;
-
-        return isJpeg || isPng;
-    }
-}
\ No newline at end of file
+}
@@ -4,26 +4,33 @@ import com.vodchyts.backend.feature.entity.Request;
 import com.vodchyts.backend.feature.entity.RequestCustomDay;
 import com.vodchyts.backend.feature.entity.UrgencyCategory;
 import com.vodchyts.backend.feature.repository.ReactiveRequestCustomDayRepository;
-import com.vodchyts.backend.feature.repository.ReactiveRequestRepository;
-import com.vodchyts.backend.feature.repository.ReactiveShopContractorChatRepository;
 import com.vodchyts.backend.feature.repository.ReactiveUrgencyCategoryRepository;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
 import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.CronExpression;
 import org.springframework.scheduling.support.CronTrigger;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuples;
 
 import java.time.DayOfWeek;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ScheduledFuture;
+import java.util.function.UnaryOperator;
 
 import static org.springframework.data.relational.core.query.Criteria.where;
 import static org.springframework.data.relational.core.query.Query.query;
@@ -32,13 +39,17 @@ import static org.springframework.data.relational.core.query.Query.query;
 public class RequestUpdateService {
 
     private static final Logger log = LoggerFactory.getLogger(RequestUpdateService.class);
+    private static final int TELEGRAM_MESSAGE_LIMIT = 4096;
+    private static final int DIGEST_HEADER_RESERVE = 64;
+    private static final int DIGEST_CONCURRENCY = 4;
+    private static final String DAILY_REMINDERS = "daily-reminders";
 
     private final R2dbcEntityTemplate template;
-    private final ReactiveRequestRepository requestRepository;
     private final ReactiveUrgencyCategoryRepository urgencyCategoryRepository;
     private final ReactiveRequestCustomDayRepository customDayRepository;
-    private final ReactiveShopContractorChatRepository chatRepository;
+    private final ChatRoutingCache chatRoutingCache;
     private final TelegramNotificationService notificationService;
+    private final SchedulerLeaseService leaseService;
 
     private final TaskScheduler taskScheduler;
     private ScheduledFuture<?> overdueCheckTask;
@@ -47,18 +58,22 @@ public class RequestUpdateService {
     private long currentCheckInterval = 30000;
     private String currentReminderCron = "0 0 10 * * MON-FRI";
 
+    // Насколько поздно новая ведущая еще досылает пропущенную плановую рассылку
+    @Value("${reminders.catch-up-ms:21600000}")
+    private long reminderCatchUpMs = 21600000;
+
     public RequestUpdateService(R2dbcEntityTemplate template,
-                                ReactiveRequestRepository requestRepository,
                                 ReactiveUrgencyCategoryRepository urgencyCategoryRepository,
                                 ReactiveRequestCustomDayRepository customDayRepository,
-                                ReactiveShopContractorChatRepository chatRepository,
-                                TelegramNotificationService notificationService) {
+                                ChatRoutingCache chatRoutingCache,
+                                TelegramNotificationService notificationService,
+                                SchedulerLeaseService leaseService) {
         this.template = template;
-        this.requestRepository = requestRepository;
         this.urgencyCategoryRepository = urgencyCategoryRepository;
         this.customDayRepository = customDayRepository;
-        this.chatRepository = chatRepository;
+        this.chatRoutingCache = chatRoutingCache;
         this.notificationService = notificationService;
+        this.leaseService = leaseService;
 
         ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
         scheduler.setPoolSize(2);
@@ -99,24 +114,69 @@ public class RequestUpdateService {
         );
     }
 
+    // Таймеры тикают на каждой реплике, но работу выполняет только ведущая, иначе алерты приходили бы по разу от каждой
     private void startOverdueCheckTask(long interval) {
         overdueCheckTask = taskScheduler.scheduleWithFixedDelay(
-                () -> updateOverdueStatus(true).subscribe(),
+                () -> leaseService.runAsLeader("overdue-check", () -> updateOverdueStatus(true)).subscribe(),
                 Duration.ofMillis(interval)
         );
     }
 
     private void startDailyReminderTask(String cron) {
         try {
-            dailyReminderTask = taskScheduler.schedule(
-                    this::sendDailyReminders,
-                    new CronTrigger(cron)
-            );
+            dailyReminderTask = taskScheduler.schedule(this::runDueReminders, new CronTrigger(cron));
         } catch (Exception e) {
             log.error("Ошибка в CRON выражении: {}", cron, e);
         }
     }
 
+    // Если ведущая пропала около времени рассылки, ее таймер сработал впустую, а таймер новой — только на следующий день.
+    // Поэтому ведущая раз в минуту проверяет, разослана ли последняя плановая сводка, и досылает ее
+    @Scheduled(initialDelayString = "${reminders.catch-up-check-ms:60000}", fixedDelayString = "${reminders.catch-up-check-ms:60000}")
+    public void catchUpDailyReminders() {
+        runDueReminders();
+    }
+
+    private void runDueReminders() {
+        leaseService.runAsLeader(DAILY_REMINDERS, () -> claimDueReminders()
+                        .flatMap(claimed -> claimed ? dailyReminders() : Mono.empty()))
+                .subscribe(
+                        v -> {},
+                        error -> log.error("Ошибка рассылки напоминаний: {}", error.getMessage())
+                );
+    }
+
+    // Отмечает последнюю плановую рассылку в ScheduledJobRuns. false — она уже разослана, старше окна догона
+    // или аренда успела перейти к другой реплике: в этих случаях сводку отправлять нельзя
+    private Mono<Boolean> claimDueReminders() {
+        LocalDateTime now = LocalDateTime.now();
+        Optional<LocalDateTime> due = latestDue(CronExpression.parse(currentReminderCron), now, Duration.ofMillis(reminderCatchUpMs));
+        if (due.isEmpty()) {
+            return Mono.just(false);
+        }
+        String sql = "UPDATE ScheduledJobRuns SET LastDueAt = :due, LastRunAt = :now, Node = :node " +
+                "WHERE JobName = :name AND (LastDueAt IS NULL OR LastDueAt < :due) AND " + SchedulerLeaseService.FENCED;
+        return SchedulerLeaseService.fencingToken()
+                .flatMap(token -> template.getDatabaseClient().sql(sql)
+                        .bind("due", due.get())
+                        .bind("now", now)
+                        .bind("node", leaseService.getNodeId())
+                        .bind("name", DAILY_REMINDERS)
+                        .bind("fencingToken", token)
+                        .fetch()
+                        .rowsUpdated())
+                .map(updated -> updated > 0);
+    }
+
+    // Последнее время по расписанию в интервале (now - window, now]
+    static Optional<LocalDateTime> latestDue(CronExpression cron, LocalDateTime now, Duration window) {
+        LocalDateTime latest = null;
+        for (LocalDateTime next = cron.next(now.minus(window)); next != null && !next.isAfter(now); next = cron.next(next)) {
+            latest = next;
+        }
+        return Optional.ofNullable(latest);
+    }
+
 
     public Mono<Void> updateRequestDate(Integer requestId, LocalDateTime newDate) {
         String sql = "UPDATE Requests SET CreatedAt = :newDate WHERE RequestID = :requestId";
@@ -155,10 +215,12 @@ public class RequestUpdateService {
         Mono<Map<Integer, UrgencyCategory>> urgencyMapMono = urgencyCategoryRepository.findAll().collectMap(UrgencyCategory::getUrgencyID);
         Mono<Map<Integer, RequestCustomDay>> customDaysMapMono = customDayRepository.findAll().collectMap(RequestCustomDay::getRequestID);
 
-        return Mono.zip(urgencyMapMono, customDaysMapMono)
+        return SchedulerLeaseService.fencingToken()
+                .flatMap(token -> Mono.zip(urgencyMapMono, customDaysMapMono).map(tuple -> Tuples.of(tuple.getT1(), tuple.getT2(), token)))
                 .flatMapMany(tuple -> {
                     Map<Integer, UrgencyCategory> urgencyMap = tuple.getT1();
                     Map<Integer, RequestCustomDay> customDaysMap = tuple.getT2();
+                    long fencingToken = tuple.getT3();
 
                     return requestsToCheck.flatMap(request -> {
                         UrgencyCategory urgency = urgencyMap.get(request.getUrgencyID());
@@ -178,18 +240,21 @@ public class RequestUpdateService {
                         if (isNowOverdue != (request.getIsOverdue() != null && request.getIsOverdue())) {
                             request.setIsOverdue(isNowOverdue);
 
-                            return requestRepository.save(request)
-                                    .flatMap(savedReq -> {
-                                        if ("In work".equalsIgnoreCase(savedReq.getStatus()) &&
+                            // Алерт уходит, только если флаг сменила именно эта запись: проверка другой реплики
+                            // или устаревшей ведущей его уже не отправит
+                            return markOverdue(request.getRequestID(), isNowOverdue, fencingToken)
+                                    .filter(updated -> updated)
+                                    .flatMap(updated -> {
+                                        if ("In work".equalsIgnoreCase(request.getStatus()) &&
                                                 isTransitionToOverdue &&
                                                 sendNotification &&
                                                 !isWeekend()) {
 
                                             long realDaysOverdue = Duration.between(deadline, LocalDateTime.now()).toDays();
                                             long daysReported = Math.max(1, realDaysOverdue);
-                                            return sendOverdueAlert(savedReq, daysReported);
+                                            return sendOverdueAlert(request, daysReported).thenReturn(request);
                                         }
-                                        return Mono.just(savedReq);
+                                        return Mono.just(request);
                                     });
                         }
                         return Mono.empty();
@@ -199,38 +264,97 @@ public class RequestUpdateService {
                 .doOnSuccess(c -> log.info("Обновлено заявок (просрочка): {}", c));
     }
 
-    public void sendDailyReminders() {
-        log.info("Запуск рассылки напоминаний...");
+    private Mono<Boolean> markOverdue(Integer requestId, boolean overdue, long fencingToken) {
+        return template.getDatabaseClient()
+                .sql("UPDATE Requests SET IsOverdue = :overdue WHERE RequestID = :requestId AND IsOverdue <> :overdue AND "
+                        + SchedulerLeaseService.FENCED)
+                .bind("overdue", overdue)
+                .bind("requestId", requestId)
+                .bind("fencingToken", fencingToken)
+                .fetch()
+                .rowsUpdated()
+                .map(updated -> updated > 0);
+    }
 
-        Flux<Request> overdueRequests = template.select(query(where("Status").is("In work").and("IsOverdue").is(true)), Request.class);
-        Mono<Map<Integer, UrgencyCategory>> urgencyMapMono = urgencyCategoryRepository.findAll().collectMap(UrgencyCategory::getUrgencyID);
-        Mono<Map<Integer, RequestCustomDay>> customDaysMapMono = customDayRepository.findAll().collectMap(RequestCustomDay::getRequestID);
+    public void sendDailyReminders() {
+        dailyReminders().subscribe();
+    }
 
-        Mono.zip(urgencyMapMono, customDaysMapMono)
-                .flatMapMany(tuple -> {
-                    Map<Integer, UrgencyCategory> urgencyMap = tuple.getT1();
-                    Map<Integer, RequestCustomDay> customDaysMap = tuple.getT2();
+    // Один запрос отдает все просроченные заявки, чат для каждой берется из таблицы маршрутизации. Каждый чат получает одну сводку
+    private Mono<Void> dailyReminders() {
+        log.info("Запуск рассылки напоминаний...");
 
-                    return overdueRequests.flatMap(request -> {
-                        UrgencyCategory urgency = urgencyMap.get(request.getUrgencyID());
-                        if (urgency == null) return Mono.empty();
+        String sql = """
+                SELECT r.RequestID, r.Description, r.CreatedAt, r.ShopID, r.AssignedContractorID,
+                       CASE WHEN uc.UrgencyName = 'Customizable' THEN cd.Days ELSE uc.DefaultDays END AS DaysForTask
+                FROM Requests r
+                JOIN UrgencyCategories uc ON uc.UrgencyID = r.UrgencyID
+                OUTER APPLY (SELECT TOP 1 rcd.Days FROM RequestCustomDays rcd
+                             WHERE rcd.RequestID = r.RequestID ORDER BY rcd.RequestCustomDayID DESC) cd
+                WHERE r.Status = 'In work' AND r.IsOverdue = 1
+                  AND (CASE WHEN uc.UrgencyName = 'Customizable' THEN cd.Days ELSE uc.DefaultDays END) IS NOT NULL
+                """;
+        LocalDateTime now = LocalDateTime.now();
 
-                        Integer daysForTask = "Customizable".equalsIgnoreCase(urgency.getUrgencyName())
-                                ? customDaysMap.getOrDefault(request.getRequestID(), new RequestCustomDay()).getDays()
-                                : urgency.getDefaultDays();
+        return template.getDatabaseClient().sql(sql)
+                .map(row -> {
+                    LocalDateTime deadline = row.get("CreatedAt", LocalDateTime.class).plusDays(row.get("DaysForTask", Integer.class));
+                    return Tuples.of(row.get("ShopID", Integer.class), row.get("AssignedContractorID", Integer.class),
+                            new OverdueItem(row.get("RequestID", Integer.class), row.get("Description", String.class),
+                                    Duration.between(deadline, now).toDays()));
+                })
+                .all()
+                .filter(row -> row.getT3().daysOverdue() >= 1)
+                .concatMap(row -> chatRoutingCache.findTelegramId(row.getT1(), row.getT2())
+                        .map(chatId -> Map.entry(chatId, row.getT3())))
+                // Сначала собираем все группы: groupBy с ограниченным flatMap зависает, если чатов больше, чем параллелизм
+                .collectMultimap(Map.Entry::getKey, Map.Entry::getValue)
+                .flatMapIterable(Map::entrySet)
+                .flatMap(entry -> Flux.fromIterable(renderDigest(List.copyOf(entry.getValue()), notificationService::escapeMarkdown))
+                        .concatMap(part -> notificationService.sendNotification(entry.getKey(), part)), DIGEST_CONCURRENCY)
+                .then()
+                .doOnSuccess(v -> log.info("Рассылка напоминаний завершена."));
+    }
 
-                        if (daysForTask == null) return Mono.empty();
+    record OverdueItem(int requestId, String description, long daysOverdue) {}
+
+    // Самые давние просрочки сверху; сообщение режется по строкам заявок, чтобы уложиться в лимит Telegram
+    static List<String> renderDigest(List<OverdueItem> items, UnaryOperator<String> escapeMarkdown) {
+        List<OverdueItem> sorted = items.stream()
+                .sorted(Comparator.comparingLong(OverdueItem::daysOverdue).reversed()
+                        .thenComparingInt(OverdueItem::requestId))
+                .toList();
+
+        List<StringBuilder> parts = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (OverdueItem item : sorted) {
+            String line = String.format("%s \\#%d — *%d дн\\.* — %s\n",
+                    item.daysOverdue() == 1 ? "⚠️" : "🔥", item.requestId(), item.daysOverdue(),
+                    escapeMarkdown.apply(shortDescription(item.description())));
+            if (current.length() > 0 && current.length() + line.length() > TELEGRAM_MESSAGE_LIMIT - DIGEST_HEADER_RESERVE) {
+                parts.add(current);
+                current = new StringBuilder();
+            }
+            current.append(line);
+        }
+        parts.add(current);
 
-                        LocalDateTime deadline = request.getCreatedAt().plusDays(daysForTask);
-                        long daysOverdue = Duration.between(deadline, LocalDateTime.now()).toDays();
+        List<String> messages = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            String header = String.format("🔥 *ПРОСРОЧЕННЫЕ ЗАЯВКИ: %d*", sorted.size());
+            if (parts.size() > 1) {
+                header += String.format(" \\(%d/%d\\)", i + 1, parts.size());
+            }
+            messages.add(header + "\n\n" + parts.get(i));
+        }
+        return messages;
+    }
 
-                        if (daysOverdue >= 1) {
-                            return sendOverdueAlert(request, daysOverdue);
-                        }
-                        return Mono.empty();
-                    });
-                })
-                .subscribe();
+    private static String shortDescription(String desc) {
+        if (desc == null) {
+            return "";
+        }
+        return desc.length() > 50 ? desc.substring(0, 50) + "..." : desc;
     }
 
     private Mono<Void> sendOverdueAlert(Request request, long daysOverdue) {
@@ -256,7 +380,7 @@ public class RequestUpdateService {
                 safeDescription
         );
 
-        return chatRepository.findTelegramIdByRequestId(request.getRequestID())
+        return chatRoutingCache.findTelegramId(request.getShopID(), request.getAssignedContractorID())
                 .flatMap(chatId -> notificationService.sendNotification(chatId, message))
                 .then();
     }
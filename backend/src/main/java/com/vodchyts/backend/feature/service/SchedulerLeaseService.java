@@ -0,0 +1,185 @@
+package com.vodchyts.backend.feature.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// Выбор ведущей реплики для фоновых задач через аренду в таблице SchedulerLeases.
+// Аренду продлевает heartbeat; если реплика пропала, после истечения TTL ее забирает другая.
+// Каждая смена владельца увеличивает FencingToken: задача перед запуском сверяет свой токен с базой,
+// поэтому реплика, которая "проспала" потерю аренды (GC-пауза, обрыв сети), ничего не сделает.
+// Проверка перед запуском не спасает от паузы посреди задачи, поэтому неидемпотентные записи задач
+// добавляют в WHERE условие FENCED: токен из контекста runAsLeader сверяется с базой в той же инструкции
+@Service
+public class SchedulerLeaseService {
+
+    private static final Logger log = LoggerFactory.getLogger(SchedulerLeaseService.class);
+
+    public static final String BACKGROUND_JOBS = "background-jobs";
+    // Вне runAsLeader и с выключенной арендой токен -1, и условие всегда истинно
+    public static final String FENCED = "(:fencingToken < 0 OR EXISTS (SELECT 1 FROM SchedulerLeases " +
+            "WHERE LeaseName = '" + BACKGROUND_JOBS + "' AND FencingToken = :fencingToken))";
+    static final String FENCING_TOKEN_KEY = SchedulerLeaseService.class.getName() + ".fencingToken";
+
+    private final DatabaseClient databaseClient;
+    private final String nodeId;
+    private final boolean enabled;
+    private final long ttlMs;
+    private final AtomicBoolean heartbeatRunning = new AtomicBoolean(false);
+
+    // Локальный срок аренды считается от момента отправки запроса, поэтому истекает раньше, чем в базе
+    private volatile long leaderUntilNanos = System.nanoTime();
+    private volatile boolean holding = false;
+    private volatile long fencingToken = 0;
+
+    public SchedulerLeaseService(DatabaseClient databaseClient,
+                                 @Value("${scheduler.lease.enabled:true}") boolean enabled,
+                                 @Value("${scheduler.lease.ttl-ms:30000}") long ttlMs,
+                                 MeterRegistry meterRegistry) {
+        this.databaseClient = databaseClient;
+        this.enabled = enabled;
+        this.ttlMs = ttlMs;
+        this.nodeId = hostName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+        Gauge.builder("scheduler.leader", this, service -> service.isLeader() ? 1 : 0).register(meterRegistry);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public boolean isLeader() {
+        return !enabled || (holding && System.nanoTime() - leaderUntilNanos < 0);
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${scheduler.lease.heartbeat-ms:10000}")
+    public void heartbeat() {
+        if (!enabled || !heartbeatRunning.compareAndSet(false, true)) {
+            return;
+        }
+        long startedAt = System.nanoTime();
+        acquire()
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .doFinally(signal -> heartbeatRunning.set(false))
+                .subscribe(
+                        token -> {
+                            if (token.isPresent()) {
+                                if (!holding || token.get() != fencingToken) {
+                                    log.info("Реплика {} стала ведущей для фоновых задач (fencing token {}).", nodeId, token.get());
+                                }
+                                fencingToken = token.get();
+                                leaderUntilNanos = startedAt + TimeUnit.MILLISECONDS.toNanos(ttlMs);
+                                holding = true;
+                            } else {
+                                if (holding) {
+                                    log.info("Реплика {} больше не ведущая для фоновых задач.", nodeId);
+                                }
+                                holding = false;
+                            }
+                        },
+                        // Без ответа базы аренда просто истечет локально по leaderUntilNanos
+                        error -> log.warn("Не удалось продлить аренду планировщика: {}", error.getMessage())
+                );
+    }
+
+    // Пустой результат, если аренда занята другой живой репликой
+    private Mono<Long> acquire() {
+        // В UPDATE все выражения видят старые значения строки, поэтому CASE сравнивает с прежним владельцем
+        String sql = """
+                UPDATE SchedulerLeases
+                SET FencingToken = CASE WHEN Owner = :owner THEN FencingToken ELSE FencingToken + 1 END,
+                    Owner = :owner,
+                    ExpiresAt = DATEADD(millisecond, :ttlMs, SYSUTCDATETIME()),
+                    HeartbeatAt = SYSUTCDATETIME()
+                OUTPUT inserted.FencingToken
+                WHERE LeaseName = :name AND (Owner = :owner OR Owner IS NULL OR ExpiresAt < SYSUTCDATETIME())
+                """;
+        return databaseClient.sql(sql)
+                .bind("owner", nodeId)
+                .bind("ttlMs", (int) ttlMs)
+                .bind("name", BACKGROUND_JOBS)
+                .map(row -> row.get("FencingToken", Long.class))
+                .one();
+    }
+
+    // Запускает задачу, только если эта реплика ведущая и ее токен все еще актуален в базе
+    public <T> Mono<T> runAsLeader(String jobName, Supplier<Mono<T>> job) {
+        if (!enabled) {
+            return Mono.defer(job);
+        }
+        if (!isLeader()) {
+            log.debug("Задача {} пропущена: реплика {} не ведущая.", jobName, nodeId);
+            return Mono.empty();
+        }
+        long token = fencingToken;
+        return verify(token).flatMap(valid -> {
+            if (!valid) {
+                log.warn("Задача {} пропущена: fencing token {} устарел.", jobName, token);
+                holding = false;
+                return Mono.empty();
+            }
+            return job.get().contextWrite(Context.of(FENCING_TOKEN_KEY, token));
+        });
+    }
+
+    // Токен, под которым runAsLeader запустил текущую задачу; привязывается к :fencingToken в FENCED
+    public static Mono<Long> fencingToken() {
+        return Mono.deferContextual(context -> Mono.just(context.<Long>getOrDefault(FENCING_TOKEN_KEY, -1L)));
+    }
+
+    public Mono<Boolean> verify(long token) {
+        if (!enabled) {
+            return Mono.just(true);
+        }
+        return databaseClient.sql("SELECT COUNT(*) AS Cnt FROM SchedulerLeases WHERE LeaseName = :name AND Owner = :owner AND FencingToken = :token AND ExpiresAt > SYSUTCDATETIME()")
+                .bind("name", BACKGROUND_JOBS)
+                .bind("owner", nodeId)
+                .bind("token", token)
+                .map(row -> row.get("Cnt", Integer.class))
+                .one()
+                .map(count -> count > 0)
+                .defaultIfEmpty(false);
+    }
+
+    // При штатной остановке отдаем аренду сразу, не дожидаясь TTL
+    @PreDestroy
+    public void release() {
+        if (!enabled || !holding) {
+            return;
+        }
+        holding = false;
+        try {
+            databaseClient.sql("UPDATE SchedulerLeases SET ExpiresAt = SYSUTCDATETIME() WHERE LeaseName = :name AND Owner = :owner")
+                    .bind("name", BACKGROUND_JOBS)
+                    .bind("owner", nodeId)
+                    .fetch().rowsUpdated()
+                    .block(Duration.ofSeconds(2));
+        } catch (Exception e) {
+            log.warn("Не удалось освободить аренду планировщика: {}", e.getMessage());
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "node";
+        }
+    }
+}
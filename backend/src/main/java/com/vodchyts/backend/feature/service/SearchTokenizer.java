@@ -0,0 +1,145 @@
+package com.vodchyts.backend.feature.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Разбиение текста заявок на термы поиска: нижний регистр, ё -> е и облегченный стеммер Портера для русского
+final class SearchTokenizer {
+
+    private static final int MAX_TOKEN_LENGTH = 40;
+
+    private static final String[] PERFECTIVE_GERUND_1 = {"вшись", "вши", "в"};
+    private static final String[] PERFECTIVE_GERUND_2 = {"ившись", "ывшись", "ивши", "ывши", "ив", "ыв"};
+    private static final String[] REFLEXIVE = {"ся", "сь"};
+    private static final String[] ADJECTIVE = {"ими", "ыми", "его", "ого", "ему", "ому", "ее", "ие", "ые", "ое", "ей", "ий",
+            "ый", "ой", "ем", "им", "ым", "ом", "их", "ых", "ую", "юю", "ая", "яя", "ою", "ею"};
+    private static final String[] PARTICIPLE_1 = {"ем", "нн", "вш", "ющ", "щ"};
+    private static final String[] PARTICIPLE_2 = {"ивш", "ывш", "ующ"};
+    private static final String[] VERB_1 = {"ете", "йте", "ешь", "нно", "ла", "на", "ли", "ем", "ло", "но", "ет", "ют", "ны", "ть", "й", "л", "н"};
+    private static final String[] VERB_2 = {"ейте", "уйте", "ила", "ыла", "ена", "ите", "или", "ыли", "ило", "ыло", "ено", "ует",
+            "уют", "ены", "ить", "ыть", "ишь", "ей", "уй", "ил", "ыл", "им", "ым", "ен", "ят", "ит", "ыт", "ую", "ю"};
+    private static final String[] NOUN = {"иями", "ями", "ами", "ией", "иям", "ием", "иях", "ев", "ов", "ие", "ье", "еи", "ии",
+            "ей", "ой", "ий", "ям", "ем", "ам", "ом", "ах", "ях", "ию", "ью", "ия", "ья", "а", "е", "и", "й", "о", "у", "ы", "ь", "ю", "я"};
+    private static final String[] SUPERLATIVE = {"ейше", "ейш"};
+
+    private SearchTokenizer() {
+    }
+
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String token = normalized.substring(start, Math.min(i, start + MAX_TOKEN_LENGTH));
+                if (token.length() > 1 || Character.isDigit(token.charAt(0))) {
+                    terms.add(stem(token));
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    static String stem(String word) {
+        int rv = regionAfterFirstVowel(word);
+        if (rv >= word.length()) {
+            return word;
+        }
+        String prefix = word.substring(0, rv);
+        String region = word.substring(rv);
+
+        String stripped = removeGerund(region);
+        if (stripped == null) {
+            region = removeEnding(region, REFLEXIVE);
+            stripped = removeAdjectival(region);
+            if (stripped == null) {
+                stripped = removeVerb(region);
+            }
+            if (stripped == null) {
+                stripped = removeEnding(region, NOUN);
+            }
+        }
+        region = stripped;
+        if (region.endsWith("и")) {
+            region = region.substring(0, region.length() - 1);
+        }
+        region = removeEnding(region, SUPERLATIVE);
+        if (region.endsWith("нн")) {
+            region = region.substring(0, region.length() - 1);
+        } else if (region.endsWith("ь")) {
+            region = region.substring(0, region.length() - 1);
+        }
+        return prefix + region;
+    }
+
+    private static int regionAfterFirstVowel(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if ("аеиоуыэюя".indexOf(word.charAt(i)) >= 0) {
+                return i + 1;
+            }
+        }
+        return word.length();
+    }
+
+    private static String removeGerund(String region) {
+        String stripped = removePreceded(region, PERFECTIVE_GERUND_1);
+        if (stripped != null) {
+            return stripped;
+        }
+        return removeIfEndsWith(region, PERFECTIVE_GERUND_2);
+    }
+
+    private static String removeAdjectival(String region) {
+        String stripped = removeIfEndsWith(region, ADJECTIVE);
+        if (stripped == null) {
+            return null;
+        }
+        String participle = removePreceded(stripped, PARTICIPLE_1);
+        if (participle != null) {
+            return participle;
+        }
+        participle = removeIfEndsWith(stripped, PARTICIPLE_2);
+        return participle != null ? participle : stripped;
+    }
+
+    private static String removeVerb(String region) {
+        String stripped = removePreceded(region, VERB_1);
+        return stripped != null ? stripped : removeIfEndsWith(region, VERB_2);
+    }
+
+    // Окончания первой группы снимаются только после «а» или «я», сама гласная остается
+    private static String removePreceded(String region, String[] endings) {
+        for (String ending : endings) {
+            int cut = region.length() - ending.length();
+            if (cut > 0 && region.endsWith(ending)) {
+                char before = region.charAt(cut - 1);
+                if (before == 'а' || before == 'я') {
+                    return region.substring(0, cut);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String removeIfEndsWith(String region, String[] endings) {
+        for (String ending : endings) {
+            if (region.endsWith(ending)) {
+                return region.substring(0, region.length() - ending.length());
+            }
+        }
+        return null;
+    }
+
+    private static String removeEnding(String region, String[] endings) {
+        String stripped = removeIfEndsWith(region, endings);
+        return stripped != null ? stripped : region;
+    }
+}
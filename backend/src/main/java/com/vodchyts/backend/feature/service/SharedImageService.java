@@ -0,0 +1,172 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.feature.dto.ImageInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Общие изображения фото заявок, шаблонов и уведомлений: файл в PhotoStore по SHA-256 содержимого
+// и строка Images со счетчиком ссылок. release только уменьшает счетчик в транзакции вызывающего кода,
+// а файлы без ссылок удаляет отдельная периодическая очистка в собственной транзакции: откат удаления заявки
+// или шаблона возвращает ссылки, и они не указывают на уже стертый файл
+@Service
+public class SharedImageService {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedImageService.class);
+    private static final int HEADER_LENGTH = 4;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    public record StoredImage(String hash, String contentType, long size) {}
+
+    private final DatabaseClient databaseClient;
+    private final PhotoStore photoStore;
+    private final ImageBlobReader blobReader;
+    private final TransactionalOperator transactionalOperator;
+    private final SchedulerLeaseService leaseService;
+
+    public SharedImageService(DatabaseClient databaseClient, PhotoStore photoStore, ImageBlobReader blobReader,
+                              TransactionalOperator transactionalOperator, SchedulerLeaseService leaseService) {
+        this.databaseClient = databaseClient;
+        this.photoStore = photoStore;
+        this.blobReader = blobReader;
+        this.transactionalOperator = transactionalOperator;
+        this.leaseService = leaseService;
+    }
+
+    // Сохраняет поток в хранилище; тип определяется по первым байтам, размер считается по ходу записи
+    public Mono<StoredImage> store(Flux<DataBuffer> content) {
+        return Mono.defer(() -> {
+            AtomicLong size = new AtomicLong();
+            byte[] header = new byte[HEADER_LENGTH];
+            Flux<DataBuffer> counted = content.doOnNext(buffer -> {
+                long offset = size.getAndAdd(buffer.readableByteCount());
+                for (int i = 0; offset + i < HEADER_LENGTH && i < buffer.readableByteCount(); i++) {
+                    header[(int) offset + i] = buffer.getByte(buffer.readPosition() + i);
+                }
+            });
+            return photoStore.save(counted)
+                    .map(hash -> new StoredImage(hash,
+                            Optional.ofNullable(ImageTypes.detectContentType(header)).orElse(ImageTypes.JPEG),
+                            size.get()));
+        });
+    }
+
+    public Mono<String> acquire(byte[] content) {
+        String contentType = Optional.ofNullable(ImageTypes.detectContentType(content)).orElse(ImageTypes.JPEG);
+        return photoStore.save(content)
+                .flatMap(hash -> register(hash, contentType, content.length)
+                        // Файл мог удалить параллельный release между записью и регистрацией: байты на руках, пишем заново
+                        .then(photoStore.load(hash).hasElement())
+                        .flatMap(exists -> exists ? Mono.just(hash) : photoStore.save(content)));
+    }
+
+    // Ссылка на файл, который уже записан в хранилище (загрузка фото, перенос из ImageData)
+    public Mono<String> acquire(StoredImage image) {
+        return register(image.hash(), image.contentType(), image.size())
+                .then(photoStore.load(image.hash()).hasElement())
+                .flatMap(exists -> exists
+                        ? Mono.just(image.hash())
+                        : Mono.error(new IllegalStateException("Файл изображения " + image.hash() + " был удален во время сохранения, повторите загрузку")));
+    }
+
+    private Mono<Void> register(String hash, String contentType, long size) {
+        return databaseClient.sql("MERGE Images WITH (HOLDLOCK) AS target " +
+                        "USING (SELECT :hash AS ContentHash) AS src ON target.ContentHash = src.ContentHash " +
+                        "WHEN MATCHED THEN UPDATE SET RefCount = target.RefCount + 1 " +
+                        "WHEN NOT MATCHED THEN INSERT (ContentHash, ContentType, ByteSize, RefCount) VALUES (:hash, :type, :size, 1);")
+                .bind("hash", hash)
+                .bind("type", contentType)
+                .bind("size", size)
+                .fetch()
+                .rowsUpdated()
+                .then();
+    }
+
+    public Mono<Void> release(String hash) {
+        if (hash == null) {
+            return Mono.empty();
+        }
+        return databaseClient.sql("UPDATE Images SET RefCount = RefCount - 1 OUTPUT INSERTED.RefCount WHERE ContentHash = :hash AND RefCount > 0")
+                .bind("hash", hash)
+                .map(row -> row.get("RefCount", Integer.class))
+                .one()
+                .then();
+    }
+
+    @Scheduled(initialDelayString = "${images.sweep-interval-ms:600000}", fixedDelayString = "${images.sweep-interval-ms:600000}")
+    public void sweepUnreferenced() {
+        leaseService.runAsLeader("image-sweep", this::deleteAllUnreferenced)
+                .subscribe(
+                        count -> {
+                            if (count > 0) {
+                                log.info("Удалено неиспользуемых изображений: {}", count);
+                            }
+                        },
+                        error -> log.warn("Не удалось очистить неиспользуемые изображения: {}", error.getMessage())
+                );
+    }
+
+    // Каждое изображение удаляется в своей транзакции, где кроме него ничего нет
+    public Mono<Long> deleteAllUnreferenced() {
+        return databaseClient.sql("SELECT ContentHash FROM Images WHERE RefCount = 0")
+                .map(row -> row.get("ContentHash", String.class))
+                .all()
+                .collectList()
+                .flatMapMany(Flux::fromIterable)
+                .concatMap(hash -> deleteUnreferenced(hash)
+                        .as(transactionalOperator::transactional))
+                .filter(deleted -> deleted)
+                .count();
+    }
+
+    // Строка удаляется до файла и в той же транзакции: параллельный acquire ждет блокировку строки.
+    // Вызывать только в отдельной транзакции, не внутри чужой
+    private Mono<Boolean> deleteUnreferenced(String hash) {
+        return databaseClient.sql("DELETE FROM Images WHERE ContentHash = :hash AND RefCount = 0")
+                .bind("hash", hash)
+                .fetch()
+                .rowsUpdated()
+                .flatMap(deleted -> deleted > 0
+                        ? photoStore.delete(hash)
+                                .doOnSuccess(unused -> log.debug("Изображение {} больше не используется и удалено из хранилища", hash))
+                                .thenReturn(true)
+                        : Mono.just(false));
+    }
+
+    // Метаданные изображения шаблона или уведомления без чтения самих байтов
+    public Mono<ImageInfo> describe(ImageBlobReader.Source source, Integer id) {
+        String table = source.table;
+        return databaseClient.sql("SELECT t." + source.hashColumn + " AS StoredHash, i.ByteSize, i.ContentType, " +
+                        "CONVERT(VARCHAR(64), HASHBYTES('SHA2_256', t.ImageData), 2) AS LegacyHash, DATALENGTH(t.ImageData) AS LegacySize " +
+                        "FROM " + table + " t LEFT JOIN Images i ON i.ContentHash = t." + source.hashColumn +
+                        " WHERE t." + source.idColumn + " = :id AND (t." + source.hashColumn + " IS NOT NULL OR DATALENGTH(t.ImageData) > 0)")
+                .bind("id", id)
+                .map(row -> {
+                    String storedHash = row.get("StoredHash", String.class);
+                    if (storedHash != null) {
+                        return new ImageInfo(storedHash, row.get("ByteSize", Long.class), row.get("ContentType", String.class), true);
+                    }
+                    return new ImageInfo(row.get("LegacyHash", String.class), row.get("LegacySize", Long.class), null, false);
+                })
+                .one();
+    }
+
+    public Flux<DataBuffer> read(ImageBlobReader.Source source, Integer id, ImageInfo image) {
+        if (!image.stored()) {
+            return blobReader.read(source, id);
+        }
+        return photoStore.load(image.hash())
+                .flatMapMany(resource -> DataBufferUtils.read(resource, DefaultDataBufferFactory.sharedInstance, READ_BUFFER_SIZE));
+    }
+}
@@ -14,22 +14,31 @@ import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuples;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 @Service
 public class ShopContractorChatService {
 
+    private static final int ROUTING_IDS_PER_QUERY = 1000;
+
+    private static final String ROUTING_SQL =
+            "SELECT RequestID, ShopID, AssignedContractorID FROM Requests WHERE RequestID IN (:ids)";
+
     private final ReactiveShopContractorChatRepository chatRepository;
     private final ReactiveUserRepository userRepository;
     private final ReactiveRoleRepository roleRepository;
     private final ReactiveShopRepository shopRepository;
     private final DatabaseClient databaseClient;
     private final TelegramNotificationService notificationService;
+    private final ChatRoutingCache chatRoutingCache;
 
     public static final BiFunction<Row, RowMetadata, ShopContractorChatResponse> MAPPING_FUNCTION = (row, rowMetaData) -> new ShopContractorChatResponse(
             row.get("ShopContractorChatID", Integer.class),
@@ -40,13 +49,14 @@ public class ShopContractorChatService {
             row.get("TelegramID", Long.class)
     );
 
-    public ShopContractorChatService(ReactiveShopContractorChatRepository chatRepository, ReactiveUserRepository userRepository, ReactiveRoleRepository roleRepository, ReactiveShopRepository shopRepository, DatabaseClient databaseClient, TelegramNotificationService notificationService) {
+    public ShopContractorChatService(ReactiveShopContractorChatRepository chatRepository, ReactiveUserRepository userRepository, ReactiveRoleRepository roleRepository, ReactiveShopRepository shopRepository, DatabaseClient databaseClient, TelegramNotificationService notificationService, ChatRoutingCache chatRoutingCache) {
         this.chatRepository = chatRepository;
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.shopRepository = shopRepository;
         this.databaseClient = databaseClient;
         this.notificationService = notificationService;
+        this.chatRoutingCache = chatRoutingCache;
     }
 
     public Mono<PagedResponse<ShopContractorChatResponse>> getAllChats(List<String> sort, int page, int size) {
@@ -144,7 +154,8 @@ public class ShopContractorChatService {
                     chat.setContractorID(request.contractorID());
                     chat.setTelegramID(request.telegramID());
                     return chatRepository.save(chat);
-                }));
+                }))
+                .flatMap(this::refreshRouting);
     }
 
     public Mono<ShopContractorChat> updateChat(Integer chatId, UpdateShopContractorChatRequest request) {
@@ -223,11 +234,21 @@ public class ShopContractorChatService {
                     chat.setContractorID(request.contractorID());
                     chat.setTelegramID(request.telegramID());
                     return chatRepository.save(chat);
-                });
+                })
+                .flatMap(this::refreshRouting);
     }
 
     public Mono<Void> deleteChat(Integer chatId) {
-        return chatRepository.deleteById(chatId);
+        return chatRepository.deleteById(chatId)
+                .then(refreshRouting(true))
+                .then();
+    }
+
+    // Уведомления должны сразу уйти в новый чат; если перечитать таблицу не удалось, это сделает периодическое обновление
+    private <T> Mono<T> refreshRouting(T result) {
+        return chatRoutingCache.refresh()
+                .onErrorResume(e -> Mono.empty())
+                .thenReturn(result);
     }
 
     public Mono<Boolean> checkIfExists(Integer shopId, Integer contractorId) {
@@ -261,4 +282,19 @@ public class ShopContractorChatService {
                 .map(MAPPING_FUNCTION)
                 .one();
     }
-}
\ No newline at end of file
+
+    public Mono<Map<Long, Collection<Integer>>> groupRequestIdsByChat(Collection<Integer> requestIds) {
+        return Flux.fromIterable(requestIds)
+                .buffer(ROUTING_IDS_PER_QUERY)
+                .concatMap(ids -> databaseClient.sql(ROUTING_SQL)
+                        .bind("ids", ids)
+                        .map(row -> Tuples.of(
+                                row.get("RequestID", Integer.class),
+                                row.get("ShopID", Integer.class),
+                                Optional.ofNullable(row.get("AssignedContractorID", Integer.class))))
+                        .all())
+                .concatMap(request -> chatRoutingCache.findTelegramId(request.getT2(), request.getT3().orElse(null))
+                        .map(telegramId -> Map.entry(telegramId, request.getT1())))
+                .collectMultimap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+}
@@ -4,13 +4,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.MultipartBodyBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.regex.Pattern;
+
 @Service
 public class TelegramNotificationService {
 
@@ -18,6 +23,8 @@ public class TelegramNotificationService {
     private String botUrl;
 
     private static final Logger log = LoggerFactory.getLogger(TelegramNotificationService.class);
+    // Компилируется один раз: escapeMarkdown вызывается на каждое уведомление и комментарий
+    private static final Pattern MARKDOWN_SPECIAL = Pattern.compile("([_\\*\\[\\]()~`>#\\+\\-=|{}.!])");
     private final WebClient webClient;
 
     public TelegramNotificationService(@Value("${bot.url:http://localhost:8081}") String botUrl) {
@@ -44,13 +51,51 @@ public class TelegramNotificationService {
 
     public Mono<Void> sendPhoto(Long chatId, String caption, byte[] imageData) {
         if (chatId == null || imageData == null || imageData.length == 0) return Mono.empty();
+        return sendPhoto(chatId, caption, new ByteArrayResource(imageData));
+    }
+
+    public Mono<Void> sendPhoto(Long chatId, String caption, Resource image) {
+        if (chatId == null || image == null) return Mono.empty();
+
+        MultipartBodyBuilder builder = photoMessage(chatId, caption);
+        builder.part("file", image)
+                .header("Content-Disposition", "form-data; name=file; filename=image.jpg");
+        return postPhoto(chatId, builder);
+    }
+
+    // Содержимое передается в бот по мере чтения, например прямо из блоба в базе
+    public Mono<Void> sendPhoto(Long chatId, String caption, Flux<DataBuffer> image) {
+        if (chatId == null || image == null) return Mono.empty();
+        return deliverPhoto(chatId, caption, image)
+                .onErrorResume(e -> {
+                    log.error("НЕ УДАЛОСЬ отправить фото в чат {}: {}", chatId, e.getMessage());
+                    return Mono.empty();
+                });
+    }
 
+    // В отличие от sendPhoto ошибка бота не проглатывается — ее обрабатывает рассылка уведомлений
+    public Mono<Void> deliverPhoto(Long chatId, String caption, Flux<DataBuffer> image) {
+        MultipartBodyBuilder builder = photoMessage(chatId, caption);
+        builder.asyncPart("file", image, DataBuffer.class)
+                .header("Content-Disposition", "form-data; name=file; filename=image.jpg");
+        return webClient.post()
+                .uri("/notify/photo")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .retrieve()
+                .bodyToMono(String.class)
+                .doOnSuccess(s -> log.info("Photo sent to chat {}", chatId))
+                .then();
+    }
+
+    private MultipartBodyBuilder photoMessage(Long chatId, String caption) {
         MultipartBodyBuilder builder = new MultipartBodyBuilder();
         builder.part("chatId", chatId);
         builder.part("caption", caption != null ? caption : "");
-        builder.part("file", new ByteArrayResource(imageData))
-                .header("Content-Disposition", "form-data; name=file; filename=image.jpg");
+        return builder;
+    }
 
+    private Mono<Void> postPhoto(Long chatId, MultipartBodyBuilder builder) {
         return webClient.post()
                 .uri("/notify/photo")
                 .contentType(MediaType.MULTIPART_FORM_DATA)
@@ -68,23 +113,26 @@ public class TelegramNotificationService {
     public Mono<Void> sendNotification(Long chatId, String text) {
         if (chatId == null) return Mono.empty();
 
+        return deliverNotification(chatId, text)
+                .onErrorResume(e -> {
+                    log.error("НЕ УДАЛОСЬ отправить текст в чат {}: {}", chatId, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    public Mono<Void> deliverNotification(Long chatId, String text) {
         record NotifyPayload(Long chatId, String text) {}
-        String safeText = text;
 
         return webClient.post()
                 .uri("/notify")
-                .bodyValue(new NotifyPayload(chatId, safeText))
+                .bodyValue(new NotifyPayload(chatId, text))
                 .retrieve()
                 .bodyToMono(String.class)
                 .doOnSuccess(s -> log.info("Message sent to chat {}", chatId))
-                .onErrorResume(e -> {
-                    log.error("НЕ УДАЛОСЬ отправить текст в чат {}: {}", chatId, e.getMessage());
-                    return Mono.empty();
-                })
                 .then();
     }
     public String escapeMarkdown(String text) {
         if (text == null) return "";
-        return text.replaceAll("([_\\*\\[\\]()~`>#\\+\\-=|{}.!])", "\\\\$1");
+        return MARKDOWN_SPECIAL.matcher(text).replaceAll("\\\\$1");
     }
 }
\ No newline at end of file
@@ -14,15 +14,17 @@ public class TokenCleanupService {
     private static final Logger log = LoggerFactory.getLogger(TokenCleanupService.class);
 
     private final ReactiveRefreshTokenRepository refreshTokenRepository;
+    private final SchedulerLeaseService leaseService;
 
-    public TokenCleanupService(ReactiveRefreshTokenRepository refreshTokenRepository) {
+    public TokenCleanupService(ReactiveRefreshTokenRepository refreshTokenRepository, SchedulerLeaseService leaseService) {
         this.refreshTokenRepository = refreshTokenRepository;
+        this.leaseService = leaseService;
     }
 
     @Scheduled(cron = "0 0 23 * * *")
     public void cleanupExpiredTokens() {
         log.info("Запуск задачи по очистке истекших refresh-токенов...");
-        refreshTokenRepository.deleteExpiredTokens(LocalDateTime.now())
+        leaseService.runAsLeader("token-cleanup", () -> refreshTokenRepository.deleteExpiredTokens(LocalDateTime.now()))
                 .subscribe(
                         count -> log.info("Задача по очистке токенов завершена. Удалено {} токенов.", count),
                         error -> log.error("Ошибка во время очистки истекших токенов.", error)
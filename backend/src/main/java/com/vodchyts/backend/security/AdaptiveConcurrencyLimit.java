@@ -0,0 +1,90 @@
+package com.vodchyts.backend.security;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Градиентный лимит одновременных запросов: сравнивает текущую задержку с долгой скользящей средней.
+// Пока задержка держится около средней, лимит растет на sqrt(limit); когда запросы начинают ждать в очереди
+// (пул R2DBC, CPU), задержка растет и лимит сжимается пропорционально
+final class AdaptiveConcurrencyLimit {
+
+    // Во сколько раз задержка может превысить среднюю, прежде чем лимит начнет снижаться
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double LONG_RTT_ALPHA = 2.0 / (600 + 1);
+    private static final int WARMUP_SAMPLES = 10;
+    private static final double DROP_BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    private double longRtt;
+    private long samples;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = Math.max(minLimit, maxLimit);
+        this.limit = clamp(initialLimit);
+    }
+
+    // Число запросов в работе вместе с этим или -1, если лимит исчерпан
+    int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    // Запрос отменен клиентом: задержка ничего не говорит о нагрузке
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    void onSuccess(long rttNanos, int inFlightAtStart) {
+        inFlight.decrementAndGet();
+        update(Math.max(1, rttNanos), inFlightAtStart);
+    }
+
+    // Ошибка или 5xx: мягко отступаем, не дожидаясь роста задержки
+    synchronized void onDropped() {
+        inFlight.decrementAndGet();
+        limit = clamp(limit * DROP_BACKOFF);
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void update(long rtt, int inFlightAtStart) {
+        samples++;
+        if (samples <= WARMUP_SAMPLES) {
+            longRtt += (rtt - longRtt) / samples;
+            return;
+        }
+        longRtt += (rtt - longRtt) * LONG_RTT_ALPHA;
+        // Нагрузка спала: быстрее забываем задержки времени пика
+        if (longRtt / rtt > 2) {
+            longRtt *= 0.95;
+        }
+        // Система недогружена — нет оснований ни поднимать, ни снижать лимит
+        if (inFlightAtStart < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / rtt));
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = clamp(limit * (1 - SMOOTHING) + target * SMOOTHING);
+    }
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+}
@@ -0,0 +1,130 @@
+package com.vodchyts.backend.security;
+
+import com.vodchyts.backend.config.ConcurrencyLimitConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Стоит раньше логирования и Spring Security: лишний запрос отбивается быстрым 503 до того,
+// как займет соединение из пула R2DBC и выстроит очередь
+@Component
+@Order(-200)
+public class ConcurrencyLimitFilter implements WebFilter {
+
+    private static final String RETRY_AFTER_SECONDS = "1";
+    private static final Pattern PHOTO_DOWNLOAD = Pattern.compile("/api/requests/(photos/\\d+|\\d+/photos)");
+    private static final Pattern TEMPLATE_IMAGE = Pattern.compile("/api/admin/message-templates/\\d+/image");
+
+    private final boolean enabled;
+    private final Map<TrafficClass, AdaptiveConcurrencyLimit> limits = new EnumMap<>(TrafficClass.class);
+    private final Map<TrafficClass, Counter> rejections = new EnumMap<>(TrafficClass.class);
+
+    public ConcurrencyLimitFilter(ConcurrencyLimitConfig config, MeterRegistry meterRegistry) {
+        this.enabled = config.isEnabled();
+        for (TrafficClass trafficClass : TrafficClass.values()) {
+            ConcurrencyLimitConfig.Limit configured = config.getClasses().get(trafficClass);
+            AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+                    valueOr(configured != null ? configured.getInitial() : null, trafficClass.getDefaultInitial()),
+                    valueOr(configured != null ? configured.getMin() : null, trafficClass.getDefaultMin()),
+                    valueOr(configured != null ? configured.getMax() : null, trafficClass.getDefaultMax()));
+            limits.put(trafficClass, limit);
+
+            String tag = trafficClass.name().toLowerCase();
+            Gauge.builder("concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                    .tag("traffic", tag)
+                    .register(meterRegistry);
+            Gauge.builder("concurrency.inflight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                    .tag("traffic", tag)
+                    .register(meterRegistry);
+            rejections.put(trafficClass, Counter.builder("concurrency.rejected")
+                    .tag("traffic", tag)
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!enabled || HttpMethod.OPTIONS.equals(request.getMethod())
+                || request.getURI().getPath().startsWith("/actuator")) {
+            return chain.filter(exchange);
+        }
+
+        TrafficClass trafficClass = classify(request);
+        AdaptiveConcurrencyLimit limit = limits.get(trafficClass);
+        int inFlight = limit.tryAcquire();
+        if (inFlight < 0) {
+            rejections.get(trafficClass).increment();
+            exchange.getResponse().getHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return exchange.getResponse().setComplete();
+        }
+
+        boolean sampled = !streamsBody(request);
+        long start = System.nanoTime();
+        return chain.filter(exchange)
+                .doFinally(signal -> {
+                    HttpStatusCode status = exchange.getResponse().getStatusCode();
+                    if (signal == SignalType.CANCEL) {
+                        limit.release();
+                    } else if (signal == SignalType.ON_ERROR || (status != null && status.is5xxServerError())) {
+                        limit.onDropped();
+                    } else if (!sampled) {
+                        limit.release();
+                    } else {
+                        limit.onSuccess(System.nanoTime() - start, inFlight);
+                    }
+                });
+    }
+
+    static TrafficClass classify(ServerHttpRequest request) {
+        String path = request.getURI().getPath();
+        if (path.startsWith("/api/bot")) {
+            return TrafficClass.BOT;
+        }
+        MediaType contentType = request.getHeaders().getContentType();
+        if (contentType != null && MediaType.MULTIPART_FORM_DATA.includes(contentType)) {
+            return TrafficClass.UPLOAD;
+        }
+        if (path.startsWith("/api/analytics") || path.startsWith("/api/admin/logs") || path.startsWith("/api/admin/audit")
+                || path.equals("/api/requests/export") || path.endsWith("/stats")) {
+            return TrafficClass.REPORT;
+        }
+        if (streamsBody(request)) {
+            return TrafficClass.DOWNLOAD;
+        }
+        return TrafficClass.INTERACTIVE;
+    }
+
+    // Файлы и выгрузка отдаются со скоростью чтения клиента: такая задержка говорит о его канале, а не о нагрузке
+    // на сервер, и медленный клиент сжимал бы лимит для всех. В замеры эти ответы не попадают
+    static boolean streamsBody(ServerHttpRequest request) {
+        if (!HttpMethod.GET.equals(request.getMethod())) {
+            return false;
+        }
+        String path = request.getURI().getPath();
+        return path.equals("/api/requests/export")
+                || PHOTO_DOWNLOAD.matcher(path).matches()
+                || TEMPLATE_IMAGE.matcher(path).matches();
+    }
+
+    private static int valueOr(Integer value, int fallback) {
+        return value != null ? value : fallback;
+    }
+}
@@ -0,0 +1,94 @@
+package com.vodchyts.backend.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.vodchyts.backend.config.RateLimitConfig;
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AbstractCompareAndSwapBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AsyncCompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+// Состояние корзин в памяти процесса: для одной реплики и тестов. Тот же compare-and-swap, что и у R2DBC-хранилища,
+// поэтому RateLimitingService работает с обоими одинаково. Ограничено и вытесняет простаивающие записи так же, как локальный кэш корзин
+@Component
+@ConditionalOnProperty(name = "rate-limit.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryRateLimitProxyManager extends AbstractCompareAndSwapBasedProxyManager<String> {
+
+    private final Map<String, byte[]> states;
+
+    public InMemoryRateLimitProxyManager(RateLimitConfig config) {
+        super(ClientSideConfig.getDefault());
+        Cache<String, byte[]> cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaxBuckets())
+                .expireAfterAccess(config.effectiveIdleExpiry())
+                .build();
+        this.states = cache.asMap();
+    }
+
+    @Override
+    protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+        return new CompareAndSwapOperation() {
+            @Override
+            public Optional<byte[]> getStateData(Optional<Long> timeoutNanos) {
+                return Optional.ofNullable(states.get(key));
+            }
+
+            @Override
+            public boolean compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState, Optional<Long> timeoutNanos) {
+                return swap(key, originalData, newData);
+            }
+        };
+    }
+
+    @Override
+    protected AsyncCompareAndSwapOperation beginAsyncCompareAndSwapOperation(String key) {
+        return new AsyncCompareAndSwapOperation() {
+            @Override
+            public CompletableFuture<Optional<byte[]>> getStateData(Optional<Long> timeoutNanos) {
+                return CompletableFuture.completedFuture(Optional.ofNullable(states.get(key)));
+            }
+
+            @Override
+            public CompletableFuture<Boolean> compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState, Optional<Long> timeoutNanos) {
+                return CompletableFuture.completedFuture(swap(key, originalData, newData));
+            }
+        };
+    }
+
+    @Override
+    public void removeProxy(String key) {
+        states.remove(key);
+    }
+
+    @Override
+    protected CompletableFuture<Void> removeAsync(String key) {
+        states.remove(key);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return true;
+    }
+
+    // Массивы сравниваются по содержимому, а не по ссылке, как сделал бы ConcurrentHashMap.replace
+    private boolean swap(String key, byte[] originalData, byte[] newData) {
+        boolean[] swapped = {false};
+        states.compute(key, (k, current) -> {
+            if (originalData == null ? current == null : Arrays.equals(current, originalData)) {
+                swapped[0] = true;
+                return newData;
+            }
+            return current;
+        });
+        return swapped[0];
+    }
+}
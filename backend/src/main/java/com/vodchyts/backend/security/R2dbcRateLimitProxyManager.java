@@ -0,0 +1,146 @@
+package com.vodchyts.backend.security;
+
+import com.vodchyts.backend.config.RateLimitConfig;
+import com.vodchyts.backend.feature.service.SchedulerLeaseService;
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AbstractCompareAndSwapBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AsyncCompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+// Общее для всех реплик состояние корзин в таблице RateLimitBuckets. Запись — оптимистичный compare-and-swap
+// по прежнему содержимому State: при гонке bucket4j перечитывает состояние и повторяет команду.
+// Фильтр запросов пользуется асинхронным режимом; синхронный ждет те же запросы к базе и годится только вне event loop
+@Component
+@ConditionalOnProperty(name = "rate-limit.store", havingValue = "r2dbc")
+public class R2dbcRateLimitProxyManager extends AbstractCompareAndSwapBasedProxyManager<String> {
+
+    private static final Logger log = LoggerFactory.getLogger(R2dbcRateLimitProxyManager.class);
+    // Если bucket4j не передал таймаут, синхронный вызов ждет базу не дольше этого
+    private static final Duration DEFAULT_SYNC_TIMEOUT = Duration.ofSeconds(5);
+
+    private final DatabaseClient databaseClient;
+    private final SchedulerLeaseService leaseService;
+    private final Duration idleExpiry;
+
+    public R2dbcRateLimitProxyManager(DatabaseClient databaseClient, RateLimitConfig config, SchedulerLeaseService leaseService) {
+        super(ClientSideConfig.getDefault());
+        this.databaseClient = databaseClient;
+        this.leaseService = leaseService;
+        this.idleExpiry = config.effectiveIdleExpiry();
+    }
+
+    @Override
+    protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+        return new CompareAndSwapOperation() {
+            @Override
+            public Optional<byte[]> getStateData(Optional<Long> timeoutNanos) {
+                return read(key).block(syncTimeout(timeoutNanos));
+            }
+
+            @Override
+            public boolean compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState, Optional<Long> timeoutNanos) {
+                return Boolean.TRUE.equals(swap(key, originalData, newData).block(syncTimeout(timeoutNanos)));
+            }
+        };
+    }
+
+    @Override
+    protected AsyncCompareAndSwapOperation beginAsyncCompareAndSwapOperation(String key) {
+        return new AsyncCompareAndSwapOperation() {
+            @Override
+            public CompletableFuture<Optional<byte[]>> getStateData(Optional<Long> timeoutNanos) {
+                return read(key).toFuture();
+            }
+
+            @Override
+            public CompletableFuture<Boolean> compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState, Optional<Long> timeoutNanos) {
+                return swap(key, originalData, newData).toFuture();
+            }
+        };
+    }
+
+    private Mono<Optional<byte[]>> read(String key) {
+        return databaseClient.sql("SELECT State FROM RateLimitBuckets WHERE BucketKey = :key")
+                .bind("key", key)
+                .map(row -> row.get("State", byte[].class))
+                .one()
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    private static Duration syncTimeout(Optional<Long> timeoutNanos) {
+        return timeoutNanos.map(Duration::ofNanos).orElse(DEFAULT_SYNC_TIMEOUT);
+    }
+
+    private Mono<Boolean> swap(String key, byte[] originalData, byte[] newData) {
+        LocalDateTime expiresAt = LocalDateTime.now().plus(idleExpiry);
+        if (originalData == null) {
+            // Корзину одновременно создала другая реплика — bucket4j перечитает ее состояние
+            return databaseClient.sql("INSERT INTO RateLimitBuckets (BucketKey, State, ExpiresAt) VALUES (:key, :state, :expiresAt)")
+                    .bind("key", key)
+                    .bind("state", newData)
+                    .bind("expiresAt", expiresAt)
+                    .fetch().rowsUpdated()
+                    .map(rows -> rows > 0)
+                    .onErrorResume(DataIntegrityViolationException.class, e -> Mono.just(false));
+        }
+        return databaseClient.sql("UPDATE RateLimitBuckets SET State = :state, ExpiresAt = :expiresAt WHERE BucketKey = :key AND State = :original")
+                .bind("state", newData)
+                .bind("expiresAt", expiresAt)
+                .bind("key", key)
+                .bind("original", originalData)
+                .fetch().rowsUpdated()
+                .map(rows -> rows > 0);
+    }
+
+    @Override
+    public void removeProxy(String key) {
+        delete(key).block(DEFAULT_SYNC_TIMEOUT);
+    }
+
+    @Override
+    protected CompletableFuture<Void> removeAsync(String key) {
+        return delete(key).toFuture();
+    }
+
+    private Mono<Void> delete(String key) {
+        return databaseClient.sql("DELETE FROM RateLimitBuckets WHERE BucketKey = :key")
+                .bind("key", key)
+                .then();
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return true;
+    }
+
+    // Простоявшая дольше idle-expiry корзина полностью пополнилась бы, ее строку можно удалить
+    @Scheduled(initialDelayString = "${rate-limit.cleanup-interval-ms:600000}", fixedDelayString = "${rate-limit.cleanup-interval-ms:600000}")
+    public void deleteExpired() {
+        leaseService.runAsLeader("rate-limit-cleanup", () -> databaseClient.sql("DELETE FROM RateLimitBuckets WHERE ExpiresAt < :now")
+                        .bind("now", LocalDateTime.now())
+                        .fetch().rowsUpdated())
+                .subscribe(
+                        rows -> {
+                            if (rows > 0) {
+                                log.debug("Удалено простаивающих корзин лимитов: {}", rows);
+                            }
+                        },
+                        error -> log.warn("Не удалось очистить RateLimitBuckets: {}", error.getMessage())
+                );
+    }
+}
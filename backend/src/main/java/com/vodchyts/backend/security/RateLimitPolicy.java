@@ -0,0 +1,29 @@
+package com.vodchyts.backend.security;
+
+import java.time.Duration;
+
+// Классы маршрутов для ограничения частоты запросов и лимиты по умолчанию.
+// Вход считается по IP, остальное — по пользователю из токена, а без токена тоже по IP
+public enum RateLimitPolicy {
+    LOGIN(5, Duration.ofMinutes(5)),
+    READ(300, Duration.ofMinutes(1)),
+    WRITE(60, Duration.ofMinutes(1)),
+    UPLOAD(20, Duration.ofMinutes(1)),
+    BOT(600, Duration.ofMinutes(1));
+
+    private final int defaultCapacity;
+    private final Duration defaultPeriod;
+
+    RateLimitPolicy(int defaultCapacity, Duration defaultPeriod) {
+        this.defaultCapacity = defaultCapacity;
+        this.defaultPeriod = defaultPeriod;
+    }
+
+    public int getDefaultCapacity() {
+        return defaultCapacity;
+    }
+
+    public Duration getDefaultPeriod() {
+        return defaultPeriod;
+    }
+}
@@ -1,45 +1,134 @@
 package com.vodchyts.backend.security;
 
+import com.vodchyts.backend.config.RateLimitConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// Выполняется после цепочки Spring Security, поэтому пользователь из JWT уже известен:
+// сотрудники за одним корпоративным NAT получают каждый свою корзину
 @Component
 public class RateLimitingFilter implements WebFilter {
 
+    private static final Logger log = LoggerFactory.getLogger(RateLimitingFilter.class);
+    private static final long STORE_FAILURE_RETRY_AFTER_SECONDS = 5;
+
     private final RateLimitingService rateLimitingService;
+    private final int trustedProxies;
 
-    public RateLimitingFilter(RateLimitingService rateLimitingService) {
+    public RateLimitingFilter(RateLimitingService rateLimitingService, RateLimitConfig config) {
         this.rateLimitingService = rateLimitingService;
+        this.trustedProxies = config.getTrustedProxies();
     }
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
-        String ip = exchange.getRequest().getHeaders().getFirst("X-Forwarded-For");
+        ServerHttpRequest request = exchange.getRequest();
+        RateLimitPolicy policy = resolvePolicy(request);
+        String ip = clientIp(request);
 
-        if (ip == null || ip.isEmpty()) {
-            ip = exchange.getRequest().getRemoteAddress().getAddress().getHostAddress();
-        } else {
-            ip = ip.split(",")[0].trim();
+        if (policy == RateLimitPolicy.LOGIN) {
+            return consume(exchange, chain, policy, "ip:" + ip);
         }
-        String path = exchange.getRequest().getURI().getPath();
 
-        io.github.bucket4j.Bucket bucket;
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .filter(Authentication::isAuthenticated)
+                .map(auth -> subjectFor(policy, request, auth.getName()))
+                .defaultIfEmpty("ip:" + ip)
+                .flatMap(subject -> consume(exchange, chain, policy, subject));
+    }
+
+    // Если общее хранилище лимитов недоступно или не ответило вовремя, обычный запрос пропускается без проверки:
+    // отказ базы не должен останавливать работу. Вход в этом случае отклоняется — иначе сбой хранилища снимал бы защиту от подбора пароля
+    private Mono<Void> consume(ServerWebExchange exchange, WebFilterChain chain, RateLimitPolicy policy, String subject) {
+        return rateLimitingService.tryConsume(policy, subject)
+                .map(Optional::of)
+                .onErrorResume(e -> {
+                    if (policy == RateLimitPolicy.LOGIN) {
+                        log.warn("Хранилище лимитов недоступно, вход отклонен: {}", e.toString());
+                    } else {
+                        log.warn("Хранилище лимитов недоступно, запрос пропущен без проверки: {}", e.toString());
+                    }
+                    return Mono.just(Optional.empty());
+                })
+                .flatMap(probe -> {
+                    if (probe.isEmpty() && policy == RateLimitPolicy.LOGIN) {
+                        exchange.getResponse().getHeaders().set("Retry-After", String.valueOf(STORE_FAILURE_RETRY_AFTER_SECONDS));
+                        exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                        return exchange.getResponse().setComplete();
+                    }
+                    if (probe.isEmpty() || probe.get().isConsumed()) {
+                        return chain.filter(exchange);
+                    }
+                    long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(probe.get().getNanosToWaitForRefill()));
+                    exchange.getResponse().getHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                    exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+                    return exchange.getResponse().setComplete();
+                });
+    }
 
+    private static RateLimitPolicy resolvePolicy(ServerHttpRequest request) {
+        String path = request.getURI().getPath();
         if (path.startsWith("/api/auth/login")) {
-            bucket = rateLimitingService.resolveLoginBucket(ip);
-        } else {
-            bucket = rateLimitingService.resolveGeneralBucket(ip);
+            return RateLimitPolicy.LOGIN;
+        }
+        if (path.startsWith("/api/bot")) {
+            return RateLimitPolicy.BOT;
         }
+        MediaType contentType = request.getHeaders().getContentType();
+        if (contentType != null && MediaType.MULTIPART_FORM_DATA.includes(contentType)) {
+            return RateLimitPolicy.UPLOAD;
+        }
+        HttpMethod method = request.getMethod();
+        if (HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method) || HttpMethod.OPTIONS.equals(method)) {
+            return RateLimitPolicy.READ;
+        }
+        return RateLimitPolicy.WRITE;
+    }
+
+    // Бот ходит под одной учетной записью, поэтому делим его трафик по Telegram-пользователю
+    private static String subjectFor(RateLimitPolicy policy, ServerHttpRequest request, String username) {
+        if (policy == RateLimitPolicy.BOT) {
+            String telegramId = request.getQueryParams().getFirst("telegram_id");
+            if (telegramId != null && !telegramId.isBlank()) {
+                return "tg:" + telegramId;
+            }
+        }
+        return "user:" + username;
+    }
 
-        if (bucket.tryConsume(1)) {
-            return chain.filter(exchange);
-        } else {
-            exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
-            return exchange.getResponse().setComplete();
+    // Каждый прокси дописывает в X-Forwarded-For адрес, с которого к нему пришли, поэтому доверять можно только
+    // записям, добавленным своими прокси. Первую запись клиент подставляет как угодно и обходил бы лимит по IP
+    String clientIp(ServerHttpRequest request) {
+        List<String> forwarded = request.getHeaders().getOrEmpty("X-Forwarded-For").stream()
+                .flatMap(header -> Arrays.stream(header.split(",")))
+                .map(String::trim)
+                .filter(hop -> !hop.isEmpty())
+                .toList();
+        if (trustedProxies > 0 && !forwarded.isEmpty()) {
+            return forwarded.get(Math.max(0, forwarded.size() - trustedProxies));
         }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        return remoteAddress != null && remoteAddress.getAddress() != null
+                ? remoteAddress.getAddress().getHostAddress()
+                : "unknown";
     }
-}
\ No newline at end of file
+}
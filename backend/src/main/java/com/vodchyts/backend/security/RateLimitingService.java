@@ -1,37 +1,157 @@
 package com.vodchyts.backend.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.vodchyts.backend.config.RateLimitConfig;
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import com.vodchyts.backend.feature.dto.RateLimitPolicyRequest;
+import com.vodchyts.backend.feature.dto.RateLimitPolicyResponse;
 import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
 import io.github.bucket4j.Refill;
+import io.github.bucket4j.TokensInheritanceStrategy;
+import io.github.bucket4j.distributed.AsyncBucketProxy;
+import io.github.bucket4j.distributed.proxy.AsyncProxyManager;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.RemoteAsyncBucketBuilder;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class RateLimitingService {
 
-    private final Map<String, Bucket> loginBuckets = new ConcurrentHashMap<>();
-    private final Map<String, Bucket> generalBuckets = new ConcurrentHashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(RateLimitingService.class);
+    private static final Duration STORE_TIMEOUT = Duration.ofSeconds(2);
+    private static final int MAX_KEY_LENGTH = 190;
 
-    private Bucket createNewLoginBucket() {
-        return Bucket.builder()
-                .addLimit(Bandwidth.classic(5, Refill.intervally(5, Duration.ofMinutes(5))))
+    private record BucketKey(RateLimitPolicy policy, String subject) {}
+
+    public record Limit(int capacity, Duration period) {}
+
+    // Локальные прокси корзин поверх хранилища (в памяти или общая таблица для нескольких реплик).
+    // Ограничено по числу корзин и вытесняет простаивающие: сканирование с тысяч IP не раздувает кучу
+    private final Cache<BucketKey, AsyncBucketProxy> buckets;
+    private final AsyncProxyManager<String> proxyManager;
+    private final RateLimitConfig config;
+    private final Map<RateLimitPolicy, Limit> limits = new EnumMap<>(RateLimitPolicy.class);
+    private final Map<RateLimitPolicy, Counter> rejections = new EnumMap<>(RateLimitPolicy.class);
+
+    public RateLimitingService(RateLimitConfig config, ProxyManager<String> proxyManager, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.proxyManager = proxyManager.asAsync();
+        for (RateLimitPolicy policy : RateLimitPolicy.values()) {
+            RateLimitConfig.Limit configured = config.getPolicies().get(policy);
+            int capacity = configured != null && configured.getCapacity() != null
+                    ? configured.getCapacity() : policy.getDefaultCapacity();
+            Duration period = configured != null && configured.getPeriod() != null
+                    ? configured.getPeriod() : policy.getDefaultPeriod();
+            limits.put(policy, new Limit(capacity, period));
+            rejections.put(policy, Counter.builder("ratelimit.rejected")
+                    .tag("policy", policy.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(config.getMaxBuckets())
+                .expireAfterAccess(config.effectiveIdleExpiry())
+                .recordStats()
                 .build();
+        // cache.size, cache.evictions и т.д. с тегом cache=rate-limit-buckets
+        CaffeineCacheMetrics.monitor(meterRegistry, buckets, "rate-limit-buckets");
     }
 
-    private Bucket createNewGeneralBucket() {
-        return Bucket.builder()
-                .addLimit(Bandwidth.classic(50, Refill.intervally(50, Duration.ofMinutes(1))))
-                .build();
+    public Mono<ConsumptionProbe> tryConsume(RateLimitPolicy policy, String subject) {
+        AsyncBucketProxy bucket = buckets.get(new BucketKey(policy, subject), this::createBucket);
+        return Mono.fromFuture(() -> bucket.tryConsumeAndReturnRemaining(1))
+                .timeout(STORE_TIMEOUT)
+                .doOnNext(probe -> {
+                    if (!probe.isConsumed()) {
+                        rejections.get(policy).increment();
+                    }
+                });
+    }
+
+    private AsyncBucketProxy createBucket(BucketKey key) {
+        String storeKey = key.policy().name().toLowerCase() + ":" + key.subject();
+        if (storeKey.length() > MAX_KEY_LENGTH) {
+            storeKey = storeKey.substring(0, MAX_KEY_LENGTH);
+        }
+        RemoteAsyncBucketBuilder<String> builder = proxyManager.builder();
+        // Реплика расходует часть токенов локально и сверяется с общим хранилищем не чаще раза в sync-interval.
+        // Для маленьких лимитов (вход) синхронизируется каждый запрос, иначе реплики суммарно пропустили бы лишнее
+        long unsynchronizedTokens = Math.min(config.getSyncTokens(), limitFor(key.policy()).capacity() / 10);
+        if (!"memory".equalsIgnoreCase(config.getStore()) && unsynchronizedTokens > 0) {
+            builder = builder.withOptimization(Optimizations.delaying(
+                    new DelayParameters(unsynchronizedTokens, config.getSyncInterval())));
+        }
+        return builder.build(storeKey, () -> CompletableFuture.completedFuture(configuration(limitFor(key.policy()))));
     }
 
-    public Bucket resolveLoginBucket(String ip) {
-        return loginBuckets.computeIfAbsent(ip, k -> createNewLoginBucket());
+    public List<RateLimitPolicyResponse> getPolicies() {
+        return Arrays.stream(RateLimitPolicy.values())
+                .map(this::toResponse)
+                .toList();
     }
 
-    public Bucket resolveGeneralBucket(String ip) {
-        return generalBuckets.computeIfAbsent(ip, k -> createNewGeneralBucket());
+    // Лимит меняется только на этой реплике и только до ее перезапуска: политики нигде не сохраняются.
+    // Здесь он применяется и к уже созданным корзинам, израсходованная доля токенов сохраняется. Корзины, которые другие реплики
+    // создадут позже, и их ответы getPolicies останутся со старым лимитом — постоянное изменение делается в rate-limit.policies
+    public Mono<RateLimitPolicyResponse> updatePolicy(String policyName, RateLimitPolicyRequest request) {
+        RateLimitPolicy policy = Arrays.stream(RateLimitPolicy.values())
+                .filter(p -> p.name().equalsIgnoreCase(policyName))
+                .findFirst()
+                .orElseThrow(() -> new OperationNotAllowedException("Неизвестная политика ограничения: " + policyName));
+        Limit limit = new Limit(request.capacity(), Duration.ofSeconds(request.periodSeconds()));
+        // Срок вытеснения простаивающих корзин выбран при запуске по самому длинному периоду: корзина с более длинным
+        // периодом вытеснялась бы раньше, чем пополнится, и лимит сбрасывался бы простым ожиданием
+        Duration idleExpiry = config.effectiveIdleExpiry();
+        if (limit.period().compareTo(idleExpiry) > 0) {
+            throw new OperationNotAllowedException("Период не может превышать " + idleExpiry.toSeconds()
+                    + " с (rate-limit.idle-expiry); более длинный период задается в конфигурации");
+        }
+        synchronized (limits) {
+            limits.put(policy, limit);
+        }
+        BucketConfiguration configuration = configuration(limit);
+        log.info("Лимит {} изменен на этой реплике: {} запросов за {}", policy, limit.capacity(), limit.period());
+        return Flux.fromIterable(buckets.asMap().entrySet())
+                .filter(entry -> entry.getKey().policy() == policy)
+                .flatMap(entry -> Mono.fromFuture(() -> entry.getValue()
+                        .replaceConfiguration(configuration, TokensInheritanceStrategy.PROPORTIONALLY)), 16)
+                .then(Mono.fromCallable(() -> toResponse(policy)));
+    }
+
+    private Limit limitFor(RateLimitPolicy policy) {
+        synchronized (limits) {
+            return limits.get(policy);
+        }
+    }
+
+    private RateLimitPolicyResponse toResponse(RateLimitPolicy policy) {
+        Limit limit = limitFor(policy);
+        return new RateLimitPolicyResponse(policy.name().toLowerCase(), limit.capacity(),
+                limit.period().toSeconds(), rejections.get(policy).count());
+    }
+
+    private static BucketConfiguration configuration(Limit limit) {
+        return BucketConfiguration.builder()
+                .addLimit(Bandwidth.classic(limit.capacity(), Refill.intervally(limit.capacity(), limit.period())))
+                .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package com.vodchyts.backend.security;
+
+// Классы трафика со своими адаптивными лимитами одновременных запросов: начальный, минимальный и максимальный
+public enum TrafficClass {
+    INTERACTIVE(40, 10, 400),
+    BOT(20, 5, 200),
+    UPLOAD(8, 2, 32),
+    REPORT(4, 1, 16),
+    // Фото и архивы фото: время ответа зависит от канала клиента, поэтому замеров нет и лимит остается начальным
+    DOWNLOAD(200, 200, 200);
+
+    private final int defaultInitial;
+    private final int defaultMin;
+    private final int defaultMax;
+
+    TrafficClass(int defaultInitial, int defaultMin, int defaultMax) {
+        this.defaultInitial = defaultInitial;
+        this.defaultMin = defaultMin;
+        this.defaultMax = defaultMax;
+    }
+
+    public int getDefaultInitial() {
+        return defaultInitial;
+    }
+
+    public int getDefaultMin() {
+        return defaultMin;
+    }
+
+    public int getDefaultMax() {
+        return defaultMax;
+    }
+}
@@ -130,6 +130,21 @@ CREATE TABLE dbo.RequestPhotos (
 )
 END;
 
+IF COL_LENGTH('dbo.RequestPhotos', 'ContentHash') IS NULL
+BEGIN
+ALTER TABLE dbo.RequestPhotos ADD ContentHash NVARCHAR(64) NULL
+END;
+
+IF COL_LENGTH('dbo.RequestPhotos', 'ContentType') IS NULL
+BEGIN
+ALTER TABLE dbo.RequestPhotos ADD ContentType NVARCHAR(50) NULL
+END;
+
+IF COL_LENGTH('dbo.RequestPhotos', 'FileSize') IS NULL
+BEGIN
+ALTER TABLE dbo.RequestPhotos ADD FileSize BIGINT NULL
+END;
+
 -- 10. RequestComments
 IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='RequestComments' AND xtype='U')
 BEGIN
@@ -159,6 +174,11 @@ CREATE TABLE dbo.MessageTemplates (
 )
 END;
 
+IF COL_LENGTH('dbo.MessageTemplates', 'ImageHash') IS NULL
+BEGIN
+ALTER TABLE dbo.MessageTemplates ADD ImageHash NVARCHAR(64) NULL
+END;
+
 -- 12. MessageRecipients
 IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='MessageRecipients' AND xtype='U')
 BEGIN
@@ -187,6 +207,11 @@ CREATE TABLE dbo.Notifications (
 )
 END;
 
+IF COL_LENGTH('dbo.Notifications', 'ImageHash') IS NULL
+BEGIN
+ALTER TABLE dbo.Notifications ADD ImageHash NVARCHAR(64) NULL
+END;
+
 -- 14. NotificationRecipients
 IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='NotificationRecipients' AND xtype='U')
 BEGIN
@@ -258,9 +283,9 @@ BEGIN
 CREATE INDEX IX_Requests_UrgencyID ON dbo.Requests(UrgencyID)
 END;
 
-IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RequestComments_RequestID' AND object_id = OBJECT_ID('dbo.RequestComments'))
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RequestPhotos_ContentHash' AND object_id = OBJECT_ID('dbo.RequestPhotos'))
 BEGIN
-CREATE INDEX IX_RequestComments_RequestID ON dbo.RequestComments(RequestID)
+CREATE INDEX IX_RequestPhotos_ContentHash ON dbo.RequestPhotos(ContentHash)
 END;
 
 IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RequestCustomDays_Requests' AND object_id = OBJECT_ID('dbo.RequestCustomDays'))
@@ -319,4 +344,314 @@ END;
 IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_AuditLog_UserID' AND object_id = OBJECT_ID('dbo.AuditLog'))
 BEGIN
 CREATE INDEX IX_AuditLog_UserID ON dbo.AuditLog(UserID)
-END;
\ No newline at end of file
+END;
+
+-- 18. Images (общие файлы изображений в хранилище, одна строка на SHA-256 содержимого)
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='Images' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.Images (
+                            ContentHash NVARCHAR(64) NOT NULL,
+                            ContentType NVARCHAR(50) NULL,
+                            ByteSize BIGINT NOT NULL,
+                            RefCount INT NOT NULL DEFAULT 0,
+                            CreatedAt DATETIME2 NOT NULL DEFAULT GETDATE(),
+                            CONSTRAINT PK_Images PRIMARY KEY (ContentHash)
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_MessageTemplates_ImageHash' AND object_id = OBJECT_ID('dbo.MessageTemplates'))
+BEGIN
+CREATE INDEX IX_MessageTemplates_ImageHash ON dbo.MessageTemplates(ImageHash) WHERE ImageHash IS NOT NULL
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_Notifications_ImageHash' AND object_id = OBJECT_ID('dbo.Notifications'))
+BEGIN
+CREATE INDEX IX_Notifications_ImageHash ON dbo.Notifications(ImageHash) WHERE ImageHash IS NOT NULL
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RequestComments_RequestID_CreatedAt' AND object_id = OBJECT_ID('dbo.RequestComments'))
+BEGIN
+CREATE INDEX IX_RequestComments_RequestID_CreatedAt ON dbo.RequestComments(RequestID, CreatedAt, CommentID) INCLUDE (UserID)
+END;
+
+IF EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RequestComments_RequestID' AND object_id = OBJECT_ID('dbo.RequestComments'))
+BEGIN
+DROP INDEX IX_RequestComments_RequestID ON dbo.RequestComments
+END;
+
+-- 19. RateLimitBuckets (общее состояние лимитов запросов для нескольких реплик backend, rate-limit.store=r2dbc)
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='RateLimitBuckets' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.RateLimitBuckets (
+                            BucketKey NVARCHAR(200) NOT NULL,
+                            State VARBINARY(1024) NOT NULL,
+                            ExpiresAt DATETIME2 NOT NULL,
+                            CONSTRAINT PK_RateLimitBuckets PRIMARY KEY (BucketKey)
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RateLimitBuckets_ExpiresAt' AND object_id = OBJECT_ID('dbo.RateLimitBuckets'))
+BEGIN
+CREATE INDEX IX_RateLimitBuckets_ExpiresAt ON dbo.RateLimitBuckets(ExpiresAt)
+END;
+
+-- 20. SchedulerLeases (аренда ведущей реплики для фоновых задач, FencingToken растет при каждой смене владельца)
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='SchedulerLeases' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.SchedulerLeases (
+                            LeaseName NVARCHAR(100) NOT NULL,
+                            Owner NVARCHAR(200) NULL,
+                            FencingToken BIGINT NOT NULL DEFAULT 0,
+                            ExpiresAt DATETIME2 NOT NULL DEFAULT SYSUTCDATETIME(),
+                            HeartbeatAt DATETIME2 NULL,
+                            CONSTRAINT PK_SchedulerLeases PRIMARY KEY (LeaseName)
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM dbo.SchedulerLeases WHERE LeaseName = 'background-jobs')
+BEGIN
+INSERT INTO dbo.SchedulerLeases (LeaseName) VALUES ('background-jobs')
+END;
+
+-- 21. Quartz (кластерное JDBC-хранилище заданий, структура из tables_sqlServer.sql Quartz 2.3)
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='QRTZ_JOB_DETAILS' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.QRTZ_JOB_DETAILS (
+                            SCHED_NAME NVARCHAR(120) NOT NULL,
+                            JOB_NAME NVARCHAR(150) NOT NULL,
+                            JOB_GROUP NVARCHAR(150) NOT NULL,
+                            DESCRIPTION NVARCHAR(250) NULL,
+                            JOB_CLASS_NAME NVARCHAR(250) NOT NULL,
+                            IS_DURABLE BIT NOT NULL,
+                            IS_NONCONCURRENT BIT NOT NULL,
+                            IS_UPDATE_DATA BIT NOT NULL,
+                            REQUESTS_RECOVERY BIT NOT NULL,
+                            JOB_DATA VARBINARY(MAX) NULL,
+                            CONSTRAINT PK_QRTZ_JOB_DETAILS PRIMARY KEY (SCHED_NAME, JOB_NAME, JOB_GROUP)
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='QRTZ_TRIGGERS' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.QRTZ_TRIGGERS (
+                            SCHED_NAME NVARCHAR(120) NOT NULL,
+                            TRIGGER_NAME NVARCHAR(150) NOT NULL,
+                            TRIGGER_GROUP NVARCHAR(150) NOT NULL,
+                            JOB_NAME NVARCHAR(150) NOT NULL,
+                            JOB_GROUP NVARCHAR(150) NOT NULL,
+                            DESCRIPTION NVARCHAR(250) NULL,
+                            NEXT_FIRE_TIME BIGINT NULL,
+                            PREV_FIRE_TIME BIGINT NULL,
+                            PRIORITY INT NULL,
+                            TRIGGER_STATE NVARCHAR(16) NOT NULL,
+                            TRIGGER_TYPE NVARCHAR(8) NOT NULL,
+                            START_TIME BIGINT NOT NULL,
+                            END_TIME BIGINT NULL,
+                            CALENDAR_NAME NVARCHAR(200) NULL,
+                            MISFIRE_INSTR INT NULL,
+                            JOB_DATA VARBINARY(MAX) NULL,
+                            CONSTRAINT PK_QRTZ_TRIGGERS PRIMARY KEY (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP),
+                            CONSTRAINT FK_QRTZ_TRIGGERS_QRTZ_JOB_DETAILS FOREIGN KEY (SCHED_NAME, JOB_NAME, JOB_GROUP)
+                                REFERENCES dbo.QRTZ_JOB_DETAILS (SCHED_NAME, JOB_NAME, JOB_GROUP)
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='QRTZ_SIMPLE_TRIGGERS' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.QRTZ_SIMPLE_TRIGGERS (
+                            SCHED_NAME NVARCHAR(120) NOT NULL,
+                            TRIGGER_NAME NVARCHAR(150) NOT NULL,
+                            TRIGGER_GROUP NVARCHAR(150) NOT NULL,
+                            REPEAT_COUNT INT NOT NULL,
+                            REPEAT_INTERVAL BIGINT NOT NULL,
+                            TIMES_TRIGGERED INT NOT NULL,
+                            CONSTRAINT PK_QRTZ_SIMPLE_TRIGGERS PRIMARY KEY (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP),
+                            CONSTRAINT FK_QRTZ_SIMPLE_TRIGGERS_QRTZ_TRIGGERS FOREIGN KEY (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP)
+                                REFERENCES dbo.QRTZ_TRIGGERS (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP) ON DELETE CASCADE
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='QRTZ_CRON_TRIGGERS' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.QRTZ_CRON_TRIGGERS (
+                            SCHED_NAME NVARCHAR(120) NOT NULL,
+                            TRIGGER_NAME NVARCHAR(150) NOT NULL,
+                            TRIGGER_GROUP NVARCHAR(150) NOT NULL,
+                            CRON_EXPRESSION NVARCHAR(120) NOT NULL,
+                            TIME_ZONE_ID NVARCHAR(80) NULL,
+                            CONSTRAINT PK_QRTZ_CRON_TRIGGERS PRIMARY KEY (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP),
+                            CONSTRAINT FK_QRTZ_CRON_TRIGGERS_QRTZ_TRIGGERS FOREIGN KEY (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP)
+                                REFERENCES dbo.QRTZ_TRIGGERS (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP) ON DELETE CASCADE
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='QRTZ_SIMPROP_TRIGGERS' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.QRTZ_SIMPROP_TRIGGERS (
+                            SCHED_NAME NVARCHAR(120) NOT NULL,
+                            TRIGGER_NAME NVARCHAR(150) NOT NULL,
+                            TRIGGER_GROUP NVARCHAR(150) NOT NULL,
+                            STR_PROP_1 NVARCHAR(512) NULL,
+                            STR_PROP_2 NVARCHAR(512) NULL,
+                            STR_PROP_3 NVARCHAR(512) NULL,
+                            INT_PROP_1 INT NULL,
+                            INT_PROP_2 INT NULL,
+                            LONG_PROP_1 BIGINT NULL,
+                            LONG_PROP_2 BIGINT NULL,
+                            DEC_PROP_1 NUMERIC(13,4) NULL,
+                            DEC_PROP_2 NUMERIC(13,4) NULL,
+                            BOOL_PROP_1 BIT NULL,
+                            BOOL_PROP_2 BIT NULL,
+                            TIME_ZONE_ID NVARCHAR(80) NULL,
+                            CONSTRAINT PK_QRTZ_SIMPROP_TRIGGERS PRIMARY KEY (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP),
+                            CONSTRAINT FK_QRTZ_SIMPROP_TRIGGERS_QRTZ_TRIGGERS FOREIGN KEY (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP)
+                                REFERENCES dbo.QRTZ_TRIGGERS (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP) ON DELETE CASCADE
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='QRTZ_BLOB_TRIGGERS' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.QRTZ_BLOB_TRIGGERS (
+                            SCHED_NAME NVARCHAR(120) NOT NULL,
+                            TRIGGER_NAME NVARCHAR(150) NOT NULL,
+                            TRIGGER_GROUP NVARCHAR(150) NOT NULL,
+                            BLOB_DATA VARBINARY(MAX) NULL,
+                            CONSTRAINT PK_QRTZ_BLOB_TRIGGERS PRIMARY KEY (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP),
+                            CONSTRAINT FK_QRTZ_BLOB_TRIGGERS_QRTZ_TRIGGERS FOREIGN KEY (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP)
+                                REFERENCES dbo.QRTZ_TRIGGERS (SCHED_NAME, TRIGGER_NAME, TRIGGER_GROUP) ON DELETE CASCADE
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='QRTZ_CALENDARS' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.QRTZ_CALENDARS (
+                            SCHED_NAME NVARCHAR(120) NOT NULL,
+                            CALENDAR_NAME NVARCHAR(200) NOT NULL,
+                            CALENDAR VARBINARY(MAX) NOT NULL,
+                            CONSTRAINT PK_QRTZ_CALENDARS PRIMARY KEY (SCHED_NAME, CALENDAR_NAME)
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='QRTZ_PAUSED_TRIGGER_GRPS' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.QRTZ_PAUSED_TRIGGER_GRPS (
+                            SCHED_NAME NVARCHAR(120) NOT NULL,
+                            TRIGGER_GROUP NVARCHAR(150) NOT NULL,
+                            CONSTRAINT PK_QRTZ_PAUSED_TRIGGER_GRPS PRIMARY KEY (SCHED_NAME, TRIGGER_GROUP)
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='QRTZ_FIRED_TRIGGERS' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.QRTZ_FIRED_TRIGGERS (
+                            SCHED_NAME NVARCHAR(120) NOT NULL,
+                            ENTRY_ID NVARCHAR(140) NOT NULL,
+                            TRIGGER_NAME NVARCHAR(150) NOT NULL,
+                            TRIGGER_GROUP NVARCHAR(150) NOT NULL,
+                            INSTANCE_NAME NVARCHAR(200) NOT NULL,
+                            FIRED_TIME BIGINT NOT NULL,
+                            SCHED_TIME BIGINT NOT NULL,
+                            PRIORITY INT NOT NULL,
+                            STATE NVARCHAR(16) NOT NULL,
+                            JOB_NAME NVARCHAR(150) NULL,
+                            JOB_GROUP NVARCHAR(150) NULL,
+                            IS_NONCONCURRENT BIT NULL,
+                            REQUESTS_RECOVERY BIT NULL,
+                            CONSTRAINT PK_QRTZ_FIRED_TRIGGERS PRIMARY KEY (SCHED_NAME, ENTRY_ID)
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='QRTZ_SCHEDULER_STATE' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.QRTZ_SCHEDULER_STATE (
+                            SCHED_NAME NVARCHAR(120) NOT NULL,
+                            INSTANCE_NAME NVARCHAR(200) NOT NULL,
+                            LAST_CHECKIN_TIME BIGINT NOT NULL,
+                            CHECKIN_INTERVAL BIGINT NOT NULL,
+                            CONSTRAINT PK_QRTZ_SCHEDULER_STATE PRIMARY KEY (SCHED_NAME, INSTANCE_NAME)
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='QRTZ_LOCKS' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.QRTZ_LOCKS (
+                            SCHED_NAME NVARCHAR(120) NOT NULL,
+                            LOCK_NAME NVARCHAR(40) NOT NULL,
+                            CONSTRAINT PK_QRTZ_LOCKS PRIMARY KEY (SCHED_NAME, LOCK_NAME)
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IDX_QRTZ_T_NEXT_FIRE_TIME' AND object_id = OBJECT_ID('dbo.QRTZ_TRIGGERS'))
+BEGIN
+CREATE INDEX IDX_QRTZ_T_NEXT_FIRE_TIME ON dbo.QRTZ_TRIGGERS(SCHED_NAME, TRIGGER_STATE, NEXT_FIRE_TIME)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IDX_QRTZ_T_NFT_MISFIRE' AND object_id = OBJECT_ID('dbo.QRTZ_TRIGGERS'))
+BEGIN
+CREATE INDEX IDX_QRTZ_T_NFT_MISFIRE ON dbo.QRTZ_TRIGGERS(SCHED_NAME, MISFIRE_INSTR, NEXT_FIRE_TIME, TRIGGER_STATE)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IDX_QRTZ_FT_INST_JOB_REQ_RCVRY' AND object_id = OBJECT_ID('dbo.QRTZ_FIRED_TRIGGERS'))
+BEGIN
+CREATE INDEX IDX_QRTZ_FT_INST_JOB_REQ_RCVRY ON dbo.QRTZ_FIRED_TRIGGERS(SCHED_NAME, INSTANCE_NAME, REQUESTS_RECOVERY)
+END;
+
+-- 22. NotificationRuns (журнал запусков рассылки уведомлений: сколько получателей, доставлено, ошибок, пропущено)
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='NotificationRuns' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.NotificationRuns (
+                            RunID BIGINT IDENTITY(1,1) NOT NULL,
+                            NotificationID INT NOT NULL,
+                            ScheduledAt DATETIME2 NULL,
+                            StartedAt DATETIME2 NOT NULL,
+                            FinishedAt DATETIME2 NULL,
+                            Status NVARCHAR(20) NOT NULL,
+                            Node NVARCHAR(200) NULL,
+                            Recipients INT NOT NULL DEFAULT 0,
+                            Sent INT NOT NULL DEFAULT 0,
+                            Failed INT NOT NULL DEFAULT 0,
+                            Skipped INT NOT NULL DEFAULT 0,
+                            DurationMs BIGINT NULL,
+                            Error NVARCHAR(1000) NULL,
+                            CONSTRAINT PK_NotificationRuns PRIMARY KEY (RunID),
+                            CONSTRAINT FK_NotificationRuns_Notifications FOREIGN KEY (NotificationID) REFERENCES dbo.Notifications(NotificationID) ON DELETE CASCADE
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_NotificationRuns_Notification_StartedAt' AND object_id = OBJECT_ID('dbo.NotificationRuns'))
+BEGIN
+CREATE INDEX IX_NotificationRuns_Notification_StartedAt ON dbo.NotificationRuns(NotificationID, StartedAt DESC)
+END;
+
+-- 23. SearchIndexChanges (журнал измененных заявок: по нему реплики обновляют свой поисковый индекс)
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='SearchIndexChanges' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.SearchIndexChanges (
+                            ChangeID BIGINT IDENTITY(1,1) NOT NULL,
+                            RequestID INT NOT NULL,
+                            ChangedAt DATETIME2 NOT NULL DEFAULT SYSUTCDATETIME(),
+                            CONSTRAINT PK_SearchIndexChanges PRIMARY KEY (ChangeID)
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_SearchIndexChanges_ChangedAt' AND object_id = OBJECT_ID('dbo.SearchIndexChanges'))
+BEGIN
+CREATE INDEX IX_SearchIndexChanges_ChangedAt ON dbo.SearchIndexChanges(ChangedAt)
+END;
+
+-- 24. ScheduledJobRuns (последний выполненный плановый запуск задач ведущей реплики, чтобы новая ведущая догнала пропущенный)
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='ScheduledJobRuns' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.ScheduledJobRuns (
+                            JobName NVARCHAR(100) NOT NULL,
+                            LastDueAt DATETIME2 NULL,
+                            LastRunAt DATETIME2 NULL,
+                            Node NVARCHAR(200) NULL,
+                            CONSTRAINT PK_ScheduledJobRuns PRIMARY KEY (JobName)
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM dbo.ScheduledJobRuns WHERE JobName = 'daily-reminders')
+BEGIN
+INSERT INTO dbo.ScheduledJobRuns (JobName) VALUES ('daily-reminders')
+END;
@@ -0,0 +1,109 @@
+package com.vodchyts.backend.config;
+
+import org.junit.jupiter.api.Test;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.CronTrigger;
+import org.quartz.Job;
+import org.quartz.JobBuilder;
+import org.quartz.JobExecutionContext;
+import org.quartz.Scheduler;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.StdSchedulerFactory;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CronFireTimesTest {
+
+    private static final CompletableFuture<JobExecutionContext> fired = new CompletableFuture<>();
+
+    public static class CapturingJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) {
+            fired.complete(context);
+        }
+    }
+
+    @Test
+    void findsLatestCronTimeNotAfterGivenMoment() {
+        CronTrigger trigger = cronTrigger("0 0/30 * * * ?");
+        Date notAfter = date(LocalDateTime.of(2026, 3, 2, 10, 47));
+
+        Optional<Date> latest = CronFireTimes.latestScheduled(trigger, notAfter, Duration.ofHours(1));
+
+        assertEquals(Optional.of(date(LocalDateTime.of(2026, 3, 2, 10, 30))), latest);
+    }
+
+    @Test
+    void onTimeFireIsItsOwnScheduledTime() {
+        CronTrigger trigger = cronTrigger("0 0 9 * * ?");
+        Date nineAm = date(LocalDateTime.of(2026, 3, 2, 9, 0));
+
+        assertEquals(Optional.of(nineAm), CronFireTimes.latestScheduled(trigger, nineAm, Duration.ofHours(1)));
+    }
+
+    @Test
+    void nothingInsideLookbackMeansTooLate() {
+        CronTrigger trigger = cronTrigger("0 0 9 * * ?");
+        Date afternoon = date(LocalDateTime.of(2026, 3, 2, 14, 0));
+
+        assertEquals(Optional.empty(), CronFireTimes.latestScheduled(trigger, afternoon, Duration.ofHours(1)));
+        assertEquals(Optional.of(date(LocalDateTime.of(2026, 3, 2, 9, 0))),
+                CronFireTimes.latestScheduled(trigger, afternoon, Duration.ofDays(1)));
+    }
+
+    // Настоящий планировщик: ежедневный триггер, чей запуск 3 часа назад был пропущен, срабатывает по FireAndProceed.
+    // ScheduledFireTime у такого запуска — момент восстановления, а опоздание должно считаться от пропущенного времени
+    @Test
+    void misfiredCronTriggerReportsDelaySinceMissedFireTime() throws Exception {
+        LocalDateTime missed = LocalDateTime.now().minusHours(3);
+        String cron = String.format("0 %d %d * * ?", missed.getMinute(), missed.getHour());
+
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.scheduler.instanceName", "misfire-test");
+        properties.setProperty("org.quartz.threadPool.threadCount", "1");
+        properties.setProperty("org.quartz.jobStore.misfireThreshold", "1000");
+        Scheduler scheduler = new StdSchedulerFactory(properties).getScheduler();
+        try {
+            scheduler.scheduleJob(
+                    JobBuilder.newJob(CapturingJob.class).withIdentity("job").build(),
+                    TriggerBuilder.newTrigger()
+                            .withIdentity("trigger")
+                            .startAt(date(LocalDateTime.now().minusDays(2)))
+                            .withSchedule(CronScheduleBuilder.cronSchedule(cron).withMisfireHandlingInstructionFireAndProceed())
+                            .build());
+            scheduler.start();
+
+            JobExecutionContext context = fired.get(30, TimeUnit.SECONDS);
+
+            long resetAgoMs = System.currentTimeMillis() - context.getScheduledFireTime().getTime();
+            assertTrue(resetAgoMs < Duration.ofMinutes(1).toMillis(), "Quartz переносит пропущенный запуск на текущий момент");
+
+            Duration lag = CronFireTimes.lag(context, Duration.ofDays(1)).orElseThrow();
+            assertTrue(lag.compareTo(Duration.ofHours(3)) >= 0 && lag.compareTo(Duration.ofHours(3).plusMinutes(2)) < 0,
+                    "Опоздание считается от пропущенного времени по cron: " + lag);
+            assertEquals(Optional.empty(), CronFireTimes.lag(context, Duration.ofHours(1)));
+        } finally {
+            scheduler.shutdown(false);
+        }
+    }
+
+    private static CronTrigger cronTrigger(String cron) {
+        return TriggerBuilder.newTrigger()
+                .withSchedule(CronScheduleBuilder.cronSchedule(cron))
+                .build();
+    }
+
+    private static Date date(LocalDateTime time) {
+        return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,61 @@
+package com.vodchyts.backend.feature.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Та же выборка, что делал SQL: TOP 1 из чатов магазина с ContractorID = назначенному или NULL, ORDER BY ContractorID DESC
+class ChatRoutingTableTest {
+
+    private static final int SHOP = 1;
+    private static final int OTHER_SHOP = 2;
+    private static final int CONTRACTOR = 10;
+    private static final int OTHER_CONTRACTOR = 11;
+
+    @Test
+    void contractorChatWinsOverShopWideChat() {
+        ChatRoutingTable table = ChatRoutingTable.of(List.of(
+                new ChatRoutingTable.Route(SHOP, null, 100L),
+                new ChatRoutingTable.Route(SHOP, CONTRACTOR, 200L)));
+
+        assertEquals(Optional.of(200L), table.resolve(SHOP, CONTRACTOR));
+    }
+
+    @Test
+    void fallsBackToShopWideChatWhenContractorHasNone() {
+        ChatRoutingTable table = ChatRoutingTable.of(List.of(
+                new ChatRoutingTable.Route(SHOP, null, 100L),
+                new ChatRoutingTable.Route(SHOP, OTHER_CONTRACTOR, 300L)));
+
+        assertEquals(Optional.of(100L), table.resolve(SHOP, CONTRACTOR));
+        assertEquals(Optional.of(100L), table.resolve(SHOP, null));
+    }
+
+    @Test
+    void neverRoutesToAnotherContractorsChat() {
+        ChatRoutingTable table = ChatRoutingTable.of(List.of(
+                new ChatRoutingTable.Route(SHOP, OTHER_CONTRACTOR, 300L)));
+
+        assertEquals(Optional.empty(), table.resolve(SHOP, CONTRACTOR));
+    }
+
+    @Test
+    void contractorChatIsBoundToItsShop() {
+        ChatRoutingTable table = ChatRoutingTable.of(List.of(
+                new ChatRoutingTable.Route(OTHER_SHOP, CONTRACTOR, 400L)));
+
+        assertEquals(Optional.empty(), table.resolve(SHOP, CONTRACTOR));
+        assertEquals(Optional.of(400L), table.resolve(OTHER_SHOP, CONTRACTOR));
+    }
+
+    @Test
+    void unknownShopHasNoRoute() {
+        ChatRoutingTable table = ChatRoutingTable.of(List.of());
+
+        assertEquals(Optional.empty(), table.resolve(SHOP, CONTRACTOR));
+        assertEquals(Optional.empty(), table.resolve(null, CONTRACTOR));
+    }
+}
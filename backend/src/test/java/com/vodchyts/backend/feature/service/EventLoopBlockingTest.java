@@ -0,0 +1,88 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.config.SchedulerConfig;
+import com.vodchyts.backend.feature.entity.RefreshToken;
+import com.vodchyts.backend.feature.entity.Role;
+import com.vodchyts.backend.feature.entity.User;
+import com.vodchyts.backend.feature.repository.ReactiveRefreshTokenRepository;
+import com.vodchyts.backend.feature.repository.ReactiveRoleRepository;
+import com.vodchyts.backend.feature.repository.ReactiveUserRepository;
+import com.vodchyts.backend.security.JwtUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import reactor.blockhound.BlockHound;
+import reactor.blockhound.BlockingOperationError;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Потоки Schedulers.parallel() BlockHound считает неблокирующими так же, как event loop Netty.
+// BCrypt — чистая CPU-работа, поэтому помечаем его блокирующим вручную: тест упадет, если проверку пароля вернут на event loop
+class EventLoopBlockingTest {
+
+    private static final BCryptPasswordEncoder encoder = new BCryptPasswordEncoder();
+    private static String passwordHash;
+    private static Scheduler cpuScheduler;
+
+    @BeforeAll
+    static void installBlockHound() {
+        passwordHash = encoder.encode("secret");
+        cpuScheduler = new SchedulerConfig().cpuScheduler(2, 16, new SimpleMeterRegistry());
+        BlockHound.builder()
+                .loadIntegrations()
+                .markAsBlocking(BCryptPasswordEncoder.class, "matches", "(Ljava/lang/CharSequence;Ljava/lang/String;)Z")
+                .markAsBlocking(BCryptPasswordEncoder.class, "encode", "(Ljava/lang/CharSequence;)Ljava/lang/String;")
+                .install();
+    }
+
+    @AfterAll
+    static void disposeScheduler() {
+        cpuScheduler.dispose();
+    }
+
+    @Test
+    void bcryptOnNonBlockingThreadIsDetected() {
+        StepVerifier.create(Mono.fromCallable(() -> encoder.matches("secret", passwordHash))
+                        .subscribeOn(Schedulers.parallel()))
+                .expectError(BlockingOperationError.class)
+                .verify();
+    }
+
+    @Test
+    void loginVerifiesPasswordOnCpuScheduler() {
+        User user = new User();
+        user.setUserID(1);
+        user.setLogin("admin");
+        user.setPassword(passwordHash);
+        user.setRoleID(1);
+        Role role = new Role();
+        role.setRoleID(1);
+        role.setRoleName("RetailAdmin");
+
+        ReactiveUserRepository userRepository = mock(ReactiveUserRepository.class);
+        ReactiveRoleRepository roleRepository = mock(ReactiveRoleRepository.class);
+        ReactiveRefreshTokenRepository refreshTokenRepository = mock(ReactiveRefreshTokenRepository.class);
+        JwtUtils jwtUtils = mock(JwtUtils.class);
+        when(userRepository.findByLogin("admin")).thenReturn(Mono.just(user));
+        when(roleRepository.findById(1)).thenReturn(Mono.just(role));
+        when(refreshTokenRepository.save(any(RefreshToken.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(jwtUtils.generateAccessToken(anyString(), anyString())).thenReturn("access");
+        when(jwtUtils.generateRefreshToken(anyString())).thenReturn("refresh");
+
+        AuthService authService = new AuthService(userRepository, roleRepository, refreshTokenRepository, encoder, jwtUtils, cpuScheduler);
+
+        StepVerifier.create(Mono.defer(() -> authService.login("admin", "secret"))
+                        .subscribeOn(Schedulers.parallel()))
+                .expectNextMatches(response -> "access".equals(response.accessToken()))
+                .verifyComplete();
+    }
+}
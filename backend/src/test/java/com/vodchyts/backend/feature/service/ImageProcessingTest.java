@@ -0,0 +1,182 @@
+package com.vodchyts.backend.feature.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+// JPEG собирается вручную из маркеров: для чтения ориентации растр не нужен
+class ImageProcessingTest {
+
+    private static final int TOP_LEFT = 0xFF0000;
+    private static final int TOP_RIGHT = 0x00FF00;
+    private static final int BOTTOM_LEFT = 0x0000FF;
+    private static final int BOTTOM_RIGHT = 0xFFFFFF;
+
+    @Test
+    void readsLittleEndianOrientation() {
+        assertEquals(6, ImageProcessing.readExifOrientation(jpeg(app1(exif(true, 6)))));
+        assertEquals(3, ImageProcessing.readExifOrientation(jpeg(app1(exif(true, 3)))));
+    }
+
+    @Test
+    void readsBigEndianOrientation() {
+        assertEquals(8, ImageProcessing.readExifOrientation(jpeg(app1(exif(false, 8)))));
+        assertEquals(6, ImageProcessing.readExifOrientation(jpeg(app1(exif(false, 6)))));
+    }
+
+    @Test
+    void skipsSegmentsBeforeExif() {
+        byte[] app0 = segment(0xE0, "JFIF\0".getBytes());
+
+        assertEquals(3, ImageProcessing.readExifOrientation(jpeg(app0, app1(exif(false, 3)))));
+    }
+
+    @Test
+    void defaultsWhenOrientationIsMissingOrInvalid() {
+        assertEquals(1, ImageProcessing.readExifOrientation(jpeg()));
+        assertEquals(1, ImageProcessing.readExifOrientation(jpeg(app1(exif(true, 9)))));
+        assertEquals(1, ImageProcessing.readExifOrientation(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0, 0}));
+        assertEquals(1, ImageProcessing.readExifOrientation(new byte[0]));
+    }
+
+    @Test
+    void truncatedSegmentIsIgnored() {
+        byte[] full = jpeg(app1(exif(true, 6)));
+        // Файл обрывается внутри EXIF: заявленная длина сегмента больше оставшихся байтов
+        for (int length = 4; length < full.length - 2; length++) {
+            assertEquals(1, ImageProcessing.readExifOrientation(Arrays.copyOf(full, length)), "length " + length);
+        }
+    }
+
+    @Test
+    void entriesBeyondSegmentAreNotRead() {
+        byte[] exif = exif(true, 6);
+        // Число записей в IFD больше, чем помещается в сегмент
+        exif[6 + 8] = 50;
+
+        assertEquals(6, ImageProcessing.readExifOrientation(jpeg(app1(exif))));
+        exif[6 + 10] = 0x13;
+        assertEquals(1, ImageProcessing.readExifOrientation(jpeg(app1(exif))));
+    }
+
+    @Test
+    void orientation3RotatesHalfTurn() {
+        BufferedImage oriented = ImageProcessing.applyOrientation(corners(3, 2), 3);
+
+        assertEquals(3, oriented.getWidth());
+        assertEquals(2, oriented.getHeight());
+        assertCorners(oriented, BOTTOM_RIGHT, BOTTOM_LEFT, TOP_RIGHT, TOP_LEFT);
+    }
+
+    @Test
+    void orientation6RotatesClockwise() {
+        BufferedImage oriented = ImageProcessing.applyOrientation(corners(3, 2), 6);
+
+        assertEquals(2, oriented.getWidth());
+        assertEquals(3, oriented.getHeight());
+        assertCorners(oriented, BOTTOM_LEFT, TOP_LEFT, BOTTOM_RIGHT, TOP_RIGHT);
+    }
+
+    @Test
+    void orientation8RotatesCounterClockwise() {
+        BufferedImage oriented = ImageProcessing.applyOrientation(corners(3, 2), 8);
+
+        assertEquals(2, oriented.getWidth());
+        assertEquals(3, oriented.getHeight());
+        assertCorners(oriented, TOP_RIGHT, BOTTOM_RIGHT, TOP_LEFT, BOTTOM_LEFT);
+    }
+
+    @Test
+    void normalOrientationKeepsImage() {
+        BufferedImage image = corners(3, 2);
+
+        assertSame(image, ImageProcessing.applyOrientation(image, 1));
+        assertSame(image, ImageProcessing.applyOrientation(image, 0));
+    }
+
+    private static byte[] app1(byte[] exif) {
+        return segment(0xE1, exif);
+    }
+
+    // Содержимое APP1: TIFF-заголовок и одна запись Orientation (тип SHORT, одно значение)
+    private static byte[] exif(boolean littleEndian, int orientation) {
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        tiff.writeBytes("Exif\0\0".getBytes());
+        tiff.writeBytes(littleEndian ? new byte[]{'I', 'I'} : new byte[]{'M', 'M'});
+        writeShort(tiff, 42, littleEndian);
+        writeInt(tiff, 8, littleEndian);
+        writeShort(tiff, 1, littleEndian);
+        writeShort(tiff, 0x0112, littleEndian);
+        writeShort(tiff, 3, littleEndian);
+        writeInt(tiff, 1, littleEndian);
+        writeShort(tiff, orientation, littleEndian);
+        writeShort(tiff, 0, littleEndian);
+        writeInt(tiff, 0, littleEndian);
+        return tiff.toByteArray();
+    }
+
+    private static byte[] jpeg(byte[]... segments) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        for (byte[] segment : segments) {
+            out.writeBytes(segment);
+        }
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(marker);
+        out.write((payload.length + 2) >> 8);
+        out.write((payload.length + 2) & 0xFF);
+        out.writeBytes(payload);
+        return out.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value, boolean littleEndian) {
+        if (littleEndian) {
+            out.write(value & 0xFF);
+            out.write((value >> 8) & 0xFF);
+        } else {
+            out.write((value >> 8) & 0xFF);
+            out.write(value & 0xFF);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value, boolean littleEndian) {
+        if (littleEndian) {
+            writeShort(out, value & 0xFFFF, true);
+            writeShort(out, value >>> 16, true);
+        } else {
+            writeShort(out, value >>> 16, false);
+            writeShort(out, value & 0xFFFF, false);
+        }
+    }
+
+    private static BufferedImage corners(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, TOP_LEFT);
+        image.setRGB(width - 1, 0, TOP_RIGHT);
+        image.setRGB(0, height - 1, BOTTOM_LEFT);
+        image.setRGB(width - 1, height - 1, BOTTOM_RIGHT);
+        return image;
+    }
+
+    private static void assertCorners(BufferedImage image, int topLeft, int topRight, int bottomLeft, int bottomRight) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        assertEquals(topLeft, image.getRGB(0, 0) & 0xFFFFFF, "top left");
+        assertEquals(topRight, image.getRGB(w - 1, 0) & 0xFFFFFF, "top right");
+        assertEquals(bottomLeft, image.getRGB(0, h - 1) & 0xFFFFFF, "bottom left");
+        assertEquals(bottomRight, image.getRGB(w - 1, h - 1) & 0xFFFFFF, "bottom right");
+    }
+}
@@ -0,0 +1,117 @@
+package com.vodchyts.backend.feature.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Бот — мок: чат 100 принимает сообщение, 200 удален (403), 300 отвечает 503 на каждую попытку
+class NotificationDispatchServiceTest {
+
+    private static final LocalDateTime SCHEDULED_AT = LocalDateTime.of(2026, 3, 2, 10, 0);
+
+    private final TelegramNotificationService telegramService = mock(TelegramNotificationService.class);
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @Test
+    void recipientsAreClassifiedAndRunIsRecorded() {
+        StubDatabase database = database(List.of(100L, 200L, 300L, 100L));
+        answer(100L, null);
+        answer(200L, WebClientResponseException.create(403, "Forbidden", null, null, null));
+        answer(300L, WebClientResponseException.create(503, "Service Unavailable", null, null, null));
+
+        NotificationDispatchService.DispatchResult result = service(database, 1000, 2)
+                .dispatch(5, SCHEDULED_AT, "Сдайте отчет").block();
+
+        assertEquals(new NotificationDispatchService.DispatchResult(41L, 3, 1, 1, 1, result.durationMs()), result);
+        // 4xx не повторяется, 503 — первая попытка и два повтора
+        assertEquals(5, attempts.get());
+
+        Map<String, Object> started = database.executed("INSERT INTO NotificationRuns").get(0).params();
+        assertEquals(5, started.get("notificationId"));
+        assertEquals(SCHEDULED_AT, started.get("scheduledAt"));
+        assertEquals("node-1", started.get("node"));
+
+        Map<String, Object> finished = database.executed("UPDATE NotificationRuns").get(0).params();
+        assertEquals(41L, finished.get("runId"));
+        assertEquals("COMPLETED", finished.get("status"));
+        assertEquals(3, finished.get("recipients"));
+        assertEquals(1, finished.get("sent"));
+        assertEquals(1, finished.get("failed"));
+        assertEquals(1, finished.get("skipped"));
+        assertNull(finished.get("error"));
+    }
+
+    @Test
+    void brokenRunIsRecordedAsFailed() {
+        StubDatabase database = new StubDatabase()
+                .query("INSERT INTO NotificationRuns", params -> List.of(Map.of("RunID", 42L)))
+                .query("FROM NotificationRecipients", params -> {
+                    throw new IllegalStateException("connection reset");
+                });
+
+        assertThrows(IllegalStateException.class,
+                () -> service(database, 1000, 2).dispatch(5, SCHEDULED_AT, "Сдайте отчет").block());
+
+        Map<String, Object> finished = database.executed("UPDATE NotificationRuns").get(0).params();
+        assertEquals(42L, finished.get("runId"));
+        assertEquals("FAILED", finished.get("status"));
+        assertEquals(0, finished.get("recipients"));
+        assertEquals("connection reset", finished.get("error"));
+    }
+
+    @Test
+    void retriesArePacedWithOtherSends() {
+        StubDatabase database = database(List.of(100L, 300L));
+        answer(100L, null);
+        answer(300L, WebClientResponseException.create(503, "Service Unavailable", null, null, null));
+
+        // 10 сообщений в секунду, пауза повтора 1 мс: шесть вызовов бота занимают слоты через 100 мс
+        long startedAt = System.nanoTime();
+        NotificationDispatchService.DispatchResult result = service(database, 10, 4)
+                .dispatch(5, SCHEDULED_AT, "Сдайте отчет").block();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startedAt);
+
+        assertEquals(6, attempts.get());
+        assertEquals(1, result.failed());
+        assertTrue(elapsed.toMillis() >= 500, "рассылка заняла " + elapsed.toMillis() + " мс");
+    }
+
+    private void answer(Long chatId, RuntimeException error) {
+        when(telegramService.deliverNotification(eq(chatId), anyString())).thenAnswer(inv -> Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return error != null ? Mono.<Void>error(error) : Mono.<Void>empty();
+        }));
+    }
+
+    private static StubDatabase database(List<Long> chatIds) {
+        return new StubDatabase()
+                .query("INSERT INTO NotificationRuns", params -> List.of(Map.of("RunID", 41L)))
+                .query("FROM NotificationRecipients", params -> chatIds.stream()
+                        .map(chatId -> Map.<String, Object>of("TelegramID", chatId))
+                        .toList());
+    }
+
+    private NotificationDispatchService service(StubDatabase database, int messagesPerSecond, int retries) {
+        SharedImageService sharedImageService = mock(SharedImageService.class);
+        when(sharedImageService.describe(ImageBlobReader.Source.NOTIFICATION, 5)).thenReturn(Mono.empty());
+        SchedulerLeaseService leaseService = mock(SchedulerLeaseService.class);
+        when(leaseService.getNodeId()).thenReturn("node-1");
+        return new NotificationDispatchService(database.client(), telegramService, sharedImageService, leaseService,
+                8, messagesPerSecond, retries, 1);
+    }
+}
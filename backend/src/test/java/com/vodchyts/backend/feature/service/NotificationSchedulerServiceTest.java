@@ -0,0 +1,67 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.feature.entity.Notification;
+import com.vodchyts.backend.feature.repository.ReactiveNotificationRecipientRepository;
+import org.junit.jupiter.api.Test;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Хранилище Quartz — мок: задание уведомления 2 записать не удается
+class NotificationSchedulerServiceTest {
+
+    private final Scheduler scheduler = mock(Scheduler.class);
+    private final NotificationSchedulerService service =
+            new NotificationSchedulerService(scheduler, mock(ReactiveNotificationRecipientRepository.class));
+
+    @Test
+    void reconcileCountsFailedJobsSeparately() throws SchedulerException {
+        when(scheduler.getJobKeys(any())).thenReturn(Set.of(JobKey.jobKey("notification-9", "notifications")));
+        failToSchedule(2);
+
+        NotificationSchedulerService.ReconcileSummary summary = service.reconcile(List.of(notification(1), notification(2)));
+
+        assertEquals(new NotificationSchedulerService.ReconcileSummary(1, 0, 1, 0, 1), summary);
+    }
+
+    @Test
+    void schedulingErrorReachesCaller() throws SchedulerException {
+        failToSchedule(2);
+
+        StepVerifier.create(service.scheduleAsync(() -> service.scheduleNotification(notification(2))))
+                .expectError(SchedulerException.class)
+                .verify();
+        StepVerifier.create(service.scheduleAsync(() -> service.scheduleNotification(notification(1))))
+                .verifyComplete();
+    }
+
+    private void failToSchedule(int notificationId) throws SchedulerException {
+        doThrow(new SchedulerException("store unavailable")).when(scheduler).scheduleJob(
+                argThat((JobDetail job) -> job != null && job.getKey().getName().equals("notification-" + notificationId)),
+                anySet(), anyBoolean());
+    }
+
+    private static Notification notification(int id) {
+        Notification notification = new Notification();
+        notification.setNotificationID(id);
+        notification.setTitle("Отчет");
+        notification.setMessage("Сдайте отчет");
+        notification.setCronExpression("0 10 * * MON-FRI");
+        notification.setIsActive(true);
+        return notification;
+    }
+}
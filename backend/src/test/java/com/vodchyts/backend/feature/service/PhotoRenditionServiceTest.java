@@ -0,0 +1,88 @@
+package com.vodchyts.backend.feature.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Хранилище — заглушка в памяти; копия строится синхронно на вызывающем потоке
+class PhotoRenditionServiceTest {
+
+    private static final String HASH = "a".repeat(64);
+
+    private final AtomicReference<byte[]> savedRendition = new AtomicReference<>();
+
+    @Test
+    void rendersThumbnailWithinMaxDimension() throws IOException {
+        PhotoRenditionService service = service(png(800, 600), 50_000_000);
+
+        StepVerifier.create(service.getRendition(HASH, PhotoRenditionService.Size.THUMB))
+                .assertNext(resource -> {
+                    BufferedImage thumb = read(resource);
+                    assertEquals(160, thumb.getWidth());
+                    assertEquals(120, thumb.getHeight());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void refusesToDecodeStoredPhotoAboveMaxPixels() throws IOException {
+        PhotoRenditionService service = service(png(800, 600), 100_000);
+
+        StepVerifier.create(service.getRendition(HASH, PhotoRenditionService.Size.PREVIEW))
+                .expectErrorSatisfies(e -> {
+                    assertTrue(e instanceof IllegalStateException, e.toString());
+                    assertTrue(e.getMessage().contains("800x600"), e.getMessage());
+                })
+                .verify();
+        assertNull(savedRendition.get());
+    }
+
+    private PhotoRenditionService service(byte[] original, long maxPixels) {
+        PhotoStore photoStore = mock(PhotoStore.class);
+        when(photoStore.load(HASH)).thenReturn(Mono.just(new ByteArrayResource(original)));
+        when(photoStore.loadRendition(eq(HASH), anyString())).thenAnswer(inv -> Mono.defer(() -> Mono.justOrEmpty(savedRendition.get()))
+                .map(bytes -> (Resource) new ByteArrayResource(bytes)));
+        when(photoStore.saveRendition(eq(HASH), anyString(), any())).thenAnswer(inv -> Mono.fromRunnable(() ->
+                savedRendition.set(inv.getArgument(2))));
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ImageIngestService ingestService = new ImageIngestService(Schedulers.immediate(), 2560, 0.85f, maxPixels, meterRegistry);
+        ImageCache imageCache = new ImageCache(1024 * 1024, 64 * 1024, meterRegistry);
+        return new PhotoRenditionService(photoStore, Schedulers.immediate(), imageCache, ingestService);
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage read(Resource resource) {
+        try {
+            return ImageIO.read(new ByteArrayInputStream(resource.getContentAsByteArray()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
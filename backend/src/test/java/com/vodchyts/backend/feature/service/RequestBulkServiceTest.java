@@ -0,0 +1,171 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import com.vodchyts.backend.feature.dto.BulkUpdateRequestsRequest;
+import com.vodchyts.backend.feature.dto.BulkUpdateRequestsResponse;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// База подменена заглушкой: проверяются выполненные запросы и сообщения, ушедшие в каждый чат
+class RequestBulkServiceTest {
+
+    private static ValidatorFactory validatorFactory;
+    private static Validator validator;
+
+    private StubDatabase database;
+    private TelegramNotificationService notificationService;
+    private ShopContractorChatService chatService;
+    private RequestBulkService service;
+
+    @BeforeAll
+    static void createValidator() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+    }
+
+    @AfterAll
+    static void closeValidator() {
+        validatorFactory.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        database = new StubDatabase()
+                .query("SELECT RequestID FROM Requests", params -> {
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    for (Object id : (Collection<?>) params.get("ids")) {
+                        rows.add(Map.of("RequestID", id));
+                    }
+                    return rows;
+                })
+                .query("FROM Users u JOIN Roles ro", params -> List.of(Map.of(
+                        "Login", params.get("userId").equals(7) ? "ivanov" : "admin",
+                        "RoleName", params.get("userId").equals(7) ? "Contractor" : "Admin")))
+                .update("UPDATE Requests SET", params -> (long) ((Collection<?>) params.get("ids")).size());
+
+        TransactionalOperator transactionalOperator = mock(TransactionalOperator.class);
+        when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(inv -> inv.getArgument(0));
+        notificationService = mock(TelegramNotificationService.class);
+        when(notificationService.sendNotification(anyLong(), anyString())).thenReturn(Mono.empty());
+        when(notificationService.escapeMarkdown(anyString())).thenAnswer(inv -> inv.getArgument(0));
+        chatService = mock(ShopContractorChatService.class);
+        when(chatService.groupRequestIdsByChat(anyList())).thenReturn(Mono.just(Map.of()));
+
+        service = new RequestBulkService(database.client(), transactionalOperator, notificationService, chatService);
+    }
+
+    @Test
+    void rejectsMoreThan500RequestIds() {
+        List<Integer> ids = IntStream.rangeClosed(1, 501).boxed().toList();
+
+        Set<ConstraintViolation<BulkUpdateRequestsRequest>> violations =
+                validator.validate(new BulkUpdateRequestsRequest(ids, "Done", null, null, null));
+
+        assertEquals(1, violations.size());
+        assertEquals("requestIds", violations.iterator().next().getPropertyPath().toString());
+        assertTrue(validator.validate(new BulkUpdateRequestsRequest(ids.subList(0, 500), "Done", null, null, null)).isEmpty());
+    }
+
+    @Test
+    void rejectsAssigneeWithoutContractorRole() {
+        StepVerifier.create(service.bulkUpdate(new BulkUpdateRequestsRequest(List.of(1, 2), null, 3, null, null)))
+                .expectError(OperationNotAllowedException.class)
+                .verify();
+
+        assertTrue(database.executed("UPDATE Requests").isEmpty());
+        verify(notificationService, never()).sendNotification(anyLong(), anyString());
+    }
+
+    @Test
+    void reopeningKeepsClosedAt() {
+        StepVerifier.create(service.bulkUpdate(new BulkUpdateRequestsRequest(List.of(1, 2, 2), "In work", null, null, null)))
+                .expectNext(new BulkUpdateRequestsResponse(2, List.of(1, 2)))
+                .verifyComplete();
+
+        List<StubDatabase.Statement> updates = database.executed("UPDATE Requests SET");
+        assertEquals(1, updates.size());
+        assertFalse(updates.get(0).sql().contains("ClosedAt"), updates.get(0).sql());
+        assertEquals("In work", updates.get(0).params().get("status"));
+    }
+
+    @Test
+    void closingSetsClosedAtOnlyForNewlyClosed() {
+        StepVerifier.create(service.bulkUpdate(new BulkUpdateRequestsRequest(List.of(1), "Closed", null, null, null)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        String sql = database.executed("UPDATE Requests SET").get(0).sql();
+        assertTrue(sql.contains("ClosedAt = CASE WHEN Status = 'Closed' THEN ClosedAt ELSE GETDATE() END"), sql);
+    }
+
+    @Test
+    void sendsOneMessagePerChatWithItsRequests() {
+        Map<Long, Collection<Integer>> byChat = new LinkedHashMap<>();
+        byChat.put(100L, List.of(3, 1));
+        byChat.put(200L, List.of(2));
+        when(chatService.groupRequestIdsByChat(anyList())).thenReturn(Mono.just(byChat));
+
+        StepVerifier.create(service.bulkUpdate(new BulkUpdateRequestsRequest(List.of(1, 2, 3), null, 7, null, null)))
+                .expectNext(new BulkUpdateRequestsResponse(3, List.of(1, 2, 3)))
+                .verifyComplete();
+
+        verify(notificationService).sendNotification(eq(100L), eq(
+                "✏️ *МАССОВОЕ ОБНОВЛЕНИЕ ЗАЯВОК \\(2\\)*\n\n" +
+                        "👷 *Исполнитель:* ivanov\n" +
+                        "\n📋 *Заявки:* \\#1, \\#3"));
+        verify(notificationService).sendNotification(eq(200L), eq(
+                "✏️ *МАССОВОЕ ОБНОВЛЕНИЕ ЗАЯВОК \\(1\\)*\n\n" +
+                        "👷 *Исполнитель:* ivanov\n" +
+                        "\n📋 *Заявки:* \\#2"));
+        assertEquals(7, database.executed("UPDATE Requests SET").get(0).params().get("contractorId"));
+    }
+
+    @Test
+    void notificationFailureDoesNotFailUpdate() {
+        when(chatService.groupRequestIdsByChat(anyList())).thenReturn(Mono.error(new IllegalStateException("бот недоступен")));
+
+        StepVerifier.create(service.bulkUpdate(new BulkUpdateRequestsRequest(List.of(5), "Done", null, null, null)))
+                .expectNext(new BulkUpdateRequestsResponse(1, List.of(5)))
+                .verifyComplete();
+    }
+
+    @Test
+    void longRequestListIsShortened() {
+        List<Integer> ids = IntStream.rangeClosed(1, 102).boxed().toList();
+
+        String listed = RequestBulkService.formatRequestIdList(ids);
+
+        assertTrue(listed.startsWith("\\#1, \\#2, "));
+        assertTrue(listed.endsWith("\\#100 и еще 2"), listed);
+    }
+}
@@ -0,0 +1,140 @@
+package com.vodchyts.backend.feature.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import com.vodchyts.backend.feature.dto.RequestResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Выгрузка собирается целиком из буферов, как ее получил бы клиент
+class RequestExportServiceTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2026, 3, 1, 9, 30, 0);
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final RequestExportService service = new RequestExportService(objectMapper);
+
+    @Test
+    void csvStartsWithBomAndHeader() {
+        byte[] bytes = exportBytes(RequestExportService.Format.CSV, List.of(request(1, "Замена лампы")));
+
+        assertArrayEquals(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}, Arrays.copyOf(bytes, 3));
+        List<String> lines = lines(bytes);
+        assertEquals("ID;Описание;Магазин;Вид работ;Срочность;Исполнитель;Статус;Создана;Закрыта;" +
+                "Дней на выполнение;Осталось дней;Просрочена;Комментариев;Фото", lines.get(0));
+        assertEquals("1;Замена лампы;Магазин 1;Электрика;Срочная;ivanov;В работе;2026-03-01 09:30:00;;3;2;Нет;4;5", lines.get(1));
+    }
+
+    @Test
+    void csvQuotesSeparatorsQuotesAndLineBreaks() {
+        String csv = exportText(RequestExportService.Format.CSV, List.of(
+                request(1, "кран; смеситель"),
+                request(2, "дверь \"входная\""),
+                request(3, "первая\nвторая")));
+
+        List<String> rows = csv.lines().skip(1).toList();
+        assertEquals("1;\"кран; смеситель\";", rows.get(0).substring(0, 20));
+        assertEquals("2;\"дверь \"\"входная\"\"\";", rows.get(1).substring(0, 22));
+        assertEquals("3;\"первая", rows.get(2));
+        assertEquals("вторая\";", rows.get(3).substring(0, 8));
+    }
+
+    @Test
+    void csvNeutralizesFormulaCells() {
+        String csv = exportText(RequestExportService.Format.CSV, List.of(
+                request(1, "=HYPERLINK(\"http://x\")"),
+                request(2, "+7 999"),
+                request(3, "-1"),
+                request(4, "@SUM(A1)"),
+                request(5, "\tтаб"),
+                request(6, "a=b")));
+
+        List<String> descriptions = csv.lines().skip(1)
+                .map(line -> line.substring(line.indexOf(';') + 1, line.indexOf(";Магазин")))
+                .toList();
+        assertEquals(List.of(
+                "\"'=HYPERLINK(\"\"http://x\"\")\"",
+                "'+7 999",
+                "'-1",
+                "'@SUM(A1)",
+                "'\tтаб",
+                "a=b"), descriptions);
+    }
+
+    @Test
+    void ndjsonWritesOneParsableObjectPerLine() throws Exception {
+        List<RequestResponse> requests = List.of(request(1, "первая\nвторая"), request(2, "=1+1"));
+
+        byte[] bytes = exportBytes(RequestExportService.Format.NDJSON, requests);
+
+        List<String> lines = lines(bytes);
+        assertEquals(2, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(requests.get(i), objectMapper.readValue(lines.get(i), RequestResponse.class));
+        }
+    }
+
+    @Test
+    void largeExportKeepsEveryRowInOrder() {
+        List<RequestResponse> requests = IntStream.rangeClosed(1, 450).mapToObj(id -> request(id, "заявка " + id)).toList();
+
+        List<String> rows = exportText(RequestExportService.Format.CSV, requests).lines().skip(1).toList();
+
+        assertEquals(450, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals((i + 1) + ";заявка " + (i + 1), rows.get(i).substring(0, rows.get(i).indexOf(";Магазин")));
+        }
+    }
+
+    @Test
+    void formatFromQueryParameter() {
+        assertEquals(RequestExportService.Format.CSV, RequestExportService.Format.from(null));
+        assertEquals(RequestExportService.Format.NDJSON, RequestExportService.Format.from("NDJSON"));
+        assertThrows(OperationNotAllowedException.class, () -> RequestExportService.Format.from("xlsx"));
+    }
+
+    private byte[] exportBytes(RequestExportService.Format format, List<RequestResponse> requests) {
+        List<DataBuffer> buffers = service.export(format, Flux.fromIterable(requests), DefaultDataBufferFactory.sharedInstance)
+                .collectList()
+                .block();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (DataBuffer buffer : buffers) {
+            byte[] chunk = new byte[buffer.readableByteCount()];
+            buffer.read(chunk);
+            out.writeBytes(chunk);
+        }
+        return out.toByteArray();
+    }
+
+    private String exportText(RequestExportService.Format format, List<RequestResponse> requests) {
+        String text = new String(exportBytes(format, requests), StandardCharsets.UTF_8);
+        return format == RequestExportService.Format.CSV ? text.substring(1) : text;
+    }
+
+    private static List<String> lines(byte[] bytes) {
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        if (text.startsWith("\uFEFF")) {
+            text = text.substring(1);
+        }
+        return text.lines().toList();
+    }
+
+    private static RequestResponse request(int id, String description) {
+        return new RequestResponse(id, description, "Магазин 1", 1, "Электрика", 2, "Urgent", 3,
+                "ivanov", 7, "In work", CREATED, null, 2, 3, false, 4, 5);
+    }
+}
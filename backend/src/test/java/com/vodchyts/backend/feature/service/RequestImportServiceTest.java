@@ -0,0 +1,180 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import com.vodchyts.backend.feature.dto.ImportRequestsResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Разбор CSV проверяется отдельно от базы; импорт целиком — на заглушке с двумя магазинами и одним подрядчиком
+class RequestImportServiceTest {
+
+    private static final String HEADER = "Описание;Магазин;Вид работ;Срочность;Исполнитель;Дней\n";
+
+    private StubDatabase database;
+    private RequestImportService service;
+
+    @BeforeEach
+    void setUp() {
+        database = new StubDatabase()
+                .query("FROM Shops", params -> List.of(
+                        Map.of("ShopID", 1, "ShopName", "Магазин 1"),
+                        Map.of("ShopID", 2, "ShopName", "Магазин 2")))
+                .query("FROM WorkCategories", params -> List.of(Map.of("WorkCategoryID", 5, "WorkCategoryName", "Электрика")))
+                .query("FROM UrgencyCategories", params -> List.of(
+                        Map.of("UrgencyID", 1, "UrgencyName", "Urgent"),
+                        Map.of("UrgencyID", 4, "UrgencyName", "Customizable")))
+                .query("FROM Users u JOIN Roles ro", params -> List.of(Map.of("UserID", 7, "Login", "ivanov")))
+                .query("MERGE INTO Requests", params -> {
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    for (int i = 0; params.containsKey("n" + i); i++) {
+                        rows.add(Map.of("RowIndex", i, "RequestID", 1000 + i));
+                    }
+                    return rows;
+                });
+
+        TransactionalOperator transactionalOperator = mock(TransactionalOperator.class);
+        when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(inv -> inv.getArgument(0));
+        ShopContractorChatService chatService = mock(ShopContractorChatService.class);
+        when(chatService.groupRequestIdsByChat(anyList())).thenReturn(Mono.just(Map.of()));
+        RequestSearchIndex searchIndex = mock(RequestSearchIndex.class);
+        when(searchIndex.reindex(anyCollection())).thenReturn(Mono.empty());
+
+        service = new RequestImportService(database.client(), transactionalOperator,
+                mock(TelegramNotificationService.class), chatService, searchIndex);
+    }
+
+    @Test
+    void splitsQuotedFieldsWithSeparatorsAndEscapedQuotes() {
+        RequestImportService.CsvRecordAssembler assembler = new RequestImportService.CsvRecordAssembler();
+
+        List<RequestImportService.CsvRecord> records = assembler.accept("\"кран; смеситель\";\"дверь \"\"входная\"\"\";;x\r");
+
+        assertEquals(1, records.size());
+        assertEquals(List.of("кран; смеситель", "дверь \"входная\"", "", "x"), records.get(0).values());
+    }
+
+    @Test
+    void joinsMultiLineFieldAndKeepsStartLine() {
+        RequestImportService.CsvRecordAssembler assembler = new RequestImportService.CsvRecordAssembler();
+
+        assertEquals(List.of("a", "b"), assembler.accept("a;b").get(0).values());
+        assertTrue(assembler.accept("\"первая").isEmpty());
+        assertTrue(assembler.accept("").isEmpty());
+        List<RequestImportService.CsvRecord> records = assembler.accept("третья\";c");
+        List<RequestImportService.CsvRecord> next = assembler.accept("d;e");
+
+        assertEquals(new RequestImportService.CsvRecord(2, List.of("первая\n\nтретья", "c")), records.get(0));
+        assertEquals(new RequestImportService.CsvRecord(5, List.of("d", "e")), next.get(0));
+    }
+
+    @Test
+    void detectsCommaSeparatorFromFirstRecord() {
+        RequestImportService.CsvRecordAssembler assembler = new RequestImportService.CsvRecordAssembler();
+
+        assertEquals(List.of("a", "b"), assembler.accept("a,b").get(0).values());
+        assertEquals(List.of("c;d", "e"), assembler.accept("c;d,e").get(0).values());
+    }
+
+    @Test
+    void unterminatedQuoteIsFlushedAtEnd() {
+        RequestImportService.CsvRecordAssembler assembler = new RequestImportService.CsvRecordAssembler();
+
+        assertTrue(assembler.accept("\"без конца;a").isEmpty());
+        assertTrue(assembler.accept("хвост").isEmpty());
+
+        assertEquals(new RequestImportService.CsvRecord(1, List.of("без конца;a\nхвост")), assembler.finish());
+    }
+
+    @Test
+    void importsValidRowsAndReportsInvalidOnesByLine() {
+        String csv = HEADER +
+                "Замена лампы;Магазин 1;Электрика;Срочная;ivanov;\n" +
+                "\"Две строки\nописания\";магазин 2;электрика;Urgent;IVANOV;\n" +
+                "Нет магазина;Магазин 9;Электрика;Срочная;ivanov;\n" +
+                "\n" +
+                "Свой срок;Магазин 1;Электрика;Customizable;ivanov;0\n";
+
+        StepVerifier.create(service.importRequests(file(Flux.just(csv)), 1))
+                .assertNext(response -> {
+                    assertEquals(4, response.totalRows());
+                    assertEquals(List.of(1000, 1001), response.createdRequestIds());
+                    assertEquals(List.of(
+                            new ImportRequestsResponse.RowError(5, "Магазин 'Магазин 9' не найден"),
+                            new ImportRequestsResponse.RowError(7, "Количество дней должно быть больше 0")), response.errors());
+                })
+                .verifyComplete();
+
+        Map<String, Object> merge = database.executed("MERGE INTO Requests").get(0).params();
+        assertEquals("Две строки\nописания", merge.get("d1"));
+        assertEquals(2, merge.get("s1"));
+    }
+
+    @Test
+    void rejectsHeaderWithoutRequiredColumns() {
+        StepVerifier.create(service.importRequests(file(Flux.just("Описание;Магазин\nа;б\n")), 1))
+                .expectErrorSatisfies(e -> {
+                    assertTrue(e instanceof OperationNotAllowedException);
+                    assertTrue(e.getMessage().contains("workCategory"), e.getMessage());
+                })
+                .verify();
+    }
+
+    @Test
+    void stopsReadingAfterRowLimit() {
+        AtomicLong linesWritten = new AtomicLong();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        // Бесконечный файл: импорт завершится, только если чтение прекращается после лимита
+        Flux<String> endless = Flux.<String>generate(sink -> {
+            StringBuilder chunk = new StringBuilder();
+            for (int i = 0; i < 500; i++) {
+                chunk.append("Заявка ").append(linesWritten.incrementAndGet()).append(";Магазин 9;Электрика;Срочная;ivanov;\n");
+            }
+            sink.next(chunk.toString());
+        }).doOnCancel(() -> cancelled.set(true));
+
+        StepVerifier.create(service.importRequests(file(Flux.just(HEADER).concatWith(endless)), 1))
+                .assertNext(response -> {
+                    assertEquals(20_000, response.totalRows());
+                    assertEquals(0, response.importedCount());
+                    assertEquals(20_001, response.errors().size());
+                    ImportRequestsResponse.RowError last = response.errors().get(response.errors().size() - 1);
+                    assertEquals(20_002, last.line());
+                    assertTrue(last.message().startsWith("Превышен лимит строк"), last.message());
+                })
+                .verifyComplete();
+
+        assertTrue(cancelled.get());
+        assertTrue(linesWritten.get() < 25_000, "lines read " + linesWritten.get());
+        assertTrue(database.executed("MERGE INTO Requests").isEmpty());
+    }
+
+    private static FilePart file(Flux<String> chunks) {
+        Flux<DataBuffer> content = chunks.map(chunk ->
+                DefaultDataBufferFactory.sharedInstance.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+        FilePart filePart = mock(FilePart.class);
+        when(filePart.content()).thenReturn(content);
+        return filePart;
+    }
+}
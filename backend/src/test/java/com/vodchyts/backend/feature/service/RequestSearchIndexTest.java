@@ -0,0 +1,190 @@
+package com.vodchyts.backend.feature.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// База подменена списками в памяти: индекс читает из нее то же, что из таблиц Requests, RequestComments и SearchIndexChanges.
+// Два индекса на одной заглушке играют роль двух реплик
+class RequestSearchIndexTest {
+
+    private static final int ALL = Integer.MAX_VALUE;
+
+    private final Map<Integer, String> descriptions = new LinkedHashMap<>();
+    private final List<Map.Entry<Integer, String>> comments = new ArrayList<>();
+    private final List<Integer> changes = new ArrayList<>();
+    private DatabaseClient databaseClient;
+    private RequestSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        databaseClient = new StubDatabase()
+                .query("SELECT RequestID, Description FROM", params -> descriptions.entrySet().stream()
+                        .map(e -> Map.<String, Object>of("RequestID", e.getKey(), "Description", e.getValue()))
+                        .toList())
+                .query("SELECT RequestID, CommentText FROM", params -> comments.stream()
+                        .map(e -> Map.<String, Object>of("RequestID", e.getKey(), "CommentText", e.getValue()))
+                        .toList())
+                .query("SELECT RequestID, Description AS Text", params -> {
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    descriptions.forEach((id, text) -> rows.add(Map.of("RequestID", id, "Text", text, "IsDescription", 1)));
+                    comments.forEach(e -> rows.add(Map.of("RequestID", e.getKey(), "Text", e.getValue(), "IsDescription", 0)));
+                    return rows;
+                })
+                .query("MAX(ChangeID)", params -> List.of(Map.of("LastChangeID", (long) changes.size())))
+                .query("FROM SearchIndexChanges WHERE ChangeID >", params -> {
+                    long after = (Long) params.get("after");
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    for (int i = (int) after; i < changes.size() && rows.size() < (Integer) params.get("limit"); i++) {
+                        rows.add(Map.of("ChangeID", (long) i + 1, "RequestID", changes.get(i)));
+                    }
+                    return rows;
+                })
+                .update("INSERT INTO SearchIndexChanges", params -> {
+                    params.values().forEach(id -> changes.add((Integer) id));
+                    return (long) params.size();
+                })
+                .client();
+        index = new RequestSearchIndex(databaseClient);
+    }
+
+    @Test
+    void notReadyUntilFirstRebuild() {
+        descriptions.put(1, "протечка крана");
+
+        assertFalse(index.canSearch("кран"));
+        assertEquals(Optional.empty(), index.search("кран", ALL));
+
+        index.rebuild().block();
+
+        assertTrue(index.canSearch("кран"));
+        assertFalse(index.canSearch("?!"));
+        assertEquals(Optional.of(List.of(1)), index.search("кран", ALL));
+    }
+
+    @Test
+    void exactWordRanksAbovePrefixMatch() {
+        descriptions.put(1, "кронштейн для телевизора");
+        descriptions.put(2, "кронштейны");
+        descriptions.put(3, "заменить крон");
+        index.rebuild().block();
+
+        List<Integer> found = index.search("крон", ALL).orElseThrow();
+
+        assertEquals(3, found.get(0));
+        assertEquals(List.of(1, 2), found.subList(1, 3).stream().sorted().toList());
+    }
+
+    @Test
+    void descriptionOutweighsComment() {
+        descriptions.put(1, "не работает освещение");
+        comments.add(Map.entry(1, "проверили щиток"));
+        descriptions.put(2, "щиток в зале");
+        index.rebuild().block();
+
+        assertEquals(Optional.of(List.of(2, 1)), index.search("щиток", ALL));
+    }
+
+    @Test
+    void everyQueryWordMustMatch() {
+        descriptions.put(1, "протечка крана на кухне");
+        descriptions.put(2, "протечка потолка");
+        descriptions.put(3, "замена крана");
+        index.rebuild().block();
+
+        assertEquals(Optional.of(List.of(1)), index.search("кран протечка", ALL));
+        assertEquals(Optional.of(List.of()), index.search("кран окно", ALL));
+    }
+
+    @Test
+    void prefixMatchesAllExpandedTerms() {
+        // Больше сотни разных слов с общим началом: при AND со вторым словом ни одна заявка не должна потеряться
+        IntStream.rangeClosed(1, 150).forEach(id -> descriptions.put(id, "код" + id + " двигатель"));
+        index.rebuild().block();
+
+        assertEquals(150, index.search("код двиг", ALL).orElseThrow().size());
+    }
+
+    @Test
+    void limitKeepsMostRelevantMatches() {
+        IntStream.rangeClosed(1, 50).forEach(id -> descriptions.put(id, "замена лампы"));
+        descriptions.put(51, "лампа, лампа и еще лампа");
+        index.rebuild().block();
+
+        List<Integer> found = index.search("лампа", 10).orElseThrow();
+
+        assertEquals(10, found.size());
+        assertEquals(51, found.get(0));
+        assertEquals(51, index.search("лампа", ALL).orElseThrow().size());
+    }
+
+    @Test
+    void reindexPicksUpNewCommentsAndDeletedRequests() {
+        descriptions.put(1, "не закрывается дверь");
+        descriptions.put(2, "сломан замок");
+        index.rebuild().block();
+        assertEquals(Optional.of(List.of()), index.search("петля", ALL));
+
+        comments.add(Map.entry(1, "нужна новая петля"));
+        index.reindex(1).block();
+        assertEquals(Optional.of(List.of(1)), index.search("петля", ALL));
+
+        descriptions.remove(2);
+        index.reindex(2).block();
+        assertEquals(Optional.of(List.of()), index.search("замок", ALL));
+    }
+
+    @Test
+    void removeDropsRequestFromResults() {
+        descriptions.put(1, "протечка крана");
+        descriptions.put(2, "замена крана");
+        index.rebuild().block();
+
+        index.remove(1).block();
+
+        assertEquals(Optional.of(List.of(2)), index.search("кран", ALL));
+    }
+
+    @Test
+    void changesFromOtherReplicaAreApplied() {
+        descriptions.put(1, "протечка крана");
+        descriptions.put(2, "замена крана");
+        index.rebuild().block();
+        RequestSearchIndex other = new RequestSearchIndex(databaseClient);
+        other.rebuild().block();
+
+        comments.add(Map.entry(2, "нужен вентиль"));
+        descriptions.remove(1);
+        other.reindex(2).block();
+        other.remove(1).block();
+        assertEquals(Optional.of(List.of()), index.search("вентиль", ALL));
+
+        assertEquals(2, index.applyChanges().block());
+
+        assertEquals(Optional.of(List.of(2)), index.search("вентиль", ALL));
+        assertEquals(Optional.of(List.of(2)), index.search("кран", ALL));
+        assertEquals(0, index.applyChanges().block());
+    }
+
+    @Test
+    void changesBeforeRebuildAreNotReplayed() {
+        descriptions.put(1, "протечка крана");
+        changes.add(1);
+        changes.add(1);
+
+        index.rebuild().block();
+
+        assertEquals(0, index.applyChanges().block());
+    }
+}
@@ -0,0 +1,92 @@
+package com.vodchyts.backend.feature.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Экранирование то же, что при отправке: после него описание может стать вдвое длиннее
+class RequestUpdateServiceDigestTest {
+
+    private static final int TELEGRAM_MESSAGE_LIMIT = 4096;
+    private static final Pattern ITEM_LINE = Pattern.compile("^(?:⚠️|🔥) \\\\#(\\d+) — \\*(\\d+) дн\\\\.\\* — .*$");
+    private static final UnaryOperator<String> ESCAPE = new TelegramNotificationService("http://localhost")::escapeMarkdown;
+
+    @Test
+    void oldestOverdueFirstThenByRequestId() {
+        List<String> messages = RequestUpdateService.renderDigest(List.of(
+                item(3, "кран", 1),
+                item(1, "свет", 5),
+                item(2, "дверь", 5),
+                item(4, "окно", 12)), ESCAPE);
+
+        assertEquals(1, messages.size());
+        assertTrue(messages.get(0).startsWith("🔥 *ПРОСРОЧЕННЫЕ ЗАЯВКИ: 4*\n\n"));
+        assertEquals(List.of(4, 1, 2, 3), requestIds(messages));
+        assertTrue(messages.get(0).contains("⚠️ \\#3 — *1 дн\\.* — кран\n"));
+    }
+
+    @Test
+    void splitsOnLineBoundariesBelowTelegramLimit() {
+        List<RequestUpdateService.OverdueItem> items = new ArrayList<>();
+        for (int id = 1; id <= 300; id++) {
+            // Точки экранируются: каждая строка почти вдвое длиннее исходного описания
+            items.add(item(id, ".".repeat(50), 300 - id + 1));
+        }
+
+        List<String> messages = RequestUpdateService.renderDigest(items, ESCAPE);
+
+        assertTrue(messages.size() > 1);
+        for (int i = 0; i < messages.size(); i++) {
+            String message = messages.get(i);
+            assertTrue(message.length() < TELEGRAM_MESSAGE_LIMIT, "message " + i + " length " + message.length());
+            assertTrue(message.startsWith("🔥 *ПРОСРОЧЕННЫЕ ЗАЯВКИ: 300* \\(" + (i + 1) + "/" + messages.size() + "\\)\n\n"));
+            String body = message.substring(message.indexOf("\n\n") + 2);
+            assertTrue(body.endsWith("\n"));
+            body.lines().forEach(line -> assertTrue(ITEM_LINE.matcher(line).matches(), line));
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (int id = 1; id <= 300; id++) {
+            expected.add(id);
+        }
+        assertEquals(expected, requestIds(messages));
+    }
+
+    @Test
+    void veryLongDescriptionIsShortenedToOneLine() {
+        String description = "Протечка. " + "(срочно!) ".repeat(2000) + "\nвторая строка";
+
+        List<String> messages = RequestUpdateService.renderDigest(
+                List.of(item(7, description, 3)), ESCAPE);
+
+        assertEquals(1, messages.size());
+        String body = messages.get(0).substring(messages.get(0).indexOf("\n\n") + 2);
+        assertEquals(1, body.lines().count());
+        assertTrue(body.contains("Протечка\\. \\(срочно\\!\\)"));
+        assertTrue(body.endsWith("\\.\\.\\.\n"));
+        assertTrue(messages.get(0).length() < 200);
+    }
+
+    private static RequestUpdateService.OverdueItem item(int requestId, String description, long daysOverdue) {
+        return new RequestUpdateService.OverdueItem(requestId, description, daysOverdue);
+    }
+
+    private static List<Integer> requestIds(List<String> messages) {
+        List<Integer> ids = new ArrayList<>();
+        for (String message : messages) {
+            for (String line : message.split("\n")) {
+                Matcher matcher = ITEM_LINE.matcher(line);
+                if (matcher.matches()) {
+                    ids.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,86 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.feature.repository.ReactiveRequestCustomDayRepository;
+import com.vodchyts.backend.feature.repository.ReactiveUrgencyCategoryRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Ведущая — заглушка, которая запускает задачу сразу и с токеном 5; база отвечает синхронно
+class RequestUpdateServiceRemindersTest {
+
+    private static final CronExpression WEEKDAYS_AT_TEN = CronExpression.parse("0 0 10 * * MON-FRI");
+
+    @Test
+    void latestDueLooksBackWithinWindow() {
+        // Понедельник, 2 марта 2026
+        LocalDateTime mondayNoon = LocalDateTime.of(2026, 3, 2, 12, 0);
+
+        assertEquals(Optional.of(LocalDateTime.of(2026, 3, 2, 10, 0)),
+                RequestUpdateService.latestDue(WEEKDAYS_AT_TEN, mondayNoon, Duration.ofHours(6)));
+        assertEquals(Optional.empty(),
+                RequestUpdateService.latestDue(WEEKDAYS_AT_TEN, mondayNoon, Duration.ofHours(1)));
+        // В 10:00 ровно рассылка уже считается наступившей
+        assertEquals(Optional.of(LocalDateTime.of(2026, 3, 2, 10, 0)),
+                RequestUpdateService.latestDue(WEEKDAYS_AT_TEN, LocalDateTime.of(2026, 3, 2, 10, 0), Duration.ofHours(6)));
+        // Выходные пропускаются: в воскресенье последняя рассылка была в пятницу
+        assertEquals(Optional.of(LocalDateTime.of(2026, 2, 27, 10, 0)),
+                RequestUpdateService.latestDue(WEEKDAYS_AT_TEN, LocalDateTime.of(2026, 3, 1, 12, 0), Duration.ofDays(3)));
+    }
+
+    @Test
+    void remindersAreSentOnlyAfterClaimingTheRun() {
+        StubDatabase database = new StubDatabase().update("UPDATE ScheduledJobRuns", params -> 1L);
+
+        service(database).catchUpDailyReminders();
+
+        Map<String, Object> claim = database.executed("UPDATE ScheduledJobRuns").get(0).params();
+        assertEquals(5L, claim.get("fencingToken"));
+        assertEquals("daily-reminders", claim.get("name"));
+        assertTrue(((LocalDateTime) claim.get("due")).isBefore(LocalDateTime.now()));
+        assertEquals(1, database.executed("WHERE r.Status = 'In work' AND r.IsOverdue = 1").size());
+    }
+
+    @Test
+    void claimedRunIsNotRepeated() {
+        StubDatabase database = new StubDatabase().update("UPDATE ScheduledJobRuns", params -> 0L);
+
+        service(database).catchUpDailyReminders();
+
+        assertEquals(1, database.executed("UPDATE ScheduledJobRuns").size());
+        assertTrue(database.executed("WHERE r.Status = 'In work' AND r.IsOverdue = 1").isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RequestUpdateService service(StubDatabase database) {
+        R2dbcEntityTemplate template = mock(R2dbcEntityTemplate.class);
+        when(template.getDatabaseClient()).thenReturn(database.client());
+        SchedulerLeaseService leaseService = mock(SchedulerLeaseService.class);
+        when(leaseService.getNodeId()).thenReturn("node-1");
+        when(leaseService.runAsLeader(eq("daily-reminders"), any(Supplier.class))).thenAnswer(inv ->
+                ((Supplier<Mono<?>>) inv.getArgument(1)).get().contextWrite(context -> context.put(
+                        SchedulerLeaseService.FENCING_TOKEN_KEY, 5L)));
+
+        RequestUpdateService service = new RequestUpdateService(template, mock(ReactiveUrgencyCategoryRepository.class),
+                mock(ReactiveRequestCustomDayRepository.class), mock(ChatRoutingCache.class),
+                mock(TelegramNotificationService.class), leaseService);
+        // Окно шире недели: плановая рассылка в нем есть при любом времени запуска теста
+        ReflectionTestUtils.setField(service, "reminderCatchUpMs", Duration.ofDays(8).toMillis());
+        return service;
+    }
+}
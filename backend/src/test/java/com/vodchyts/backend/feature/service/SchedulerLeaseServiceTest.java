@@ -0,0 +1,54 @@
+package com.vodchyts.backend.feature.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Аренда и ее проверка отвечают из заглушки синхронно, поэтому heartbeat успевает завершиться до проверок
+class SchedulerLeaseServiceTest {
+
+    private long leaseToken = 7;
+
+    @Test
+    void jobSeesTokenItWasStartedWith() {
+        SchedulerLeaseService leaseService = leader();
+
+        assertEquals(7L, leaseService.runAsLeader("job", SchedulerLeaseService::fencingToken).block());
+        assertEquals(-1L, SchedulerLeaseService.fencingToken().block());
+    }
+
+    @Test
+    void staleTokenSkipsJob() {
+        SchedulerLeaseService leaseService = leader();
+        leaseToken = 8;
+
+        assertNull(leaseService.runAsLeader("job", () -> Mono.just("done")).block());
+        assertFalse(leaseService.isLeader());
+    }
+
+    @Test
+    void withoutLeaseWritesAreNotFenced() {
+        SchedulerLeaseService leaseService = new SchedulerLeaseService(new StubDatabase().client(), false, 30000, new SimpleMeterRegistry());
+
+        assertEquals(-1L, leaseService.runAsLeader("job", SchedulerLeaseService::fencingToken).block());
+    }
+
+    private SchedulerLeaseService leader() {
+        StubDatabase database = new StubDatabase()
+                .query("UPDATE SchedulerLeases", params -> List.of(Map.of("FencingToken", 7L)))
+                .query("SELECT COUNT(*) AS Cnt FROM SchedulerLeases", params ->
+                        List.of(Map.of("Cnt", params.get("token").equals(leaseToken) ? 1 : 0)));
+        SchedulerLeaseService leaseService = new SchedulerLeaseService(database.client(), true, 30000, new SimpleMeterRegistry());
+        leaseService.heartbeat();
+        assertTrue(leaseService.isLeader());
+        return leaseService;
+    }
+}
@@ -0,0 +1,57 @@
+package com.vodchyts.backend.feature.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Разные формы одного слова должны давать один терм, иначе поиск по индексу хуже прежнего LIKE
+class SearchTokenizerTest {
+
+    @Test
+    void emptyTextHasNoTerms() {
+        assertTrue(SearchTokenizer.terms(null).isEmpty());
+        assertTrue(SearchTokenizer.terms("").isEmpty());
+        assertTrue(SearchTokenizer.terms(" ,.!? - ").isEmpty());
+    }
+
+    @Test
+    void splitsOnPunctuationAndIgnoresCase() {
+        assertEquals(SearchTokenizer.terms("кран протечка"), SearchTokenizer.terms("КРАН,протечка!"));
+        assertEquals(2, SearchTokenizer.terms("кран/протечка").size());
+    }
+
+    @Test
+    void treatsYoAsYe() {
+        assertEquals(SearchTokenizer.terms("елка"), SearchTokenizer.terms("Ёлка"));
+    }
+
+    @Test
+    void dropsSingleLettersButKeepsSingleDigits() {
+        assertEquals(List.of("7"), SearchTokenizer.terms("в 7 к"));
+    }
+
+    @Test
+    void reducesWordFormsToOneStem() {
+        String stem = SearchTokenizer.stem("протечка");
+        assertEquals(stem, SearchTokenizer.stem("протечки"));
+        assertEquals(stem, SearchTokenizer.stem("протечку"));
+        assertEquals(stem, SearchTokenizer.stem("протечкой"));
+        assertEquals(SearchTokenizer.stem("кран"), SearchTokenizer.stem("крана"));
+        assertEquals(SearchTokenizer.stem("сломанный"), SearchTokenizer.stem("сломанная"));
+    }
+
+    @Test
+    void leavesWordsWithoutVowelsAndNumbersAsIs() {
+        assertEquals(List.of("мфу", "220"), SearchTokenizer.terms("МФУ 220"));
+        assertEquals("вт", SearchTokenizer.stem("вт"));
+    }
+
+    @Test
+    void truncatesVeryLongTokens() {
+        String term = SearchTokenizer.terms("1".repeat(100)).get(0);
+        assertEquals(40, term.length());
+    }
+}
@@ -0,0 +1,142 @@
+package com.vodchyts.backend.feature.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Файлы пишутся в настоящее локальное хранилище во временной папке, таблица Images — счетчики в памяти
+class SharedImageServiceTest {
+
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 1, 2, 3, 4};
+
+    @TempDir
+    Path storage;
+
+    private final Map<String, Integer> refCounts = new ConcurrentHashMap<>();
+    private long photoRowsUpdated = 1;
+
+    private PhotoStore photoStore;
+    private ImageBlobReader blobReader;
+    private SharedImageService service;
+    private PhotoStorageMigrator migrator;
+
+    @BeforeEach
+    void setUp() {
+        StubDatabase database = new StubDatabase()
+                .update("MERGE Images", params -> {
+                    refCounts.merge((String) params.get("hash"), 1, Integer::sum);
+                    return 1L;
+                })
+                .query("UPDATE Images SET RefCount = RefCount - 1", params -> {
+                    Integer count = refCounts.computeIfPresent((String) params.get("hash"), (hash, refs) -> refs > 0 ? refs - 1 : refs);
+                    return count == null ? List.of() : List.of(Map.of("RefCount", count));
+                })
+                .query("SELECT ContentHash FROM Images WHERE RefCount = 0", params -> refCounts.entrySet().stream()
+                        .filter(entry -> entry.getValue() == 0)
+                        .map(entry -> Map.<String, Object>of("ContentHash", entry.getKey()))
+                        .toList())
+                .update("DELETE FROM Images", params -> refCounts.remove((String) params.get("hash"), 0) ? 1L : 0L)
+                .update("UPDATE RequestPhotos SET ContentHash", params -> photoRowsUpdated);
+
+        TransactionalOperator transactionalOperator = mock(TransactionalOperator.class);
+        when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(inv -> inv.getArgument(0));
+        SchedulerLeaseService leaseService = mock(SchedulerLeaseService.class);
+        photoStore = new LocalPhotoStore(storage.toString());
+        blobReader = mock(ImageBlobReader.class);
+
+        service = new SharedImageService(database.client(), photoStore, blobReader, transactionalOperator, leaseService);
+        migrator = new PhotoStorageMigrator(database.client(), blobReader, service, transactionalOperator, leaseService);
+    }
+
+    @Test
+    void fileLivesUntilLastReferenceIsReleasedAndSwept() {
+        String hash = service.acquire(JPEG).block();
+        assertEquals(hash, service.acquire(JPEG).block());
+        assertEquals(2, refCounts.get(hash));
+
+        service.release(hash).block();
+        assertEquals(0L, service.deleteAllUnreferenced().block());
+        assertTrue(exists(hash));
+
+        service.release(hash).block();
+        assertEquals(0, refCounts.get(hash));
+        // Пока очистка не прошла, файл на месте: откат удаления заявки вернул бы ссылку на него
+        assertTrue(exists(hash));
+
+        assertEquals(1L, service.deleteAllUnreferenced().block());
+        assertNull(refCounts.get(hash));
+        assertFalse(exists(hash));
+    }
+
+    @Test
+    void releasingUnknownHashChangesNothing() {
+        StepVerifier.create(service.release("f".repeat(64))).verifyComplete();
+        StepVerifier.create(service.release(null)).verifyComplete();
+
+        assertTrue(refCounts.isEmpty());
+    }
+
+    @Test
+    void migratedPhotoKeepsOneReference() {
+        when(blobReader.read(eq(ImageBlobReader.Source.REQUEST_PHOTO), eq(11)))
+                .thenReturn(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(JPEG)));
+
+        migrator.migrate(11).block();
+
+        String hash = refCounts.keySet().iterator().next();
+        assertEquals(Map.of(hash, 1), refCounts);
+        assertEquals(0L, service.deleteAllUnreferenced().block());
+        assertTrue(exists(hash));
+    }
+
+    @Test
+    void fileOfPhotoMigratedConcurrentlyIsSwept() {
+        photoRowsUpdated = 0;
+        when(blobReader.read(eq(ImageBlobReader.Source.REQUEST_PHOTO), eq(12)))
+                .thenReturn(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(JPEG)));
+
+        migrator.migrate(12).block();
+
+        String hash = refCounts.keySet().iterator().next();
+        assertEquals(0, refCounts.get(hash));
+        assertEquals(1L, service.deleteAllUnreferenced().block());
+        assertFalse(exists(hash));
+    }
+
+    @Test
+    void concurrentMigrationDoesNotRemoveFileStillInUse() {
+        String hash = service.acquire(JPEG).block();
+        photoRowsUpdated = 0;
+        when(blobReader.read(eq(ImageBlobReader.Source.REQUEST_PHOTO), eq(13)))
+                .thenReturn(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(JPEG)));
+
+        migrator.migrate(13).block();
+
+        assertEquals(1, refCounts.get(hash));
+        assertEquals(0L, service.deleteAllUnreferenced().block());
+        assertTrue(exists(hash));
+    }
+
+    private boolean exists(String hash) {
+        return Boolean.TRUE.equals(photoStore.load(hash).hasElement().block());
+    }
+}
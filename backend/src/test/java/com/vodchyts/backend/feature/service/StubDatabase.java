@@ -0,0 +1,133 @@
+package com.vodchyts.backend.feature.service;
+
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.FetchSpec;
+import org.springframework.r2dbc.core.RowsFetchSpec;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// DatabaseClient для тестов сервисов: ответ выбирается по первому фрагменту SQL, который встречается в запросе.
+// Каждый выполненный запрос запоминается вместе с параметрами; запросы без ответа возвращают пустой результат и 0 строк
+final class StubDatabase {
+
+    record Statement(String sql, Map<String, Object> params) {}
+
+    private record Handler(String fragment,
+                           Function<Map<String, Object>, List<Map<String, Object>>> rows,
+                           Function<Map<String, Object>, Long> rowsUpdated) {}
+
+    private final List<Handler> handlers = new CopyOnWriteArrayList<>();
+    private final List<Statement> executed = new CopyOnWriteArrayList<>();
+    private final DatabaseClient client = mock(DatabaseClient.class);
+
+    StubDatabase() {
+        when(client.sql(anyString())).thenAnswer(inv -> spec(inv.getArgument(0)));
+    }
+
+    DatabaseClient client() {
+        return client;
+    }
+
+    StubDatabase query(String fragment, Function<Map<String, Object>, List<Map<String, Object>>> rows) {
+        handlers.add(new Handler(fragment, rows, params -> (long) rows.apply(params).size()));
+        return this;
+    }
+
+    StubDatabase update(String fragment, Function<Map<String, Object>, Long> rowsUpdated) {
+        handlers.add(new Handler(fragment, params -> List.of(), rowsUpdated));
+        return this;
+    }
+
+    List<Statement> executed() {
+        return List.copyOf(executed);
+    }
+
+    List<Statement> executed(String fragment) {
+        return executed.stream().filter(statement -> statement.sql().contains(fragment)).toList();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private DatabaseClient.GenericExecuteSpec spec(String sql) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        DatabaseClient.GenericExecuteSpec spec = mock(DatabaseClient.GenericExecuteSpec.class);
+        when(spec.bind(anyString(), any())).thenAnswer(inv -> {
+            params.put(inv.getArgument(0), inv.getArgument(1));
+            return spec;
+        });
+        when(spec.bindNull(anyString(), any())).thenAnswer(inv -> {
+            params.put(inv.getArgument(0), null);
+            return spec;
+        });
+        when(spec.map(any(Function.class))).thenAnswer(inv -> {
+            Function<Row, ?> mapper = inv.getArgument(0);
+            return rowsSpec(sql, params, values -> mapper.apply(row(values)));
+        });
+        when(spec.map(any(BiFunction.class))).thenAnswer(inv -> {
+            BiFunction<Row, RowMetadata, ?> mapper = inv.getArgument(0);
+            return rowsSpec(sql, params, values -> mapper.apply(row(values), metadata(values)));
+        });
+        FetchSpec fetch = mock(FetchSpec.class);
+        when(fetch.rowsUpdated()).thenAnswer(inv -> Mono.fromCallable(() -> execute(sql, params).rowsUpdated().apply(Map.copyOf(params))));
+        when(fetch.all()).thenAnswer(inv -> Flux.defer(() -> Flux.fromIterable(rows(sql, params))));
+        when(fetch.one()).thenAnswer(inv -> Flux.defer(() -> Flux.fromIterable(rows(sql, params))).next());
+        when(spec.fetch()).thenReturn(fetch);
+        when(spec.then()).thenAnswer(inv -> Mono.fromRunnable(() -> execute(sql, params).rowsUpdated().apply(Map.copyOf(params))).then());
+        return spec;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private RowsFetchSpec rowsSpec(String sql, Map<String, Object> params, Function<Map<String, Object>, ?> mapper) {
+        RowsFetchSpec fetch = mock(RowsFetchSpec.class);
+        when(fetch.all()).thenAnswer(inv -> Flux.defer(() -> Flux.fromIterable(rows(sql, params))).map(mapper));
+        when(fetch.one()).thenAnswer(inv -> Flux.defer(() -> Flux.fromIterable(rows(sql, params))).map(mapper).next());
+        when(fetch.first()).thenAnswer(inv -> Flux.defer(() -> Flux.fromIterable(rows(sql, params))).map(mapper).next());
+        return fetch;
+    }
+
+    private List<Map<String, Object>> rows(String sql, Map<String, Object> params) {
+        return execute(sql, params).rows().apply(Map.copyOf(params));
+    }
+
+    private Handler execute(String sql, Map<String, Object> params) {
+        executed.add(new Statement(sql, copyOf(params)));
+        return handlers.stream()
+                .filter(handler -> sql.contains(handler.fragment()))
+                .findFirst()
+                .orElse(new Handler("", p -> List.of(), p -> 0L));
+    }
+
+    // Map.copyOf не принимает null, а bindNull кладет именно его
+    private static Map<String, Object> copyOf(Map<String, Object> params) {
+        return java.util.Collections.unmodifiableMap(new LinkedHashMap<>(params));
+    }
+
+    private static Row row(Map<String, Object> values) {
+        Row row = mock(Row.class);
+        List<Object> ordered = new ArrayList<>(values.values());
+        when(row.get(anyString(), any(Class.class))).thenAnswer(inv -> values.get(inv.<String>getArgument(0)));
+        when(row.get(anyInt(), any(Class.class))).thenAnswer(inv -> ordered.get(inv.<Integer>getArgument(0)));
+        return row;
+    }
+
+    private static RowMetadata metadata(Map<String, Object> values) {
+        RowMetadata metadata = mock(RowMetadata.class);
+        when(metadata.contains(anyString())).thenAnswer(inv -> values.containsKey(inv.<String>getArgument(0)));
+        return metadata;
+    }
+}
@@ -0,0 +1,92 @@
+package com.vodchyts.backend.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Замеры подаются так, будто система загружена до текущего лимита: иначе лимит не меняется по задумке
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void refusesRequestsAboveLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10);
+
+        assertEquals(1, limit.tryAcquire());
+        assertEquals(2, limit.tryAcquire());
+        assertEquals(-1, limit.tryAcquire());
+
+        limit.release();
+        assertEquals(2, limit.tryAcquire());
+    }
+
+    @Test
+    void growsWhileLatencyStaysFlat() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 1000);
+        saturate(limit, FAST, 10);
+        assertEquals(10, limit.getLimit());
+
+        saturate(limit, FAST, 20);
+
+        assertTrue(limit.getLimit() > 10, "limit " + limit.getLimit());
+    }
+
+    @Test
+    void shrinksWhenLatencyRises() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(50, 1, 1000);
+        saturate(limit, FAST, 10);
+
+        saturate(limit, SLOW, 10);
+
+        assertTrue(limit.getLimit() < 50, "limit " + limit.getLimit());
+    }
+
+    @Test
+    void backsOffOnDroppedRequest() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 1, 100);
+
+        limit.tryAcquire();
+        limit.onDropped();
+
+        assertEquals(18, limit.getLimit());
+        assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    void staysWithinBounds() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 5, 20);
+        for (int i = 0; i < 50; i++) {
+            limit.tryAcquire();
+            limit.onDropped();
+        }
+        assertEquals(5, limit.getLimit());
+
+        saturate(limit, FAST, 500);
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    void ignoresLatencyWhenUnderloaded() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(40, 1, 1000);
+        saturate(limit, FAST, 10);
+
+        for (int i = 0; i < 50; i++) {
+            int inFlight = limit.tryAcquire();
+            limit.onSuccess(SLOW, inFlight);
+        }
+
+        assertEquals(40, limit.getLimit());
+    }
+
+    private static void saturate(AdaptiveConcurrencyLimit limit, long rttNanos, int samples) {
+        for (int i = 0; i < samples; i++) {
+            limit.tryAcquire();
+            limit.onSuccess(rttNanos, limit.getLimit());
+        }
+    }
+}
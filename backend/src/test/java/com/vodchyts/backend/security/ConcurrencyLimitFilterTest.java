@@ -0,0 +1,96 @@
+package com.vodchyts.backend.security;
+
+import com.vodchyts.backend.config.ConcurrencyLimitConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Лимит читается через метрику concurrency.limit, как его видит мониторинг
+class ConcurrencyLimitFilterTest {
+
+    @Test
+    void downloadsAndExportAreNotSampled() {
+        assertEquals(TrafficClass.DOWNLOAD, ConcurrencyLimitFilter.classify(get("/api/requests/photos/15")));
+        assertEquals(TrafficClass.DOWNLOAD, ConcurrencyLimitFilter.classify(get("/api/requests/7/photos")));
+        assertEquals(TrafficClass.DOWNLOAD, ConcurrencyLimitFilter.classify(get("/api/admin/message-templates/3/image")));
+        assertEquals(TrafficClass.REPORT, ConcurrencyLimitFilter.classify(get("/api/requests/export")));
+        assertEquals(TrafficClass.INTERACTIVE, ConcurrencyLimitFilter.classify(get("/api/requests/7/photos/ids")));
+
+        assertTrue(ConcurrencyLimitFilter.streamsBody(get("/api/requests/export")));
+        assertTrue(ConcurrencyLimitFilter.streamsBody(get("/api/requests/photos/15")));
+        assertFalse(ConcurrencyLimitFilter.streamsBody(get("/api/analytics/summary")));
+        assertFalse(ConcurrencyLimitFilter.streamsBody(MockServerHttpRequest.delete("/api/requests/photos/15").build()));
+    }
+
+    @Test
+    void uploadIsClassifiedByContentType() {
+        MockServerHttpRequest upload = MockServerHttpRequest.post("/api/requests/7/photos")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .build();
+
+        assertEquals(TrafficClass.UPLOAD, ConcurrencyLimitFilter.classify(upload));
+    }
+
+    @Test
+    void slowExportDoesNotShrinkReportLimit() {
+        ConcurrencyLimitConfig config = new ConcurrencyLimitConfig();
+        ConcurrencyLimitConfig.Limit report = new ConcurrencyLimitConfig.Limit();
+        report.setInitial(16);
+        report.setMin(1);
+        report.setMax(16);
+        config.getClasses().put(TrafficClass.REPORT, report);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(config, meterRegistry);
+
+        // Лимит реагирует на задержку, только когда занята хотя бы половина мест: часть отчетов висит все время
+        Sinks.Empty<Void> held = Sinks.empty();
+        for (int i = 0; i < 8; i++) {
+            filter.filter(exchange("/api/analytics/summary"), ex -> held.asMono()).subscribe();
+        }
+        // Быстрые отчеты задают среднюю задержку, затем медленный клиент долго читает выгрузку
+        for (int i = 0; i < 20; i++) {
+            run(filter, "/api/analytics/summary", Duration.ZERO);
+        }
+        for (int i = 0; i < 20; i++) {
+            run(filter, "/api/requests/export", Duration.ofMillis(30));
+        }
+        assertEquals(16.0, limit(meterRegistry, "report"));
+
+        // Те же задержки у обычного отчета лимит снижают
+        for (int i = 0; i < 20; i++) {
+            run(filter, "/api/analytics/summary", Duration.ofMillis(30));
+        }
+        assertTrue(limit(meterRegistry, "report") < 16.0);
+
+        held.tryEmitEmpty();
+        assertEquals(0.0, meterRegistry.get("concurrency.inflight").tag("traffic", "report").gauge().value());
+    }
+
+    private static void run(ConcurrencyLimitFilter filter, String path, Duration delay) {
+        // Цепочка синхронная: doFinally фильтра отрабатывает до возврата из block
+        filter.filter(exchange(path), ex -> Mono.fromRunnable(() -> LockSupport.parkNanos(delay.toNanos()))).block();
+    }
+
+    private static MockServerWebExchange exchange(String path) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(path));
+    }
+
+    private static double limit(SimpleMeterRegistry meterRegistry, String traffic) {
+        return meterRegistry.get("concurrency.limit").tag("traffic", traffic).gauge().value();
+    }
+
+    private static MockServerHttpRequest get(String path) {
+        return MockServerHttpRequest.get(path).build();
+    }
+}
@@ -0,0 +1,156 @@
+package com.vodchyts.backend.security;
+
+import com.vodchyts.backend.config.RateLimitConfig;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.Refill;
+import io.github.bucket4j.distributed.AsyncBucketProxy;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Корзины с периодом в час: за время теста ни один токен не пополняется
+class InMemoryRateLimitProxyManagerTest {
+
+    private static final BucketConfiguration FIVE_PER_HOUR = BucketConfiguration.builder()
+            .addLimit(Bandwidth.classic(5, Refill.intervally(5, Duration.ofHours(1))))
+            .build();
+
+    private final InMemoryRateLimitProxyManager manager = new InMemoryRateLimitProxyManager(new RateLimitConfig());
+
+    @Test
+    void syncBucketsWithSameKeyShareState() {
+        Bucket first = manager.builder().build("login:ip:1", () -> FIVE_PER_HOUR);
+        Bucket second = manager.builder().build("login:ip:1", () -> FIVE_PER_HOUR);
+        Bucket other = manager.builder().build("login:ip:2", () -> FIVE_PER_HOUR);
+
+        assertTrue(first.tryConsume(3));
+        assertTrue(second.tryConsume(2));
+        assertFalse(first.tryConsume(1));
+        assertTrue(other.tryConsume(5));
+    }
+
+    @Test
+    void asyncBucketConsumesUntilEmpty() {
+        AsyncBucketProxy bucket = manager.asAsync().builder()
+                .build("read:user:ivanov", () -> CompletableFuture.completedFuture(FIVE_PER_HOUR));
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryConsumeAndReturnRemaining(1).join().isConsumed());
+        }
+        assertFalse(bucket.tryConsumeAndReturnRemaining(1).join().isConsumed());
+    }
+
+    @Test
+    void swapComparesStateByContent() {
+        CompareAndSwapOperation operation = manager.beginCompareAndSwapOperation("write:user:ivanov");
+        byte[] initial = {1, 2, 3};
+
+        assertTrue(operation.compareAndSwap(null, initial, null, Optional.empty()));
+        // Проигравший гонку еще видит пустое состояние: его запись отклоняется
+        assertFalse(operation.compareAndSwap(null, new byte[]{9}, null, Optional.empty()));
+        assertFalse(operation.compareAndSwap(new byte[]{1, 2}, new byte[]{9}, null, Optional.empty()));
+        // Прочитанная копия состояния — другой массив с тем же содержимым
+        assertTrue(operation.compareAndSwap(new byte[]{1, 2, 3}, new byte[]{4}, null, Optional.empty()));
+
+        assertArrayEquals(new byte[]{4}, operation.getStateData(Optional.empty()).orElseThrow());
+    }
+
+    @Test
+    void lostRaceIsRetriedAgainstFreshState() {
+        AtomicBoolean interleaved = new AtomicBoolean();
+        AtomicInteger lostSwaps = new AtomicInteger();
+        InMemoryRateLimitProxyManager racing = new InMemoryRateLimitProxyManager(new RateLimitConfig()) {
+            @Override
+            protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+                CompareAndSwapOperation operation = super.beginCompareAndSwapOperation(key);
+                return new CompareAndSwapOperation() {
+                    @Override
+                    public Optional<byte[]> getStateData(Optional<Long> timeoutNanos) {
+                        return operation.getStateData(timeoutNanos);
+                    }
+
+                    @Override
+                    public boolean compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState, Optional<Long> timeoutNanos) {
+                        // Между чтением и записью другая реплика успевает списать токены
+                        if (interleaved.compareAndSet(false, true)) {
+                            assertTrue(builder().build(key, () -> FIVE_PER_HOUR).tryConsume(4));
+                        }
+                        boolean swapped = operation.compareAndSwap(originalData, newData, newState, timeoutNanos);
+                        if (!swapped) {
+                            lostSwaps.incrementAndGet();
+                        }
+                        return swapped;
+                    }
+                };
+            }
+        };
+        Bucket bucket = racing.builder().build("login:ip:1", () -> FIVE_PER_HOUR);
+
+        assertTrue(bucket.tryConsume(1));
+
+        assertEquals(1, lostSwaps.get());
+        assertFalse(bucket.tryConsume(1));
+    }
+
+    @Test
+    void removedProxyStartsWithFullBucket() {
+        Bucket bucket = manager.builder().build("login:ip:1", () -> FIVE_PER_HOUR);
+        assertTrue(bucket.tryConsume(5));
+
+        manager.removeProxy("login:ip:1");
+
+        assertTrue(manager.builder().build("login:ip:1", () -> FIVE_PER_HOUR).tryConsume(5));
+    }
+
+    @Test
+    void concurrentConsumersNeverOverspend() throws Exception {
+        BucketConfiguration hundred = BucketConfiguration.builder()
+                .addLimit(Bandwidth.classic(100, Refill.intervally(100, Duration.ofHours(1))))
+                .build();
+        AtomicInteger consumed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            // Каждый поток со своим прокси: проигравшие гонку compare-and-swap перечитывают состояние и повторяют
+            Future<?>[] workers = new Future<?>[8];
+            for (int t = 0; t < workers.length; t++) {
+                workers[t] = executor.submit(() -> {
+                    Bucket bucket = manager.builder().build("upload:user:ivanov", () -> hundred);
+                    start.await();
+                    for (int i = 0; i < 50; i++) {
+                        if (bucket.tryConsume(1)) {
+                            consumed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(100, consumed.get());
+    }
+}
@@ -0,0 +1,149 @@
+package com.vodchyts.backend.security;
+
+import com.vodchyts.backend.config.RateLimitConfig;
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import com.vodchyts.backend.feature.dto.RateLimitPolicyRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Настоящий сервис лимитов поверх хранилища в памяти; цепочка после фильтра ничего не делает
+class RateLimitingFilterTest {
+
+    private static final InetSocketAddress NGINX = new InetSocketAddress("172.18.0.5", 40000);
+
+    private RateLimitConfig config;
+    private RateLimitingService service;
+
+    @BeforeEach
+    void setUp() {
+        config = new RateLimitConfig();
+        RateLimitConfig.Limit login = new RateLimitConfig.Limit();
+        login.setCapacity(2);
+        config.getPolicies().put(RateLimitPolicy.LOGIN, login);
+        service = new RateLimitingService(config, new InMemoryRateLimitProxyManager(config), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void clientIpIsTakenFromHopAddedByProxy() {
+        RateLimitingFilter filter = new RateLimitingFilter(service, config);
+
+        assertEquals("203.0.113.7", filter.clientIp(login("203.0.113.7").getRequest()));
+        assertEquals("203.0.113.7", filter.clientIp(login("1.2.3.4, 5.6.7.8,203.0.113.7").getRequest()));
+        assertEquals("172.18.0.5", filter.clientIp(login(null).getRequest()));
+
+        config.setTrustedProxies(2);
+        assertEquals("5.6.7.8", new RateLimitingFilter(service, config).clientIp(login("1.2.3.4, 5.6.7.8, 203.0.113.7").getRequest()));
+        assertEquals("203.0.113.7", new RateLimitingFilter(service, config).clientIp(login("203.0.113.7").getRequest()));
+    }
+
+    @Test
+    void forwardedHeaderIsIgnoredWithoutTrustedProxies() {
+        config.setTrustedProxies(0);
+
+        assertEquals("172.18.0.5", new RateLimitingFilter(service, config).clientIp(login("203.0.113.7").getRequest()));
+    }
+
+    @Test
+    void spoofedFirstHopDoesNotResetLoginLimit() {
+        RateLimitingFilter filter = new RateLimitingFilter(service, config);
+
+        assertNull(status(filter, login("10.0.0.1, 203.0.113.7")));
+        assertNull(status(filter, login("10.0.0.2, 203.0.113.7")));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, status(filter, login("10.0.0.3, 203.0.113.7")));
+        assertNull(status(filter, login("198.51.100.1")));
+    }
+
+    @Test
+    void policyPeriodCannotOutliveIdleBuckets() {
+        assertThrows(OperationNotAllowedException.class,
+                () -> service.updatePolicy("login", new RateLimitPolicyRequest(5, 3600L)));
+
+        assertEquals(600, service.updatePolicy("login", new RateLimitPolicyRequest(5, 600L)).block().periodSeconds());
+    }
+
+    @Test
+    void loginIsRejectedWhenStoreFails() {
+        RateLimitingService failing = mock(RateLimitingService.class);
+        when(failing.tryConsume(any(), any())).thenReturn(Mono.error(new TimeoutException()));
+        RateLimitingFilter filter = new RateLimitingFilter(failing, config);
+
+        MockServerWebExchange exchange = login("203.0.113.7");
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, status(filter, exchange));
+        assertEquals("5", exchange.getResponse().getHeaders().getFirst("Retry-After"));
+
+        // Остальные запросы при сбое хранилища пропускаются
+        assertNull(status(filter, MockServerWebExchange.from(MockServerHttpRequest.get("/api/requests").remoteAddress(NGINX))));
+    }
+
+    @Test
+    void authenticatedUsersBehindOneAddressHaveOwnBuckets() {
+        RateLimitConfig.Limit read = new RateLimitConfig.Limit();
+        read.setCapacity(1);
+        config.getPolicies().put(RateLimitPolicy.READ, read);
+        RateLimitingFilter filter = new RateLimitingFilter(
+                new RateLimitingService(config, new InMemoryRateLimitProxyManager(config), new SimpleMeterRegistry()), config);
+
+        assertNull(status(filter, get("/api/requests"), "ivanov"));
+        assertNull(status(filter, get("/api/requests"), "petrov"));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, status(filter, get("/api/requests"), "ivanov"));
+        // Анонимный запрос с того же адреса считается по IP
+        assertNull(status(filter, get("/api/requests"), null));
+    }
+
+    @Test
+    void botTrafficIsSplitByTelegramUser() {
+        RateLimitConfig.Limit bot = new RateLimitConfig.Limit();
+        bot.setCapacity(1);
+        config.getPolicies().put(RateLimitPolicy.BOT, bot);
+        RateLimitingFilter filter = new RateLimitingFilter(
+                new RateLimitingService(config, new InMemoryRateLimitProxyManager(config), new SimpleMeterRegistry()), config);
+
+        assertNull(status(filter, get("/api/bot/requests?telegram_id=100"), "telegram-bot"));
+        assertNull(status(filter, get("/api/bot/requests?telegram_id=200"), "telegram-bot"));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, status(filter, get("/api/bot/requests?telegram_id=100"), "telegram-bot"));
+    }
+
+    private static MockServerWebExchange get(String uri) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(uri).remoteAddress(NGINX).header("X-Forwarded-For", "203.0.113.7"));
+    }
+
+    private static HttpStatus status(RateLimitingFilter filter, MockServerWebExchange exchange, String username) {
+        Mono<Void> filtered = filter.filter(exchange, ex -> Mono.empty());
+        if (username != null) {
+            filtered = filtered.contextWrite(ReactiveSecurityContextHolder.withAuthentication(
+                    new UsernamePasswordAuthenticationToken(username, null, List.of())));
+        }
+        filtered.block();
+        return (HttpStatus) exchange.getResponse().getStatusCode();
+    }
+
+    private static MockServerWebExchange login(String forwardedFor) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.post("/api/auth/login").remoteAddress(NGINX);
+        if (forwardedFor != null) {
+            request.header("X-Forwarded-For", forwardedFor);
+        }
+        return MockServerWebExchange.from(request);
+    }
+
+    private static HttpStatus status(RateLimitingFilter filter, MockServerWebExchange exchange) {
+        return status(filter, exchange, null);
+    }
+}
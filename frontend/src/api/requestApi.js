@@ -41,8 +41,12 @@ export const deleteRequest = (id) => {
   return api.delete(`/api/requests/${id}`);
 }
 
-export const getComments = (requestId) => {
-  return api.get(`/api/requests/${requestId}/comments`);
+export const getRequestFull = (requestId) => {
+  return api.get(`/api/requests/${requestId}/full`);
+}
+
+export const getComments = (requestId, params = {}) => {
+  return api.get(`/api/requests/${requestId}/comments`, { params });
 }
 
 export const addComment = (requestId, data) => {
@@ -76,8 +80,9 @@ export const getPhotoUrl = (photoId) => {
   return `${api.defaults.baseURL}/api/requests/photos/${photoId}`;
 }
 
-export const getPhotoBlob = (photoId) => {
+export const getPhotoBlob = (photoId, size) => {
   return api.get(`/api/requests/photos/${photoId}`, {
+    params: size ? { size } : undefined,
     responseType: 'blob' 
   });
 }
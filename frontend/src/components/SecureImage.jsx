@@ -3,7 +3,7 @@ import { getPhotoBlob } from '@/api/requestApi';
 import { RefreshCw, AlertTriangle, Image as ImageIcon } from 'lucide-react';
 import { cn } from '@/lib/utils';
 
-export default function SecureImage({ photoId, className, alt, style }) {
+export default function SecureImage({ photoId, size, className, alt, style }) {
     const [imageSrc, setImageSrc] = useState(null);
     const [loading, setLoading] = useState(false);
     const [error, setError] = useState(false);
@@ -52,7 +52,7 @@ export default function SecureImage({ photoId, className, alt, style }) {
             }
             
             try {
-                const response = await getPhotoBlob(photoId);
+                const response = await getPhotoBlob(photoId, size);
                 objectUrl = URL.createObjectURL(response.data);
                 if (isMounted) {
                     setImageSrc(objectUrl);
@@ -77,7 +77,7 @@ export default function SecureImage({ photoId, className, alt, style }) {
                 URL.revokeObjectURL(objectUrl);
             }
         };
-    }, [isVisible, photoId]);
+    }, [isVisible, photoId, size]);
 
     const placeholderClass = cn(
         "flex items-center justify-center bg-gray-100 rounded-lg text-gray-400 w-full h-full min-h-[100px]", 
@@ -8,7 +8,7 @@ import { useAuth } from '@/context/AuthProvider';
 import { Trash2 } from 'lucide-react';
 import { Loader2 } from 'lucide-react';
 
-export default function CommentsModal({ isOpen, onClose, request }) {
+export default function CommentsModal({ isOpen, onClose, request, details }) {
     const [comments, setComments] = useState([]);
     const [newComment, setNewComment] = useState('');
     const [loading, setLoading] = useState(false);
@@ -26,6 +26,11 @@ export default function CommentsModal({ isOpen, onClose, request }) {
     useEffect(() => {
         if (request?.requestID && isOpen) {
             setApiError(null);
+            // Уже загружены карточкой; если ветка длиннее страницы карточки, читаем ее целиком
+            if (details?.request?.requestID === request.requestID && !details.hasMoreComments) {
+                setComments(details.comments);
+                return;
+            }
             setLoading(true);
             getComments(request.requestID)
                 .then(res => setComments(res.data))
@@ -35,7 +40,7 @@ export default function CommentsModal({ isOpen, onClose, request }) {
                 })
                 .finally(() => setLoading(false));
         }
-    }, [request, isOpen]);
+    }, [request, isOpen, details]);
 
     const handleAddComment = async () => {
         if (newComment.trim() === '' || isSubmitting) return; 
@@ -8,7 +8,7 @@ import { Input } from '@/components/ui/input';
 import { X, ChevronLeft, ChevronRight, Trash2 } from 'lucide-react';
 import { useAuth } from '@/context/AuthProvider'; 
 
-export default function PhotosModal({ isOpen, onClose, request }) {
+export default function PhotosModal({ isOpen, onClose, request, details }) {
     const [photoIds, setPhotoIds] = useState([]);
     const [files, setFiles] = useState([]);
     const [loading, setLoading] = useState(false);
@@ -44,9 +44,14 @@ export default function PhotosModal({ isOpen, onClose, request }) {
             if (fileInputRef.current) {
                 fileInputRef.current.value = '';
             }
-            loadPhotoIds();
+            // Список уже загружен карточкой заявки
+            if (details?.request?.requestID === request?.requestID) {
+                setPhotoIds(details.photos.map(photo => photo.photoID));
+            } else {
+                loadPhotoIds();
+            }
         }
-    }, [request, isOpen]);
+    }, [request, isOpen, details]);
 
     const handlePrev = useCallback(() => {
         setViewerIndex(prev => (prev === null || prev === 0 ? photoIds.length - 1 : prev - 1));
@@ -140,6 +145,7 @@ export default function PhotosModal({ isOpen, onClose, request }) {
                                 >
                                     <SecureImage
                                         photoId={id}
+                                        size="thumb"
                                         // object-cover: заполняет квадрат, обрезая лишнее (красивая сетка)
                                         className="w-full h-full object-cover transition-transform group-hover:scale-105"
                                     />
@@ -206,6 +212,7 @@ export default function PhotosModal({ isOpen, onClose, request }) {
                                 <SecureImage 
                                     key={photoIds[viewerIndex]}
                                     photoId={photoIds[viewerIndex]} 
+                                    size="preview"
                                     className="max-w-full max-h-full object-contain rounded-md shadow-2xl"
                                 />
                             </div>
@@ -1,6 +1,6 @@
 import React, { useState, useEffect, useCallback, useMemo } from 'react';
 import { useSearchParams } from 'react-router-dom';
-import { getRequests, deleteRequest, createRequest, updateRequest, restoreRequest, completeRequest } from '@/api/requestApi';
+import { getRequests, getRequestFull, deleteRequest, createRequest, updateRequest, restoreRequest, completeRequest } from '@/api/requestApi';
 import { getShops } from '@/api/shopApi';
 import { getWorkCategories } from '@/api/workCategoryApi';
 import { getUrgencyCategories } from '@/api/urgencyCategoryApi';
@@ -50,6 +50,7 @@ export default function Requests({ archived = false }) {
     const [isPhotosOpen, setIsPhotosOpen] = useState(false);
     const [isDetailsOpen, setIsDetailsOpen] = useState(false);
     const [currentRequest, setCurrentRequest] = useState(null);
+    const [currentDetails, setCurrentDetails] = useState(null);
     const [formApiError, setFormApiError] = useState(null);
 
     const [searchParams, setSearchParams] = useSearchParams();
@@ -101,7 +102,7 @@ export default function Requests({ archived = false }) {
         overdue: searchParams.get('overdue') === 'true',
         startDate: viewMode === 'gantt' ? (searchParams.get('startDate') || null) : null,
         endDate: viewMode === 'gantt' ? (searchParams.get('endDate') || null) : null,
-        sortConfig: (searchParams.getAll('sort').length > 0 ? searchParams.getAll('sort') : ['requestID,asc']).map(s => ({
+        sortConfig: (searchParams.getAll('sort').length > 0 ? searchParams.getAll('sort') : (searchParams.get('searchTerm') ? ['relevance,desc'] : ['requestID,asc'])).map(s => ({
             field: s.split(',')[0],
             direction: s.split(',')[1] || 'asc'
         }))
@@ -211,7 +212,7 @@ export default function Requests({ archived = false }) {
                 overdue: currentParams.get('overdue') === 'true',
                 startDate: useDateFilters ? (currentParams.get('startDate') || null) : null,
                 endDate: useDateFilters ? (currentParams.get('endDate') || null) : null,
-                sortConfig: (currentParams.getAll('sort').length > 0 ? currentParams.getAll('sort') : ['requestID,asc']).map(s => ({
+                sortConfig: (currentParams.getAll('sort').length > 0 ? currentParams.getAll('sort') : (currentParams.get('searchTerm') ? ['relevance,desc'] : ['requestID,asc'])).map(s => ({
                     field: s.split(',')[0],
                     direction: s.split(',')[1] || 'asc'
                 }))
@@ -337,9 +338,17 @@ export default function Requests({ archived = false }) {
         }
     };
     
+    // Карточка, комментарии и фото приходят одним запросом; модальные окна берут списки из него
     const openDetails = useCallback((req) => {
         setCurrentRequest(req);
+        setCurrentDetails(null);
         setIsDetailsOpen(true);
+        getRequestFull(req.requestID)
+            .then(res => {
+                setCurrentRequest(prev => prev?.requestID === req.requestID ? res.data.request : prev);
+                setCurrentDetails(res.data);
+            })
+            .catch(err => console.error("Failed to load request details", err));
     }, []);
 
     const openCreateForm = () => { setCurrentRequest(null); setFormApiError(null); setIsFormOpen(true); };
@@ -349,6 +358,7 @@ export default function Requests({ archived = false }) {
     const openPhotos = (req) => { setCurrentRequest(req); setIsPhotosOpen(true); };
 
     const handleCommentsModalClose = () => {
+        setCurrentDetails(null);
         setIsCommentsOpen(false);
         
         if (viewMode === 'gantt' && currentRequest) {
@@ -359,6 +369,7 @@ export default function Requests({ archived = false }) {
     };
 
     const handlePhotosModalClose = () => {
+        setCurrentDetails(null);
         setIsPhotosOpen(false);
         
         if (viewMode === 'gantt' && currentRequest) {
@@ -721,7 +732,7 @@ export default function Requests({ archived = false }) {
 
             <RequestDetailsModal 
                 isOpen={isDetailsOpen} 
-                onClose={() => setIsDetailsOpen(false)} 
+                onClose={() => { setIsDetailsOpen(false); setCurrentDetails(null); }} 
                 request={currentRequest} 
                 footerContent={
                     viewMode === 'gantt' && currentRequest ? (
@@ -742,8 +753,8 @@ export default function Requests({ archived = false }) {
                     ) : null
                 }
             />
-            <CommentsModal isOpen={isCommentsOpen} onClose={handleCommentsModalClose} request={currentRequest} />
-            <PhotosModal isOpen={isPhotosOpen} onClose={handlePhotosModalClose} request={currentRequest} />
+            <CommentsModal isOpen={isCommentsOpen} onClose={handleCommentsModalClose} request={currentRequest} details={currentDetails} />
+            <PhotosModal isOpen={isPhotosOpen} onClose={handlePhotosModalClose} request={currentRequest} details={currentDetails} />
 
                         <div className="mt-6 border-t pt-4">
                 <h3 className="text-sm font-semibold text-muted-foreground mb-3 uppercase tracking-wider">
@@ -87,13 +87,23 @@ async def get_request_details(telegram_id: int, request_id: int):
     return await _make_request("GET", f"/api/bot/requests/{request_id}", params=params)
 
 
+async def get_request_full(telegram_id: int, request_id: int):
+    params = {'telegram_id': telegram_id}
+    return await _make_request("GET", f"/api/bot/requests/{request_id}/full", params=params)
+
+
 async def complete_request(telegram_id: int, request_id: int):
     data = {'telegram_id': telegram_id}
     return await _make_request("PUT", f"/api/bot/requests/{request_id}/complete", json=data)
 
 
-async def get_comments(request_id: int):
-    return await _make_request("GET", f"/api/bot/requests/{request_id}/comments")
+async def get_comments(request_id: int, since: str = None, after_id: int = None):
+    params = {}
+    if since:
+        params['since'] = since
+        if after_id:
+            params['afterId'] = after_id
+    return await _make_request("GET", f"/api/bot/requests/{request_id}/comments", params=params)
 
 
 async def add_comment(request_id: int, telegram_id: int, text: str):
@@ -135,13 +145,13 @@ async def upload_photos(request_id: int, telegram_id: int, photo_files: list):
             return False
 
 
-async def get_photo(photo_id: int):
+async def get_photo(photo_id: int, size: str = "preview"):
     api_url = f"{BACKEND_URL}/api/requests/photos/{photo_id}"
     headers = {"X-API-KEY": API_KEY}
 
     async with httpx.AsyncClient(timeout=10.0) as client:
         try:
-            response = await client.get(api_url, headers=headers)
+            response = await client.get(api_url, headers=headers, params={"size": size})
             response.raise_for_status()
             return response.content
         except Exception as e:
@@ -60,6 +60,9 @@ SORT_EXTRACTORS = {
     ),
 }
 
+# Поля, которые нужны списку заявок; остальное (счетчики, категории) бэкенд не выбирает
+LIST_FIELDS = ["requestID", "description", "shopName", "status", "isOverdue", "daysRemaining"]
+
 BOT_PAGE_SIZE = 6
 API_BATCH_SIZE = 50
 
@@ -171,6 +174,8 @@ def _build_cache_key(filters: Dict[str, Any]) -> Tuple:
 async def _fetch_full_dataset(user_id: int, filters: Dict[str, Any]) -> List[dict] | None:
     base_filters = {k: v for k, v in filters.items() if k != 'page'}
     base_filters['size'] = API_BATCH_SIZE
+    sort_fields = [item.split(',')[0] for item in filters.get('sort') or []]
+    base_filters['fields'] = list(dict.fromkeys(LIST_FIELDS + [f for f in sort_fields if f in SORT_LABELS]))
     aggregated: List[dict] = []
     page = 0
     total_pages = 1
@@ -433,6 +438,27 @@ async def view_menu_callback(update: Update, context: Context) -> int:
     return VIEW_MAIN_MENU
 
 
+async def load_request_full(context: Context, user_id: int, request_id: int):
+    # Заявка, комментарии и фото приходят одним ответом; списки откладываются до первого открытия
+    full = await api_client.get_request_full(user_id, request_id)
+    if not full:
+        return None
+    # Если ветка длиннее страницы из /full, кэш не заполняется: show_comments дочитает ее целиком через /comments
+    if full.get('hasMoreComments'):
+        context.user_data.pop('current_request_comments', None)
+    else:
+        context.user_data['current_request_comments'] = (request_id, full.get('comments') or [])
+    context.user_data['current_request_photo_ids'] = (request_id, [p['photoID'] for p in full.get('photos') or []])
+    return full.get('request')
+
+
+def take_cached(context: Context, key: str, request_id: int):
+    cached = context.user_data.pop(key, None)
+    if cached and cached[0] == request_id:
+        return cached[1]
+    return None
+
+
 async def show_request_details_in_message(query, context: Context, request_id: int) -> int:
     user_id = query.from_user.id
     user_info = context.user_data.get('user_info') or await api_client.get_user_by_telegram_id(user_id)
@@ -440,7 +466,7 @@ async def show_request_details_in_message(query, context: Context, request_id: i
         await query.answer("❌ Ваш Telegram ID не найден в системе.", show_alert=True)
         return VIEW_MAIN_MENU
 
-    request_details = await api_client.get_request_details(user_id, request_id)
+    request_details = await load_request_full(context, user_id, request_id)
     if not request_details:
         await query.answer(f"❌ Не удалось найти заявку #{request_id}", show_alert=True)
         return VIEW_MAIN_MENU
@@ -602,7 +628,7 @@ async def view_request_details(update: Update, context: Context) -> int | None:
         await update.message.reply_text("❌ Ваш Telegram ID не найден в системе.")
         return
 
-    request_details = await api_client.get_request_details(user_id, request_id)
+    request_details = await load_request_full(context, user_id, request_id)
     if not request_details:
         await update.message.reply_text(
             f"❌ Не удалось найти заявку \\#{request_id} или у вас нет прав на ее просмотр\\.",
@@ -741,7 +767,9 @@ async def show_comments(query, context: Context, request_id: int):
 
     is_admin = user_info and user_info.get('roleName') == 'RetailAdmin'
 
-    comments = await api_client.get_comments(request_id)
+    comments = take_cached(context, 'current_request_comments', request_id)
+    if comments is None:
+        comments = await api_client.get_comments(request_id)
 
     if not comments:
 
@@ -822,7 +850,9 @@ async def show_photos(query, context: Context, request_id: int):
 
     is_admin = user_info and user_info.get('roleName') == 'RetailAdmin'
 
-    photo_ids = await api_client.get_photo_ids(request_id)
+    photo_ids = take_cached(context, 'current_request_photo_ids', request_id)
+    if photo_ids is None:
+        photo_ids = await api_client.get_photo_ids(request_id)
 
     if not photo_ids:
         await safe_answer_query(query, text="Фотографий нет.", show_alert=True)